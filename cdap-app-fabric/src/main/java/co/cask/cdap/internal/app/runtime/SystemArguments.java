@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -51,6 +51,11 @@ public final class SystemArguments {
   private static final String RETRY_POLICY_DELAY_BASE_MS = "system." + Constants.Retry.DELAY_BASE_MS;
   private static final String RETRY_POLICY_DELAY_MAX_MS = "system." + Constants.Retry.DELAY_MAX_MS;
   public static final String TRANSACTION_TIMEOUT = "system.data.tx.timeout";
+  public static final String FLOWLET_TX_BATCH_SIZE = "system.flowlet.tx.batch.size";
+  public static final String FLOWLET_TX_BATCH_EVENTS = "system.flowlet.tx.batch.events";
+  public static final String FLOWLET_TX_BATCH_MILLIS = "system.flowlet.tx.batch.millis";
+
+  private static final long DEFAULT_FLOWLET_TX_BATCH_MILLIS = 100L;
 
   public static Map<String, String> getLogLevels(Map<String, String> args) {
     Map<String, String> logLevels = new HashMap<>();
@@ -149,6 +154,40 @@ public final class SystemArguments {
     }
   }
 
+  /**
+   * Returns the maximum number of process method calls a flowlet performs in one transaction.
+   *
+   * @return the integer value of the argument system.flowlet.tx.batch.size, or {@code 1} if it is not given,
+   *         which means every process method call runs in a transaction of its own.
+   */
+  public static int getFlowletTxBatchSize(Map<String, String> args) {
+    Integer size = getPositiveInt(args, FLOWLET_TX_BATCH_SIZE, "flowlet transaction batch size");
+    return size == null ? 1 : size;
+  }
+
+  /**
+   * Returns the maximum number of events a flowlet processes in one transaction, if it performs more than one
+   * process method call per transaction.
+   *
+   * @return the integer value of the argument system.flowlet.tx.batch.events, or {@link Integer#MAX_VALUE} if it
+   *         is not given.
+   */
+  public static int getFlowletTxBatchEvents(Map<String, String> args) {
+    Integer events = getPositiveInt(args, FLOWLET_TX_BATCH_EVENTS, "flowlet transaction batch events");
+    return events == null ? Integer.MAX_VALUE : events;
+  }
+
+  /**
+   * Returns the maximum time in milliseconds a flowlet keeps performing process method calls in one transaction,
+   * if it performs more than one process method call per transaction.
+   *
+   * @return the long value of the argument system.flowlet.tx.batch.millis, or {@code 100} if it is not given.
+   */
+  public static long getFlowletTxBatchMillis(Map<String, String> args) {
+    return getNonNegativeLong(args, FLOWLET_TX_BATCH_MILLIS, "flowlet transaction batch time",
+                              DEFAULT_FLOWLET_TX_BATCH_MILLIS);
+  }
+
   /**
    * Get the retry strategy for a program given its arguments and the CDAP defaults for the program type.
    *
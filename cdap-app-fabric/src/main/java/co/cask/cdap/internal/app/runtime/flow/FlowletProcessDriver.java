@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -29,6 +29,7 @@ import co.cask.cdap.common.logging.LoggingContextAccessor;
 import co.cask.cdap.common.queue.QueueName;
 import co.cask.cdap.internal.app.queue.SingleItemQueueReader;
 import co.cask.cdap.internal.app.runtime.DataFabricFacade;
+import co.cask.cdap.internal.app.runtime.SystemArguments;
 import co.cask.cdap.security.spi.authorization.UnauthorizedException;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
@@ -47,6 +48,7 @@ import org.slf4j.LoggerFactory;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -57,6 +59,12 @@ import java.util.concurrent.TimeoutException;
 
 /**
  * This class responsible invoking process methods of a {@link Flowlet}.
+ * <p/>
+ * By default, every process method call runs in a transaction of its own. If the runtime argument
+ * {@link SystemArguments#FLOWLET_TX_BATCH_SIZE} is larger than one, process method calls are micro-batched into
+ * one transaction, bounded by the number of calls, the number of events
+ * ({@link SystemArguments#FLOWLET_TX_BATCH_EVENTS}) and the time spent
+ * ({@link SystemArguments#FLOWLET_TX_BATCH_MILLIS}).
  */
 final class FlowletProcessDriver extends AbstractExecutionThreadService {
 
@@ -67,6 +75,8 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
   private final Callback txCallback;
   private final LoggingContext loggingContext;
   private final PriorityQueue<FlowletProcessEntry<?>> processQueue;
+  private final int txBatchSize;
+  private final TxBatchProcessor txBatchProcessor;
 
   private Thread runThread;
   private ExecutorService processExecutor;
@@ -80,6 +90,15 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
     this.txCallback = txCallback;
     this.loggingContext = flowletContext.getLoggingContext();
 
+    Map<String, String> runtimeArgs = flowletContext.getRuntimeArguments();
+    this.txBatchSize = SystemArguments.getFlowletTxBatchSize(runtimeArgs);
+    // Keep at least half of the transaction timeout for the last process call and the commit
+    long txBatchNanos = Math.min(TimeUnit.MILLISECONDS.toNanos(SystemArguments.getFlowletTxBatchMillis(runtimeArgs)),
+                                 TimeUnit.SECONDS.toNanos(flowletContext.getDefaultTxTimeout()) / 2);
+    this.txBatchProcessor = new TxBatchProcessor(dataFabricFacade, flowletContext.getProgramMetrics(),
+                                                 flowletContext.getDefaultTxTimeout(), txBatchSize,
+                                                 SystemArguments.getFlowletTxBatchEvents(runtimeArgs), txBatchNanos);
+
     processQueue = new PriorityQueue<>(processSpecifications.size());
     for (ProcessSpecification<?> spec : processSpecifications) {
       processQueue.offer(FlowletProcessEntry.create(spec));
@@ -97,6 +116,8 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
     this.dataFabricFacade = other.dataFabricFacade;
     this.txCallback = other.txCallback;
     this.loggingContext = other.loggingContext;
+    this.txBatchSize = other.txBatchSize;
+    this.txBatchProcessor = other.txBatchProcessor;
     this.processQueue = new PriorityQueue<>(other.processQueue.size());
     Iterables.addAll(processQueue, other.processQueue);
   }
@@ -190,6 +211,10 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
       @Override
       public void run() {
         Thread.currentThread().setContextClassLoader(classLoader);
+        if (txBatchSize > 1) {
+          handleProcessBatch(processList, processQueue);
+          return;
+        }
         for (FlowletProcessEntry<?> entry : processList) {
           if (!handleProcessEntry(entry, processQueue)) {
             // If an entry is not processed (because it's not the time yet), just put it back to the queue
@@ -268,6 +293,48 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
     return false;
   }
 
+  /**
+   * Invokes the process methods of the given entries repeatedly in a single transaction with the
+   * {@link TxBatchProcessor}. Retried inputs and process methods that don't take input are handled by
+   * {@link #handleProcessEntry} in a transaction of their own.
+   * <p/>
+   * Callbacks for the processed inputs are only invoked after the transaction is committed. A failed input is
+   * handled by the failure policy as usual, after the transaction is aborted.
+   */
+  private void handleProcessBatch(List<FlowletProcessEntry<?>> processList,
+                                  final PriorityQueue<FlowletProcessEntry<?>> processQueue) {
+    List<FlowletProcessEntry<?>> batchEntries = Lists.newArrayListWithCapacity(processList.size());
+    for (FlowletProcessEntry<?> entry : processList) {
+      if (entry.isRetry() || entry.isTick() || !entry.getProcessSpec().getProcessMethod().needsInput()) {
+        if (!handleProcessEntry(entry, processQueue)) {
+          processQueue.offer(entry);
+        }
+      } else {
+        batchEntries.add(entry);
+      }
+    }
+    if (batchEntries.isEmpty()) {
+      return;
+    }
+
+    txBatchProcessor.process(batchEntries, processQueue, new TxBatchProcessor.Listener() {
+      @Override
+      public <T> void processed(FlowletProcessEntry<T> entry, InputDatum<T> input,
+                                ProcessMethod.ProcessResult<?> result) {
+        // The batch processor puts every batch entry back to the queue once, after all inputs are acknowledged
+        processMethodCallback(processQueue, entry, input, false).onSuccess(result.getEvent(),
+                                                                           input.getInputContext());
+      }
+
+      @Override
+      public <T> void failed(FlowletProcessEntry<T> entry, InputDatum<T> input, ProcessMethod.ProcessResult<?> result,
+                             TransactionContext txContext) {
+        // Aborts the transaction and calls the failure callback, which puts back the entry or a retry entry
+        postProcess(processMethodCallback(processQueue, entry, input), txContext, input, result);
+      }
+    });
+  }
+
   private void startTx(TransactionContext txContext) throws TransactionFailureException {
     txContext.start(flowletContext.getDefaultTxTimeout());
   }
@@ -332,9 +399,22 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
     };
   }
 
+  private <T> ProcessMethodCallback processMethodCallback(PriorityQueue<FlowletProcessEntry<?>> processQueue,
+                                                          FlowletProcessEntry<T> processEntry,
+                                                          InputDatum<T> input) {
+    return processMethodCallback(processQueue, processEntry, input, true);
+  }
+
+  /**
+   * Creates a {@link ProcessMethodCallback} for the given input.
+   *
+   * @param requeueOnSuccess whether the process entry is put back to the queue on success. Entries of micro-batches
+   *                         are put back by the {@link TxBatchProcessor} instead, once per batch.
+   */
   private <T> ProcessMethodCallback processMethodCallback(final PriorityQueue<FlowletProcessEntry<?>> processQueue,
                                                           final FlowletProcessEntry<T> processEntry,
-                                                          final InputDatum<T> input) {
+                                                          final InputDatum<T> input,
+                                                          final boolean requeueOnSuccess) {
     // If it is generator flowlet, processCount is 1.
     final int processedCount = processEntry.getProcessSpec().getProcessMethod().needsInput() ? input.size() : 1;
 
@@ -356,7 +436,9 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
         } catch (Throwable t) {
           LOG.error("Exception on onSuccess call: {}", flowletContext, t);
         } finally {
-          enqueueEntry();
+          if (requeueOnSuccess) {
+            enqueueEntry();
+          }
         }
       }
 
@@ -0,0 +1,226 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.internal.app.runtime.flow;
+
+import co.cask.cdap.api.metrics.MetricsContext;
+import co.cask.cdap.app.queue.InputDatum;
+import co.cask.cdap.internal.app.runtime.DataFabricFacade;
+import co.cask.cdap.security.spi.authorization.UnauthorizedException;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import org.apache.tephra.TransactionContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Invokes the process methods of a flowlet repeatedly in a single transaction.
+ * <p/>
+ * Inputs are dequeued and processed for as long as some process method dequeues input and the limits on the number
+ * of process calls, the number of events and the time spent are not reached. The transaction is then committed, and
+ * only after the commit the processed inputs are passed to the {@link Listener}, which acknowledges them.
+ * <p/>
+ * If a process call fails, the transaction is aborted. The abort rolls back the dequeue of every input of the batch,
+ * hence the inputs processed before the failed one are dequeued again by the next transaction. The failed input is
+ * passed to the {@link Listener}, which handles it with the failure policy. If the commit fails, all inputs of the
+ * batch are dequeued again.
+ */
+final class TxBatchProcessor {
+
+  private static final Logger LOG = LoggerFactory.getLogger(TxBatchProcessor.class);
+
+  /**
+   * Receives the inputs processed by a batch.
+   */
+  interface Listener {
+
+    /**
+     * Called for every input of a committed batch, in the order they were processed.
+     */
+    <T> void processed(FlowletProcessEntry<T> entry, InputDatum<T> input, ProcessMethod.ProcessResult<?> result);
+
+    /**
+     * Called for the input of a failed process call, while the transaction is still in progress. The listener is
+     * responsible for aborting the transaction and for putting the entry, or a retry entry for it, back to the
+     * process queue.
+     */
+    <T> void failed(FlowletProcessEntry<T> entry, InputDatum<T> input, ProcessMethod.ProcessResult<?> result,
+                    TransactionContext txContext);
+  }
+
+  private final DataFabricFacade dataFabricFacade;
+  private final MetricsContext metrics;
+  private final int txTimeout;
+  private final int maxCalls;
+  private final int maxEvents;
+  private final long maxNanos;
+
+  /**
+   * Creates an instance.
+   *
+   * @param dataFabricFacade for creating the transaction of a batch
+   * @param metrics for emitting the process metrics
+   * @param txTimeout transaction timeout in seconds
+   * @param maxCalls maximum number of process calls in a batch
+   * @param maxEvents maximum number of events in a batch
+   * @param maxNanos maximum time in nanoseconds to spend on processing a batch before committing it
+   */
+  TxBatchProcessor(DataFabricFacade dataFabricFacade, MetricsContext metrics, int txTimeout,
+                   int maxCalls, int maxEvents, long maxNanos) {
+    this.dataFabricFacade = dataFabricFacade;
+    this.metrics = metrics;
+    this.txTimeout = txTimeout;
+    this.maxCalls = maxCalls;
+    this.maxEvents = maxEvents;
+    this.maxNanos = maxNanos;
+  }
+
+  /**
+   * Processes a batch of inputs from the given entries in a single transaction.
+   *
+   * @param entries the entries to dequeue from. None of them is a retry or a tick entry.
+   * @param processQueue the queue to put the entries back to once the batch is done. Each entry is put back exactly
+   *                     once, except for the entry of a failed input, which the {@link Listener} puts back.
+   * @param listener the listener for the processed inputs
+   */
+  void process(List<FlowletProcessEntry<?>> entries, Collection<FlowletProcessEntry<?>> processQueue,
+               Listener listener) {
+    TransactionContext txContext;
+    try {
+      txContext = dataFabricFacade.createTransactionContext();
+      txContext.start(txTimeout);
+    } catch (Throwable t) {
+      LOG.error("Failed to start transaction.", t);
+      processQueue.addAll(entries);
+      if (Throwables.getRootCause(t) instanceof UnauthorizedException) {
+        throw Throwables.propagate(t);
+      }
+      return;
+    }
+
+    List<ProcessedInput<?>> processedInputs = Lists.newArrayList();
+    int events = 0;
+    long deadline = System.nanoTime() + maxNanos;
+    try {
+      boolean dequeued = true;
+      while (dequeued && processedInputs.size() < maxCalls && events < maxEvents && deadline - System.nanoTime() > 0) {
+        dequeued = false;
+        for (FlowletProcessEntry<?> entry : entries) {
+          if (processedInputs.size() >= maxCalls || events >= maxEvents) {
+            break;
+          }
+          ProcessedInput<?> processedInput = process(entry);
+          if (processedInput == null) {
+            continue;
+          }
+          dequeued = true;
+          if (!processedInput.result.isSuccess()) {
+            for (FlowletProcessEntry<?> batchEntry : entries) {
+              if (batchEntry != entry) {
+                processQueue.add(batchEntry);
+              }
+            }
+            processedInput.failed(listener, txContext);
+            return;
+          }
+          processedInputs.add(processedInput);
+          events += processedInput.input.size();
+        }
+      }
+    } catch (Throwable t) {
+      LOG.error("System failure while processing a batch of {} inputs.", processedInputs.size(), t);
+      abort(txContext);
+      processQueue.addAll(entries);
+      if (Throwables.getRootCause(t) instanceof UnauthorizedException) {
+        throw Throwables.propagate(t);
+      }
+      return;
+    }
+
+    try {
+      txContext.finish();
+    } catch (Throwable t) {
+      LOG.error("Transaction operation failed: {}", t.getMessage(), t);
+      abort(txContext);
+      metrics.increment("process.errors", 1);
+      processQueue.addAll(entries);
+      return;
+    }
+
+    for (ProcessedInput<?> processedInput : processedInputs) {
+      processedInput.processed(listener);
+    }
+    processQueue.addAll(entries);
+  }
+
+  /**
+   * Dequeues from the given entry and invokes its process method in the current transaction.
+   *
+   * @return the processed input or {@code null} if it is not yet time to process the entry or nothing was dequeued
+   */
+  @Nullable
+  private <T> ProcessedInput<T> process(FlowletProcessEntry<T> entry) throws Exception {
+    if (!entry.shouldProcess()) {
+      return null;
+    }
+    metrics.increment("process.tuples.attempt.read", 1);
+    InputDatum<T> input = entry.getProcessSpec().getQueueReader().dequeue(0, TimeUnit.MILLISECONDS);
+    if (!input.needProcess()) {
+      entry.backOff();
+      return null;
+    }
+    entry.resetBackOff();
+    return new ProcessedInput<>(entry, input, entry.getProcessSpec().getProcessMethod().invoke(input));
+  }
+
+  private void abort(TransactionContext txContext) {
+    try {
+      txContext.abort();
+    } catch (Throwable e) {
+      LOG.error("Fail to abort transaction.", e);
+    }
+  }
+
+  /**
+   * An input processed in a batch, together with its process entry and result.
+   *
+   * @param <T> Type of input
+   */
+  private static final class ProcessedInput<T> {
+    private final FlowletProcessEntry<T> entry;
+    private final InputDatum<T> input;
+    private final ProcessMethod.ProcessResult<?> result;
+
+    private ProcessedInput(FlowletProcessEntry<T> entry, InputDatum<T> input, ProcessMethod.ProcessResult<?> result) {
+      this.entry = entry;
+      this.input = input;
+      this.result = result;
+    }
+
+    private void processed(Listener listener) {
+      listener.processed(entry, input, result);
+    }
+
+    private void failed(Listener listener, TransactionContext txContext) {
+      listener.failed(entry, input, result, txContext);
+    }
+  }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -71,4 +71,28 @@ public class SystemArgumentsTest {
     Assert.assertEquals(defaultResources, resources);
 
   }
+
+  @Test
+  public void testFlowletTxBatch() {
+    // Nothing specified, each process call runs in its own transaction
+    Assert.assertEquals(1, SystemArguments.getFlowletTxBatchSize(ImmutableMap.<String, String>of()));
+    Assert.assertEquals(Integer.MAX_VALUE, SystemArguments.getFlowletTxBatchEvents(ImmutableMap.<String, String>of()));
+    Assert.assertEquals(100L, SystemArguments.getFlowletTxBatchMillis(ImmutableMap.<String, String>of()));
+
+    Assert.assertEquals(10, SystemArguments.getFlowletTxBatchSize(ImmutableMap.of("system.flowlet.tx.batch.size",
+                                                                                  "10")));
+    Assert.assertEquals(500, SystemArguments.getFlowletTxBatchEvents(ImmutableMap.of("system.flowlet.tx.batch.events",
+                                                                                     "500")));
+    Assert.assertEquals(20L, SystemArguments.getFlowletTxBatchMillis(ImmutableMap.of("system.flowlet.tx.batch.millis",
+                                                                                     "20")));
+
+    // Invalid values are ignored
+    Assert.assertEquals(1, SystemArguments.getFlowletTxBatchSize(ImmutableMap.of("system.flowlet.tx.batch.size",
+                                                                                 "-10")));
+    Assert.assertEquals(Integer.MAX_VALUE,
+                        SystemArguments.getFlowletTxBatchEvents(ImmutableMap.of("system.flowlet.tx.batch.events",
+                                                                                "abc")));
+    Assert.assertEquals(100L, SystemArguments.getFlowletTxBatchMillis(ImmutableMap.of("system.flowlet.tx.batch.millis",
+                                                                                      "-1")));
+  }
 }
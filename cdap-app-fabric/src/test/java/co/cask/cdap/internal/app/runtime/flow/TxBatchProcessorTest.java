@@ -0,0 +1,404 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.internal.app.runtime.flow;
+
+import co.cask.cdap.api.data.DatasetContext;
+import co.cask.cdap.api.flow.flowlet.InputContext;
+import co.cask.cdap.api.metrics.NoopMetricsContext;
+import co.cask.cdap.app.queue.InputDatum;
+import co.cask.cdap.app.queue.QueueReader;
+import co.cask.cdap.common.queue.QueueName;
+import co.cask.cdap.data2.queue.ConsumerConfig;
+import co.cask.cdap.data2.queue.QueueConsumer;
+import co.cask.cdap.data2.queue.QueueProducer;
+import co.cask.cdap.data2.transaction.queue.QueueMetrics;
+import co.cask.cdap.data2.transaction.stream.StreamConsumer;
+import co.cask.cdap.internal.app.runtime.DataFabricFacade;
+import co.cask.cdap.proto.id.StreamId;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.apache.tephra.Transaction;
+import org.apache.tephra.TransactionAware;
+import org.apache.tephra.TransactionContext;
+import org.apache.tephra.TransactionExecutor;
+import org.apache.tephra.TransactionFailureException;
+import org.apache.tephra.inmemory.MinimalTxSystemClient;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Tests for {@link TxBatchProcessor}.
+ */
+public class TxBatchProcessorTest {
+
+  @Test
+  public void testBatchCommit() {
+    TestQueueReader reader = new TestQueueReader("a", "b", "c", "d", "e");
+    TestProcessMethod method = new TestProcessMethod(reader);
+    FlowletProcessEntry<String> entry = FlowletProcessEntry.create(new ProcessSpecification<>(reader, method, null));
+    List<FlowletProcessEntry<?>> processQueue = Lists.newArrayList();
+    RecordingListener listener = new RecordingListener(reader, processQueue);
+    TxBatchProcessor processor = createProcessor(reader, 3);
+
+    processor.process(ImmutableList.<FlowletProcessEntry<?>>of(entry), processQueue, listener);
+
+    // The three process calls run in one transaction
+    Assert.assertEquals(ImmutableList.of("a", "b", "c"), method.processed);
+    Assert.assertEquals(1, Sets.newHashSet(method.writePointers).size());
+    // The inputs are acknowledged once the transaction is committed
+    Assert.assertEquals(ImmutableList.of("a", "b", "c"), listener.processed);
+    Assert.assertEquals(ImmutableList.of(3, 3, 3), listener.committedOnProcessed);
+    // The entry is put back once
+    Assert.assertEquals(ImmutableList.<FlowletProcessEntry<?>>of(entry), processQueue);
+
+    // The next batch takes the remaining inputs in another transaction
+    processQueue.clear();
+    processor.process(ImmutableList.<FlowletProcessEntry<?>>of(entry), processQueue, listener);
+    Assert.assertEquals(ImmutableList.of("a", "b", "c", "d", "e"), listener.processed);
+    Assert.assertEquals(2, Sets.newHashSet(method.writePointers).size());
+    Assert.assertEquals(ImmutableList.<FlowletProcessEntry<?>>of(entry), processQueue);
+  }
+
+  @Test
+  public void testProcessFailure() {
+    TestQueueReader reader = new TestQueueReader("a", "b", "c", "d");
+    TestProcessMethod method = new TestProcessMethod(reader, "c");
+    FlowletProcessEntry<String> entry = FlowletProcessEntry.create(new ProcessSpecification<>(reader, method, null));
+    List<FlowletProcessEntry<?>> processQueue = Lists.newArrayList();
+    RecordingListener listener = new RecordingListener(reader, processQueue);
+    TxBatchProcessor processor = createProcessor(reader, 10);
+
+    processor.process(ImmutableList.<FlowletProcessEntry<?>>of(entry), processQueue, listener);
+
+    // Only the failed input goes to the failure handling, nothing is acknowledged and the dequeue is rolled back
+    Assert.assertEquals(ImmutableList.of("a", "b", "c"), method.processed);
+    Assert.assertEquals(ImmutableList.of("c"), listener.failed);
+    Assert.assertTrue(listener.processed.isEmpty());
+    Assert.assertEquals(0, reader.committed);
+    Assert.assertEquals(ImmutableList.<FlowletProcessEntry<?>>of(entry), processQueue);
+
+    // The whole batch is processed again by the next transaction
+    processQueue.clear();
+    processor.process(ImmutableList.<FlowletProcessEntry<?>>of(entry), processQueue, listener);
+    Assert.assertEquals(ImmutableList.of("a", "b", "c", "a", "b", "c", "d"), method.processed);
+    Assert.assertEquals(ImmutableList.of("a", "b", "c", "d"), listener.processed);
+    Assert.assertEquals(4, reader.committed);
+    Assert.assertEquals(ImmutableList.<FlowletProcessEntry<?>>of(entry), processQueue);
+  }
+
+  @Test
+  public void testCommitFailure() {
+    TestQueueReader reader = new TestQueueReader("a", "b");
+    TestProcessMethod method = new TestProcessMethod(reader);
+    FlowletProcessEntry<String> entry = FlowletProcessEntry.create(new ProcessSpecification<>(reader, method, null));
+    List<FlowletProcessEntry<?>> processQueue = Lists.newArrayList();
+    RecordingListener listener = new RecordingListener(reader, processQueue);
+    TxBatchProcessor processor = createProcessor(reader, 10);
+
+    reader.failCommit = true;
+    processor.process(ImmutableList.<FlowletProcessEntry<?>>of(entry), processQueue, listener);
+
+    // Nothing is acknowledged, all inputs are returned to the queue
+    Assert.assertEquals(ImmutableList.of("a", "b"), method.processed);
+    Assert.assertTrue(listener.processed.isEmpty());
+    Assert.assertTrue(listener.failed.isEmpty());
+    Assert.assertEquals(0, reader.committed);
+    Assert.assertEquals(ImmutableList.<FlowletProcessEntry<?>>of(entry), processQueue);
+
+    processQueue.clear();
+    reader.failCommit = false;
+    processor.process(ImmutableList.<FlowletProcessEntry<?>>of(entry), processQueue, listener);
+    Assert.assertEquals(ImmutableList.of("a", "b"), listener.processed);
+    Assert.assertEquals(2, reader.committed);
+  }
+
+  private TxBatchProcessor createProcessor(TestQueueReader reader, int maxCalls) {
+    return new TxBatchProcessor(new TestDataFabricFacade(reader), new NoopMetricsContext(), 30,
+                                maxCalls, Integer.MAX_VALUE, TimeUnit.SECONDS.toNanos(10));
+  }
+
+  /**
+   * A {@link QueueReader} over a fixed list of events, which like a queue consumer only moves past the events
+   * dequeued by a transaction when the transaction commits.
+   */
+  private static final class TestQueueReader implements QueueReader<String>, TransactionAware {
+
+    private final List<String> events;
+    private int committed;
+    private int position;
+    private boolean failCommit;
+    private Transaction transaction;
+
+    TestQueueReader(String... events) {
+      this.events = Arrays.asList(events);
+    }
+
+    @Override
+    public InputDatum<String> dequeue(long timeout, TimeUnit timeoutUnit) {
+      return new TestInputDatum(position < events.size() ? events.get(position++) : null);
+    }
+
+    @Override
+    public void startTx(Transaction tx) {
+      transaction = tx;
+      position = committed;
+    }
+
+    @Override
+    public void updateTx(Transaction tx) {
+      transaction = tx;
+    }
+
+    @Override
+    public Collection<byte[]> getTxChanges() {
+      return Collections.emptyList();
+    }
+
+    @Override
+    public boolean commitTx() {
+      return !failCommit;
+    }
+
+    @Override
+    public void postTxCommit() {
+      committed = position;
+      transaction = null;
+    }
+
+    @Override
+    public boolean rollbackTx() {
+      position = committed;
+      transaction = null;
+      return true;
+    }
+
+    @Override
+    public String getTransactionAwareName() {
+      return "test-queue";
+    }
+  }
+
+  /**
+   * An {@link InputDatum} of at most one event.
+   */
+  private static final class TestInputDatum implements InputDatum<String> {
+
+    private final String event;
+
+    TestInputDatum(@Nullable String event) {
+      this.event = event;
+    }
+
+    @Override
+    public boolean needProcess() {
+      return event != null;
+    }
+
+    @Override
+    public void incrementRetry() {
+      // no-op
+    }
+
+    @Override
+    public int getRetry() {
+      return 0;
+    }
+
+    @Override
+    public InputContext getInputContext() {
+      return new InputContext() {
+        @Override
+        public String getOrigin() {
+          return "test";
+        }
+
+        @Override
+        public int getRetryCount() {
+          return 0;
+        }
+      };
+    }
+
+    @Override
+    public QueueName getQueueName() {
+      return null;
+    }
+
+    @Override
+    public void reclaim() {
+      // no-op
+    }
+
+    @Override
+    public int size() {
+      return event == null ? 0 : 1;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+      return event == null ? Iterators.<String>emptyIterator() : Iterators.singletonIterator(event);
+    }
+  }
+
+  /**
+   * A {@link ProcessMethod} that records the processed events and the transaction they are processed in, and fails
+   * the first time it processes one of the given events.
+   */
+  private static final class TestProcessMethod implements ProcessMethod<String> {
+
+    private final TestQueueReader reader;
+    private final Set<String> failOnce;
+    private final List<String> processed = Lists.newArrayList();
+    private final List<Long> writePointers = Lists.newArrayList();
+
+    TestProcessMethod(TestQueueReader reader, String... failOnce) {
+      this.reader = reader;
+      this.failOnce = Sets.newHashSet(failOnce);
+    }
+
+    @Override
+    public boolean needsInput() {
+      return true;
+    }
+
+    @Override
+    public int getMaxRetries() {
+      return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public ProcessResult<String> invoke(InputDatum<String> input) {
+      final String event = input.iterator().next();
+      processed.add(event);
+      writePointers.add(reader.transaction.getWritePointer());
+      final boolean success = !failOnce.remove(event);
+      return new ProcessResult<String>() {
+        @Override
+        public String getEvent() {
+          return event;
+        }
+
+        @Override
+        public boolean isSuccess() {
+          return success;
+        }
+
+        @Override
+        public Throwable getCause() {
+          return success ? null : new Exception("Failed to process " + event);
+        }
+      };
+    }
+  }
+
+  /**
+   * A {@link TxBatchProcessor.Listener} that records the processed and failed events. Like the flowlet driver, it
+   * aborts the transaction of a failed input and puts the entry back to the process queue.
+   */
+  private static final class RecordingListener implements TxBatchProcessor.Listener {
+
+    private final TestQueueReader reader;
+    private final Collection<FlowletProcessEntry<?>> processQueue;
+    private final List<String> processed = Lists.newArrayList();
+    private final List<Integer> committedOnProcessed = Lists.newArrayList();
+    private final List<String> failed = Lists.newArrayList();
+
+    RecordingListener(TestQueueReader reader, Collection<FlowletProcessEntry<?>> processQueue) {
+      this.reader = reader;
+      this.processQueue = processQueue;
+    }
+
+    @Override
+    public <T> void processed(FlowletProcessEntry<T> entry, InputDatum<T> input,
+                              ProcessMethod.ProcessResult<?> result) {
+      processed.add((String) result.getEvent());
+      committedOnProcessed.add(reader.committed);
+    }
+
+    @Override
+    public <T> void failed(FlowletProcessEntry<T> entry, InputDatum<T> input, ProcessMethod.ProcessResult<?> result,
+                           TransactionContext txContext) {
+      failed.add((String) result.getEvent());
+      try {
+        txContext.abort();
+      } catch (TransactionFailureException e) {
+        throw Throwables.propagate(e);
+      }
+      processQueue.add(entry);
+    }
+  }
+
+  /**
+   * A {@link DataFabricFacade} that only creates transaction contexts, with the given queue reader.
+   */
+  private static final class TestDataFabricFacade implements DataFabricFacade {
+
+    private final TestQueueReader reader;
+    private final MinimalTxSystemClient txClient = new MinimalTxSystemClient();
+
+    TestDataFabricFacade(TestQueueReader reader) {
+      this.reader = reader;
+    }
+
+    @Override
+    public DatasetContext getDatasetContext() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public TransactionContext createTransactionContext() {
+      return new TransactionContext(txClient, reader);
+    }
+
+    @Override
+    public TransactionExecutor createTransactionExecutor() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public StreamConsumer createStreamConsumer(StreamId streamName, ConsumerConfig consumerConfig) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public QueueProducer createProducer(QueueName queueName) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public QueueProducer createProducer(QueueName queueName, QueueMetrics queueMetrics) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public QueueConsumer createConsumer(QueueName queueName, ConsumerConfig consumerConfig, int numGroups) {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
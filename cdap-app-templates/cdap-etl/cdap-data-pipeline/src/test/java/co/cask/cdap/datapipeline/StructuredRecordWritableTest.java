@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -16,10 +16,18 @@
 
 package co.cask.cdap.datapipeline;
 
+import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.data.format.StructuredRecord;
 import co.cask.cdap.api.data.schema.Schema;
 import co.cask.cdap.etl.batch.StructuredRecordWritable;
+import co.cask.cdap.format.StructuredRecordStringConverter;
+import com.google.common.collect.ImmutableList;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+import org.junit.After;
 import org.junit.Assert;
+import org.junit.Ignore;
 import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
@@ -29,11 +37,36 @@ import java.io.DataInputStream;
 import java.io.DataOutput;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  */
 public class StructuredRecordWritableTest {
 
+  private static final Schema KEY_SCHEMA = Schema.recordOf(
+    "key",
+    Schema.Field.of("user", Schema.of(Schema.Type.STRING)),
+    Schema.Field.of("day", Schema.of(Schema.Type.INT)));
+
+  private static final Schema VALUE_SCHEMA = Schema.recordOf(
+    "purchase",
+    Schema.Field.of("user", Schema.of(Schema.Type.STRING)),
+    Schema.Field.of("day", Schema.of(Schema.Type.INT)),
+    Schema.Field.of("item", Schema.of(Schema.Type.STRING)),
+    Schema.Field.of("price", Schema.of(Schema.Type.DOUBLE)),
+    Schema.Field.of("quantity", Schema.of(Schema.Type.LONG)),
+    Schema.Field.of("coupon", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+    Schema.Field.of("tags", Schema.arrayOf(Schema.of(Schema.Type.STRING))));
+
+  @After
+  public void resetSchemas() {
+    StructuredRecordWritable.loadSchemas(new Configuration());
+  }
+
   @Test
   public void testNonAsciiString() throws IOException {
     Schema schema = Schema.recordOf("rec", Schema.Field.of("x", Schema.of(Schema.Type.STRING)));
@@ -52,4 +85,200 @@ public class StructuredRecordWritableTest {
 
     Assert.assertEquals(writableIn.get(), record);
   }
+
+  @Test
+  public void testRegisteredSchema() throws IOException {
+    StructuredRecord record = createValue(1);
+    int unregisteredSize = serialize(record).length;
+
+    Configuration hConf = new Configuration();
+    StructuredRecordWritable.setSchemas(hConf, ImmutableList.of(KEY_SCHEMA, VALUE_SCHEMA));
+    StructuredRecordWritable.loadSchemas(hConf);
+
+    // Record of registered schema is written without the schema
+    byte[] bytes = serialize(record);
+    int schemaSize = Bytes.toBytes(VALUE_SCHEMA.toString()).length;
+    Assert.assertEquals(unregisteredSize - WritableUtils.getVIntSize(schemaSize) - schemaSize + 1, bytes.length);
+    Assert.assertEquals(record, deserialize(bytes));
+  }
+
+  @Test
+  public void testRecordNames() throws IOException {
+    // The schemas only differ in the record names, which the schema hash ignores
+    Schema schema1 = Schema.recordOf("rec1", Schema.Field.of("x", Schema.of(Schema.Type.INT)));
+    Schema schema2 = Schema.recordOf("rec2", Schema.Field.of("x", Schema.of(Schema.Type.INT)));
+    Assert.assertEquals(schema1.getSchemaHash(), schema2.getSchemaHash());
+
+    StructuredRecord record1 = StructuredRecord.builder(schema1).set("x", 1).build();
+    StructuredRecord record2 = StructuredRecord.builder(schema2).set("x", 1).build();
+    for (boolean registered : new boolean[] { false, true }) {
+      Configuration hConf = new Configuration();
+      if (registered) {
+        StructuredRecordWritable.setSchemas(hConf, ImmutableList.of(schema1, schema2));
+      }
+      StructuredRecordWritable.loadSchemas(hConf);
+
+      // Each record is read back with the record name of its own schema
+      Assert.assertEquals("rec1", deserialize(serialize(record1)).getSchema().getRecordName());
+      Assert.assertEquals("rec2", deserialize(serialize(record2)).getSchema().getRecordName());
+      Assert.assertEquals("rec1", deserialize(serialize(record1)).getSchema().getRecordName());
+    }
+  }
+
+  @Test
+  public void testRawComparator() throws IOException {
+    WritableComparator comparator = WritableComparator.get(StructuredRecordWritable.class);
+    Assert.assertTrue(comparator instanceof StructuredRecordWritable.Comparator);
+
+    List<StructuredRecord> records = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      records.add(createKey(i % 3));
+      records.add(createValue(i % 3));
+    }
+
+    // Registering only one schema makes sure the inline schema doesn't affect the comparison
+    Configuration hConf = new Configuration();
+    StructuredRecordWritable.setSchemas(hConf, ImmutableList.of(KEY_SCHEMA));
+    for (StructuredRecord record1 : records) {
+      for (StructuredRecord record2 : records) {
+        StructuredRecordWritable.loadSchemas(hConf);
+        byte[] bytes1 = serialize(record1);
+        StructuredRecordWritable.loadSchemas(new Configuration());
+        byte[] bytes2 = serialize(record2);
+
+        int cmp = comparator.compare(bytes1, 0, bytes1.length, bytes2, 0, bytes2.length);
+        Assert.assertEquals(record1.equals(record2), cmp == 0);
+        Assert.assertEquals(Integer.signum(cmp), Integer.signum(
+          new StructuredRecordWritable(record1).compareTo(new StructuredRecordWritable(record2))));
+      }
+    }
+  }
+
+  @Test
+  public void testMapOrder() throws IOException {
+    Schema schema = Schema.recordOf(
+      "counts",
+      Schema.Field.of("counts", Schema.mapOf(Schema.of(Schema.Type.STRING), Schema.of(Schema.Type.INT))));
+    Map<String, Integer> counts = new LinkedHashMap<>();
+    Map<String, Integer> reversedCounts = new LinkedHashMap<>();
+    for (int i = 0; i < 20; i++) {
+      counts.put("key" + i, i);
+      reversedCounts.put("key" + (19 - i), 19 - i);
+    }
+    StructuredRecord record1 = StructuredRecord.builder(schema).set("counts", counts).build();
+    StructuredRecord record2 = StructuredRecord.builder(schema).set("counts", reversedCounts).build();
+
+    // Records with maps of different iteration order are serialized to the same bytes, hence grouped together
+    byte[] bytes1 = serialize(record1);
+    byte[] bytes2 = serialize(record2);
+    Assert.assertArrayEquals(bytes1, bytes2);
+    Assert.assertEquals(0, WritableComparator.get(StructuredRecordWritable.class)
+      .compare(bytes1, 0, bytes1.length, bytes2, 0, bytes2.length));
+    Assert.assertEquals(0, new StructuredRecordWritable(record1).compareTo(new StructuredRecordWritable(record2)));
+    Assert.assertEquals(record1, deserialize(bytes2));
+  }
+
+  /**
+   * Compares the serialized size and the time to serialize and deserialize the key and value of aggregator and
+   * joiner shuffles, between the json encoding and the binary encoding.
+   */
+  @Ignore
+  @Test
+  public void testSpeed() throws IOException {
+    int count = 100000;
+    List<StructuredRecord> keys = new ArrayList<>();
+    List<StructuredRecord> values = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      keys.add(createKey(i));
+      values.add(createValue(i));
+    }
+
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(os);
+    long startTime = System.nanoTime();
+    for (int i = 0; i < count; i++) {
+      writeJson(output, keys.get(i));
+      writeJson(output, values.get(i));
+    }
+    DataInputStream input = new DataInputStream(new ByteArrayInputStream(os.toByteArray()));
+    for (int i = 0; i < count; i++) {
+      readJson(input);
+      readJson(input);
+    }
+    long endTime = System.nanoTime();
+    System.out.println("Json: " + os.size() + " bytes, time spent: " +
+                         TimeUnit.MILLISECONDS.convert(endTime - startTime, TimeUnit.NANOSECONDS));
+
+    for (boolean registered : new boolean[] { false, true }) {
+      Configuration hConf = new Configuration();
+      if (registered) {
+        StructuredRecordWritable.setSchemas(hConf, ImmutableList.of(KEY_SCHEMA, VALUE_SCHEMA));
+      }
+      StructuredRecordWritable.loadSchemas(hConf);
+
+      os.reset();
+      startTime = System.nanoTime();
+      for (int i = 0; i < count; i++) {
+        new StructuredRecordWritable(keys.get(i)).write(output);
+        new StructuredRecordWritable(values.get(i)).write(output);
+      }
+      input = new DataInputStream(new ByteArrayInputStream(os.toByteArray()));
+      StructuredRecordWritable writable = new StructuredRecordWritable();
+      for (int i = 0; i < count; i++) {
+        writable.readFields(input);
+        writable.readFields(input);
+      }
+      endTime = System.nanoTime();
+      System.out.println("Binary (registered=" + registered + "): " + os.size() + " bytes, time spent: " +
+                           TimeUnit.MILLISECONDS.convert(endTime - startTime, TimeUnit.NANOSECONDS));
+    }
+  }
+
+  private StructuredRecord createKey(int i) {
+    return StructuredRecord.builder(KEY_SCHEMA).set("user", "user" + i).set("day", i % 7).build();
+  }
+
+  private StructuredRecord createValue(int i) {
+    return StructuredRecord.builder(VALUE_SCHEMA)
+      .set("user", "user" + i)
+      .set("day", i % 7)
+      .set("item", "item" + (i % 100))
+      .set("price", i * 0.25d)
+      .set("quantity", (long) i)
+      .set("tags", ImmutableList.of("tag" + i, "tag" + (i + 1)))
+      .build();
+  }
+
+  private byte[] serialize(StructuredRecord record) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    new StructuredRecordWritable(record).write(new DataOutputStream(os));
+    return os.toByteArray();
+  }
+
+  private StructuredRecord deserialize(byte[] bytes) throws IOException {
+    StructuredRecordWritable writable = new StructuredRecordWritable();
+    writable.readFields(new DataInputStream(new ByteArrayInputStream(bytes)));
+    return writable.get();
+  }
+
+  /**
+   * Writes the record in the format used before the binary encoding.
+   */
+  private void writeJson(DataOutput out, StructuredRecord record) throws IOException {
+    byte[] schemaBytes = Bytes.toBytes(record.getSchema().toString());
+    out.writeInt(schemaBytes.length);
+    out.write(schemaBytes);
+    byte[] recordBytes = Bytes.toBytes(StructuredRecordStringConverter.toJsonString(record));
+    out.writeInt(recordBytes.length);
+    out.write(recordBytes);
+  }
+
+  private StructuredRecord readJson(DataInput in) throws IOException {
+    byte[] schemaBytes = new byte[in.readInt()];
+    in.readFully(schemaBytes);
+    Schema schema = Schema.parseJson(Bytes.toString(schemaBytes));
+    byte[] recordBytes = new byte[in.readInt()];
+    in.readFully(recordBytes);
+    return StructuredRecordStringConverter.fromJsonString(Bytes.toString(recordBytes), schema);
+  }
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -25,6 +25,7 @@ import co.cask.cdap.etl.common.Constants;
 import co.cask.cdap.etl.proto.v2.DataStreamsConfig;
 import co.cask.cdap.etl.spec.StageSpec;
 import co.cask.cdap.internal.io.SchemaTypeAdapter;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import org.apache.spark.SparkConf;
@@ -47,6 +48,10 @@ public class DataStreamsSparkLauncher extends AbstractSpark {
   static final String EXTRA_OPTS = "hydrator.extra.opts";
   static final String CHECKPOINT_DIR = "hydrator.checkpoint.dir";
   static final String CHECKPOINTS_DISABLED = "hydrator.checkpoints.disabled";
+  // runtime arguments that control the rate at which sources receive data
+  static final String BACKPRESSURE_ENABLED = "streaming.backpressure.enabled";
+  static final String MAX_RATE = "streaming.max.rate";
+  private static final String SPARK_BACKPRESSURE_ENABLED = "spark.streaming.backpressure.enabled";
   public static final String NAME = "DataStreamsSparkStreaming";
   private static final Gson GSON = new GsonBuilder()
     .registerTypeAdapter(Schema.class, new SchemaTypeAdapter())
@@ -108,6 +113,7 @@ public class DataStreamsSparkLauncher extends AbstractSpark {
     if (isUnitTest) {
       sparkConf.setMaster(String.format("local[%d]", numSources + 1));
     }
+    configureRateControl(sparkConf, context.getRuntimeArguments());
     context.setSparkConf(sparkConf);
 
     boolean checkpointsDisabled = Boolean.valueOf(programProperties.get(CHECKPOINTS_DISABLED));
@@ -146,6 +152,41 @@ public class DataStreamsSparkLauncher extends AbstractSpark {
     }
   }
 
+  /**
+   * Configures the rate at which Spark receives data from the sources. With backpressure, Spark estimates the rate
+   * that the pipeline can process from the processing time and scheduling delay of the completed batches, and limits
+   * how many records the sources receive per batch accordingly, so that bursts don't queue up batches faster than
+   * they get processed. Backpressure is enabled unless it is turned off through the runtime arguments, or the
+   * Spark property is already set, for example through a system property.
+   * The maximum rate caps the records per second of each receiver and each Kafka partition, which also bounds
+   * the size of the first batches before the rate is estimated.
+   */
+  @VisibleForTesting
+  static void configureRateControl(SparkConf sparkConf, Map<String, String> runtimeArgs) {
+    String backpressureEnabled = runtimeArgs.get(BACKPRESSURE_ENABLED);
+    if (backpressureEnabled != null) {
+      sparkConf.set(SPARK_BACKPRESSURE_ENABLED, String.valueOf(Boolean.parseBoolean(backpressureEnabled)));
+    } else if (!sparkConf.contains(SPARK_BACKPRESSURE_ENABLED)) {
+      sparkConf.set(SPARK_BACKPRESSURE_ENABLED, "true");
+    }
+
+    String maxRate = runtimeArgs.get(MAX_RATE);
+    if (maxRate != null) {
+      long rate;
+      try {
+        rate = Long.parseLong(maxRate);
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException(
+          String.format("Invalid value '%s' for runtime argument '%s'. It must be a number of records per second.",
+                        maxRate, MAX_RATE), e);
+      }
+      if (rate > 0) {
+        sparkConf.set("spark.streaming.receiver.maxRate", String.valueOf(rate));
+        sparkConf.set("spark.streaming.kafka.maxRatePerPartition", String.valueOf(rate));
+      }
+    }
+  }
+
   private boolean ensureDirExists(Location location) throws IOException {
     return location.isDirectory() || location.mkdirs() || location.isDirectory();
   }
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -99,6 +99,8 @@ public class SparkStreamingPipelineDriver implements JavaSparkMain {
     }
 
     JavaStreamingContext jssc = run(pipelineSpec, pipelinePhase, sec, checkpointDir);
+    // listeners are not part of the checkpoint, hence it is added regardless of whether the context was recovered
+    jssc.addStreamingListener(new StreamingBatchListener(sec.getMetrics(), pipelineSpec.getBatchIntervalMillis()));
     jssc.start();
     boolean stopped = false;
     try {
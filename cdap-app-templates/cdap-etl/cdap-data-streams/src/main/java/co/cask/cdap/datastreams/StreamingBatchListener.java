@@ -0,0 +1,153 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.datastreams;
+
+import co.cask.cdap.api.metrics.Metrics;
+import org.apache.spark.streaming.scheduler.BatchInfo;
+import org.apache.spark.streaming.scheduler.StreamingListener;
+import org.apache.spark.streaming.scheduler.StreamingListenerBatchCompleted;
+import org.apache.spark.streaming.scheduler.StreamingListenerBatchStarted;
+import org.apache.spark.streaming.scheduler.StreamingListenerBatchSubmitted;
+import org.apache.spark.streaming.scheduler.StreamingListenerOutputOperationCompleted;
+import org.apache.spark.streaming.scheduler.StreamingListenerOutputOperationStarted;
+import org.apache.spark.streaming.scheduler.StreamingListenerReceiverError;
+import org.apache.spark.streaming.scheduler.StreamingListenerReceiverStarted;
+import org.apache.spark.streaming.scheduler.StreamingListenerReceiverStopped;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import scala.Option;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link StreamingListener} that tracks how long each micro-batch takes compared to the batch interval and
+ * emits it as metrics of the pipeline.
+ * <p/>
+ * The scheduling delay of a batch is the time it waited for previous batches to complete, which is the lag of the
+ * pipeline behind its sources. It grows as long as batches take longer to process than the batch interval, in which
+ * case a warning is logged, as the pipeline will not catch up unless the source ingestion rate is limited.
+ */
+final class StreamingBatchListener implements StreamingListener {
+
+  private static final Logger LOG = LoggerFactory.getLogger(StreamingBatchListener.class);
+
+  static final String BATCH_PROCESSING_MILLIS = "batch.processing.time.millis";
+  static final String BATCH_SCHEDULING_DELAY_MILLIS = "batch.scheduling.delay.millis";
+  static final String BATCH_TOTAL_DELAY_MILLIS = "batch.total.delay.millis";
+  static final String BATCH_RECORDS = "batch.records";
+  static final String BATCHES_PENDING = "batches.pending";
+
+  // number of consecutive batches that must exceed the batch interval before a warning is logged
+  static final int SLOW_BATCHES_THRESHOLD = 3;
+
+  private final Metrics metrics;
+  private final long batchIntervalMillis;
+  private final AtomicInteger pendingBatches = new AtomicInteger();
+  private int slowBatches;
+
+  StreamingBatchListener(Metrics metrics, long batchIntervalMillis) {
+    this.metrics = metrics;
+    this.batchIntervalMillis = batchIntervalMillis;
+  }
+
+  @Override
+  public void onBatchSubmitted(StreamingListenerBatchSubmitted batchSubmitted) {
+    metrics.gauge(BATCHES_PENDING, pendingBatches.incrementAndGet());
+  }
+
+  @Override
+  public void onBatchCompleted(StreamingListenerBatchCompleted batchCompleted) {
+    metrics.gauge(BATCHES_PENDING, Math.max(0, pendingBatches.decrementAndGet()));
+
+    BatchInfo batchInfo = batchCompleted.batchInfo();
+    batchCompleted(getMillis(batchInfo.schedulingDelay()), getMillis(batchInfo.processingDelay()),
+                   getMillis(batchInfo.totalDelay()), batchInfo.numRecords());
+  }
+
+  /**
+   * Records the times of a completed batch.
+   *
+   * @param schedulingDelay milliseconds the batch waited before it started processing
+   * @param processingTime milliseconds it took to process the batch
+   * @param totalDelay milliseconds from the batch time until the batch completed
+   * @param numRecords number of records received by the batch from all sources
+   */
+  void batchCompleted(long schedulingDelay, long processingTime, long totalDelay, long numRecords) {
+    metrics.gauge(BATCH_SCHEDULING_DELAY_MILLIS, schedulingDelay);
+    metrics.gauge(BATCH_PROCESSING_MILLIS, processingTime);
+    metrics.gauge(BATCH_TOTAL_DELAY_MILLIS, totalDelay);
+    metrics.count(BATCH_RECORDS, (int) Math.min(Integer.MAX_VALUE, numRecords));
+
+    if (processingTime <= batchIntervalMillis) {
+      if (slowBatches >= SLOW_BATCHES_THRESHOLD) {
+        LOG.info("Batch processing time {} ms is within the batch interval of {} ms again.",
+                 processingTime, batchIntervalMillis);
+      }
+      slowBatches = 0;
+      return;
+    }
+    if (++slowBatches == SLOW_BATCHES_THRESHOLD) {
+      LOG.warn("The last {} batches took longer to process than the batch interval of {} ms, the latest one took " +
+                 "{} ms for {} records and waited {} ms to be scheduled. The pipeline is falling behind its sources. " +
+                 "Consider enabling backpressure or limiting the rate of the sources through the runtime " +
+                 "arguments '{}' and '{}', or increasing the batch interval.",
+               slowBatches, batchIntervalMillis, processingTime, numRecords, schedulingDelay,
+               DataStreamsSparkLauncher.BACKPRESSURE_ENABLED, DataStreamsSparkLauncher.MAX_RATE);
+    }
+  }
+
+  /**
+   * Returns the number of slow batches completed in a row.
+   */
+  int getSlowBatches() {
+    return slowBatches;
+  }
+
+  private long getMillis(Option<Object> millis) {
+    return millis.isDefined() ? (Long) millis.get() : 0L;
+  }
+
+  @Override
+  public void onReceiverStarted(StreamingListenerReceiverStarted receiverStarted) {
+    // no-op
+  }
+
+  @Override
+  public void onReceiverError(StreamingListenerReceiverError receiverError) {
+    // no-op
+  }
+
+  @Override
+  public void onReceiverStopped(StreamingListenerReceiverStopped receiverStopped) {
+    // no-op
+  }
+
+  @Override
+  public void onBatchStarted(StreamingListenerBatchStarted batchStarted) {
+    // no-op
+  }
+
+  @Override
+  public void onOutputOperationStarted(StreamingListenerOutputOperationStarted outputOperationStarted) {
+    // no-op
+  }
+
+  @Override
+  public void onOutputOperationCompleted(StreamingListenerOutputOperationCompleted outputOperationCompleted) {
+    // no-op
+  }
+}
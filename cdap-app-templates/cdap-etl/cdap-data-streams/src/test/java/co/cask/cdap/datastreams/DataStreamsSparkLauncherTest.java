@@ -0,0 +1,66 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.datastreams;
+
+import com.google.common.collect.ImmutableMap;
+import org.apache.spark.SparkConf;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the rate control configuration of {@link DataStreamsSparkLauncher}.
+ */
+public class DataStreamsSparkLauncherTest {
+
+  private static final String BACKPRESSURE = "spark.streaming.backpressure.enabled";
+
+  @Test
+  public void testBackpressure() {
+    // enabled by default
+    SparkConf sparkConf = new SparkConf(false);
+    DataStreamsSparkLauncher.configureRateControl(sparkConf, ImmutableMap.<String, String>of());
+    Assert.assertEquals("true", sparkConf.get(BACKPRESSURE));
+
+    // a value set by the user in the Spark configuration is kept
+    sparkConf = new SparkConf(false).set(BACKPRESSURE, "false");
+    DataStreamsSparkLauncher.configureRateControl(sparkConf, ImmutableMap.<String, String>of());
+    Assert.assertEquals("false", sparkConf.get(BACKPRESSURE));
+
+    // the runtime argument takes precedence
+    sparkConf = new SparkConf(false).set(BACKPRESSURE, "true");
+    DataStreamsSparkLauncher.configureRateControl(
+      sparkConf, ImmutableMap.of(DataStreamsSparkLauncher.BACKPRESSURE_ENABLED, "false"));
+    Assert.assertEquals("false", sparkConf.get(BACKPRESSURE));
+  }
+
+  @Test
+  public void testMaxRate() {
+    SparkConf sparkConf = new SparkConf(false);
+    DataStreamsSparkLauncher.configureRateControl(sparkConf,
+                                                  ImmutableMap.of(DataStreamsSparkLauncher.MAX_RATE, "1000"));
+    Assert.assertEquals("1000", sparkConf.get("spark.streaming.receiver.maxRate"));
+    Assert.assertEquals("1000", sparkConf.get("spark.streaming.kafka.maxRatePerPartition"));
+
+    try {
+      DataStreamsSparkLauncher.configureRateControl(new SparkConf(false),
+                                                    ImmutableMap.of(DataStreamsSparkLauncher.MAX_RATE, "fast"));
+      Assert.fail("Expected an invalid max rate to fail");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.datastreams;
+
+import co.cask.cdap.api.metrics.Metrics;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tests for {@link StreamingBatchListener}.
+ */
+public class StreamingBatchListenerTest {
+
+  @Test
+  public void testBatchMetrics() {
+    TestMetrics metrics = new TestMetrics();
+    StreamingBatchListener listener = new StreamingBatchListener(metrics, 1000L);
+
+    listener.batchCompleted(5L, 800L, 805L, 100L);
+    Assert.assertEquals(5L, (long) metrics.values.get(StreamingBatchListener.BATCH_SCHEDULING_DELAY_MILLIS));
+    Assert.assertEquals(800L, (long) metrics.values.get(StreamingBatchListener.BATCH_PROCESSING_MILLIS));
+    Assert.assertEquals(805L, (long) metrics.values.get(StreamingBatchListener.BATCH_TOTAL_DELAY_MILLIS));
+    Assert.assertEquals(100L, (long) metrics.values.get(StreamingBatchListener.BATCH_RECORDS));
+
+    listener.batchCompleted(0L, 900L, 900L, 50L);
+    Assert.assertEquals(0L, (long) metrics.values.get(StreamingBatchListener.BATCH_SCHEDULING_DELAY_MILLIS));
+    Assert.assertEquals(150L, (long) metrics.values.get(StreamingBatchListener.BATCH_RECORDS));
+  }
+
+  @Test
+  public void testSlowBatches() {
+    StreamingBatchListener listener = new StreamingBatchListener(new TestMetrics(), 1000L);
+
+    // batches that take longer than the interval are counted until one completes within the interval
+    listener.batchCompleted(0L, 1500L, 1500L, 10L);
+    listener.batchCompleted(500L, 1500L, 2000L, 10L);
+    Assert.assertEquals(2, listener.getSlowBatches());
+    listener.batchCompleted(1000L, 1000L, 2000L, 10L);
+    Assert.assertEquals(0, listener.getSlowBatches());
+
+    for (int i = 0; i < StreamingBatchListener.SLOW_BATCHES_THRESHOLD + 2; i++) {
+      listener.batchCompleted(i * 500L, 1500L, 1500L + i * 500L, 10L);
+    }
+    Assert.assertEquals(StreamingBatchListener.SLOW_BATCHES_THRESHOLD + 2, listener.getSlowBatches());
+  }
+
+  /**
+   * {@link Metrics} that keeps the latest value of gauges and the sum of counts.
+   */
+  private static final class TestMetrics implements Metrics {
+    private final Map<String, Long> values = new HashMap<>();
+
+    @Override
+    public void count(String metricName, int delta) {
+      Long value = values.get(metricName);
+      values.put(metricName, value == null ? delta : value + delta);
+    }
+
+    @Override
+    public void gauge(String metricName, long value) {
+      values.put(metricName, value);
+    }
+  }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -23,6 +23,7 @@ import java.util.Iterator;
 /**
  * Groups all input objects into collections and performs an aggregation on the entire group.
  * Objects that have the same group key are placed into the same group for aggregation.
+ * Aggregators that can partially aggregate a group should also implement {@link Combiner}.
  *
  * @param <GROUP_KEY> Type of group key
  * @param <GROUP_VALUE> Type of values to group
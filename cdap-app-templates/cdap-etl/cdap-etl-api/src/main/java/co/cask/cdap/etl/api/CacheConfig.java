@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -22,10 +22,22 @@ package co.cask.cdap.etl.api;
 public final class CacheConfig {
   private final long expirySeconds;
   private final int maxSize;
+  private final long maxSizeBytes;
 
   public CacheConfig(long expirySeconds, int maxSize) {
+    this(expirySeconds, maxSize, 0);
+  }
+
+  /**
+   * @param expirySeconds expiry after write in seconds, 0 for no expiry
+   * @param maxSize maximum number of elements in the cache, 0 for no limit
+   * @param maxSizeBytes maximum estimated size of the cached keys and values in bytes, 0 for no limit. If set, it
+   *                     takes precedence over the maximum number of elements.
+   */
+  public CacheConfig(long expirySeconds, int maxSize, long maxSizeBytes) {
     this.expirySeconds = expirySeconds;
     this.maxSize = maxSize;
+    this.maxSizeBytes = maxSizeBytes;
   }
 
   public CacheConfig() {
@@ -45,4 +57,11 @@ public final class CacheConfig {
   public int getMaxSize() {
     return maxSize;
   }
+
+  /**
+   * @return maximum estimated size of the cached keys and values in bytes
+   */
+  public long getMaxSizeBytes() {
+    return maxSizeBytes;
+  }
 }
@@ -0,0 +1,49 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.etl.api;
+
+import co.cask.cdap.api.annotation.Beta;
+
+import java.util.Iterator;
+
+/**
+ * Optional interface for an {@link Aggregator} to partially aggregate the values of a group before they are
+ * shuffled. An aggregator that implements it has the values of each group combined on the map side, so that
+ * fewer values are sent to the {@link Aggregator#aggregate(Object, Iterator, Emitter)} method. For example,
+ * an aggregator that counts records can combine the values of a group into a single partial count.
+ * <p/>
+ * The combined values must be of the same type as the group values, and aggregating the combined values must
+ * produce the same output as aggregating the original values. The combine method may be called zero or more times
+ * for each group, on any subset of the values of the group, including values that were already combined.
+ * Combined values should not be emitted as errors.
+ *
+ * @param <GROUP_KEY> Type of group key
+ * @param <GROUP_VALUE> Type of values to group
+ */
+@Beta
+public interface Combiner<GROUP_KEY, GROUP_VALUE> {
+
+  /**
+   * Combine some of the objects in the same group into fewer objects.
+   *
+   * @param groupKey the key for the group
+   * @param groupValues an iterator over some of the objects that have the same group key
+   * @param emitter the emitter to emit the combined values for the group
+   * @throws Exception if there is some error combining
+   */
+  void combine(GROUP_KEY groupKey, Iterator<GROUP_VALUE> groupValues, Emitter<GROUP_VALUE> emitter) throws Exception;
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -16,11 +16,14 @@
 
 package co.cask.cdap.etl.api;
 
+import java.util.Collections;
+
 /**
  * Join configuration to hold information about join to be performed
  */
 public class JoinConfig {
   private Iterable<String> requiredInputs;
+  private Iterable<String> broadcastInputs;
 
   /**
    * Creates new instance of {@link JoinConfig}
@@ -30,7 +33,19 @@ public class JoinConfig {
    * meet join criteria.
    */
   public JoinConfig(Iterable<String> requiredInputs) {
+    this(requiredInputs, Collections.<String>emptySet());
+  }
+
+  /**
+   * Creates new instance of {@link JoinConfig}
+   * @param requiredInputs iterable of input stage names. This will be used to find out type of the join.
+   * @param broadcastInputs iterable of input stage names that are small enough to be loaded in memory. If the
+   * execution engine supports it, these inputs are joined in memory with the other inputs, without shuffling.
+   * An input is only broadcast if at least one required input is not broadcast.
+   */
+  public JoinConfig(Iterable<String> requiredInputs, Iterable<String> broadcastInputs) {
     this.requiredInputs = requiredInputs;
+    this.broadcastInputs = broadcastInputs;
   }
 
   /**
@@ -40,4 +55,12 @@ public class JoinConfig {
   public Iterable<String> getRequiredInputs() {
     return requiredInputs;
   }
+
+  /**
+   * Returns inputs declared to be small enough to be broadcast.
+   * @return iterable of broadcast inputs
+   */
+  public Iterable<String> getBroadcastInputs() {
+    return broadcastInputs == null ? Collections.<String>emptySet() : broadcastInputs;
+  }
 }
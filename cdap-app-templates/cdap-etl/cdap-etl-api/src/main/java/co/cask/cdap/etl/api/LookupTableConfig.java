@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -37,6 +37,7 @@ public class LookupTableConfig {
   private final Map<String, String> datasetProperties;
   private final CacheConfig cacheConfig;
   private final boolean cacheEnabled;
+  private final int preloadMaxSize;
 
   /**
    * @param type type of lookup table
@@ -46,10 +47,24 @@ public class LookupTableConfig {
    */
   public LookupTableConfig(TableType type, CacheConfig cacheConfig,
                            Map<String, String> datasetProperties, boolean cacheEnabled) {
+    this(type, cacheConfig, datasetProperties, cacheEnabled, 0);
+  }
+
+  /**
+   * @param type type of lookup table
+   * @param cacheConfig cache config
+   * @param datasetProperties runtime dataset properties
+   * @param cacheEnabled true if caching is desired
+   * @param preloadMaxSize if the table has at most this many entries, it is loaded into the cache entirely when it
+   *                       is first used, so that lookups never read the dataset. 0 to disable.
+   */
+  public LookupTableConfig(TableType type, CacheConfig cacheConfig,
+                           Map<String, String> datasetProperties, boolean cacheEnabled, int preloadMaxSize) {
     this.type = type;
     this.cacheConfig = cacheConfig;
     this.datasetProperties = datasetProperties;
     this.cacheEnabled = cacheEnabled;
+    this.preloadMaxSize = preloadMaxSize;
   }
 
   /**
@@ -74,4 +89,11 @@ public class LookupTableConfig {
   public CacheConfig getCacheConfig() {
     return cacheConfig;
   }
+
+  /**
+   * @return maximum number of entries of a table to load entirely into the cache, 0 if disabled
+   */
+  public int getPreloadMaxSize() {
+    return preloadMaxSize;
+  }
 }
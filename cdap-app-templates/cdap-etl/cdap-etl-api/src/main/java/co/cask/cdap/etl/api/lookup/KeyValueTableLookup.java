@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -16,6 +16,8 @@
 package co.cask.cdap.etl.api.lookup;
 
 import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.dataset.lib.CloseableIterator;
+import co.cask.cdap.api.dataset.lib.KeyValue;
 import co.cask.cdap.api.dataset.lib.KeyValueTable;
 import co.cask.cdap.etl.api.Lookup;
 import com.google.common.collect.ImmutableSet;
@@ -23,6 +25,7 @@ import com.google.common.collect.ImmutableSet;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import javax.annotation.Nullable;
 
 /**
  * {@link Lookup} implementation for {@link KeyValueTable}.
@@ -50,6 +53,27 @@ public class KeyValueTableLookup implements Lookup<String> {
     return fromBytes(table.readAll(toBytes(keys)));
   }
 
+  /**
+   * Reads all entries of the table, if it has at most the given number of entries.
+   *
+   * @param maxEntries maximum number of entries to read
+   * @return a map from key to value, or {@code null} if the table has more entries than the given maximum
+   */
+  @Nullable
+  public Map<String, String> scan(int maxEntries) {
+    Map<String, String> result = new HashMap<>();
+    try (CloseableIterator<KeyValue<byte[], byte[]>> iterator = table.scan(null, null)) {
+      while (iterator.hasNext()) {
+        if (result.size() >= maxEntries) {
+          return null;
+        }
+        KeyValue<byte[], byte[]> entry = iterator.next();
+        result.put(Bytes.toString(entry.getKey()), Bytes.toString(entry.getValue()));
+      }
+    }
+    return result;
+  }
+
   private Map<String, String> fromBytes(Map<byte[], byte[]> bytes) {
     Map<String, String> result = new HashMap<>();
     for (Map.Entry<byte[], byte[]> entry : bytes.entrySet()) {
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -22,6 +22,8 @@ import co.cask.cdap.etl.api.Transformation;
 import co.cask.cdap.etl.batch.mapreduce.PipeEmitter;
 import co.cask.cdap.etl.common.Destroyables;
 
+import java.io.Flushable;
+
 
 /**
  * Pipe transform detail which wraps stageName, transformation, emitters for output stages
@@ -40,6 +42,23 @@ public class PipeTransformDetail implements Destroyable {
     this.emitter = emitter;
   }
 
+  /**
+   * Processes a record emitted by the given stage. The record is only wrapped in a {@link KeyValue} along with the
+   * stage name if this stage needs the stage name, so that records flowing through a chain of stages are passed
+   * straight through without any allocation.
+   */
+  public void process(String inputStageName, Object value) {
+    try {
+      if (removeStageName) {
+        transformation.transform(value, emitter);
+      } else {
+        transformation.transform(new KeyValue<>(inputStageName, value), emitter);
+      }
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+
   public void process(KeyValue<String, Object> value) {
     try {
       if (removeStageName) {
@@ -56,6 +75,20 @@ public class PipeTransformDetail implements Destroyable {
     emitter.addTransformDetail(stageName, pipeTransformDetail);
   }
 
+  /**
+   * Emits any records buffered by the transformation of this stage. It must be called once all records were
+   * processed, before the output is closed.
+   */
+  public void flush() {
+    try {
+      if (transformation instanceof Flushable) {
+        ((Flushable) transformation).flush();
+      }
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+
   @Override
   public void destroy() {
     if (transformation instanceof Destroyable) {
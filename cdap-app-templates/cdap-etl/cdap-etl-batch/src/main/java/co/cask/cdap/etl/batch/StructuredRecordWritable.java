@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -19,20 +19,116 @@ package co.cask.cdap.etl.batch;
 import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.data.format.StructuredRecord;
 import co.cask.cdap.api.data.schema.Schema;
-import co.cask.cdap.format.StructuredRecordStringConverter;
+import co.cask.cdap.format.StructuredRecordBinaryConverter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 /**
  * Wrapper around a {@link StructuredRecord} so that it can be used as the output key and/or value of a mapper.
- * This is not very performant and must be improved soon (CDAP-5347).
+ * <p/>
+ * The record is serialized as the fingerprint of its schema, followed by the schema json if the schema is not
+ * registered for the job through {@link #setSchemas(Configuration, Iterable)}, followed by the record in the sortable
+ * binary form of {@link StructuredRecordBinaryConverter}. The fingerprint is the MD5 of the schema json, so unlike
+ * {@link co.cask.cdap.api.data.schema.SchemaHash} it covers the record names, which the records read back carry in
+ * their schema. Schemas read from the data are kept in a bounded cache by fingerprint, so each schema is usually only
+ * parsed once.
+ * <p/>
+ * Records are ordered by the serialized fingerprint and record bytes, which a registered {@link Comparator} compares
+ * without deserialization. Since map entries are written in the order of their keys, equal records have equal bytes.
  */
 public class StructuredRecordWritable implements WritableComparable<StructuredRecordWritable> {
+
+  static final String SCHEMAS_KEY = "cdap.etl.structured.record.writable.schemas";
+
+  private static final Gson GSON = new Gson();
+  private static final Type SCHEMAS_TYPE = new TypeToken<List<String>>() { }.getType();
+  private static final int HASH_LENGTH = 16;
+  private static final int MAX_CACHED_SCHEMAS = 1000;
+
+  // Fingerprints of the schemas of the records written, by schema instance
+  private static final Cache<Schema, ByteBuffer> FINGERPRINTS =
+    CacheBuilder.newBuilder().weakKeys().maximumSize(MAX_CACHED_SCHEMAS).build();
+  // Schemas read inline, which are not registered for the current job
+  private static final Cache<ByteBuffer, Schema> SCHEMAS =
+    CacheBuilder.newBuilder().maximumSize(MAX_CACHED_SCHEMAS).build();
+  // Schemas registered for the current job, which are written without the schema json
+  private static volatile Map<ByteBuffer, Schema> registeredSchemas = ImmutableMap.of();
+
+  static {
+    WritableComparator.define(StructuredRecordWritable.class, new Comparator());
+  }
+
   private StructuredRecord record;
+  // Sortable bytes of the record, created when first needed
+  private byte[] recordBytes;
+
+  /**
+   * Registers the given schemas for the job with the given configuration. Records of these schemas are written
+   * without the schema json by the tasks that called {@link #loadSchemas(Configuration)}.
+   */
+  public static void setSchemas(Configuration hConf, Iterable<Schema> schemas) {
+    Set<String> schemaStrings = Sets.newLinkedHashSet();
+    for (Schema schema : schemas) {
+      schemaStrings.add(schema.toString());
+    }
+    hConf.set(SCHEMAS_KEY, GSON.toJson(schemaStrings));
+  }
+
+  /**
+   * Loads the schemas registered for the job with the given configuration. It must be called by every task of the
+   * job that writes or reads instances of this class before doing so.
+   */
+  public static void loadSchemas(Configuration hConf) {
+    String schemasStr = hConf.get(SCHEMAS_KEY);
+    if (schemasStr == null) {
+      registeredSchemas = ImmutableMap.of();
+      return;
+    }
+    Map<ByteBuffer, Schema> registered = new HashMap<>();
+    List<String> schemaStrings = GSON.fromJson(schemasStr, SCHEMAS_TYPE);
+    for (String schemaString : schemaStrings) {
+      try {
+        Schema schema = Schema.parseJson(schemaString);
+        registered.put(getFingerprint(schema), schema);
+      } catch (IOException e) {
+        // Should not happen as the schemas were generated from Schema objects
+        throw new IllegalArgumentException("Invalid schema registered in " + SCHEMAS_KEY + ": " + schemaString, e);
+      }
+    }
+    registeredSchemas = ImmutableMap.copyOf(registered);
+  }
+
+  /**
+   * Returns the fingerprint of the given schema, which covers the record names.
+   */
+  private static ByteBuffer getFingerprint(Schema schema) {
+    ByteBuffer fingerprint = FINGERPRINTS.getIfPresent(schema);
+    if (fingerprint == null) {
+      fingerprint = ByteBuffer.wrap(Hashing.md5().hashBytes(Bytes.toBytes(schema.toString())).asBytes());
+      FINGERPRINTS.put(schema, fingerprint);
+    }
+    return fingerprint;
+  }
 
   // required by Hadoop
   @SuppressWarnings("unused")
@@ -45,42 +141,85 @@ public class StructuredRecordWritable implements WritableComparable<StructuredRe
 
   public void set(StructuredRecord record) {
     this.record = record;
+    this.recordBytes = null;
   }
 
   public StructuredRecord get() {
     return record;
   }
 
-  @SuppressWarnings("ConstantConditions")
   @Override
   public void write(DataOutput out) throws IOException {
-    byte[] schemaBytes = Bytes.toBytes(record.getSchema().toString());
-    out.writeInt(schemaBytes.length);
-    out.write(schemaBytes);
+    Schema schema = record.getSchema();
+    ByteBuffer fingerprint = getFingerprint(schema);
+    out.write(fingerprint.array());
 
-    byte[] recordBytes = Bytes.toBytes(StructuredRecordStringConverter.toJsonString(record));
-    out.writeInt(recordBytes.length);
+    if (registeredSchemas.containsKey(fingerprint)) {
+      WritableUtils.writeVInt(out, 0);
+    } else {
+      byte[] schemaBytes = Bytes.toBytes(schema.toString());
+      WritableUtils.writeVInt(out, schemaBytes.length);
+      out.write(schemaBytes);
+    }
+
+    byte[] recordBytes = getRecordBytes();
+    WritableUtils.writeVInt(out, recordBytes.length);
     out.write(recordBytes);
   }
 
   @Override
   public void readFields(DataInput in) throws IOException {
-    int schemaLen = in.readInt();
-    byte[] schemaBytes = new byte[schemaLen];
-    in.readFully(schemaBytes, 0, schemaLen);
-    String schemaStr = Bytes.toString(schemaBytes);
-    Schema schema = Schema.parseJson(schemaStr);
+    byte[] hashBytes = new byte[HASH_LENGTH];
+    in.readFully(hashBytes);
+    ByteBuffer fingerprint = ByteBuffer.wrap(hashBytes);
+
+    int schemaLen = WritableUtils.readVInt(in);
+    Schema schema = registeredSchemas.get(fingerprint);
+    if (schema == null) {
+      schema = SCHEMAS.getIfPresent(fingerprint);
+    }
+    if (schema == null) {
+      if (schemaLen == 0) {
+        throw new IOException("Schema with fingerprint " + Bytes.toHexString(hashBytes)
+                                + " is not registered in " + SCHEMAS_KEY);
+      }
+      byte[] schemaBytes = new byte[schemaLen];
+      in.readFully(schemaBytes, 0, schemaLen);
+      schema = Schema.parseJson(Bytes.toString(schemaBytes));
+      SCHEMAS.put(fingerprint, schema);
+    } else if (schemaLen > 0) {
+      in.skipBytes(schemaLen);
+    }
 
-    int recordLen = in.readInt();
+    int recordLen = WritableUtils.readVInt(in);
     byte[] recordBytes = new byte[recordLen];
     in.readFully(recordBytes, 0, recordLen);
-    String recordStr = Bytes.toString(recordBytes);
-    this.record = StructuredRecordStringConverter.fromJsonString(recordStr, schema);
+    this.record = StructuredRecordBinaryConverter.fromBytes(recordBytes, schema);
+    this.recordBytes = recordBytes;
   }
 
   @Override
   public int compareTo(StructuredRecordWritable o) {
-    return Integer.compare(hashCode(), o.hashCode());
+    try {
+      int cmp = Bytes.compareTo(getFingerprint(record.getSchema()).array(),
+                                getFingerprint(o.record.getSchema()).array());
+      if (cmp != 0) {
+        return cmp;
+      }
+      return Bytes.compareTo(getRecordBytes(), o.getRecordBytes());
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Failed to encode record for comparison", e);
+    }
+  }
+
+  /**
+   * Returns the sortable bytes of the record, encoding the record only once.
+   */
+  private byte[] getRecordBytes() throws IOException {
+    if (recordBytes == null) {
+      recordBytes = StructuredRecordBinaryConverter.toSortableBytes(record);
+    }
+    return recordBytes;
   }
 
   @Override
@@ -101,4 +240,40 @@ public class StructuredRecordWritable implements WritableComparable<StructuredRe
   public int hashCode() {
     return record != null ? record.hashCode() : 0;
   }
+
+  /**
+   * A {@link WritableComparator} that compares serialized {@link StructuredRecordWritable} by the schema
+   * fingerprint and record bytes, skipping the schema json.
+   */
+  public static final class Comparator extends WritableComparator {
+
+    public Comparator() {
+      super(StructuredRecordWritable.class);
+    }
+
+    @Override
+    public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+      int cmp = compareBytes(b1, s1, HASH_LENGTH, b2, s2, HASH_LENGTH);
+      if (cmp != 0) {
+        return cmp;
+      }
+      try {
+        int recordStart1 = getRecordStart(b1, s1);
+        int recordStart2 = getRecordStart(b2, s2);
+        return compareBytes(b1, recordStart1, s1 + l1 - recordStart1, b2, recordStart2, s2 + l2 - recordStart2);
+      } catch (IOException e) {
+        throw new IllegalArgumentException(e);
+      }
+    }
+
+    /**
+     * Returns the offset of the record bytes, after the record length, in a serialized instance.
+     */
+    private int getRecordStart(byte[] bytes, int start) throws IOException {
+      int offset = start + HASH_LENGTH;
+      int schemaLen = readVInt(bytes, offset);
+      offset += WritableUtils.decodeVIntSize(bytes[offset]) + schemaLen;
+      return offset + WritableUtils.decodeVIntSize(bytes[offset]);
+    }
+  }
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015-2016 Cask Data, Inc.
+ * Copyright © 2015-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -37,6 +37,7 @@ import co.cask.cdap.etl.api.batch.BatchSourceContext;
 import co.cask.cdap.etl.batch.BatchPhaseSpec;
 import co.cask.cdap.etl.batch.LoggedBatchConfigurable;
 import co.cask.cdap.etl.batch.PipelinePluginInstantiator;
+import co.cask.cdap.etl.batch.StructuredRecordWritable;
 import co.cask.cdap.etl.batch.conversion.WritableConversion;
 import co.cask.cdap.etl.batch.conversion.WritableConversions;
 import co.cask.cdap.etl.common.CompositeFinisher;
@@ -70,6 +71,7 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.lang.reflect.Type;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
@@ -291,6 +293,20 @@ public class ETLMapReduce extends AbstractMapReduce {
       job.setNumReduceTasks(0);
     }
 
+    // register the schemas known at configure time, so that shuffled records of them don't carry the schema
+    Set<Schema> schemas = new HashSet<>();
+    for (StageInfo stageInfo : phase) {
+      for (Schema inputSchema : stageInfo.getInputSchemas().values()) {
+        if (inputSchema != null) {
+          schemas.add(inputSchema);
+        }
+      }
+      if (stageInfo.getOutputSchema() != null) {
+        schemas.add(stageInfo.getOutputSchema());
+      }
+    }
+    StructuredRecordWritable.setSchemas(hConf, schemas);
+
     hConf.set(RUNTIME_ARGS_KEY, GSON.toJson(runtimeArgs));
   }
 
@@ -361,6 +377,16 @@ public class ETLMapReduce extends AbstractMapReduce {
       }
     }
 
+    @Override
+    protected void cleanup(Mapper.Context context) throws IOException, InterruptedException {
+      // records buffered by the stages have to be written before the outputs get closed, which is before destroy
+      try {
+        transformRunner.flush();
+      } catch (Exception e) {
+        Throwables.propagate(e);
+      }
+    }
+
     @Override
     public void destroy() {
       transformRunner.destroy();
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -20,9 +20,12 @@ import co.cask.cdap.api.dataset.lib.KeyValue;
 import co.cask.cdap.api.mapreduce.MapReduceTaskContext;
 import co.cask.cdap.api.metrics.Metrics;
 import co.cask.cdap.etl.api.Aggregator;
+import co.cask.cdap.etl.api.Combiner;
 import co.cask.cdap.etl.api.Emitter;
+import co.cask.cdap.etl.api.InvalidEntry;
 import co.cask.cdap.etl.api.JoinElement;
 import co.cask.cdap.etl.api.Joiner;
+import co.cask.cdap.etl.api.LookupProvider;
 import co.cask.cdap.etl.api.StageMetrics;
 import co.cask.cdap.etl.api.Transformation;
 import co.cask.cdap.etl.api.batch.BatchAggregator;
@@ -35,19 +38,25 @@ import co.cask.cdap.etl.batch.TransformExecutorFactory;
 import co.cask.cdap.etl.batch.conversion.WritableConversion;
 import co.cask.cdap.etl.batch.conversion.WritableConversions;
 import co.cask.cdap.etl.batch.join.Join;
+import co.cask.cdap.etl.common.CachingLookupProvider;
+import co.cask.cdap.etl.common.CombiningBuffer;
 import co.cask.cdap.etl.common.DatasetContextLookupProvider;
 import co.cask.cdap.etl.common.DefaultEmitter;
 import co.cask.cdap.etl.common.DefaultMacroEvaluator;
 import co.cask.cdap.etl.common.DefaultStageMetrics;
 import co.cask.cdap.etl.common.TrackedTransform;
 import co.cask.cdap.etl.common.preview.LimitingTransform;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Iterators;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableComparable;
 import org.apache.hadoop.mapreduce.JobContext;
 
+import java.io.Flushable;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -64,6 +73,7 @@ public class MapReduceTransformExecutorFactory<T> extends TransformExecutorFacto
   private final String mapOutputKeyClassName;
   private final String mapOutputValClassName;
   private final int numberOfRecordsPreview;
+  private final int combinerBufferSize;
 
   public MapReduceTransformExecutorFactory(MapReduceTaskContext taskContext,
                                            PipelinePluginInstantiator pluginInstantiator,
@@ -81,6 +91,7 @@ public class MapReduceTransformExecutorFactory<T> extends TransformExecutorFacto
     this.mapOutputKeyClassName = hConf.get(ETLMapReduce.MAP_KEY_CLASS);
     this.mapOutputValClassName = hConf.get(ETLMapReduce.MAP_VAL_CLASS);
     this.numberOfRecordsPreview = numberOfRecordsPreview;
+    this.combinerBufferSize = CombiningBuffer.getBufferSize(taskContext.getRuntimeArguments());
   }
 
   @Override
@@ -89,7 +100,7 @@ public class MapReduceTransformExecutorFactory<T> extends TransformExecutorFacto
     if (stageRuntimeArgs == null) {
       stageRuntimeArgs = new HashMap<>();
     }
-    return new MapReduceRuntimeContext(taskContext, metrics, new DatasetContextLookupProvider(taskContext),
+    return new MapReduceRuntimeContext(taskContext, metrics, createLookupProvider(stageName),
                                        stageName, stageRuntimeArgs);
   }
 
@@ -98,11 +109,16 @@ public class MapReduceTransformExecutorFactory<T> extends TransformExecutorFacto
     if (stageRuntimeArgs == null) {
       stageRuntimeArgs = new HashMap<>();
     }
-    return new MapReduceJoinerRuntimeContext(taskContext, metrics, new DatasetContextLookupProvider(taskContext),
+    return new MapReduceJoinerRuntimeContext(taskContext, metrics, createLookupProvider(stageName),
                                              stageName, stageRuntimeArgs, perStageInputSchemas.get(stageName),
                                              outputSchemas.get(stageName));
   }
 
+  private LookupProvider createLookupProvider(String stageName) {
+    return new CachingLookupProvider(new DatasetContextLookupProvider(taskContext), taskContext.getRuntimeArguments(),
+                                     new DefaultStageMetrics(metrics, stageName));
+  }
+
   @SuppressWarnings("unchecked")
   @Override
   protected TrackedTransform getTransformation(String pluginType, String stageName)
@@ -118,7 +134,7 @@ public class MapReduceTransformExecutorFactory<T> extends TransformExecutorFacto
       batchAggregator.initialize(runtimeContext);
       if (isMapPhase) {
         return getTrackedEmitKeyStep(new MapperAggregatorTransformation(batchAggregator, mapOutputKeyClassName,
-                                                                        mapOutputValClassName),
+                                                                        mapOutputValClassName, combinerBufferSize),
                                      stageMetrics, taskContext.getDataTracer(stageName));
       } else {
         return getTrackedAggregateStep(new ReducerAggregatorTransformation(batchAggregator,
@@ -241,22 +257,30 @@ public class MapReduceTransformExecutorFactory<T> extends TransformExecutorFacto
    * WritableComparable and values that are not Writable. For example, aggregators that output StructuredRecord
    * will need some function to change a StructuredRecord to a StructuredRecordWritable so that we can use this
    * in mapreduce.
+   * <p/>
+   * If the aggregator is a {@link Combiner}, the group values are buffered in memory and combined before they are
+   * written, whenever the buffer is full and when the transformation is flushed at the end of the map task.
    *
    * @param <GROUP_KEY> type of group key output by the aggregator
    * @param <GROUP_VAL> type of group value used by the aggregator
    * @param <OUT_KEY>   type of output key for mapreduce. Must implement WritableComparable
    * @param <OUT_VAL>   type of output value for mapreduce. Must implement Writable
    */
-  private static class MapperAggregatorTransformation<GROUP_KEY, GROUP_VAL, OUT_KEY extends Writable,
-    OUT_VAL extends Writable> implements Transformation<GROUP_VAL, KeyValue<OUT_KEY, OUT_VAL>> {
+  @VisibleForTesting
+  static class MapperAggregatorTransformation<GROUP_KEY, GROUP_VAL, OUT_KEY extends Writable,
+    OUT_VAL extends Writable> implements Transformation<GROUP_VAL, KeyValue<OUT_KEY, OUT_VAL>>, Flushable {
     private final Aggregator<GROUP_KEY, GROUP_VAL, ?> aggregator;
     private final DefaultEmitter<GROUP_KEY> groupKeyEmitter;
     private final WritableConversion<GROUP_KEY, OUT_KEY> keyConversion;
     private final WritableConversion<GROUP_VAL, OUT_VAL> valConversion;
+    private final CombiningBuffer<GROUP_KEY, GROUP_VAL> combiningBuffer;
+    private final ConvertingEmitter combinedEmitter;
 
+    @SuppressWarnings("unchecked")
     MapperAggregatorTransformation(Aggregator<GROUP_KEY, GROUP_VAL, ?> aggregator,
                                    String groupKeyClassName,
-                                   String groupValClassName) {
+                                   String groupValClassName,
+                                   int combinerBufferSize) {
       this.aggregator = aggregator;
       this.groupKeyEmitter = new DefaultEmitter<>();
       WritableConversion<GROUP_KEY, OUT_KEY> keyConversion = WritableConversions.getConversion(groupKeyClassName);
@@ -264,14 +288,61 @@ public class MapReduceTransformExecutorFactory<T> extends TransformExecutorFacto
       // if the conversion is null, it means the user is using a Writable already
       this.keyConversion = keyConversion == null ? new CastConversion<GROUP_KEY, OUT_KEY>() : keyConversion;
       this.valConversion = valConversion == null ? new CastConversion<GROUP_VAL, OUT_VAL>() : valConversion;
+      this.combiningBuffer = aggregator instanceof Combiner
+        ? new CombiningBuffer<>((Combiner<GROUP_KEY, GROUP_VAL>) aggregator, combinerBufferSize)
+        : null;
+      this.combinedEmitter = new ConvertingEmitter();
     }
 
     @Override
     public void transform(GROUP_VAL input, Emitter<KeyValue<OUT_KEY, OUT_VAL>> emitter) throws Exception {
       groupKeyEmitter.reset();
       aggregator.groupBy(input, groupKeyEmitter);
+      if (combiningBuffer == null) {
+        for (GROUP_KEY groupKey : groupKeyEmitter.getEntries()) {
+          emitter.emit(new KeyValue<>(keyConversion.toWritable(groupKey), valConversion.toWritable(input)));
+        }
+        return;
+      }
+
+      combinedEmitter.delegate = emitter;
+      boolean full = false;
       for (GROUP_KEY groupKey : groupKeyEmitter.getEntries()) {
-        emitter.emit(new KeyValue<>(keyConversion.toWritable(groupKey), valConversion.toWritable(input)));
+        full = combiningBuffer.add(groupKey, input) || full;
+      }
+      if (full) {
+        combiningBuffer.flush(combinedEmitter);
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      if (combiningBuffer == null || combiningBuffer.isEmpty()) {
+        return;
+      }
+      try {
+        combiningBuffer.flush(combinedEmitter);
+      } catch (Exception e) {
+        Throwables.propagateIfPossible(e, IOException.class);
+        throw new IOException(e);
+      }
+    }
+
+    /**
+     * Converts combined group keys and values to writables and emits them to the emitter of the last transform.
+     */
+    private final class ConvertingEmitter implements Emitter<KeyValue<GROUP_KEY, GROUP_VAL>> {
+      private Emitter<KeyValue<OUT_KEY, OUT_VAL>> delegate;
+
+      @Override
+      public void emit(KeyValue<GROUP_KEY, GROUP_VAL> value) {
+        delegate.emit(new KeyValue<>(keyConversion.toWritable(value.getKey()),
+                                     valConversion.toWritable(value.getValue())));
+      }
+
+      @Override
+      public void emitError(InvalidEntry<KeyValue<GROUP_KEY, GROUP_VAL>> invalidEntry) {
+        // combined values are never emitted as errors
       }
     }
   }
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -16,7 +16,6 @@
 
 package co.cask.cdap.etl.batch.mapreduce;
 
-import co.cask.cdap.api.dataset.lib.KeyValue;
 import co.cask.cdap.etl.api.Destroyable;
 import co.cask.cdap.etl.batch.PipeTransformDetail;
 
@@ -39,7 +38,16 @@ public class PipeTransformExecutor<IN> implements Destroyable {
   public void runOneIteration(IN input) throws Exception {
     for (String stageName : startingPoints) {
       PipeTransformDetail transformDetail = transformDetailMap.get(stageName);
-        transformDetail.process(new KeyValue<String, Object>(stageName, input));
+      transformDetail.process(stageName, input);
+    }
+  }
+
+  /**
+   * Emits the records buffered by any of the transforms, after all input was processed.
+   */
+  public void flush() {
+    for (PipeTransformDetail transformDetail : transformDetailMap.values()) {
+      transformDetail.flush();
     }
   }
 
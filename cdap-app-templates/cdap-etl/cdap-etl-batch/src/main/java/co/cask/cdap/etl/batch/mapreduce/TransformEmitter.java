@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -22,13 +22,16 @@ import co.cask.cdap.etl.batch.PipeTransformDetail;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import javax.annotation.Nullable;
 
 /**
  * Emitter which emits {@link KeyValue} where key is stageName emitting the transformed record and value is
  * transformed record
+ * <p/>
+ * Records are pushed directly into the next stages, which only wrap them in a {@link KeyValue} if they need the
+ * stage name, so a chain of transforms runs as a single call path without any per-record allocation.
  */
 public class TransformEmitter implements PipeEmitter<PipeTransformDetail> {
   private static final Logger LOG = LoggerFactory.getLogger(TransformEmitter.class);
@@ -36,17 +39,20 @@ public class TransformEmitter implements PipeEmitter<PipeTransformDetail> {
   private final String stageName;
   private final Map<String, PipeTransformDetail> nextStages;
   private final ErrorOutputWriter<Object, Object> errorOutputWriter;
+  // values of nextStages, to emit without creating an iterator for every record
+  private PipeTransformDetail[] nextStageDetails;
 
   public TransformEmitter(String stageName, @Nullable ErrorOutputWriter<Object, Object> errorOutputWriter) {
     this.stageName = stageName;
-    this.nextStages = new HashMap<>();
+    this.nextStages = new LinkedHashMap<>();
     this.errorOutputWriter = errorOutputWriter;
+    this.nextStageDetails = new PipeTransformDetail[0];
   }
 
   @Override
   public void emit(Object value) {
-    for (PipeTransformDetail pipeTransformDetail : nextStages.values()) {
-      pipeTransformDetail.process(new KeyValue<>(stageName, value));
+    for (PipeTransformDetail pipeTransformDetail : nextStageDetails) {
+      pipeTransformDetail.process(stageName, value);
     }
   }
 
@@ -66,5 +72,6 @@ public class TransformEmitter implements PipeEmitter<PipeTransformDetail> {
   @Override
   public void addTransformDetail(String stageName, PipeTransformDetail pipeTransformDetail) {
     nextStages.put(stageName, pipeTransformDetail);
+    nextStageDetails = nextStages.values().toArray(new PipeTransformDetail[nextStages.size()]);
   }
 }
@@ -0,0 +1,161 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.etl.batch.mapreduce;
+
+import co.cask.cdap.api.dataset.lib.KeyValue;
+import co.cask.cdap.etl.api.Aggregator;
+import co.cask.cdap.etl.api.Combiner;
+import co.cask.cdap.etl.api.Emitter;
+import co.cask.cdap.etl.api.Transformation;
+import co.cask.cdap.etl.batch.PipeTransformDetail;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.apache.hadoop.io.Text;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for {@link PipeTransformExecutor}.
+ */
+public class PipeTransformExecutorTest {
+
+  @Test
+  public void testStageNames() throws Exception {
+    /*
+     * source --> upper --> sink1 (with stage name)
+     *        |
+     *        |-> sink2
+     */
+    RecordingOutputWriter outputWriter = new RecordingOutputWriter();
+    Map<String, PipeTransformDetail> transformations = new HashMap<>();
+    transformations.put("source", new PipeTransformDetail("source", true, new Identity(),
+                                                          new TransformEmitter("source", null)));
+    transformations.put("upper", new PipeTransformDetail("upper", true, new ToUpperCase(),
+                                                         new TransformEmitter("upper", null)));
+    transformations.put("sink1", new PipeTransformDetail("sink1", false, new Identity(),
+                                                         new SinkEmitter<>("sink1", outputWriter)));
+    transformations.put("sink2", new PipeTransformDetail("sink2", true, new ToKeyValue(),
+                                                         new SinkEmitter<>("sink2", outputWriter)));
+    transformations.get("source").addTransformation("upper", transformations.get("upper"));
+    transformations.get("source").addTransformation("sink2", transformations.get("sink2"));
+    transformations.get("upper").addTransformation("sink1", transformations.get("sink1"));
+
+    PipeTransformExecutor<String> executor = new PipeTransformExecutor<>(transformations, ImmutableSet.of("source"));
+    executor.runOneIteration("a");
+    executor.runOneIteration("b");
+
+    // sink1 gets the records along with the name of the stage that emitted them, sink2 gets the records only
+    Assert.assertEquals(ImmutableList.of("upper=A", "upper=B"), outputWriter.outputs.get("sink1"));
+    Assert.assertEquals(ImmutableList.of("a=a", "b=b"), outputWriter.outputs.get("sink2"));
+  }
+
+  @Test
+  public void testFlushCombined() throws Exception {
+    /*
+     * source --> aggregator (map side, combining)
+     */
+    RecordingOutputWriter outputWriter = new RecordingOutputWriter();
+    Map<String, PipeTransformDetail> transformations = new HashMap<>();
+    transformations.put("source", new PipeTransformDetail("source", true, new Identity(),
+                                                          new TransformEmitter("source", null)));
+    MapReduceTransformExecutorFactory.MapperAggregatorTransformation<String, String, Text, Text> aggregation =
+      new MapReduceTransformExecutorFactory.MapperAggregatorTransformation<>(
+        new FirstLetterConcat(), String.class.getName(), String.class.getName(), 100);
+    transformations.put("agg", new PipeTransformDetail("agg", true, aggregation,
+                                                       new SinkEmitter<>("agg", outputWriter)));
+    transformations.get("source").addTransformation("agg", transformations.get("agg"));
+
+    PipeTransformExecutor<String> executor = new PipeTransformExecutor<>(transformations, ImmutableSet.of("source"));
+    for (String input : ImmutableList.of("a1", "b1", "a2", "a3")) {
+      executor.runOneIteration(input);
+    }
+    // values are buffered by the combining aggregator until the end of the map task
+    Assert.assertNull(outputWriter.outputs.get("agg"));
+
+    // the cleanup of the map task flushes the combined values to the output
+    executor.flush();
+    Assert.assertEquals(ImmutableList.of("a=a1+a2+a3", "b=b1"), outputWriter.outputs.get("agg"));
+    executor.flush();
+    Assert.assertEquals(2, outputWriter.outputs.get("agg").size());
+  }
+
+  /**
+   * Aggregator that groups strings by their first letter and combines them by concatenation.
+   */
+  private static final class FirstLetterConcat implements Aggregator<String, String, String>,
+    Combiner<String, String> {
+
+    @Override
+    public void groupBy(String groupValue, Emitter<String> emitter) {
+      emitter.emit(groupValue.substring(0, 1));
+    }
+
+    @Override
+    public void aggregate(String groupKey, Iterator<String> groupValues, Emitter<String> emitter) {
+      emitter.emit(Joiner.on('+').join(groupValues));
+    }
+
+    @Override
+    public void combine(String groupKey, Iterator<String> groupValues, Emitter<String> emitter) {
+      emitter.emit(Joiner.on('+').join(groupValues));
+    }
+  }
+
+  private static final class Identity implements Transformation<Object, Object> {
+    @Override
+    public void transform(Object input, Emitter<Object> emitter) throws Exception {
+      emitter.emit(input);
+    }
+  }
+
+  private static final class ToUpperCase implements Transformation<String, String> {
+    @Override
+    public void transform(String input, Emitter<String> emitter) throws Exception {
+      emitter.emit(input.toUpperCase());
+    }
+  }
+
+  private static final class ToKeyValue implements Transformation<String, KeyValue<String, String>> {
+    @Override
+    public void transform(String input, Emitter<KeyValue<String, String>> emitter) throws Exception {
+      emitter.emit(new KeyValue<>(input, input));
+    }
+  }
+
+  private static final class RecordingOutputWriter extends OutputWriter<Object, Object> {
+    private final Map<String, List<String>> outputs = new HashMap<>();
+
+    RecordingOutputWriter() {
+      super(null);
+    }
+
+    @Override
+    public void write(String sinkName, KeyValue<Object, Object> output) throws Exception {
+      if (!outputs.containsKey(sinkName)) {
+        outputs.put(sinkName, new ArrayList<String>());
+      }
+      outputs.get(sinkName).add(output.getKey() + "=" + output.getValue());
+    }
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.etl.common;
+
+import co.cask.cdap.etl.api.Lookup;
+import co.cask.cdap.etl.api.StageMetrics;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link Lookup} that serves lookups from a cache and only reads the keys missing from the cache from the
+ * delegate {@link Lookup}. Batch lookups read all missing keys with a single batch lookup on the delegate. Keys
+ * that don't exist are cached as well, so that repeated lookups of them don't read the dataset.
+ * <p/>
+ * If the cache was loaded with the entire table, keys missing from the cache don't exist and are never read
+ * from the delegate.
+ *
+ * @param <T> the type of object that will be returned for a lookup
+ */
+public class CachingLookup<T> implements Lookup<T> {
+
+  static final String CACHE_HITS = "lookup.cache.hits";
+  static final String CACHE_MISSES = "lookup.cache.misses";
+
+  private final Lookup<T> delegate;
+  private final Cache<String, Optional<Object>> cache;
+  private final StageMetrics metrics;
+  private final boolean complete;
+
+  /**
+   * Creates an instance of {@link CachingLookup}.
+   *
+   * @param delegate the lookup to read missing keys from
+   * @param cache the cache, which may be shared with other lookups of the same table
+   * @param metrics metrics to emit the number of cache hits and misses to
+   * @param complete whether the cache contains the entire table
+   */
+  public CachingLookup(Lookup<T> delegate, Cache<String, Optional<Object>> cache,
+                       StageMetrics metrics, boolean complete) {
+    this.delegate = delegate;
+    this.cache = cache;
+    this.metrics = metrics;
+    this.complete = complete;
+  }
+
+  @Nullable
+  @Override
+  public T lookup(String key) {
+    Optional<Object> cached = cache.getIfPresent(key);
+    if (cached != null || complete) {
+      metrics.count(CACHE_HITS, 1);
+      return cached == null ? null : this.<T>cast(cached.orNull());
+    }
+    metrics.count(CACHE_MISSES, 1);
+    T value = delegate.lookup(key);
+    cache.put(key, Optional.<Object>fromNullable(value));
+    return value;
+  }
+
+  @Override
+  public Map<String, T> lookup(String... keys) {
+    return lookup(ImmutableSet.copyOf(keys));
+  }
+
+  @Override
+  public Map<String, T> lookup(Set<String> keys) {
+    Map<String, T> result = new HashMap<>();
+    Set<String> missing = new HashSet<>();
+    for (String key : keys) {
+      Optional<Object> cached = cache.getIfPresent(key);
+      if (cached == null) {
+        if (!complete) {
+          missing.add(key);
+        }
+      } else if (cached.isPresent()) {
+        result.put(key, this.<T>cast(cached.get()));
+      }
+    }
+    if (keys.size() > missing.size()) {
+      metrics.count(CACHE_HITS, keys.size() - missing.size());
+    }
+    if (missing.isEmpty()) {
+      return result;
+    }
+
+    metrics.count(CACHE_MISSES, missing.size());
+    Map<String, T> values = delegate.lookup(missing);
+    for (String key : missing) {
+      T value = values.get(key);
+      cache.put(key, Optional.<Object>fromNullable(value));
+      if (value != null) {
+        result.put(key, value);
+      }
+    }
+    return result;
+  }
+
+  @SuppressWarnings("unchecked")
+  private <V> V cast(Object value) {
+    return (V) value;
+  }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.etl.common;
+
+import co.cask.cdap.etl.api.CacheConfig;
+import co.cask.cdap.etl.api.Lookup;
+import co.cask.cdap.etl.api.LookupProvider;
+import co.cask.cdap.etl.api.LookupTableConfig;
+import co.cask.cdap.etl.api.StageMetrics;
+import co.cask.cdap.etl.api.lookup.KeyValueTableLookup;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link LookupProvider} that adds caching to the {@link Lookup} provided by another {@link LookupProvider},
+ * for the tables that have caching enabled through the runtime arguments:
+ *
+ * <ul>
+ *   <li>{@code lookup.<table>.cache.enabled}: whether to cache lookups of the table, defaults to false</li>
+ *   <li>{@code lookup.<table>.cache.expiry.seconds}: expiry of cached entries after write, 0 for no expiry</li>
+ *   <li>{@code lookup.<table>.cache.max.size}: maximum number of cached entries, 0 for no limit</li>
+ *   <li>{@code lookup.<table>.cache.max.size.bytes}: maximum estimated size of the cached entries in bytes,
+ *   0 for no limit</li>
+ *   <li>{@code lookup.<table>.preload.max.size}: if the table has at most this many entries, it is loaded
+ *   entirely when it is first used, and then never read again by the container. 0 to disable.</li>
+ * </ul>
+ *
+ * The caches are shared by all stages and tasks running in the same container, so that tasks reusing a container
+ * find the cache warm. A cache is only shared by lookups of the same table, dataset arguments and cache
+ * configuration, hence a task with a different configuration of the table gets its own cache.
+ * <p/>
+ * Lookups of keys that are not cached read the dataset right away, in the call of the stage. Only a stage that looks
+ * up several keys with one batch lookup call reads them with a single batch read, since lookups of successive
+ * records are not deferred and combined.
+ */
+public class CachingLookupProvider implements LookupProvider {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CachingLookupProvider.class);
+  private static final String PREFIX = "lookup.";
+
+  // (table, arguments, config) -> cache of the table, shared within the container
+  private static final ConcurrentMap<CacheKey, TableCache> CACHES = Maps.newConcurrentMap();
+
+  private final LookupProvider delegate;
+  private final Map<String, String> runtimeArguments;
+  private final StageMetrics metrics;
+
+  public CachingLookupProvider(LookupProvider delegate, Map<String, String> runtimeArguments, StageMetrics metrics) {
+    this.delegate = delegate;
+    this.runtimeArguments = runtimeArguments;
+    this.metrics = metrics;
+  }
+
+  @Override
+  public <T> Lookup<T> provide(String table, Map<String, String> arguments) {
+    Lookup<T> lookup = delegate.provide(table, arguments);
+    LookupTableConfig config = getTableConfig(table, runtimeArguments);
+    if (config == null || !config.isCacheEnabled()) {
+      return lookup;
+    }
+
+    CacheKey key = new CacheKey(table, arguments, config);
+    TableCache tableCache = CACHES.get(key);
+    if (tableCache == null) {
+      TableCache existing = CACHES.putIfAbsent(key, tableCache = new TableCache(config));
+      tableCache = existing == null ? tableCache : existing;
+    }
+    if (config.getPreloadMaxSize() > 0) {
+      tableCache.preload(table, lookup, config.getPreloadMaxSize());
+    }
+    return new CachingLookup<>(lookup, tableCache.getCache(), metrics, tableCache.isComplete());
+  }
+
+  /**
+   * Returns the {@link LookupTableConfig} of the given table as configured by the given runtime arguments, or
+   * {@code null} if it is not configured.
+   */
+  @Nullable
+  static LookupTableConfig getTableConfig(String table, Map<String, String> runtimeArguments) {
+    String prefix = PREFIX + table + ".";
+    if (!Boolean.parseBoolean(runtimeArguments.get(prefix + "cache.enabled"))) {
+      return null;
+    }
+    CacheConfig cacheConfig = new CacheConfig(getLong(runtimeArguments, prefix + "cache.expiry.seconds"),
+                                              (int) getLong(runtimeArguments, prefix + "cache.max.size"),
+                                              getLong(runtimeArguments, prefix + "cache.max.size.bytes"));
+    return new LookupTableConfig(LookupTableConfig.TableType.DATASET, cacheConfig,
+                                 ImmutableMap.<String, String>of(), true,
+                                 (int) getLong(runtimeArguments, prefix + "preload.max.size"));
+  }
+
+  private static long getLong(Map<String, String> arguments, String key) {
+    String value = arguments.get(key);
+    if (value == null) {
+      return 0L;
+    }
+    try {
+      return Math.max(0L, Long.parseLong(value));
+    } catch (NumberFormatException e) {
+      LOG.warn("Ignoring invalid value '{}' of runtime argument {}", value, key);
+      return 0L;
+    }
+  }
+
+  /**
+   * Estimates the memory used by a cached entry.
+   */
+  private static final class EntryWeigher implements Weigher<String, Optional<Object>> {
+    // rough overhead of the cache entry, the key and the value objects
+    private static final int ENTRY_OVERHEAD = 64;
+
+    @Override
+    public int weigh(String key, Optional<Object> value) {
+      int weight = ENTRY_OVERHEAD + 2 * key.length();
+      Object object = value.orNull();
+      if (object instanceof String) {
+        weight += 2 * ((String) object).length();
+      } else if (object instanceof byte[]) {
+        weight += ((byte[]) object).length;
+      }
+      return weight;
+    }
+  }
+
+  /**
+   * The cache of a table.
+   */
+  private static final class TableCache {
+    private volatile Cache<String, Optional<Object>> cache;
+    private volatile boolean complete;
+    private boolean preloadAttempted;
+
+    TableCache(LookupTableConfig config) {
+      CacheConfig cacheConfig = config.getCacheConfig();
+      CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder();
+      if (cacheConfig.getExpirySeconds() > 0) {
+        builder.expireAfterWrite(cacheConfig.getExpirySeconds(), TimeUnit.SECONDS);
+      }
+      if (cacheConfig.getMaxSizeBytes() > 0) {
+        builder.maximumWeight(cacheConfig.getMaxSizeBytes()).weigher(new EntryWeigher());
+      } else if (cacheConfig.getMaxSize() > 0) {
+        builder.maximumSize(cacheConfig.getMaxSize());
+      }
+      this.cache = builder.build();
+    }
+
+    Cache<String, Optional<Object>> getCache() {
+      return cache;
+    }
+
+    boolean isComplete() {
+      return complete;
+    }
+
+    /**
+     * Loads the entire table into a cache without any eviction, if the table is small enough. It is only
+     * attempted once.
+     */
+    synchronized void preload(String table, Lookup<?> lookup, int maxSize) {
+      if (preloadAttempted) {
+        return;
+      }
+      preloadAttempted = true;
+      if (!(lookup instanceof KeyValueTableLookup)) {
+        LOG.debug("Lookup table {} does not support preloading", table);
+        return;
+      }
+      Map<String, String> entries = ((KeyValueTableLookup) lookup).scan(maxSize);
+      if (entries == null) {
+        LOG.debug("Lookup table {} has more than {} entries, not preloading it", table, maxSize);
+        return;
+      }
+      Cache<String, Optional<Object>> completeCache = CacheBuilder.newBuilder().build();
+      for (Map.Entry<String, String> entry : entries.entrySet()) {
+        completeCache.put(entry.getKey(), Optional.<Object>fromNullable(entry.getValue()));
+      }
+      cache = completeCache;
+      complete = true;
+      LOG.debug("Preloaded {} entries of lookup table {}", entries.size(), table);
+    }
+  }
+
+  /**
+   * Identifies a cache by table name, dataset arguments and cache configuration.
+   */
+  private static final class CacheKey {
+    private final String table;
+    private final Map<String, String> arguments;
+    private final long expirySeconds;
+    private final int maxSize;
+    private final long maxSizeBytes;
+    private final int preloadMaxSize;
+
+    CacheKey(String table, Map<String, String> arguments, LookupTableConfig config) {
+      this.table = table;
+      this.arguments = ImmutableMap.copyOf(arguments);
+      this.expirySeconds = config.getCacheConfig().getExpirySeconds();
+      this.maxSize = config.getCacheConfig().getMaxSize();
+      this.maxSizeBytes = config.getCacheConfig().getMaxSizeBytes();
+      this.preloadMaxSize = config.getPreloadMaxSize();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      CacheKey that = (CacheKey) o;
+      return table.equals(that.table) && arguments.equals(that.arguments)
+        && expirySeconds == that.expirySeconds && maxSize == that.maxSize
+        && maxSizeBytes == that.maxSizeBytes && preloadMaxSize == that.preloadMaxSize;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(table, arguments, expirySeconds, maxSize, maxSizeBytes, preloadMaxSize);
+    }
+  }
+}
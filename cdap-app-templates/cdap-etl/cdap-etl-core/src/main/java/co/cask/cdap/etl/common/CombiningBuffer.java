@@ -0,0 +1,125 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.etl.common;
+
+import co.cask.cdap.api.dataset.lib.KeyValue;
+import co.cask.cdap.etl.api.Combiner;
+import co.cask.cdap.etl.api.Emitter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An in-memory hash table that buffers group values by group key, to be partially aggregated with a
+ * {@link Combiner} before they are shuffled. Once the buffer holds the maximum number of values, it should be
+ * flushed, which combines the buffered values of each group and emits the combined values.
+ * <p/>
+ * This class is not thread safe.
+ *
+ * @param <K> type of group key
+ * @param <V> type of group value
+ */
+public class CombiningBuffer<K, V> {
+
+  private final Combiner<K, V> combiner;
+  private final int maxValues;
+  private final Map<K, List<V>> groups;
+  private final DefaultEmitter<V> combinedEmitter;
+  private int size;
+
+  /**
+   * Returns the maximum number of values to buffer, as configured by the {@link Constants#COMBINER_BUFFER_SIZE}
+   * runtime argument.
+   *
+   * @throws IllegalArgumentException if the runtime argument is not a positive integer
+   */
+  public static int getBufferSize(Map<String, String> arguments) {
+    String sizeStr = arguments.get(Constants.COMBINER_BUFFER_SIZE);
+    if (sizeStr == null) {
+      return Constants.DEFAULT_COMBINER_BUFFER_SIZE;
+    }
+    int size;
+    try {
+      size = Integer.parseInt(sizeStr.trim());
+    } catch (NumberFormatException e) {
+      size = 0;
+    }
+    if (size <= 0) {
+      throw new IllegalArgumentException(String.format("Invalid value '%s' for runtime argument '%s'. "
+                                                         + "It must be a positive integer.",
+                                                       sizeStr, Constants.COMBINER_BUFFER_SIZE));
+    }
+    return size;
+  }
+
+  /**
+   * Creates an instance of {@link CombiningBuffer}.
+   *
+   * @param combiner the combiner to combine the values of a group with
+   * @param maxValues the number of buffered values after which the buffer should be flushed
+   */
+  public CombiningBuffer(Combiner<K, V> combiner, int maxValues) {
+    this.combiner = combiner;
+    this.maxValues = maxValues;
+    this.groups = new LinkedHashMap<>();
+    this.combinedEmitter = new DefaultEmitter<>();
+  }
+
+  /**
+   * Adds a value of the given group.
+   *
+   * @return {@code true} if the buffer is full and should be flushed
+   */
+  public boolean add(K key, V value) {
+    List<V> values = groups.get(key);
+    if (values == null) {
+      values = new ArrayList<>();
+      groups.put(key, values);
+    }
+    values.add(value);
+    return ++size >= maxValues;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Combines the buffered values of each group, emits the combined values along with their group key and empties
+   * the buffer.
+   */
+  public void flush(Emitter<KeyValue<K, V>> emitter) throws Exception {
+    for (Map.Entry<K, List<V>> group : groups.entrySet()) {
+      K key = group.getKey();
+      List<V> values = group.getValue();
+      if (values.size() == 1) {
+        emitter.emit(new KeyValue<>(key, values.get(0)));
+        continue;
+      }
+      combinedEmitter.reset();
+      combiner.combine(key, values.iterator(), combinedEmitter);
+      for (V combined : combinedEmitter.getEntries()) {
+        emitter.emit(new KeyValue<>(key, combined));
+      }
+    }
+    combinedEmitter.reset();
+    groups.clear();
+    size = 0;
+  }
+}
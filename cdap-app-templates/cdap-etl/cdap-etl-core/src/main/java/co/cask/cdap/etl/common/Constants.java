@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015-2016 Cask Data, Inc.
+ * Copyright © 2015-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -27,6 +27,13 @@ public final class Constants {
   public static final String PIPELINE_SPEC_KEY = "pipeline.spec";
   public static final String STAGE_LOGGING_ENABLED = "stage.logging.enabled";
   public static final String CONNECTOR_TYPE = "connector";
+  // runtime argument for the maximum number of values buffered in memory for map-side combining of an aggregator
+  public static final String COMBINER_BUFFER_SIZE = "combiner.buffer.size";
+  public static final int DEFAULT_COMBINER_BUFFER_SIZE = 10000;
+  // runtime argument for the maximum number of records of a join input to be broadcast instead of shuffled.
+  // By default only the inputs declared as broadcast by the joiner are broadcast.
+  public static final String JOIN_BROADCAST_MAX_RECORDS = "join.broadcast.max.records";
+  public static final int DEFAULT_JOIN_BROADCAST_MAX_RECORDS = 0;
   public static final Schema ERROR_SCHEMA = Schema.recordOf(
     "error",
     Schema.Field.of(ErrorDataset.ERRCODE, Schema.of(Schema.Type.INT)),
@@ -0,0 +1,98 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.etl.common;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.api.dataset.lib.KeyValue;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Estimates the number of bytes of the data in a record, which is roughly the size of the record in a binary
+ * encoding. It doesn't account for the memory overhead of the objects.
+ */
+public final class RecordSizeEstimator {
+
+  private RecordSizeEstimator() {
+    // no-op
+  }
+
+  /**
+   * Returns the estimated number of bytes of the given object.
+   */
+  public static long estimate(@Nullable Object value) {
+    if (value == null) {
+      return 0L;
+    }
+    if (value instanceof StructuredRecord) {
+      StructuredRecord record = (StructuredRecord) value;
+      long size = 0L;
+      for (Schema.Field field : record.getSchema().getFields()) {
+        size += estimate(record.get(field.getName()));
+      }
+      return size;
+    }
+    if (value instanceof String) {
+      // most characters are single byte in UTF-8
+      return ((String) value).length();
+    }
+    if (value instanceof byte[]) {
+      return ((byte[]) value).length;
+    }
+    if (value instanceof ByteBuffer) {
+      return ((ByteBuffer) value).remaining();
+    }
+    if (value instanceof Long || value instanceof Double) {
+      return 8L;
+    }
+    if (value instanceof Boolean) {
+      return 1L;
+    }
+    if (value instanceof Number) {
+      return 4L;
+    }
+    if (value instanceof Collection) {
+      long size = 0L;
+      for (Object element : (Collection<?>) value) {
+        size += estimate(element);
+      }
+      return size;
+    }
+    if (value instanceof Map) {
+      long size = 0L;
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        size += estimate(entry.getKey()) + estimate(entry.getValue());
+      }
+      return size;
+    }
+    if (value instanceof KeyValue) {
+      return estimate(((KeyValue<?, ?>) value).getKey()) + estimate(((KeyValue<?, ?>) value).getValue());
+    }
+    if (value instanceof Object[]) {
+      long size = 0L;
+      for (Object element : (Object[]) value) {
+        size += estimate(element);
+      }
+      return size;
+    }
+    return 0L;
+  }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -19,26 +19,62 @@ package co.cask.cdap.etl.common;
 import co.cask.cdap.api.preview.DataTracer;
 import co.cask.cdap.etl.api.Destroyable;
 import co.cask.cdap.etl.api.Emitter;
+import co.cask.cdap.etl.api.InvalidEntry;
 import co.cask.cdap.etl.api.StageMetrics;
 import co.cask.cdap.etl.api.Transformation;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
 
+import java.io.Flushable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import javax.annotation.Nullable;
 
 /**
  * A {@link Transformation} that delegates transform operations while emitting metrics
  * around how many records were input into the transform and output by it.
+ * <p/>
+ * It also measures the wall and cpu time spent in the transform, excluding the time spent in the emitter, which
+ * may run the transforms of the next stages. Only one of every {@link #SAMPLE_INTERVAL} records is measured,
+ * so that the cost of reading the clocks is negligible, hence the time metrics and the output bytes metric are
+ * estimates.
+ * <p/>
+ * This class is not thread safe.
  *
  * @param <IN> Type of input object
  * @param <OUT> Type of output object
  */
-public class TrackedTransform<IN, OUT> implements Transformation<IN, OUT>, Destroyable {
+public class TrackedTransform<IN, OUT> implements Transformation<IN, OUT>, Destroyable, Flushable {
   public static final String RECORDS_IN = "records.in";
   public static final String RECORDS_OUT = "records.out";
+  public static final String RECORDS_OUT_BYTES = "records.out.bytes";
+  public static final String PROCESS_TIME_MICROS = "process.time.micros";
+  public static final String PROCESS_CPU_MICROS = "process.cpu.micros";
+  // gauge of the average wall time in nanos that the stage spends on a record
+  public static final String PROCESS_TIME_PER_RECORD_NANOS = "process.time.per.record.nanos";
+  static final int SAMPLE_INTERVAL = 128;
+
+  // ticker of the cpu time of the current thread, or null if the JVM doesn't measure it
+  private static final Ticker CPU_TICKER = createCpuTicker();
+
   private final Transformation<IN, OUT> transform;
   private final StageMetrics metrics;
   private final String metricInName;
   private final String metricOutName;
   private final DataTracer dataTracer;
+  private final SamplingEmitter<OUT> samplingEmitter;
+  private final Ticker ticker;
+  private final Ticker cpuTicker;
+  // the emitter last passed to transform and its tracked wrapper, which are reused as the emitter rarely changes
+  private Emitter<OUT> lastEmitter;
+  private Emitter<OUT> trackedEmitter;
+  private long inputCount;
+  private long sampledCount;
+  private long sampledNanos;
+  // estimated nanos not yet emitted, since metrics are counted in micros
+  private long pendingNanos;
+  private long pendingCpuNanos;
 
   public TrackedTransform(Transformation<IN, OUT> transform, StageMetrics metrics, DataTracer dataTracer) {
     this(transform, metrics, RECORDS_IN, RECORDS_OUT, dataTracer);
@@ -46,11 +82,27 @@ public class TrackedTransform<IN, OUT> implements Transformation<IN, OUT>, Destr
 
   public TrackedTransform(Transformation<IN, OUT> transform, StageMetrics metrics,
                           @Nullable String metricInName, @Nullable String metricOutName, DataTracer dataTracer) {
+    this(transform, metrics, metricInName, metricOutName, dataTracer, Ticker.systemTicker(), CPU_TICKER);
+  }
+
+  /**
+   * Creates an instance that measures time with the given tickers.
+   *
+   * @param ticker ticker for the wall time in nanos
+   * @param cpuTicker ticker for the cpu time in nanos of the current thread, or {@code null} to not measure it
+   */
+  @VisibleForTesting
+  TrackedTransform(Transformation<IN, OUT> transform, StageMetrics metrics,
+                   @Nullable String metricInName, @Nullable String metricOutName, DataTracer dataTracer,
+                   Ticker ticker, @Nullable Ticker cpuTicker) {
     this.transform = transform;
     this.metrics = metrics;
     this.metricInName = metricInName;
     this.metricOutName = metricOutName;
     this.dataTracer = dataTracer;
+    this.ticker = ticker;
+    this.cpuTicker = cpuTicker;
+    this.samplingEmitter = new SamplingEmitter<>(metricOutName != null, ticker, cpuTicker);
   }
 
   @Override
@@ -58,8 +110,69 @@ public class TrackedTransform<IN, OUT> implements Transformation<IN, OUT>, Destr
     if (metricInName != null) {
       metrics.count(metricInName, 1);
     }
-    transform.transform(input, metricOutName == null ? emitter :
-      new TrackedEmitter<>(emitter, metrics, metricOutName, dataTracer));
+    Emitter<OUT> outEmitter = emitter;
+    if (metricOutName != null) {
+      if (emitter != lastEmitter) {
+        trackedEmitter = new TrackedEmitter<>(emitter, metrics, metricOutName, dataTracer);
+        lastEmitter = emitter;
+      }
+      outEmitter = trackedEmitter;
+    }
+    if (inputCount++ % SAMPLE_INTERVAL != 0) {
+      transform.transform(input, outEmitter);
+      return;
+    }
+
+    samplingEmitter.reset(outEmitter);
+    long startCpuNanos = cpuTicker == null ? 0L : cpuTicker.read();
+    long startNanos = ticker.read();
+    transform.transform(input, samplingEmitter);
+    long nanos = ticker.read() - startNanos - samplingEmitter.emitNanos;
+    if (cpuTicker != null) {
+      pendingCpuNanos += (cpuTicker.read() - startCpuNanos - samplingEmitter.emitCpuNanos) * SAMPLE_INTERVAL;
+      pendingCpuNanos = countMicros(PROCESS_CPU_MICROS, pendingCpuNanos);
+    }
+    pendingNanos = countMicros(PROCESS_TIME_MICROS, pendingNanos + nanos * SAMPLE_INTERVAL);
+
+    sampledCount++;
+    sampledNanos += Math.max(nanos, 0L);
+    metrics.gauge(PROCESS_TIME_PER_RECORD_NANOS, sampledNanos / sampledCount);
+    if (metricOutName != null && samplingEmitter.bytes > 0) {
+      metrics.count(RECORDS_OUT_BYTES, (int) Math.min(samplingEmitter.bytes * SAMPLE_INTERVAL, Integer.MAX_VALUE));
+    }
+  }
+
+  /**
+   * Counts the whole micros of the given nanos in the given metric and returns the remaining nanos.
+   */
+  private long countMicros(String metricName, long nanos) {
+    long micros = Math.min(nanos / 1000, Integer.MAX_VALUE);
+    if (micros <= 0) {
+      return nanos;
+    }
+    metrics.count(metricName, (int) micros);
+    return nanos - micros * 1000;
+  }
+
+  @Nullable
+  private static Ticker createCpuTicker() {
+    final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    if (!threadMXBean.isCurrentThreadCpuTimeSupported() || !threadMXBean.isThreadCpuTimeEnabled()) {
+      return null;
+    }
+    return new Ticker() {
+      @Override
+      public long read() {
+        return threadMXBean.getCurrentThreadCpuTime();
+      }
+    };
+  }
+
+  @Override
+  public void flush() throws IOException {
+    if (transform instanceof Flushable) {
+      ((Flushable) transform).flush();
+    }
   }
 
   @Override
@@ -68,4 +181,56 @@ public class TrackedTransform<IN, OUT> implements Transformation<IN, OUT>, Destr
       ((Destroyable) transform).destroy();
     }
   }
+
+  /**
+   * Emitter used for the records that are measured, which measures the time spent in the delegate emitter and
+   * estimates the bytes emitted.
+   */
+  private static final class SamplingEmitter<T> implements Emitter<T> {
+    private final boolean estimateBytes;
+    private final Ticker ticker;
+    private final Ticker cpuTicker;
+    private Emitter<T> delegate;
+    private long emitNanos;
+    private long emitCpuNanos;
+    private long bytes;
+
+    private SamplingEmitter(boolean estimateBytes, Ticker ticker, @Nullable Ticker cpuTicker) {
+      this.estimateBytes = estimateBytes;
+      this.ticker = ticker;
+      this.cpuTicker = cpuTicker;
+    }
+
+    void reset(Emitter<T> delegate) {
+      this.delegate = delegate;
+      this.emitNanos = 0L;
+      this.emitCpuNanos = 0L;
+      this.bytes = 0L;
+    }
+
+    @Override
+    public void emit(T value) {
+      long startCpuNanos = cpuTicker == null ? 0L : cpuTicker.read();
+      long startNanos = ticker.read();
+      if (estimateBytes) {
+        bytes += RecordSizeEstimator.estimate(value);
+      }
+      delegate.emit(value);
+      emitNanos += ticker.read() - startNanos;
+      if (cpuTicker != null) {
+        emitCpuNanos += cpuTicker.read() - startCpuNanos;
+      }
+    }
+
+    @Override
+    public void emitError(InvalidEntry<T> invalidEntry) {
+      long startCpuNanos = cpuTicker == null ? 0L : cpuTicker.read();
+      long startNanos = ticker.read();
+      delegate.emitError(invalidEntry);
+      emitNanos += ticker.read() - startNanos;
+      if (cpuTicker != null) {
+        emitCpuNanos += cpuTicker.read() - startCpuNanos;
+      }
+    }
+  }
 }
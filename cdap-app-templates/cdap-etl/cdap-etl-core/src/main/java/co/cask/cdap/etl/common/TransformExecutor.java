@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -19,10 +19,12 @@ package co.cask.cdap.etl.common;
 import co.cask.cdap.etl.api.Destroyable;
 import co.cask.cdap.etl.api.InvalidEntry;
 import co.cask.cdap.etl.api.Transformation;
-import com.google.common.collect.ImmutableList;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -30,6 +32,14 @@ import java.util.Set;
 /**
  * Executes Transforms one iteration at a time, tracking how many records were input into and output from
  * each transform.
+ * <p/>
+ * An iteration can either process a single input with {@link #runOneIteration(Object)} or a batch of inputs with
+ * {@link #runBatch(Collection)}. In batch mode, each stage transforms all of its input records before the next
+ * stages are executed on the collected output, so the stage DAG is traversed once per batch instead of once per
+ * record. The emitters of the stages are reused as buffers across iterations.
+ * <p/>
+ * The returned {@link TransformResponse} is backed by the emitters of the terminal stages, hence it is only valid
+ * until the next iteration or {@link #resetEmitter()}.
  *
  * @param <IN> the type of input object to the first transform
  *
@@ -38,40 +48,59 @@ public class TransformExecutor<IN> implements Destroyable {
 
   private final Set<String> startingPoints;
   private final Map<String, TransformDetail> transformDetailMap;
+  private final Map<String, Collection<InvalidEntry<Object>>> errors;
+  private final TransformResponse response;
+  // reusable single element input of runOneIteration
+  private final List<IN> singleInput;
 
+  @SuppressWarnings("unchecked")
   public TransformExecutor(Map<String, TransformDetail> transformDetailMap, Set<String> startingPoints) {
     this.transformDetailMap = transformDetailMap;
     this.startingPoints = startingPoints;
+
+    // entries of the terminal nodes are not cleared by iterations, hence the map only needs to be built once
+    Map<String, Collection<Object>> terminalNodeEntriesMap = new HashMap<>();
+    for (Map.Entry<String, TransformDetail> transformDetailEntry : transformDetailMap.entrySet()) {
+      if (transformDetailEntry.getValue().getNextStages().isEmpty()) {
+        terminalNodeEntriesMap.put(transformDetailEntry.getKey(), transformDetailEntry.getValue().getEntries());
+      }
+    }
+    this.errors = new HashMap<>();
+    this.response = new TransformResponse(Collections.unmodifiableMap(terminalNodeEntriesMap),
+                                          Collections.unmodifiableMap(errors));
+    this.singleInput = Arrays.asList((IN[]) new Object[1]);
   }
 
   public TransformResponse runOneIteration(IN input) throws Exception {
+    singleInput.set(0, input);
+    try {
+      return runBatch(singleInput);
+    } finally {
+      singleInput.set(0, null);
+    }
+  }
+
+  /**
+   * Runs one iteration with a batch of inputs. The response contains the outputs and errors of all inputs.
+   */
+  public TransformResponse runBatch(Collection<? extends IN> inputs) throws Exception {
     for (String stageName : startingPoints) {
       // no prevStage for starting points
-      executeTransformation(stageName, ImmutableList.of(input));
+      executeTransformation(stageName, inputs);
     }
 
-    Map<String, Collection<Object>> terminalNodeEntriesMap = new HashMap<>();
-    Map<String, Collection<InvalidEntry<Object>>> errors = new HashMap<>();
-
+    errors.clear();
     for (Map.Entry<String, TransformDetail> transformDetailEntry : transformDetailMap.entrySet()) {
-      if (transformDetailEntry.getValue().getNextStages().isEmpty()) {
-        // terminal node
-        Collection<Object> entries = transformDetailEntry.getValue().getEntries();
-        if (entries != null) {
-          terminalNodeEntriesMap.put(transformDetailEntry.getKey(), entries);
-        }
-      }
-
       if (!transformDetailEntry.getValue().getErrors().isEmpty()) {
         errors.put(transformDetailEntry.getKey(), transformDetailEntry.getValue().getErrors());
       }
     }
-    return new TransformResponse(terminalNodeEntriesMap, errors);
+    return response;
   }
 
   private <T> void executeTransformation(final String stageName,
-                                         Collection<T> input) throws Exception {
-    if (input == null) {
+                                         Collection<? extends T> input) throws Exception {
+    if (input == null || input.isEmpty()) {
       return;
     }
 
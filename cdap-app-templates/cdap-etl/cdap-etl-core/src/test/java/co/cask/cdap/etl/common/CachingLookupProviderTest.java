@@ -0,0 +1,152 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.etl.common;
+
+import co.cask.cdap.etl.api.Lookup;
+import co.cask.cdap.etl.api.LookupProvider;
+import co.cask.cdap.etl.api.LookupTableConfig;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tests for {@link CachingLookupProvider} and {@link CachingLookup}.
+ */
+public class CachingLookupProviderTest {
+
+  @Test
+  public void testTableConfig() {
+    Assert.assertNull(CachingLookupProvider.getTableConfig("t", ImmutableMap.<String, String>of()));
+    LookupTableConfig config = CachingLookupProvider.getTableConfig(
+      "t", ImmutableMap.of("lookup.t.cache.enabled", "true", "lookup.t.cache.expiry.seconds", "60",
+                           "lookup.t.cache.max.size.bytes", "1000000", "lookup.t.preload.max.size", "bad"));
+    Assert.assertNotNull(config);
+    Assert.assertTrue(config.isCacheEnabled());
+    Assert.assertEquals(60L, config.getCacheConfig().getExpirySeconds());
+    Assert.assertEquals(0, config.getCacheConfig().getMaxSize());
+    Assert.assertEquals(1000000L, config.getCacheConfig().getMaxSizeBytes());
+    Assert.assertEquals(0, config.getPreloadMaxSize());
+  }
+
+  @Test
+  public void testCaching() {
+    MockMetrics metrics = new MockMetrics();
+    CountingLookupProvider delegate =
+      new CountingLookupProvider(ImmutableMap.of("k1", "v1", "k2", "v2", "k3", "v3"));
+    LookupProvider provider = new CachingLookupProvider(
+      delegate, ImmutableMap.of("lookup.cached.cache.enabled", "true"), new DefaultStageMetrics(metrics, "stage"));
+
+    // the table without caching is read every time
+    Lookup<String> uncached = provider.provide("uncached", ImmutableMap.<String, String>of());
+    uncached.lookup("k1");
+    uncached.lookup("k1");
+    Assert.assertEquals(2, delegate.reads.size());
+    delegate.reads.clear();
+
+    Lookup<String> lookup = provider.provide("cached", ImmutableMap.<String, String>of());
+    Assert.assertEquals("v1", lookup.lookup("k1"));
+    Assert.assertEquals("v1", lookup.lookup("k1"));
+    Assert.assertNull(lookup.lookup("k0"));
+    Assert.assertNull(lookup.lookup("k0"));
+    Assert.assertEquals(2, delegate.reads.size());
+    delegate.reads.clear();
+
+    // batch lookup only reads the missing keys, with one batch read
+    Assert.assertEquals(ImmutableMap.of("k1", "v1", "k2", "v2", "k3", "v3"),
+                        lookup.lookup("k0", "k1", "k2", "k3"));
+    Assert.assertEquals(1, delegate.reads.size());
+    Assert.assertEquals(ImmutableSet.of("k2", "k3"), delegate.reads.get(0));
+    delegate.reads.clear();
+
+    // the cache is shared with other lookups of the same table
+    Lookup<String> other = provider.provide("cached", ImmutableMap.<String, String>of());
+    Assert.assertEquals(ImmutableMap.of("k2", "v2", "k3", "v3"), other.lookup(ImmutableSet.of("k2", "k3")));
+    Assert.assertTrue(delegate.reads.isEmpty());
+
+    Assert.assertEquals(6, metrics.getCount("stage." + CachingLookup.CACHE_HITS));
+    Assert.assertEquals(4, metrics.getCount("stage." + CachingLookup.CACHE_MISSES));
+  }
+
+  @Test
+  public void testCachePerConfig() {
+    CountingLookupProvider delegate = new CountingLookupProvider(ImmutableMap.of("k1", "v1"));
+    MockMetrics metrics = new MockMetrics();
+    LookupProvider provider = new CachingLookupProvider(
+      delegate, ImmutableMap.of("lookup.configured.cache.enabled", "true"), new DefaultStageMetrics(metrics, "s"));
+    LookupProvider boundedProvider = new CachingLookupProvider(
+      delegate, ImmutableMap.of("lookup.configured.cache.enabled", "true", "lookup.configured.cache.max.size", "10"),
+      new DefaultStageMetrics(metrics, "s"));
+
+    provider.<String>provide("configured", ImmutableMap.<String, String>of()).lookup("k1");
+    Assert.assertEquals(1, delegate.reads.size());
+
+    // a lookup with a different cache configuration doesn't use the cache of the first one
+    boundedProvider.<String>provide("configured", ImmutableMap.<String, String>of()).lookup("k1");
+    Assert.assertEquals(2, delegate.reads.size());
+    boundedProvider.<String>provide("configured", ImmutableMap.<String, String>of()).lookup("k1");
+    provider.<String>provide("configured", ImmutableMap.<String, String>of()).lookup("k1");
+    Assert.assertEquals(2, delegate.reads.size());
+  }
+
+  /**
+   * A {@link LookupProvider} that serves lookups from a map and records the keys read.
+   */
+  private static final class CountingLookupProvider implements LookupProvider {
+    private final Map<String, String> data;
+    private final List<Set<String>> reads = new ArrayList<>();
+
+    CountingLookupProvider(Map<String, String> data) {
+      this.data = data;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> Lookup<T> provide(String table, Map<String, String> arguments) {
+      return (Lookup<T>) new Lookup<String>() {
+        @Override
+        public String lookup(String key) {
+          reads.add(ImmutableSet.of(key));
+          return data.get(key);
+        }
+
+        @Override
+        public Map<String, String> lookup(String... keys) {
+          return lookup(ImmutableSet.copyOf(keys));
+        }
+
+        @Override
+        public Map<String, String> lookup(Set<String> keys) {
+          reads.add(ImmutableSet.copyOf(keys));
+          Map<String, String> result = new HashMap<>();
+          for (String key : keys) {
+            if (data.containsKey(key)) {
+              result.put(key, data.get(key));
+            }
+          }
+          return result;
+        }
+      };
+    }
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.etl.common;
+
+import co.cask.cdap.api.dataset.lib.KeyValue;
+import co.cask.cdap.etl.api.Combiner;
+import co.cask.cdap.etl.api.Emitter;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Tests for {@link CombiningBuffer}.
+ */
+public class CombiningBufferTest {
+
+  /**
+   * Combiner that sums the values of a group.
+   */
+  private static class SumCombiner implements Combiner<String, Long> {
+    private int calls;
+
+    @Override
+    public void combine(String groupKey, Iterator<Long> groupValues, Emitter<Long> emitter) {
+      calls++;
+      long sum = 0;
+      while (groupValues.hasNext()) {
+        sum += groupValues.next();
+      }
+      emitter.emit(sum);
+    }
+  }
+
+  @Test
+  public void testCombine() throws Exception {
+    SumCombiner combiner = new SumCombiner();
+    CombiningBuffer<String, Long> buffer = new CombiningBuffer<>(combiner, 5);
+    DefaultEmitter<KeyValue<String, Long>> emitter = new DefaultEmitter<>();
+
+    Assert.assertTrue(buffer.isEmpty());
+    Assert.assertFalse(buffer.add("a", 1L));
+    Assert.assertFalse(buffer.add("b", 2L));
+    Assert.assertFalse(buffer.add("a", 3L));
+    Assert.assertFalse(buffer.add("c", 4L));
+    Assert.assertTrue(buffer.add("a", 5L));
+
+    buffer.flush(emitter);
+    Assert.assertTrue(buffer.isEmpty());
+    // groups with a single value are emitted without combining
+    Assert.assertEquals(1, combiner.calls);
+    Assert.assertEquals(ImmutableMap.of("a", 9L, "b", 2L, "c", 4L), sum(emitter));
+
+    // buffer is reusable after a flush and values of the same group are emitted again
+    emitter.reset();
+    Assert.assertFalse(buffer.add("a", 10L));
+    Assert.assertFalse(buffer.add("b", 20L));
+    Assert.assertFalse(buffer.add("b", 30L));
+    buffer.flush(emitter);
+    Assert.assertEquals(2, combiner.calls);
+    Assert.assertEquals(2, emitter.getEntries().size());
+    Assert.assertEquals(ImmutableMap.of("a", 10L, "b", 50L), sum(emitter));
+  }
+
+  @Test
+  public void testBufferSize() {
+    Assert.assertEquals(Constants.DEFAULT_COMBINER_BUFFER_SIZE,
+                        CombiningBuffer.getBufferSize(ImmutableMap.<String, String>of()));
+    Assert.assertEquals(100, CombiningBuffer.getBufferSize(ImmutableMap.of(Constants.COMBINER_BUFFER_SIZE, "100")));
+  }
+
+  @Test
+  public void testInvalidBufferSize() {
+    for (String size : new String[] { "0", "-1", "abc", "" }) {
+      try {
+        CombiningBuffer.getBufferSize(ImmutableMap.of(Constants.COMBINER_BUFFER_SIZE, size));
+        Assert.fail("Expected IllegalArgumentException for buffer size '" + size + "'");
+      } catch (IllegalArgumentException e) {
+        Assert.assertTrue(e.getMessage().contains(Constants.COMBINER_BUFFER_SIZE));
+      }
+    }
+  }
+
+  private Map<String, Long> sum(DefaultEmitter<KeyValue<String, Long>> emitter) {
+    Map<String, Long> sums = new HashMap<>();
+    for (KeyValue<String, Long> entry : emitter.getEntries()) {
+      Long sum = sums.get(entry.getKey());
+      sums.put(entry.getKey(), sum == null ? entry.getValue() : sum + entry.getValue());
+    }
+    return sums;
+  }
+}
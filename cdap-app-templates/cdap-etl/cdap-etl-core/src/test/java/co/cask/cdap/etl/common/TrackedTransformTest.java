@@ -0,0 +1,156 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.etl.common;
+
+import co.cask.cdap.etl.api.Emitter;
+import co.cask.cdap.etl.api.InvalidEntry;
+import co.cask.cdap.etl.api.Transform;
+import co.cask.cdap.internal.app.preview.NoopDataTracerFactory;
+import com.google.common.base.Ticker;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link TrackedTransform}.
+ */
+public class TrackedTransformTest {
+
+  private static final long TRANSFORM_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+  private static final long EMIT_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+  @Test
+  public void testTimingMetrics() throws Exception {
+    MockMetrics mockMetrics = new MockMetrics();
+    // the cpu time is half of the wall time
+    final ManualTicker ticker = new ManualTicker(1);
+    final ManualTicker cpuTicker = new ManualTicker(2);
+    TrackedTransform<Integer, String> trackedTransform = new TrackedTransform<>(
+      new SlowTransform(ticker, cpuTicker), new DefaultStageMetrics(mockMetrics, "slow"),
+      TrackedTransform.RECORDS_IN, TrackedTransform.RECORDS_OUT,
+      new NoopDataTracerFactory().getDataTracer(null, "slow"), ticker, cpuTicker);
+
+    Emitter<String> slowEmitter = new Emitter<String>() {
+      @Override
+      public void emit(String value) {
+        ticker.advance(EMIT_NANOS);
+        cpuTicker.advance(EMIT_NANOS);
+      }
+
+      @Override
+      public void emitError(InvalidEntry<String> invalidEntry) {
+        // no-op
+      }
+    };
+
+    int numRecords = 2 * TrackedTransform.SAMPLE_INTERVAL;
+    for (int i = 0; i < numRecords; i++) {
+      trackedTransform.transform(i, slowEmitter);
+    }
+
+    Assert.assertEquals(numRecords, mockMetrics.getCount("slow." + TrackedTransform.RECORDS_IN));
+    Assert.assertEquals(2 * numRecords, mockMetrics.getCount("slow." + TrackedTransform.RECORDS_OUT));
+
+    // two records are sampled, the time spent in the emitter is not counted for the stage
+    long processMicros = TimeUnit.NANOSECONDS.toMicros(TRANSFORM_NANOS) * numRecords;
+    Assert.assertEquals(processMicros, mockMetrics.getCount("slow." + TrackedTransform.PROCESS_TIME_MICROS));
+    Assert.assertEquals(processMicros / 2, mockMetrics.getCount("slow." + TrackedTransform.PROCESS_CPU_MICROS));
+    Assert.assertEquals(TRANSFORM_NANOS,
+                        mockMetrics.getGauge("slow." + TrackedTransform.PROCESS_TIME_PER_RECORD_NANOS));
+
+    // sampled records are 0 and 128, which are emitted twice as one and three characters strings
+    Assert.assertEquals(2 * (1 + 3) * TrackedTransform.SAMPLE_INTERVAL,
+                        mockMetrics.getCount("slow." + TrackedTransform.RECORDS_OUT_BYTES));
+  }
+
+  @Test
+  public void testWithoutCpuTime() throws Exception {
+    MockMetrics mockMetrics = new MockMetrics();
+    ManualTicker ticker = new ManualTicker(1);
+    TrackedTransform<Integer, String> trackedTransform = new TrackedTransform<>(
+      new SlowTransform(ticker, new ManualTicker(1)), new DefaultStageMetrics(mockMetrics, "slow"),
+      TrackedTransform.RECORDS_IN, null, new NoopDataTracerFactory().getDataTracer(null, "slow"), ticker, null);
+
+    trackedTransform.transform(0, new NoopEmitter());
+
+    Assert.assertEquals(1, mockMetrics.getCount("slow." + TrackedTransform.RECORDS_IN));
+    Assert.assertEquals(TimeUnit.NANOSECONDS.toMicros(TRANSFORM_NANOS) * TrackedTransform.SAMPLE_INTERVAL,
+                        mockMetrics.getCount("slow." + TrackedTransform.PROCESS_TIME_MICROS));
+    Assert.assertEquals(0, mockMetrics.getCount("slow." + TrackedTransform.PROCESS_CPU_MICROS));
+    // the output is not tracked
+    Assert.assertEquals(0, mockMetrics.getCount("slow." + TrackedTransform.RECORDS_OUT));
+    Assert.assertEquals(0, mockMetrics.getCount("slow." + TrackedTransform.RECORDS_OUT_BYTES));
+  }
+
+  /**
+   * Ticker that only advances when told to.
+   */
+  private static final class ManualTicker extends Ticker {
+    private final int divisor;
+    private long nanos;
+
+    /**
+     * @param divisor the ticker advances by the given nanos divided by the divisor
+     */
+    private ManualTicker(int divisor) {
+      this.divisor = divisor;
+    }
+
+    private void advance(long nanos) {
+      this.nanos += nanos / divisor;
+    }
+
+    @Override
+    public long read() {
+      return nanos;
+    }
+  }
+
+  private static final class NoopEmitter implements Emitter<String> {
+    @Override
+    public void emit(String value) {
+      // no-op
+    }
+
+    @Override
+    public void emitError(InvalidEntry<String> invalidEntry) {
+      // no-op
+    }
+  }
+
+  /**
+   * Transform that emits every input twice, and advances the tickers by the transform time for every input.
+   */
+  private static class SlowTransform extends Transform<Integer, String> {
+    private final ManualTicker ticker;
+    private final ManualTicker cpuTicker;
+
+    private SlowTransform(ManualTicker ticker, ManualTicker cpuTicker) {
+      this.ticker = ticker;
+      this.cpuTicker = cpuTicker;
+    }
+
+    @Override
+    public void transform(Integer input, Emitter<String> emitter) throws Exception {
+      ticker.advance(TRANSFORM_NANOS);
+      cpuTicker.advance(TRANSFORM_NANOS);
+      emitter.emit(String.valueOf(input));
+      emitter.emit(String.valueOf(input));
+    }
+  }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -144,6 +144,63 @@ public class TransformExecutorTest {
     mockMetrics.clearMetrics();
   }
 
+  @Test
+  public void testBatch() throws Exception {
+    MockMetrics mockMetrics = new MockMetrics();
+    Map<String, TransformDetail> transformationMap = new HashMap<>();
+
+    transformationMap.put("transform1",
+                          new TransformDetail(
+                            new TrackedTransform<>(new IntToDouble(),
+                                                   new DefaultStageMetrics(mockMetrics, "transform1"),
+                                                   dataTracerFactory.getDataTracer(null, "transform1")),
+                            ImmutableList.of("transform2", "sink1")));
+
+    transformationMap.put("transform2",
+                          new TransformDetail(
+                            new TrackedTransform<>(new Filter(100d, Threshold.LOWER),
+                                                   new DefaultStageMetrics(mockMetrics, "transform2"),
+                                                   dataTracerFactory.getDataTracer(null, "transform2")),
+                            ImmutableList.of("sink2")));
+
+    transformationMap.put("sink1",
+                          new TransformDetail(
+                            new TrackedTransform<>(new DoubleToString(),
+                                                   new DefaultStageMetrics(mockMetrics, "sink1"),
+                                                   dataTracerFactory.getDataTracer(null, "sink1")),
+                            ImmutableList.<String>of()));
+
+    transformationMap.put("sink2",
+                          new TransformDetail(
+                            new TrackedTransform<>(new DoubleToString(),
+                                                   new DefaultStageMetrics(mockMetrics, "sink2"),
+                                                   dataTracerFactory.getDataTracer(null, "sink2")),
+                            ImmutableList.<String>of()));
+
+    TransformExecutor<Integer> executor = new TransformExecutor<>(transformationMap, ImmutableSet.of("transform1"));
+
+    // same inputs as testTransforms, the batch should produce the sum of the single iterations
+    TransformResponse transformResponse = executor.runBatch(ImmutableList.of(1, 10, 100, 2000));
+
+    assertResults(transformResponse.getSinksResults(), ImmutableMap.of("sink1", 12, "sink2", 6));
+    assertResults(transformResponse.getMapTransformIdToErrorEmitter(), ImmutableMap.of("transform2", 6));
+
+    Assert.assertEquals(4, mockMetrics.getCount("transform1.records.in"));
+    Assert.assertEquals(12, mockMetrics.getCount("transform1.records.out"));
+    Assert.assertEquals(12, mockMetrics.getCount("transform2.records.in"));
+    Assert.assertEquals(6, mockMetrics.getCount("transform2.records.out"));
+    Assert.assertEquals(12, mockMetrics.getCount("sink1.records.out"));
+    Assert.assertEquals(6, mockMetrics.getCount("sink2.records.out"));
+    executor.resetEmitter();
+    mockMetrics.clearMetrics();
+
+    // emitters are reused for the next batch
+    transformResponse = executor.runBatch(ImmutableList.of(2000));
+    assertResults(transformResponse.getSinksResults(), ImmutableMap.of("sink1", 3, "sink2", 3));
+    assertResults(transformResponse.getMapTransformIdToErrorEmitter(), new HashMap<String, Integer>());
+    executor.resetEmitter();
+  }
+
   @Test
   public void testTransformsWithMerge() throws Exception {
     MockMetrics mockMetrics = new MockMetrics();
@@ -0,0 +1,117 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.etl.realtime;
+
+import co.cask.cdap.api.metrics.Metrics;
+import co.cask.cdap.api.preview.DataTracer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link Metrics} that buffers the metrics, and the data traced by the {@link DataTracer} created by
+ * {@link #buffer(DataTracer)}, until they are committed or discarded. It is used for the transforms of an iteration
+ * of the {@link ETLWorker}, so that an iteration that fails and is processed again is only counted once.
+ * <p/>
+ * This class is not thread safe.
+ */
+final class BufferedMetrics implements Metrics {
+
+  private final Metrics delegate;
+  private final Map<String, Integer> counts = new LinkedHashMap<>();
+  private final Map<String, Long> gauges = new LinkedHashMap<>();
+  private final List<TracedData> tracedData = new ArrayList<>();
+
+  BufferedMetrics(Metrics delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public void count(String metricName, int delta) {
+    Integer count = counts.get(metricName);
+    counts.put(metricName, count == null ? delta : count + delta);
+  }
+
+  @Override
+  public void gauge(String metricName, long value) {
+    gauges.put(metricName, value);
+  }
+
+  /**
+   * Returns a {@link DataTracer} that buffers the traced data with the metrics.
+   */
+  DataTracer buffer(final DataTracer dataTracer) {
+    return new DataTracer() {
+      @Override
+      public void info(String propertyName, Object propertyValue) {
+        tracedData.add(new TracedData(dataTracer, propertyName, propertyValue));
+      }
+
+      @Override
+      public String getName() {
+        return dataTracer.getName();
+      }
+
+      @Override
+      public boolean isEnabled() {
+        return dataTracer.isEnabled();
+      }
+    };
+  }
+
+  /**
+   * Emits the buffered metrics and traced data.
+   */
+  void commit() {
+    for (Map.Entry<String, Integer> count : counts.entrySet()) {
+      delegate.count(count.getKey(), count.getValue());
+    }
+    for (Map.Entry<String, Long> gauge : gauges.entrySet()) {
+      delegate.gauge(gauge.getKey(), gauge.getValue());
+    }
+    for (TracedData data : tracedData) {
+      data.dataTracer.info(data.propertyName, data.propertyValue);
+    }
+    discard();
+  }
+
+  /**
+   * Drops the buffered metrics and traced data.
+   */
+  void discard() {
+    counts.clear();
+    gauges.clear();
+    tracedData.clear();
+  }
+
+  /**
+   * A value traced by a {@link DataTracer}.
+   */
+  private static final class TracedData {
+    private final DataTracer dataTracer;
+    private final String propertyName;
+    private final Object propertyValue;
+
+    private TracedData(DataTracer dataTracer, String propertyName, Object propertyValue) {
+      this.dataTracer = dataTracer;
+      this.propertyName = propertyName;
+      this.propertyValue = propertyValue;
+    }
+  }
+}
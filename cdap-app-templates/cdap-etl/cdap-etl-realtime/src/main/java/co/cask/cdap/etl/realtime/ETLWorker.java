@@ -115,6 +115,8 @@ public class ETLWorker extends AbstractWorker {
   private String sourceStageName;
   private Map<String, RealtimeSink> sinks;
   private TransformExecutor transformExecutor;
+  // metrics of the transform executor, which are only emitted once an iteration is done
+  private BufferedMetrics executorMetrics;
   private String stateStoreKey;
   private byte[] stateStoreKeyBytes;
   private String appName;
@@ -212,6 +214,7 @@ public class ETLWorker extends AbstractWorker {
 
     PipelinePhase pipeline = GSON.fromJson(properties.get(Constants.PIPELINEID), PipelinePhase.class);
     Map<String, TransformDetail> transformationMap = new HashMap<>();
+    executorMetrics = new BufferedMetrics(metrics);
 
     initializeSource(context, pipeline);
 
@@ -259,9 +262,9 @@ public class ETLWorker extends AbstractWorker {
       // we use identity transformation to simplify executing transformation in pipeline (similar to ETLMapreduce),
       // since we want to emit metrics during write to sink and not during this transformation, we use NoOpMetrics.
       TrackedTransform trackedTransform = new TrackedTransform(identityTransformation,
-                                                               new DefaultStageMetrics(metrics, sinkName),
-                                                               TrackedTransform.RECORDS_IN,
-                                                               null, context.getDataTracer(sinkName));
+                                                               new DefaultStageMetrics(executorMetrics, sinkName),
+                                                               TrackedTransform.RECORDS_IN, null,
+                                                               executorMetrics.buffer(context.getDataTracer(sinkName)));
       transformationMap.put(sinkInfo.getName(), new TransformDetail(trackedTransform, new HashSet<String>()));
       sinks.put(sinkInfo.getName(), sink);
     }
@@ -283,9 +286,9 @@ public class ETLWorker extends AbstractWorker {
           context, metrics, new TxLookupProvider(context), transformName);
         LOG.debug("Transform Class : {}", transform.getClass().getName());
         transform.initialize(transformContext);
-        StageMetrics stageMetrics = new DefaultStageMetrics(metrics, transformName);
+        StageMetrics stageMetrics = new DefaultStageMetrics(executorMetrics, transformName);
         transformDetailMap.put(transformName, new TransformDetail(
-          new TrackedTransform<>(transform, stageMetrics, context.getDataTracer(transformName)),
+          new TrackedTransform<>(transform, stageMetrics, executorMetrics.buffer(context.getDataTracer(transformName))),
           pipeline.getStageOutputs(transformName)));
         if (transformInfo.getErrorDatasetName() != null) {
           tranformIdToDatasetName.put(transformName, transformInfo.getErrorDatasetName());
@@ -343,12 +346,32 @@ public class ETLWorker extends AbstractWorker {
         continue;
       }
 
-      // For each object emitted by the source, invoke the transformExecutor and collect all the data
+      // Invoke the transformExecutor on the batch of objects emitted by the source and collect all the data
       // to be persisted in the sink.
-      for (Object sourceData : sourceEmitter.getEntries()) {
+      Collection<Object> sourceEntries = sourceEmitter.getEntries();
+      if (!sourceEntries.isEmpty()) {
+        TransformResponse transformResponse = null;
         try {
-          TransformResponse transformResponse = transformExecutor.runOneIteration(sourceData);
+          transformResponse = transformExecutor.runBatch(sourceEntries);
+          executorMetrics.commit();
+        } catch (Exception e) {
+          // fall back to one record at a time, so that a bad record doesn't fail the others. The metrics of the
+          // failed batch are dropped, since all of its records are processed again.
+          LOG.warn("Exception thrown while processing a batch of {} records, processing them one by one",
+                   sourceEntries.size(), e);
+          executorMetrics.discard();
+          transformExecutor.resetEmitter();
+          for (Object sourceData : sourceEntries) {
+            try {
+              transformResponse = transformExecutor.runOneIteration(sourceData);
+            } catch (Exception ex) {
+              LOG.warn("Exception thrown while processing data {}", sourceData, ex);
+            }
+            executorMetrics.commit();
+          }
+        }
 
+        if (transformResponse != null) {
           for (Map.Entry<String, Collection<Object>> transformedValues :
             transformResponse.getSinksResults().entrySet()) {
             dataToSink.put(transformedValues.getKey(), new ArrayList<>());
@@ -382,8 +405,6 @@ public class ETLWorker extends AbstractWorker {
               }
             }
           }
-        } catch (Exception e) {
-          LOG.warn("Exception thrown while processing data {}", sourceData, e);
         }
       }
       sourceEmitter.reset();
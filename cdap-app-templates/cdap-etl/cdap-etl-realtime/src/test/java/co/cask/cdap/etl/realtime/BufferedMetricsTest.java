@@ -0,0 +1,120 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.etl.realtime;
+
+import co.cask.cdap.api.metrics.Metrics;
+import co.cask.cdap.api.preview.DataTracer;
+import co.cask.cdap.etl.api.Emitter;
+import co.cask.cdap.etl.api.InvalidEntry;
+import co.cask.cdap.etl.common.DefaultStageMetrics;
+import co.cask.cdap.etl.common.TrackedEmitter;
+import co.cask.cdap.etl.common.TrackedTransform;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for {@link BufferedMetrics}.
+ */
+public class BufferedMetricsTest {
+
+  @Test
+  public void testCommitAndDiscard() {
+    RecordingMetrics delegate = new RecordingMetrics();
+    RecordingDataTracer delegateTracer = new RecordingDataTracer();
+    BufferedMetrics bufferedMetrics = new BufferedMetrics(delegate);
+    Emitter<Object> emitter = new TrackedEmitter<>(new NoopEmitter(), new DefaultStageMetrics(bufferedMetrics, "t"),
+                                                   TrackedTransform.RECORDS_OUT,
+                                                   bufferedMetrics.buffer(delegateTracer));
+
+    // A failed iteration is not counted
+    emitter.emit("a");
+    emitter.emit("b");
+    bufferedMetrics.discard();
+    Assert.assertTrue(delegate.counts.isEmpty());
+    Assert.assertTrue(delegateTracer.traced.isEmpty());
+
+    // The records processed again are counted once committed
+    emitter.emit("a");
+    emitter.emit("b");
+    bufferedMetrics.gauge("g", 1L);
+    bufferedMetrics.gauge("g", 2L);
+    Assert.assertTrue(delegate.counts.isEmpty());
+    bufferedMetrics.commit();
+    Assert.assertEquals(ImmutableMap.of("t.records.out", 2), delegate.counts);
+    Assert.assertEquals(ImmutableMap.of("g", 2L), delegate.gauges);
+    Assert.assertEquals(ImmutableList.of("a", "b"), delegateTracer.traced);
+
+    // Committed metrics are not emitted again
+    bufferedMetrics.commit();
+    Assert.assertEquals(ImmutableMap.of("t.records.out", 2), delegate.counts);
+    Assert.assertEquals(ImmutableList.of("a", "b"), delegateTracer.traced);
+  }
+
+  private static final class RecordingMetrics implements Metrics {
+    private final Map<String, Integer> counts = new HashMap<>();
+    private final Map<String, Long> gauges = new HashMap<>();
+
+    @Override
+    public void count(String metricName, int delta) {
+      Integer count = counts.get(metricName);
+      counts.put(metricName, count == null ? delta : count + delta);
+    }
+
+    @Override
+    public void gauge(String metricName, long value) {
+      gauges.put(metricName, value);
+    }
+  }
+
+  private static final class RecordingDataTracer implements DataTracer {
+    private final List<Object> traced = new ArrayList<>();
+
+    @Override
+    public void info(String propertyName, Object propertyValue) {
+      traced.add(propertyValue);
+    }
+
+    @Override
+    public String getName() {
+      return "t";
+    }
+
+    @Override
+    public boolean isEnabled() {
+      return true;
+    }
+  }
+
+  private static final class NoopEmitter implements Emitter<Object> {
+    @Override
+    public void emit(Object value) {
+      // no-op
+    }
+
+    @Override
+    public void emitError(InvalidEntry<Object> invalidEntry) {
+      // no-op
+    }
+  }
+}
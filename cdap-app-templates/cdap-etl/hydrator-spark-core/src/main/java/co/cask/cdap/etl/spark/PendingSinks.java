@@ -0,0 +1,74 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.etl.spark;
+
+import co.cask.cdap.etl.common.PipelinePhase;
+import com.google.common.collect.Sets;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps track of the sinks downstream of the stages of a pipeline phase that are not yet written, in order to find
+ * out when the data cached or broadcast for a stage can be released. The jobs that write the sinks are the only ones
+ * that read the data of a stage, hence it is no longer needed once all sinks downstream of the stage are written.
+ */
+final class PendingSinks {
+
+  private final PipelinePhase pipelinePhase;
+  // stage -> sinks downstream of it that are not yet written
+  private final Map<String, Set<String>> stageSinks = new LinkedHashMap<>();
+
+  PendingSinks(PipelinePhase pipelinePhase) {
+    this.pipelinePhase = pipelinePhase;
+  }
+
+  /**
+   * Starts tracking the sinks downstream of the given stage. It is a no-op if the stage is already tracked.
+   */
+  void add(String stageName) {
+    if (!stageSinks.containsKey(stageName)) {
+      stageSinks.put(stageName, new HashSet<>(
+        Sets.intersection(pipelinePhase.getDag().accessibleFrom(stageName), pipelinePhase.getSinks())));
+    }
+  }
+
+  /**
+   * Marks the given sink as written.
+   *
+   * @return the tracked stages that have no more sinks to write, in the order they were added. They are no longer
+   *         tracked.
+   */
+  List<String> sinkWritten(String sinkName) {
+    List<String> done = new ArrayList<>();
+    Iterator<Map.Entry<String, Set<String>>> iterator = stageSinks.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<String, Set<String>> entry = iterator.next();
+      entry.getValue().remove(sinkName);
+      if (entry.getValue().isEmpty()) {
+        done.add(entry.getKey());
+        iterator.remove();
+      }
+    }
+    return done;
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.etl.spark;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * Finds the heavy keys of a join or aggregation from a sample of the keyed records, so that the records of these
+ * keys can be spread over multiple partitions with a {@link SaltedKey}. It is configured through runtime arguments:
+ * <ul>
+ *   <li>{@code skew.detection.enabled}: whether to sample the keys. Defaults to {@code false}.</li>
+ *   <li>{@code skew.sample.fraction}: fraction of the records to sample. Defaults to 0.01.</li>
+ *   <li>{@code skew.heavy.key.fraction}: minimum fraction of the sampled records that have a key
+ *       for the key to be heavy. Defaults to 0.05.</li>
+ *   <li>{@code skew.salt.buckets}: number of partitions the records of a heavy key are spread over.
+ *       Defaults to 16.</li>
+ * </ul>
+ */
+public final class SkewDetector {
+
+  public static final String ENABLED = "skew.detection.enabled";
+  public static final String SAMPLE_FRACTION = "skew.sample.fraction";
+  public static final String HEAVY_KEY_FRACTION = "skew.heavy.key.fraction";
+  public static final String SALT_BUCKETS = "skew.salt.buckets";
+
+  // metric for the number of heavy keys found for a stage
+  public static final String HEAVY_KEYS_METRIC = "skew.heavy.keys";
+  // metric for the percentage of sampled records that have the heaviest key of a stage
+  public static final String MAX_KEY_PERCENT_METRIC = "skew.max.key.percent";
+
+  // samples that are too small don't tell anything about the distribution of keys
+  private static final int MIN_SAMPLE_SIZE = 100;
+
+  private final double sampleFraction;
+  private final double heavyKeyFraction;
+  private final int saltBuckets;
+
+  /**
+   * Creates a {@link SkewDetector} from the given runtime arguments.
+   *
+   * @return the detector, or {@code null} if skew detection is not enabled
+   */
+  @Nullable
+  public static SkewDetector create(Map<String, String> arguments) {
+    if (!Boolean.parseBoolean(arguments.get(ENABLED))) {
+      return null;
+    }
+    return new SkewDetector(getDouble(arguments, SAMPLE_FRACTION, 0.01d),
+                            getDouble(arguments, HEAVY_KEY_FRACTION, 0.05d),
+                            arguments.containsKey(SALT_BUCKETS) ? Integer.parseInt(arguments.get(SALT_BUCKETS)) : 16);
+  }
+
+  private SkewDetector(double sampleFraction, double heavyKeyFraction, int saltBuckets) {
+    this.sampleFraction = sampleFraction;
+    this.heavyKeyFraction = heavyKeyFraction;
+    this.saltBuckets = saltBuckets;
+  }
+
+  public double getSampleFraction() {
+    return sampleFraction;
+  }
+
+  public int getSaltBuckets() {
+    return saltBuckets;
+  }
+
+  /**
+   * Returns the heavy keys among the sampled keys.
+   *
+   * @param sampleCounts number of sampled records by key
+   */
+  public <K> Result<K> findHeavyKeys(Map<K, Long> sampleCounts) {
+    long total = 0L;
+    long max = 0L;
+    for (long count : sampleCounts.values()) {
+      total += count;
+      max = Math.max(max, count);
+    }
+    Set<K> heavyKeys = new HashSet<>();
+    if (total >= MIN_SAMPLE_SIZE && saltBuckets > 1) {
+      for (Map.Entry<K, Long> entry : sampleCounts.entrySet()) {
+        if (entry.getValue() >= heavyKeyFraction * total) {
+          heavyKeys.add(entry.getKey());
+        }
+      }
+    }
+    return new Result<>(heavyKeys, total, max);
+  }
+
+  private static double getDouble(Map<String, String> arguments, String key, double defaultValue) {
+    String value = arguments.get(key);
+    return value == null ? defaultValue : Double.parseDouble(value);
+  }
+
+  /**
+   * The heavy keys found in a sample.
+   *
+   * @param <K> type of key
+   */
+  public static final class Result<K> {
+    private final Set<K> heavyKeys;
+    private final long sampleSize;
+    private final long maxKeyCount;
+
+    private Result(Set<K> heavyKeys, long sampleSize, long maxKeyCount) {
+      this.heavyKeys = heavyKeys;
+      this.sampleSize = sampleSize;
+      this.maxKeyCount = maxKeyCount;
+    }
+
+    public Set<K> getHeavyKeys() {
+      return heavyKeys;
+    }
+
+    /**
+     * Returns the number of sampled records that have the heaviest key.
+     */
+    public long getMaxKeyCount() {
+      return maxKeyCount;
+    }
+
+    /**
+     * Returns the percentage of sampled records that have the heaviest key.
+     */
+    public long getMaxKeyPercent() {
+      return sampleSize == 0 ? 0L : 100 * maxKeyCount / sampleSize;
+    }
+  }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -22,7 +22,9 @@ import co.cask.cdap.etl.api.streaming.Windower;
 import co.cask.cdap.etl.planner.StageInfo;
 import org.apache.spark.api.java.function.FlatMapFunction;
 import org.apache.spark.api.java.function.PairFlatMapFunction;
+import org.apache.spark.storage.StorageLevel;
 
+import java.util.Collection;
 import javax.annotation.Nullable;
 
 /**
@@ -41,11 +43,32 @@ public interface SparkCollection<T> {
 
   SparkCollection<T> cache();
 
+  SparkCollection<T> persist(StorageLevel storageLevel);
+
+  /**
+   * Removes the collection from the cache, once it is no longer needed. It is a no-op if the collection cannot be
+   * removed explicitly.
+   */
+  void unpersist();
+
+  /**
+   * Returns the number of bytes of the collection that are cached in memory and on disk.
+   */
+  long getCachedBytes();
+
   SparkCollection<T> union(SparkCollection<T> other);
 
   <U> SparkCollection<U> flatMap(StageInfo stageInfo, FlatMapFunction<T, U> function);
 
-  <U> SparkCollection<U> aggregate(StageInfo stageInfo, @Nullable Integer partitions);
+  /**
+   * Aggregates the collection with the aggregator of the given stage.
+   *
+   * @param partitions the number of partitions to aggregate in, or {@code null} for the default
+   * @param persistedCollections for adding the intermediate collections that are persisted by the aggregation,
+   *                             which have to be unpersisted once the aggregated collection is written
+   */
+  <U> SparkCollection<U> aggregate(StageInfo stageInfo, @Nullable Integer partitions,
+                                   Collection<SparkPairCollection<?, ?>> persistedCollections);
 
   <K, V> SparkPairCollection<K, V> flatMapToPair(PairFlatMapFunction<T, K, V> function);
 
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -19,8 +19,15 @@ package co.cask.cdap.etl.spark;
 import com.google.common.base.Optional;
 import org.apache.spark.api.java.function.FlatMapFunction;
 import org.apache.spark.api.java.function.Function;
+import org.apache.spark.api.java.function.PairFlatMapFunction;
+import org.apache.spark.broadcast.Broadcast;
+import org.apache.spark.storage.StorageLevel;
 import scala.Tuple2;
 
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
 /**
  * Abstraction over different types of spark pair collections with common shared operations on those collections.
  * For example, both JavaPairRDD and JavaPairDStream support the flatMap operation, but don't share a higher interface.
@@ -34,10 +41,40 @@ public interface SparkPairCollection<K, V> {
 
   <C> C getUnderlying();
 
+  SparkPairCollection<K, V> cache();
+
+  SparkPairCollection<K, V> persist(StorageLevel storageLevel);
+
+  /**
+   * Removes the collection from the cache, once it is no longer needed. It is a no-op if the collection cannot be
+   * removed explicitly.
+   */
+  void unpersist();
+
+  /**
+   * Counts the keys of a random sample of this collection.
+   *
+   * @param fraction the expected fraction of entries to sample
+   * @return number of sampled entries by key, which is empty if the collection cannot be sampled
+   */
+  Map<K, Long> sampleKeyCounts(double fraction);
+
   <T> SparkCollection<T> flatMap(FlatMapFunction<Tuple2<K, V>, T> function);
 
   <T> SparkPairCollection<K, T> mapValues(Function<V, T> function);
 
+  <X, Y> SparkPairCollection<X, Y> flatMapToPair(PairFlatMapFunction<Tuple2<K, V>, X, Y> function);
+
+  /**
+   * Broadcasts the values of this collection grouped by key, so that they can be joined in memory.
+   *
+   * @param maxEntries the maximum number of entries to broadcast, or a negative number for no limit
+   * @return the broadcast values, or {@code null} if the collection has more than the maximum number of entries
+   *         or cannot be broadcast
+   */
+  @Nullable
+  Broadcast<Map<K, List<V>>> broadcast(int maxEntries);
+
   <T> SparkPairCollection<K, Tuple2<V, T>> join(SparkPairCollection<K, T> other);
 
   <T> SparkPairCollection<K, Tuple2<V, T>> join(SparkPairCollection<K, T> other, int numPartitions);
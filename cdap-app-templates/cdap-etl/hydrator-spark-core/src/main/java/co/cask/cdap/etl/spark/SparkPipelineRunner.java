@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -18,7 +18,9 @@ package co.cask.cdap.etl.spark;
 
 import co.cask.cdap.api.macro.MacroEvaluator;
 import co.cask.cdap.api.spark.JavaSparkExecutionContext;
+import co.cask.cdap.etl.api.JoinConfig;
 import co.cask.cdap.etl.api.JoinElement;
+import co.cask.cdap.etl.api.StageMetrics;
 import co.cask.cdap.etl.api.Transform;
 import co.cask.cdap.etl.api.batch.BatchAggregator;
 import co.cask.cdap.etl.api.batch.BatchJoiner;
@@ -27,17 +29,31 @@ import co.cask.cdap.etl.api.batch.BatchSink;
 import co.cask.cdap.etl.api.batch.SparkCompute;
 import co.cask.cdap.etl.api.batch.SparkSink;
 import co.cask.cdap.etl.api.streaming.Windower;
+import co.cask.cdap.etl.common.Constants;
 import co.cask.cdap.etl.common.DefaultMacroEvaluator;
+import co.cask.cdap.etl.common.DefaultStageMetrics;
 import co.cask.cdap.etl.common.PipelinePhase;
 import co.cask.cdap.etl.planner.StageInfo;
 import co.cask.cdap.etl.spark.function.BatchSinkFunction;
+import co.cask.cdap.etl.spark.function.BroadcastJoinFunction;
 import co.cask.cdap.etl.spark.function.InitialJoinFunction;
 import co.cask.cdap.etl.spark.function.JoinFlattenFunction;
 import co.cask.cdap.etl.spark.function.LeftJoinFlattenFunction;
 import co.cask.cdap.etl.spark.function.OuterJoinFlattenFunction;
 import co.cask.cdap.etl.spark.function.PluginFunctionContext;
+import co.cask.cdap.etl.spark.function.SaltKeyFunction;
 import co.cask.cdap.etl.spark.function.TransformFunction;
-
+import co.cask.cdap.etl.spark.function.UnsaltKeyFunction;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableSet;
+import org.apache.spark.broadcast.Broadcast;
+import org.apache.spark.storage.StorageLevel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -50,6 +66,12 @@ import java.util.Set;
  */
 public abstract class SparkPipelineRunner {
 
+  private static final Logger LOG = LoggerFactory.getLogger(SparkPipelineRunner.class);
+  // runtime argument for the storage level of stages that are cached because they have multiple consumers
+  private static final String CACHE_STORAGE_LEVEL = "stage.cache.storage.level";
+  // metric for the number of bytes cached for a stage
+  private static final String CACHED_BYTES_METRIC = "cache.bytes";
+
   protected abstract SparkCollection<Object> getSource(StageInfo stageInfo) throws Exception;
 
 
@@ -75,6 +97,15 @@ public abstract class SparkPipelineRunner {
       throw new IllegalStateException("Pipeline phase has no connections.");
     }
 
+    String storageLevelStr = sec.getRuntimeArguments().get(CACHE_STORAGE_LEVEL);
+    StorageLevel cacheStorageLevel =
+      storageLevelStr == null ? StorageLevel.MEMORY_ONLY() : StorageLevel.fromString(storageLevelStr);
+    // stages that have cached data or resources to release once the sinks downstream of them are written
+    PendingSinks pendingSinks = new PendingSinks(pipelinePhase);
+    Set<String> cachedStages = new HashSet<>();
+    // joiner or aggregator stage -> broadcast variables and collections persisted by the stage
+    Map<String, StageResources> stageResources = new HashMap<>();
+
     for (String stageName : pipelinePhase.getDag().getTopologicalOrder()) {
       StageInfo stageInfo = pipelinePhase.getStage(stageName);
       String pluginType = stageInfo.getPluginType();
@@ -130,7 +161,10 @@ public abstract class SparkPipelineRunner {
       } else if (BatchAggregator.PLUGIN_TYPE.equals(pluginType)) {
 
         Integer partitions = stagePartitions.get(stageName);
-        stageData = stageData.aggregate(stageInfo, partitions);
+        List<SparkPairCollection<?, ?>> persistedCollections = new ArrayList<>();
+        stageData = stageData.aggregate(stageInfo, partitions, persistedCollections);
+        stageResources.put(stageName, new StageResources(Collections.<Broadcast<?>>emptyList(), persistedCollections));
+        pendingSinks.add(stageName);
 
       } else if (BatchJoiner.PLUGIN_TYPE.equals(pluginType)) {
 
@@ -146,14 +180,33 @@ public abstract class SparkPipelineRunner {
           preJoinStreams.put(inputStage, addJoinKey(stageInfo, inputStage, inputStream));
         }
 
+        JoinConfig joinConfig = joiner.getJoinConfig();
+        Set<String> requiredInputs = ImmutableSet.copyOf(joinConfig.getRequiredInputs());
+        List<SparkPairCollection<?, ?>> persistedInputs = new ArrayList<>();
+        Map<String, Broadcast<Map<Object, List<Object>>>> broadcastInputs =
+          broadcastJoinInputs(stageName, preJoinStreams, requiredInputs,
+                              ImmutableSet.copyOf(joinConfig.getBroadcastInputs()), getBroadcastMaxRecords(sec),
+                              persistedInputs);
+        stageResources.put(stageName, new StageResources(broadcastInputs.values(), persistedInputs));
+        pendingSinks.add(stageName);
+
         Set<String> remainingInputs = new HashSet<>();
         remainingInputs.addAll(inputDataCollections.keySet());
+        remainingInputs.removeAll(broadcastInputs.keySet());
 
         Integer numPartitions = stagePartitions.get(stageName);
 
+        SkewDetector skewDetector = SkewDetector.create(sec.getRuntimeArguments());
+        boolean salted = skewDetector != null &&
+          saltHeavyJoinKeys(stageName, preJoinStreams, requiredInputs, remainingInputs, skewDetector,
+                            new DefaultStageMetrics(sec.getMetrics(), stageName), persistedInputs);
+
         SparkPairCollection<Object, List<JoinElement<Object>>> joinedInputs = null;
         // inner join on required inputs
-        for (final String inputStageName : joiner.getJoinConfig().getRequiredInputs()) {
+        for (final String inputStageName : requiredInputs) {
+          if (broadcastInputs.containsKey(inputStageName)) {
+            continue;
+          }
           SparkPairCollection<Object, Object> preJoinCollection = preJoinStreams.get(inputStageName);
 
           if (joinedInputs == null) {
@@ -196,6 +249,19 @@ public abstract class SparkPipelineRunner {
           throw new IllegalStateException("There are no inputs into join stage " + stageName);
         }
 
+        if (salted) {
+          joinedInputs = unsalt(joinedInputs);
+        }
+
+        // in memory join on broadcast inputs, which is an inner join for required inputs and a left outer join
+        // for non-required inputs
+        for (Map.Entry<String, Broadcast<Map<Object, List<Object>>>> broadcastInput : broadcastInputs.entrySet()) {
+          String inputStageName = broadcastInput.getKey();
+          joinedInputs = joinedInputs.flatMapToPair(
+            new BroadcastJoinFunction<>(inputStageName, broadcastInput.getValue(),
+                                        requiredInputs.contains(inputStageName)));
+        }
+
         stageData = mergeJoinResults(stageInfo, joinedInputs).cache();
 
       } else if (Windower.PLUGIN_TYPE.equals(pluginType)) {
@@ -208,15 +274,178 @@ public abstract class SparkPipelineRunner {
                                                       stageName, pluginType));
       }
 
-      if (shouldCache(pipelinePhase, stageInfo)) {
-        stageData = stageData.cache();
+      if (shouldCache(pipelinePhase, stageInfo) && !StorageLevel.NONE().equals(cacheStorageLevel)) {
+        stageData = stageData.persist(cacheStorageLevel);
+        cachedStages.add(stageName);
+        pendingSinks.add(stageName);
       }
       stageDataCollections.put(stageName, stageData);
+
+      if (pipelinePhase.getSinks().contains(stageName)) {
+        for (String doneStage : pendingSinks.sinkWritten(stageName)) {
+          if (cachedStages.remove(doneStage)) {
+            releaseCachedStage(doneStage, stageDataCollections.get(doneStage), sec);
+          }
+          StageResources resources = stageResources.remove(doneStage);
+          if (resources != null) {
+            resources.release();
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes a cached stage from the cache. Before that, the number of bytes cached for the stage is emitted as a
+   * metric.
+   */
+  private void releaseCachedStage(String stageName, SparkCollection<Object> stageData,
+                                  JavaSparkExecutionContext sec) {
+    long cachedBytes = stageData.getCachedBytes();
+    new DefaultStageMetrics(sec.getMetrics(), stageName).gauge(CACHED_BYTES_METRIC, cachedBytes);
+    LOG.debug("Removing stage '{}' from the cache, which used {} bytes.", stageName, cachedBytes);
+    stageData.unpersist();
+  }
+
+  /**
+   * Broadcasts the join inputs that are declared as broadcast by the joiner or that have no more than the given
+   * number of records. At least one required input is never broadcast, so that the inputs that are not broadcast
+   * contain all the keys of the join result. Hence nothing is broadcast for outer joins without required inputs.
+   * <p/>
+   * An input that is not declared is persisted before its size is checked, since the check computes part of it.
+   * If it turns out to be too big to broadcast, the persisted input replaces it in the given pre-join collections,
+   * so that its records are neither computed nor counted again when it is shuffled.
+   *
+   * @param maxRecords the maximum number of records of an input that is not declared to broadcast it, or zero to
+   *                   only broadcast the declared inputs
+   * @param persistedInputs for adding the inputs that are persisted and not broadcast, which have to be unpersisted
+   *                        once the join result is written
+   * @return the broadcast values by input stage name
+   */
+  @VisibleForTesting
+  static Map<String, Broadcast<Map<Object, List<Object>>>> broadcastJoinInputs(
+    String stageName, Map<String, SparkPairCollection<Object, Object>> preJoinStreams, Set<String> requiredInputs,
+    Set<String> declaredInputs, int maxRecords, Collection<SparkPairCollection<?, ?>> persistedInputs) {
+
+    Map<String, Broadcast<Map<Object, List<Object>>>> broadcastInputs = new HashMap<>();
+    // try non-required inputs first, as broadcasting them doesn't reduce the number of required inputs to shuffle
+    List<String> inputs = new ArrayList<>();
+    for (String inputStageName : preJoinStreams.keySet()) {
+      if (!requiredInputs.contains(inputStageName)) {
+        inputs.add(inputStageName);
+      }
+    }
+    inputs.addAll(requiredInputs);
+
+    int requiredShuffled = requiredInputs.size();
+    for (String inputStageName : inputs) {
+      boolean required = requiredInputs.contains(inputStageName);
+      boolean declared = declaredInputs.contains(inputStageName);
+      if (requiredShuffled == 0 || (required && requiredShuffled == 1) || (!declared && maxRecords <= 0)) {
+        continue;
+      }
+      Broadcast<Map<Object, List<Object>>> broadcast;
+      if (declared) {
+        broadcast = preJoinStreams.get(inputStageName).broadcast(-1);
+      } else {
+        SparkPairCollection<Object, Object> persistedInput =
+          preJoinStreams.get(inputStageName).persist(StorageLevel.MEMORY_AND_DISK());
+        broadcast = persistedInput.broadcast(maxRecords);
+        if (broadcast == null) {
+          preJoinStreams.put(inputStageName, persistedInput);
+          persistedInputs.add(persistedInput);
+        } else {
+          persistedInput.unpersist();
+        }
+      }
+      if (broadcast == null) {
+        continue;
+      }
+      LOG.debug("Joining input '{}' of stage '{}' in memory.", inputStageName, stageName);
+      broadcastInputs.put(inputStageName, broadcast);
+      if (required) {
+        requiredShuffled--;
+      }
+    }
+    return broadcastInputs;
+  }
+
+  /**
+   * Samples the required join inputs that are shuffled to find heavy keys. If there are any, the records of the
+   * heavy keys of the input that has the heaviest key are spread over multiple partitions with salts, while
+   * the records of the heavy keys of the other shuffled inputs are replicated with every salt. Only a required input
+   * can be spread, otherwise the replicated records of a preserved input would show up in the result once per salt.
+   *
+   * @param persistedInputs for adding the inputs that are persisted to sample them, which have to be unpersisted once
+   *                        the join result is written
+   * @return whether the join keys of the shuffled inputs were salted
+   */
+  private boolean saltHeavyJoinKeys(String stageName, Map<String, SparkPairCollection<Object, Object>> preJoinStreams,
+                                    Set<String> requiredInputs, Set<String> shuffledInputs,
+                                    SkewDetector skewDetector, StageMetrics stageMetrics,
+                                    Collection<SparkPairCollection<?, ?>> persistedInputs) {
+    if (shuffledInputs.size() < 2) {
+      return false;
+    }
+
+    String spreadInput = null;
+    SkewDetector.Result<Object> spreadResult = null;
+    for (String inputStageName : shuffledInputs) {
+      if (!requiredInputs.contains(inputStageName)) {
+        continue;
+      }
+      // cache the input so that the records sampled are not computed again by the join
+      SparkPairCollection<Object, Object> preJoinStream = preJoinStreams.get(inputStageName).cache();
+      preJoinStreams.put(inputStageName, preJoinStream);
+      persistedInputs.add(preJoinStream);
+      SkewDetector.Result<Object> result =
+        skewDetector.findHeavyKeys(preJoinStream.sampleKeyCounts(skewDetector.getSampleFraction()));
+      if (spreadResult == null || result.getMaxKeyCount() > spreadResult.getMaxKeyCount()) {
+        spreadInput = inputStageName;
+        spreadResult = result;
+      }
+    }
+    if (spreadResult == null) {
+      return false;
+    }
+
+    Set<Object> heavyKeys = spreadResult.getHeavyKeys();
+    stageMetrics.gauge(SkewDetector.HEAVY_KEYS_METRIC, heavyKeys.size());
+    stageMetrics.gauge(SkewDetector.MAX_KEY_PERCENT_METRIC, spreadResult.getMaxKeyPercent());
+    if (heavyKeys.isEmpty()) {
+      return false;
+    }
+
+    LOG.debug("Spreading {} heavy keys of input '{}' of stage '{}' over {} partitions.",
+              heavyKeys.size(), spreadInput, stageName, skewDetector.getSaltBuckets());
+    for (String inputStageName : shuffledInputs) {
+      SaltKeyFunction<Object, Object> saltFunction =
+        new SaltKeyFunction<>(heavyKeys, skewDetector.getSaltBuckets(), !inputStageName.equals(spreadInput));
+      preJoinStreams.put(inputStageName, SparkPipelineRunner.<Object>asObjectKeys(
+        preJoinStreams.get(inputStageName).flatMapToPair(saltFunction)));
     }
+    return true;
+  }
+
+  @SuppressWarnings("unchecked")
+  private <V> SparkPairCollection<Object, V> unsalt(SparkPairCollection<Object, V> collection) {
+    SparkPairCollection<SaltedKey<Object>, V> saltedCollection = (SparkPairCollection) collection;
+    return asObjectKeys(saltedCollection.flatMapToPair(new UnsaltKeyFunction<Object, V>()));
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <V> SparkPairCollection<Object, V> asObjectKeys(SparkPairCollection<?, V> collection) {
+    return (SparkPairCollection<Object, V>) collection;
+  }
+
+  private int getBroadcastMaxRecords(JavaSparkExecutionContext sec) {
+    String maxRecords = sec.getRuntimeArguments().get(Constants.JOIN_BROADCAST_MAX_RECORDS);
+    return maxRecords == null ? Constants.DEFAULT_JOIN_BROADCAST_MAX_RECORDS : Integer.parseInt(maxRecords);
   }
 
   // return whether this stage should be cached to avoid recomputation
-  private boolean shouldCache(PipelinePhase pipelinePhase, StageInfo stageInfo) {
+  @VisibleForTesting
+  static boolean shouldCache(PipelinePhase pipelinePhase, StageInfo stageInfo) {
 
     // cache this RDD if it has multiple outputs,
     // otherwise computation of each output may trigger recomputing this stage
@@ -236,4 +465,28 @@ public abstract class SparkPipelineRunner {
 
     return false;
   }
+
+  /**
+   * The broadcast variables and the persisted collections of a joiner or aggregator stage, which are released once
+   * all sinks downstream of the stage are written.
+   */
+  private static final class StageResources {
+    private final Collection<? extends Broadcast<?>> broadcasts;
+    private final Collection<? extends SparkPairCollection<?, ?>> persistedCollections;
+
+    private StageResources(Collection<? extends Broadcast<?>> broadcasts,
+                           Collection<? extends SparkPairCollection<?, ?>> persistedCollections) {
+      this.broadcasts = broadcasts;
+      this.persistedCollections = persistedCollections;
+    }
+
+    private void release() {
+      for (Broadcast<?> broadcast : broadcasts) {
+        broadcast.destroy();
+      }
+      for (SparkPairCollection<?, ?> persistedCollection : persistedCollections) {
+        persistedCollection.unpersist();
+      }
+    }
+  }
 }
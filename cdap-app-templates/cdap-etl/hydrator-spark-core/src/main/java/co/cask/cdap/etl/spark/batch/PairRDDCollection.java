@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -25,8 +25,17 @@ import org.apache.spark.api.java.JavaPairRDD;
 import org.apache.spark.api.java.JavaSparkContext;
 import org.apache.spark.api.java.function.FlatMapFunction;
 import org.apache.spark.api.java.function.Function;
+import org.apache.spark.api.java.function.PairFlatMapFunction;
+import org.apache.spark.broadcast.Broadcast;
+import org.apache.spark.storage.StorageLevel;
 import scala.Tuple2;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
 /**
  * Implementation of {@link SparkCollection} that is backed by a JavaPairRDD.
  *
@@ -55,6 +64,31 @@ public class PairRDDCollection<K, V> implements SparkPairCollection<K, V> {
     return pairRDD;
   }
 
+  @Override
+  public SparkPairCollection<K, V> cache() {
+    return wrap(pairRDD.cache());
+  }
+
+  @Override
+  public SparkPairCollection<K, V> persist(StorageLevel storageLevel) {
+    return wrap(pairRDD.persist(storageLevel));
+  }
+
+  @Override
+  public void unpersist() {
+    pairRDD.unpersist(false);
+  }
+
+  @Override
+  public Map<K, Long> sampleKeyCounts(double fraction) {
+    Map<K, Long> counts = new HashMap<>();
+    // the counts are scala Longs, which are Objects from Java
+    for (Map.Entry<K, ?> entry : pairRDD.sample(false, fraction).countByKey().entrySet()) {
+      counts.put(entry.getKey(), ((Number) entry.getValue()).longValue());
+    }
+    return counts;
+  }
+
   @Override
   public <T> SparkCollection<T> flatMap(FlatMapFunction<Tuple2<K, V>, T> function) {
     return new RDDCollection<>(sec, jsc, datasetContext, sinkFactory, pairRDD.flatMap(function));
@@ -65,6 +99,31 @@ public class PairRDDCollection<K, V> implements SparkPairCollection<K, V> {
     return wrap(pairRDD.mapValues(function));
   }
 
+  @Override
+  public <X, Y> SparkPairCollection<X, Y> flatMapToPair(PairFlatMapFunction<Tuple2<K, V>, X, Y> function) {
+    return wrap(pairRDD.flatMapToPair(function));
+  }
+
+  @Nullable
+  @Override
+  public Broadcast<Map<K, List<V>>> broadcast(int maxEntries) {
+    // take one more entry than the maximum to find out if the collection is too big, without collecting all of it
+    List<Tuple2<K, V>> entries = maxEntries < 0 ? pairRDD.collect() : pairRDD.take(maxEntries + 1);
+    if (maxEntries >= 0 && entries.size() > maxEntries) {
+      return null;
+    }
+    Map<K, List<V>> values = new HashMap<>();
+    for (Tuple2<K, V> entry : entries) {
+      List<V> keyValues = values.get(entry._1());
+      if (keyValues == null) {
+        keyValues = new ArrayList<>();
+        values.put(entry._1(), keyValues);
+      }
+      keyValues.add(entry._2());
+    }
+    return jsc.broadcast(values);
+  }
+
   @SuppressWarnings("unchecked")
   @Override
   public <T> SparkPairCollection<K, Tuple2<V, T>> join(SparkPairCollection<K, T> other) {
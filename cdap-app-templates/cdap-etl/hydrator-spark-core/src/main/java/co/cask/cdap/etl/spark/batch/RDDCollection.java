@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -18,24 +18,37 @@ package co.cask.cdap.etl.spark.batch;
 
 import co.cask.cdap.api.data.DatasetContext;
 import co.cask.cdap.api.spark.JavaSparkExecutionContext;
+import co.cask.cdap.etl.api.Combiner;
+import co.cask.cdap.etl.api.StageMetrics;
 import co.cask.cdap.etl.api.batch.SparkCompute;
 import co.cask.cdap.etl.api.batch.SparkExecutionPluginContext;
 import co.cask.cdap.etl.api.batch.SparkSink;
 import co.cask.cdap.etl.api.streaming.Windower;
+import co.cask.cdap.etl.common.CombiningBuffer;
+import co.cask.cdap.etl.common.DefaultStageMetrics;
 import co.cask.cdap.etl.planner.StageInfo;
+import co.cask.cdap.etl.spark.SkewDetector;
 import co.cask.cdap.etl.spark.SparkCollection;
 import co.cask.cdap.etl.spark.SparkPairCollection;
 import co.cask.cdap.etl.spark.function.AggregatorAggregateFunction;
+import co.cask.cdap.etl.spark.function.AggregatorCombineFunction;
 import co.cask.cdap.etl.spark.function.AggregatorGroupByFunction;
+import co.cask.cdap.etl.spark.function.AggregatorSaltedCombineFunction;
 import co.cask.cdap.etl.spark.function.CountingFunction;
+import co.cask.cdap.etl.spark.function.KeyFilterFunction;
 import co.cask.cdap.etl.spark.function.PluginFunctionContext;
+import co.cask.cdap.etl.spark.function.SaltKeyFunction;
 import org.apache.spark.api.java.JavaPairRDD;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
 import org.apache.spark.api.java.function.FlatMapFunction;
 import org.apache.spark.api.java.function.PairFlatMapFunction;
+import org.apache.spark.storage.RDDInfo;
+import org.apache.spark.storage.StorageLevel;
 import scala.Tuple2;
 
+import java.util.Collection;
+import java.util.Set;
 import javax.annotation.Nullable;
 
 
@@ -71,6 +84,26 @@ public class RDDCollection<T> implements SparkCollection<T> {
     return wrap(rdd.cache());
   }
 
+  @Override
+  public SparkCollection<T> persist(StorageLevel storageLevel) {
+    return wrap(rdd.persist(storageLevel));
+  }
+
+  @Override
+  public void unpersist() {
+    rdd.unpersist(false);
+  }
+
+  @Override
+  public long getCachedBytes() {
+    for (RDDInfo rddInfo : jsc.sc().getRDDStorageInfo()) {
+      if (rddInfo.id() == rdd.id()) {
+        return rddInfo.memSize() + rddInfo.diskSize();
+      }
+    }
+    return 0L;
+  }
+
   @SuppressWarnings("unchecked")
   @Override
   public SparkCollection<T> union(SparkCollection<T> other) {
@@ -83,12 +116,22 @@ public class RDDCollection<T> implements SparkCollection<T> {
   }
 
   @Override
-  public <U> SparkCollection<U> aggregate(StageInfo stageInfo, @Nullable Integer partitions) {
+  public <U> SparkCollection<U> aggregate(StageInfo stageInfo, @Nullable Integer partitions,
+                                          Collection<SparkPairCollection<?, ?>> persistedCollections) {
     PluginFunctionContext pluginFunctionContext = new PluginFunctionContext(stageInfo, sec);
     PairFlatMapFunction<T, Object, T> groupByFunction =
       new AggregatorGroupByFunction<>(pluginFunctionContext);
 
-    JavaPairRDD<Object, T> keyedCollection = rdd.flatMapToPair(groupByFunction);
+    // values are partially aggregated within each partition before the shuffle if the aggregator is a Combiner
+    JavaPairRDD<Object, T> keyedCollection = rdd.flatMapToPair(groupByFunction).mapPartitionsToPair(
+      new AggregatorCombineFunction<Object, T>(pluginFunctionContext,
+                                               CombiningBuffer.getBufferSize(sec.getRuntimeArguments())), true);
+
+    SkewDetector skewDetector = SkewDetector.create(sec.getRuntimeArguments());
+    if (skewDetector != null) {
+      keyedCollection = combineHeavyKeys(stageInfo, pluginFunctionContext, keyedCollection, skewDetector,
+                                         persistedCollections);
+    }
 
     JavaPairRDD<Object, Iterable<T>> groupedCollection = partitions == null ?
       keyedCollection.groupByKey() : keyedCollection.groupByKey(partitions);
@@ -99,6 +142,43 @@ public class RDDCollection<T> implements SparkCollection<T> {
     return wrap(groupedCollection.flatMap(aggregateFunction));
   }
 
+  /**
+   * Samples the keyed records of an aggregator that is a {@link Combiner} to find heavy keys. The records of the
+   * heavy keys are spread over multiple partitions with salts and combined there, so that the partitions
+   * that aggregate the heavy keys only get a few combined records. Aggregators that are not combiners need all the
+   * values of a group together, hence their records are not sampled.
+   */
+  private JavaPairRDD<Object, T> combineHeavyKeys(StageInfo stageInfo, PluginFunctionContext pluginFunctionContext,
+                                                  JavaPairRDD<Object, T> keyedCollection, SkewDetector skewDetector,
+                                                  Collection<SparkPairCollection<?, ?>> persistedCollections) {
+    // the plugin class tells whether the aggregator is a combiner, without creating and configuring an instance
+    if (!Combiner.class.isAssignableFrom(sec.getPluginContext().loadPluginClass(stageInfo.getName()))) {
+      return keyedCollection;
+    }
+
+    // cache the keyed records so that the records sampled are not computed again by the aggregation
+    JavaPairRDD<Object, T> cachedCollection = keyedCollection.cache();
+    PairRDDCollection<Object, T> cachedPairCollection =
+      new PairRDDCollection<>(sec, jsc, datasetContext, sinkFactory, cachedCollection);
+    persistedCollections.add(cachedPairCollection);
+    SkewDetector.Result<Object> result =
+      skewDetector.findHeavyKeys(cachedPairCollection.sampleKeyCounts(skewDetector.getSampleFraction()));
+    StageMetrics stageMetrics = new DefaultStageMetrics(sec.getMetrics(), stageInfo.getName());
+    stageMetrics.gauge(SkewDetector.HEAVY_KEYS_METRIC, result.getHeavyKeys().size());
+    stageMetrics.gauge(SkewDetector.MAX_KEY_PERCENT_METRIC, result.getMaxKeyPercent());
+
+    Set<Object> heavyKeys = result.getHeavyKeys();
+    if (heavyKeys.isEmpty()) {
+      return cachedCollection;
+    }
+    JavaPairRDD<Object, T> combinedHeavyKeys = cachedCollection
+      .filter(new KeyFilterFunction<Object, T>(heavyKeys, true))
+      .flatMapToPair(new SaltKeyFunction<Object, T>(heavyKeys, skewDetector.getSaltBuckets(), false))
+      .groupByKey()
+      .flatMapToPair(new AggregatorSaltedCombineFunction<Object, T>(pluginFunctionContext));
+    return cachedCollection.filter(new KeyFilterFunction<Object, T>(heavyKeys, false)).union(combinedHeavyKeys);
+  }
+
   @Override
   public <K, V> SparkPairCollection<K, V> flatMapToPair(PairFlatMapFunction<T, K, V> function) {
     return new PairRDDCollection<>(sec, jsc, datasetContext, sinkFactory, rdd.flatMapToPair(function));
@@ -0,0 +1,146 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.etl.spark.function;
+
+import co.cask.cdap.api.dataset.lib.KeyValue;
+import co.cask.cdap.etl.api.Combiner;
+import co.cask.cdap.etl.api.Destroyable;
+import co.cask.cdap.etl.api.Emitter;
+import co.cask.cdap.etl.api.InvalidEntry;
+import co.cask.cdap.etl.api.batch.BatchAggregator;
+import co.cask.cdap.etl.common.CombiningBuffer;
+import co.cask.cdap.etl.common.Destroyables;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import org.apache.spark.api.java.function.PairFlatMapFunction;
+import scala.Tuple2;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+/**
+ * Function that uses a BatchAggregator that is a {@link Combiner} to partially aggregate the grouped values of a
+ * partition before they are shuffled. Values are buffered with a {@link CombiningBuffer} and combined lazily as the
+ * returned iterable is consumed. If the aggregator is not a {@link Combiner}, the partition is returned unchanged.
+ * The aggregator is destroyed once the partition is fully consumed, or when combining fails.
+ * <p/>
+ * Spark's combineByKey is not used because its functions are not given the group key, which the {@link Combiner}
+ * requires.
+ *
+ * @param <GROUP_KEY> type of group key
+ * @param <GROUP_VAL> type of group value
+ */
+public class AggregatorCombineFunction<GROUP_KEY, GROUP_VAL>
+  implements PairFlatMapFunction<Iterator<Tuple2<GROUP_KEY, GROUP_VAL>>, GROUP_KEY, GROUP_VAL> {
+  private final PluginFunctionContext pluginFunctionContext;
+  private final int bufferSize;
+
+  public AggregatorCombineFunction(PluginFunctionContext pluginFunctionContext, int bufferSize) {
+    this.pluginFunctionContext = pluginFunctionContext;
+    this.bufferSize = bufferSize;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public Iterable<Tuple2<GROUP_KEY, GROUP_VAL>> call(final Iterator<Tuple2<GROUP_KEY, GROUP_VAL>> input)
+    throws Exception {
+    BatchAggregator<GROUP_KEY, GROUP_VAL, ?> aggregator = pluginFunctionContext.createPlugin();
+    if (!(aggregator instanceof Combiner)) {
+      return new SingleUseIterable<>(input);
+    }
+    try {
+      aggregator.initialize(pluginFunctionContext.createBatchRuntimeContext());
+    } catch (Exception e) {
+      Destroyables.destroyQuietly(aggregator);
+      throw e;
+    }
+    CombiningBuffer<GROUP_KEY, GROUP_VAL> buffer =
+      new CombiningBuffer<>((Combiner<GROUP_KEY, GROUP_VAL>) aggregator, bufferSize);
+    return new SingleUseIterable<>(new CombiningIterator<>(input, buffer, aggregator));
+  }
+
+  /**
+   * Iterator that buffers the input and emits the combined values whenever the buffer is full. The combiner is
+   * destroyed once the iterator reaches the end of the input or fails.
+   */
+  @VisibleForTesting
+  static final class CombiningIterator<K, V> extends AbstractIterator<Tuple2<K, V>>
+    implements Emitter<KeyValue<K, V>> {
+    private final Iterator<Tuple2<K, V>> input;
+    private final CombiningBuffer<K, V> buffer;
+    private final Destroyable combiner;
+    private final Deque<Tuple2<K, V>> combined;
+
+    CombiningIterator(Iterator<Tuple2<K, V>> input, CombiningBuffer<K, V> buffer, Destroyable combiner) {
+      this.input = input;
+      this.buffer = buffer;
+      this.combiner = combiner;
+      this.combined = new ArrayDeque<>();
+    }
+
+    @Override
+    protected Tuple2<K, V> computeNext() {
+      try {
+        while (combined.isEmpty()) {
+          if (input.hasNext()) {
+            Tuple2<K, V> entry = input.next();
+            if (buffer.add(entry._1(), entry._2())) {
+              buffer.flush(this);
+            }
+          } else if (!buffer.isEmpty()) {
+            buffer.flush(this);
+          } else {
+            Destroyables.destroyQuietly(combiner);
+            return endOfData();
+          }
+        }
+      } catch (Exception e) {
+        Destroyables.destroyQuietly(combiner);
+        throw Throwables.propagate(e);
+      }
+      return combined.poll();
+    }
+
+    @Override
+    public void emit(KeyValue<K, V> value) {
+      combined.add(new Tuple2<>(value.getKey(), value.getValue()));
+    }
+
+    @Override
+    public void emitError(InvalidEntry<KeyValue<K, V>> invalidEntry) {
+      // combined values are never emitted as errors
+    }
+  }
+
+  /**
+   * Iterable over an iterator, which can only be iterated once, as Spark does with the result of this function.
+   */
+  private static final class SingleUseIterable<T> implements Iterable<T> {
+    private final Iterator<T> iterator;
+
+    SingleUseIterable(Iterator<T> iterator) {
+      this.iterator = iterator;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+      return iterator;
+    }
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.etl.spark.function;
+
+import co.cask.cdap.etl.api.Combiner;
+import co.cask.cdap.etl.api.batch.BatchAggregator;
+import co.cask.cdap.etl.common.DefaultEmitter;
+import co.cask.cdap.etl.spark.SaltedKey;
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.spark.api.java.function.PairFlatMapFunction;
+import scala.Tuple2;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Function that uses a BatchAggregator that is a {@link Combiner} to combine the values of a salted group, which
+ * holds part of the values of a heavy group. The combined values are emitted with the group key without the salt,
+ * so that they can be grouped again and aggregated.
+ * Non-serializable fields are lazily created since this is used in a Spark closure.
+ *
+ * @param <GROUP_KEY> type of group key
+ * @param <GROUP_VAL> type of group value
+ */
+public class AggregatorSaltedCombineFunction<GROUP_KEY, GROUP_VAL>
+  implements PairFlatMapFunction<Tuple2<SaltedKey<GROUP_KEY>, Iterable<GROUP_VAL>>, GROUP_KEY, GROUP_VAL> {
+  private final PluginFunctionContext pluginFunctionContext;
+  private transient Combiner<GROUP_KEY, GROUP_VAL> combiner;
+  private transient DefaultEmitter<GROUP_VAL> emitter;
+
+  public AggregatorSaltedCombineFunction(PluginFunctionContext pluginFunctionContext) {
+    this.pluginFunctionContext = pluginFunctionContext;
+  }
+
+  @VisibleForTesting
+  AggregatorSaltedCombineFunction(Combiner<GROUP_KEY, GROUP_VAL> combiner) {
+    this.pluginFunctionContext = null;
+    this.combiner = combiner;
+    this.emitter = new DefaultEmitter<>();
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public Iterable<Tuple2<GROUP_KEY, GROUP_VAL>> call(Tuple2<SaltedKey<GROUP_KEY>, Iterable<GROUP_VAL>> input)
+    throws Exception {
+    if (combiner == null) {
+      BatchAggregator<GROUP_KEY, GROUP_VAL, ?> aggregator = pluginFunctionContext.createPlugin();
+      aggregator.initialize(pluginFunctionContext.createBatchRuntimeContext());
+      combiner = (Combiner<GROUP_KEY, GROUP_VAL>) aggregator;
+      emitter = new DefaultEmitter<>();
+    }
+    emitter.reset();
+    GROUP_KEY groupKey = input._1().getKey();
+    combiner.combine(groupKey, input._2().iterator(), emitter);
+    List<Tuple2<GROUP_KEY, GROUP_VAL>> output = new ArrayList<>();
+    for (GROUP_VAL value : emitter.getEntries()) {
+      output.add(new Tuple2<>(groupKey, value));
+    }
+    return output;
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.etl.spark.function;
+
+import co.cask.cdap.etl.api.JoinElement;
+import org.apache.spark.api.java.function.PairFlatMapFunction;
+import org.apache.spark.broadcast.Broadcast;
+import scala.Tuple2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Joins the join elements of a key with the broadcast records of an input stage that have the same key, without
+ * shuffling. If the input stage is required, keys that have no broadcast records are dropped, otherwise they are
+ * kept as is, the same as with an inner join and a left outer join.
+ *
+ * @param <K> type of join key
+ * @param <T> type of object to join
+ */
+public class BroadcastJoinFunction<K, T>
+  implements PairFlatMapFunction<Tuple2<K, List<JoinElement<T>>>, K, List<JoinElement<T>>> {
+  private final String inputStageName;
+  private final Broadcast<Map<K, List<T>>> inputRecords;
+  private final boolean required;
+
+  public BroadcastJoinFunction(String inputStageName, Broadcast<Map<K, List<T>>> inputRecords, boolean required) {
+    this.inputStageName = inputStageName;
+    this.inputRecords = inputRecords;
+    this.required = required;
+  }
+
+  @Override
+  public Iterable<Tuple2<K, List<JoinElement<T>>>> call(Tuple2<K, List<JoinElement<T>>> in) throws Exception {
+    List<T> records = inputRecords.value().get(in._1());
+    if (records == null) {
+      return required ? Collections.<Tuple2<K, List<JoinElement<T>>>>emptyList() : Collections.singletonList(in);
+    }
+    List<Tuple2<K, List<JoinElement<T>>>> output = new ArrayList<>(records.size());
+    for (T record : records) {
+      // every output needs its own list, since the join elements of a key are joined with every broadcast record
+      List<JoinElement<T>> joined = new ArrayList<>(in._2().size() + 1);
+      joined.addAll(in._2());
+      joined.add(new JoinElement<>(inputStageName, record));
+      output.add(new Tuple2<>(in._1(), joined));
+    }
+    return output;
+  }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.etl.spark.function;
+
+import org.apache.spark.api.java.function.Function;
+import scala.Tuple2;
+
+import java.util.Set;
+
+/**
+ * Filters the entries of a pair collection by whether their key is in a set of keys.
+ *
+ * @param <K> type of key
+ * @param <V> type of value
+ */
+public class KeyFilterFunction<K, V> implements Function<Tuple2<K, V>, Boolean> {
+  private final Set<K> keys;
+  private final boolean included;
+
+  /**
+   * @param keys the set of keys
+   * @param included whether to keep the entries with a key in the set, or the entries with a key not in the set
+   */
+  public KeyFilterFunction(Set<K> keys, boolean included) {
+    this.keys = keys;
+    this.included = included;
+  }
+
+  @Override
+  public Boolean call(Tuple2<K, V> input) throws Exception {
+    return keys.contains(input._1()) == included;
+  }
+}
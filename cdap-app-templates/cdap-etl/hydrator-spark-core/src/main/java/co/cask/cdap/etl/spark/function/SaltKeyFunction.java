@@ -0,0 +1,82 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.etl.spark.function;
+
+import co.cask.cdap.etl.spark.SaltedKey;
+import org.apache.spark.TaskContext;
+import org.apache.spark.api.java.function.PairFlatMapFunction;
+import scala.Tuple2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Salts the keys of a pair collection. Records of a heavy key are either given the salts in round-robin order, so that
+ * they are spread over multiple partitions even if they are equal, or replicated with every salt, so that they are
+ * joined with the records of the key in every partition. Records of other keys are given a salt of zero.
+ * <p/>
+ * The salt of a record is derived from the id of the partition and the position of the record among the records of
+ * heavy keys in the partition. The function is deserialized for every task, hence the positions start over when a
+ * partition is computed again, for example after a failed task, and each record still ends up in exactly one
+ * partition, as long as the partition is computed in the same order.
+ *
+ * @param <K> type of key
+ * @param <V> type of value
+ */
+public class SaltKeyFunction<K, V> implements PairFlatMapFunction<Tuple2<K, V>, SaltedKey<K>, V> {
+  private final Set<K> heavyKeys;
+  private final int saltBuckets;
+  private final boolean replicate;
+  // Transient fields are reset when the function is deserialized for a task
+  private transient boolean started;
+  private transient int nextSalt;
+
+  public SaltKeyFunction(Set<K> heavyKeys, int saltBuckets, boolean replicate) {
+    this.heavyKeys = heavyKeys;
+    this.saltBuckets = saltBuckets;
+    this.replicate = replicate;
+  }
+
+  @Override
+  public Iterable<Tuple2<SaltedKey<K>, V>> call(Tuple2<K, V> input) throws Exception {
+    K key = input._1();
+    if (!heavyKeys.contains(key)) {
+      return Collections.singletonList(new Tuple2<>(new SaltedKey<>(key, 0), input._2()));
+    }
+    if (replicate) {
+      List<Tuple2<SaltedKey<K>, V>> output = new ArrayList<>(saltBuckets);
+      for (int salt = 0; salt < saltBuckets; salt++) {
+        output.add(new Tuple2<>(new SaltedKey<>(key, salt), input._2()));
+      }
+      return output;
+    }
+    return Collections.singletonList(new Tuple2<>(new SaltedKey<>(key, nextSalt()), input._2()));
+  }
+
+  private int nextSalt() {
+    if (!started) {
+      // Partitions start at different salts, so that partitions with few records of heavy keys are spread too
+      nextSalt = TaskContext.getPartitionId() % saltBuckets;
+      started = true;
+    }
+    int salt = nextSalt;
+    nextSalt = (nextSalt + 1) % saltBuckets;
+    return salt;
+  }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.etl.spark.function;
+
+import co.cask.cdap.etl.spark.SaltedKey;
+import org.apache.spark.api.java.function.PairFlatMapFunction;
+import scala.Tuple2;
+
+import java.util.Collections;
+
+/**
+ * Removes the salt added by a {@link SaltKeyFunction} from the keys of a pair collection.
+ *
+ * @param <K> type of key
+ * @param <V> type of value
+ */
+public class UnsaltKeyFunction<K, V> implements PairFlatMapFunction<Tuple2<SaltedKey<K>, V>, K, V> {
+
+  @Override
+  public Iterable<Tuple2<K, V>> call(Tuple2<SaltedKey<K>, V> input) throws Exception {
+    return Collections.singletonList(new Tuple2<>(input._1().getKey(), input._2()));
+  }
+}
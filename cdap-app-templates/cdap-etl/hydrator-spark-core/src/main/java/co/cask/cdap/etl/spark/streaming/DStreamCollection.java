@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -37,10 +37,12 @@ import co.cask.cdap.etl.spark.streaming.function.StreamingBatchSinkFunction;
 import org.apache.spark.api.java.JavaSparkContext;
 import org.apache.spark.api.java.function.FlatMapFunction;
 import org.apache.spark.api.java.function.PairFlatMapFunction;
+import org.apache.spark.storage.StorageLevel;
 import org.apache.spark.streaming.Durations;
 import org.apache.spark.streaming.api.java.JavaDStream;
 import org.apache.spark.streaming.api.java.JavaPairDStream;
 
+import java.util.Collection;
 import javax.annotation.Nullable;
 
 /**
@@ -69,6 +71,21 @@ public class DStreamCollection<T> implements SparkCollection<T> {
     return wrap(stream.cache());
   }
 
+  @Override
+  public SparkCollection<T> persist(StorageLevel storageLevel) {
+    return wrap(stream.persist(storageLevel));
+  }
+
+  @Override
+  public void unpersist() {
+    // the RDDs generated for each batch are removed from the cache by Spark Streaming
+  }
+
+  @Override
+  public long getCachedBytes() {
+    return 0L;
+  }
+
   @SuppressWarnings("unchecked")
   @Override
   public SparkCollection<T> union(SparkCollection<T> other) {
@@ -86,7 +103,8 @@ public class DStreamCollection<T> implements SparkCollection<T> {
   }
 
   @Override
-  public <U> SparkCollection<U> aggregate(StageInfo stageInfo, @Nullable Integer partitions) {
+  public <U> SparkCollection<U> aggregate(StageInfo stageInfo, @Nullable Integer partitions,
+                                          Collection<SparkPairCollection<?, ?>> persistedCollections) {
     DynamicDriverContext dynamicDriverContext = new DynamicDriverContext(stageInfo, sec);
     JavaPairDStream<Object, T> keyedCollection =
       stream.transformToPair(new DynamicAggregatorGroupBy<Object, T>(dynamicDriverContext));
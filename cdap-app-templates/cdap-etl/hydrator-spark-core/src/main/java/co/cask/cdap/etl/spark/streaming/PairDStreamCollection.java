@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -22,9 +22,17 @@ import co.cask.cdap.etl.spark.SparkPairCollection;
 import com.google.common.base.Optional;
 import org.apache.spark.api.java.function.FlatMapFunction;
 import org.apache.spark.api.java.function.Function;
+import org.apache.spark.api.java.function.PairFlatMapFunction;
+import org.apache.spark.broadcast.Broadcast;
+import org.apache.spark.storage.StorageLevel;
 import org.apache.spark.streaming.api.java.JavaPairDStream;
 import scala.Tuple2;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
 /**
  * JavaPairDStream backed {@link SparkPairCollection}
  *
@@ -46,6 +54,27 @@ public class PairDStreamCollection<K, V> implements SparkPairCollection<K, V> {
     return pairStream;
   }
 
+  @Override
+  public SparkPairCollection<K, V> cache() {
+    return wrap(pairStream.cache());
+  }
+
+  @Override
+  public SparkPairCollection<K, V> persist(StorageLevel storageLevel) {
+    return wrap(pairStream.persist(storageLevel));
+  }
+
+  @Override
+  public void unpersist() {
+    // the RDDs generated for each batch are removed from the cache by Spark Streaming
+  }
+
+  @Override
+  public Map<K, Long> sampleKeyCounts(double fraction) {
+    // the contents of a stream change with every batch, hence it cannot be sampled up front
+    return Collections.emptyMap();
+  }
+
   @Override
   public <T> SparkCollection<T> flatMap(FlatMapFunction<Tuple2<K, V>, T> function) {
     return new DStreamCollection<>(sec, pairStream.flatMap(function));
@@ -56,6 +85,18 @@ public class PairDStreamCollection<K, V> implements SparkPairCollection<K, V> {
     return wrap(pairStream.mapValues(function));
   }
 
+  @Override
+  public <X, Y> SparkPairCollection<X, Y> flatMapToPair(PairFlatMapFunction<Tuple2<K, V>, X, Y> function) {
+    return wrap(pairStream.flatMapToPair(function));
+  }
+
+  @Nullable
+  @Override
+  public Broadcast<Map<K, List<V>>> broadcast(int maxEntries) {
+    // the contents of a stream change with every batch, hence it is always joined with a shuffle
+    return null;
+  }
+
   @SuppressWarnings("unchecked")
   @Override
   public <T> SparkPairCollection<K, Tuple2<V, T>> join(SparkPairCollection<K, T> other) {
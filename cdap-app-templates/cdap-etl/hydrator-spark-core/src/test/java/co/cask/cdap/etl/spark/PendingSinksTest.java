@@ -0,0 +1,92 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.etl.spark;
+
+import co.cask.cdap.etl.api.Transform;
+import co.cask.cdap.etl.api.batch.BatchSink;
+import co.cask.cdap.etl.api.batch.BatchSource;
+import co.cask.cdap.etl.common.PipelinePhase;
+import co.cask.cdap.etl.planner.StageInfo;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+
+/**
+ * Tests for {@link PendingSinks} and for the choice of the stages that are cached by {@link SparkPipelineRunner}.
+ */
+public class PendingSinksTest {
+
+  /*
+       source1 --> t1 --> sink1
+                    |
+                    |---> t2 --> sink2
+                          ^
+       source2 -----------|
+   */
+  private static final PipelinePhase PHASE = PipelinePhase.builder(
+    ImmutableSet.of(BatchSource.PLUGIN_TYPE, Transform.PLUGIN_TYPE, BatchSink.PLUGIN_TYPE))
+    .addStage(StageInfo.builder("source1", BatchSource.PLUGIN_TYPE).addOutputs("t1").build())
+    .addStage(StageInfo.builder("source2", BatchSource.PLUGIN_TYPE).addOutputs("t2").build())
+    .addStage(StageInfo.builder("t1", Transform.PLUGIN_TYPE).addInputs("source1").addOutputs("sink1", "t2").build())
+    .addStage(StageInfo.builder("t2", Transform.PLUGIN_TYPE).addInputs("t1", "source2").addOutputs("sink2").build())
+    .addStage(StageInfo.builder("sink1", BatchSink.PLUGIN_TYPE).addInputs("t1").build())
+    .addStage(StageInfo.builder("sink2", BatchSink.PLUGIN_TYPE).addInputs("t2").build())
+    .addConnection("source1", "t1")
+    .addConnection("source2", "t2")
+    .addConnection("t1", "sink1")
+    .addConnection("t1", "t2")
+    .addConnection("t2", "sink2")
+    .build();
+
+  @Test
+  public void testShouldCache() {
+    // stages with multiple outputs, and inputs of stages with multiple inputs, are cached
+    Assert.assertTrue(SparkPipelineRunner.shouldCache(PHASE, PHASE.getStage("t1")));
+    Assert.assertTrue(SparkPipelineRunner.shouldCache(PHASE, PHASE.getStage("source2")));
+    Assert.assertFalse(SparkPipelineRunner.shouldCache(PHASE, PHASE.getStage("source1")));
+    Assert.assertFalse(SparkPipelineRunner.shouldCache(PHASE, PHASE.getStage("t2")));
+    Assert.assertFalse(SparkPipelineRunner.shouldCache(PHASE, PHASE.getStage("sink1")));
+  }
+
+  @Test
+  public void testSinkWritten() {
+    PendingSinks pendingSinks = new PendingSinks(PHASE);
+    pendingSinks.add("t1");
+    pendingSinks.add("source2");
+    pendingSinks.add("t2");
+
+    // t1 is still read by the job that writes sink2
+    Assert.assertEquals(Collections.emptyList(), pendingSinks.sinkWritten("sink1"));
+    pendingSinks.add("t1");
+    Assert.assertEquals(ImmutableList.of("t1", "source2", "t2"), pendingSinks.sinkWritten("sink2"));
+    // stages are only done once
+    Assert.assertEquals(Collections.emptyList(), pendingSinks.sinkWritten("sink2"));
+  }
+
+  @Test
+  public void testOrderOfSinks() {
+    PendingSinks pendingSinks = new PendingSinks(PHASE);
+    pendingSinks.add("t1");
+    pendingSinks.add("t2");
+
+    Assert.assertEquals(ImmutableList.of("t2"), pendingSinks.sinkWritten("sink2"));
+    Assert.assertEquals(ImmutableList.of("t1"), pendingSinks.sinkWritten("sink1"));
+  }
+}
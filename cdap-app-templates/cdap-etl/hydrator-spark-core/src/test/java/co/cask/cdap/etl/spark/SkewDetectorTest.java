@@ -0,0 +1,79 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package co.cask.cdap.etl.spark;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+
+/**
+ * Tests for {@link SkewDetector}.
+ */
+public class SkewDetectorTest {
+
+  @Test
+  public void testCreate() {
+    Assert.assertNull(SkewDetector.create(ImmutableMap.<String, String>of()));
+    Assert.assertNull(SkewDetector.create(ImmutableMap.of(SkewDetector.ENABLED, "false")));
+
+    SkewDetector detector = SkewDetector.create(ImmutableMap.of(SkewDetector.ENABLED, "true",
+                                                                SkewDetector.SAMPLE_FRACTION, "0.5",
+                                                                SkewDetector.SALT_BUCKETS, "8"));
+    Assert.assertNotNull(detector);
+    Assert.assertEquals(0.5d, detector.getSampleFraction(), 0d);
+    Assert.assertEquals(8, detector.getSaltBuckets());
+  }
+
+  @Test
+  public void testFindHeavyKeys() {
+    SkewDetector detector = SkewDetector.create(ImmutableMap.of(SkewDetector.ENABLED, "true",
+                                                                SkewDetector.HEAVY_KEY_FRACTION, "0.2"));
+    Map<String, Long> sampleCounts = ImmutableMap.of("a", 60L, "b", 25L, "c", 10L, "d", 5L);
+
+    SkewDetector.Result<String> result = detector.findHeavyKeys(sampleCounts);
+    Assert.assertEquals(ImmutableSet.of("a", "b"), result.getHeavyKeys());
+    Assert.assertEquals(60L, result.getMaxKeyCount());
+    Assert.assertEquals(60L, result.getMaxKeyPercent());
+  }
+
+  @Test
+  public void testNoHeavyKeys() {
+    SkewDetector detector = SkewDetector.create(ImmutableMap.of(SkewDetector.ENABLED, "true"));
+
+    // a sample that is too small doesn't tell which keys are heavy
+    SkewDetector.Result<String> result = detector.findHeavyKeys(ImmutableMap.of("a", 10L, "b", 1L));
+    Assert.assertTrue(result.getHeavyKeys().isEmpty());
+    Assert.assertEquals(90L, result.getMaxKeyPercent());
+
+    // evenly distributed keys are not heavy
+    ImmutableMap.Builder<String, Long> sampleCounts = ImmutableMap.builder();
+    for (int i = 0; i < 100; i++) {
+      sampleCounts.put("key" + i, 10L);
+    }
+    Assert.assertTrue(detector.findHeavyKeys(sampleCounts.build()).getHeavyKeys().isEmpty());
+
+    // keys cannot be spread over a single salt bucket
+    SkewDetector singleBucket = SkewDetector.create(ImmutableMap.of(SkewDetector.ENABLED, "true",
+                                                                    SkewDetector.SALT_BUCKETS, "1"));
+    Assert.assertTrue(singleBucket.findHeavyKeys(ImmutableMap.of("a", 1000L)).getHeavyKeys().isEmpty());
+
+    // an empty sample
+    Assert.assertEquals(0L, detector.findHeavyKeys(ImmutableMap.<String, Long>of()).getMaxKeyPercent());
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package co.cask.cdap.etl.spark;
+
+import co.cask.cdap.etl.spark.batch.PairRDDCollection;
+import com.google.common.collect.ImmutableSet;
+import org.apache.spark.api.java.JavaPairRDD;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.broadcast.Broadcast;
+import org.apache.spark.storage.StorageLevel;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import scala.Tuple2;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for the choice between broadcasting and shuffling the inputs of a join in {@link SparkPipelineRunner}.
+ */
+public class SparkPipelineRunnerTest {
+
+  private static JavaSparkContext jsc;
+
+  @BeforeClass
+  public static void init() {
+    jsc = new JavaSparkContext("local", SparkPipelineRunnerTest.class.getSimpleName());
+  }
+
+  @AfterClass
+  public static void finish() {
+    jsc.stop();
+  }
+
+  @Test
+  public void testBroadcastBySize() {
+    Map<String, SparkPairCollection<Object, Object>> preJoinStreams = new HashMap<>();
+    preJoinStreams.put("big", createInput(100));
+    preJoinStreams.put("small", createInput(5));
+    preJoinStreams.put("optional", createInput(3));
+    List<SparkPairCollection<?, ?>> persistedInputs = new ArrayList<>();
+
+    Map<String, Broadcast<Map<Object, List<Object>>>> broadcastInputs = SparkPipelineRunner.broadcastJoinInputs(
+      "joiner", preJoinStreams, ImmutableSet.of("big", "small"), ImmutableSet.<String>of(), 10, persistedInputs);
+
+    // the big input is shuffled, which is persisted so that it isn't computed again after checking its size
+    Assert.assertEquals(ImmutableSet.of("small", "optional"), broadcastInputs.keySet());
+    Assert.assertEquals(5, broadcastInputs.get("small").value().size());
+    Assert.assertEquals(1, persistedInputs.size());
+    Assert.assertSame(persistedInputs.get(0), preJoinStreams.get("big"));
+    Assert.assertEquals(StorageLevel.MEMORY_AND_DISK(), getStorageLevel(preJoinStreams.get("big")));
+    // the broadcast inputs are not persisted
+    Assert.assertEquals(StorageLevel.NONE(), getStorageLevel(preJoinStreams.get("small")));
+  }
+
+  @Test
+  public void testLastRequiredInputShuffled() {
+    Map<String, SparkPairCollection<Object, Object>> preJoinStreams = new HashMap<>();
+    preJoinStreams.put("a", createInput(3));
+    preJoinStreams.put("b", createInput(3));
+    List<SparkPairCollection<?, ?>> persistedInputs = new ArrayList<>();
+
+    Map<String, Broadcast<Map<Object, List<Object>>>> broadcastInputs = SparkPipelineRunner.broadcastJoinInputs(
+      "joiner", preJoinStreams, ImmutableSet.of("a", "b"), ImmutableSet.of("a", "b"), 10, persistedInputs);
+
+    // one required input is always shuffled, even if it is declared as broadcast
+    Assert.assertEquals(ImmutableSet.of("a"), broadcastInputs.keySet());
+    Assert.assertTrue(persistedInputs.isEmpty());
+  }
+
+  @Test
+  public void testDeclaredOnlyByDefault() {
+    SparkPairCollection<Object, Object> small = createInput(3);
+    SparkPairCollection<Object, Object> declared = createInput(100);
+    Map<String, SparkPairCollection<Object, Object>> preJoinStreams = new HashMap<>();
+    preJoinStreams.put("big", createInput(100));
+    preJoinStreams.put("small", small);
+    preJoinStreams.put("declared", declared);
+    List<SparkPairCollection<?, ?>> persistedInputs = new ArrayList<>();
+
+    Map<String, Broadcast<Map<Object, List<Object>>>> broadcastInputs = SparkPipelineRunner.broadcastJoinInputs(
+      "joiner", preJoinStreams, ImmutableSet.of("big"), ImmutableSet.of("declared"), 0, persistedInputs);
+
+    // without a maximum number of records, only the declared input is broadcast, and no input is probed
+    Assert.assertEquals(ImmutableSet.of("declared"), broadcastInputs.keySet());
+    Assert.assertEquals(100, broadcastInputs.get("declared").value().size());
+    Assert.assertSame(small, preJoinStreams.get("small"));
+    Assert.assertTrue(persistedInputs.isEmpty());
+  }
+
+  private SparkPairCollection<Object, Object> createInput(int size) {
+    List<Tuple2<Object, Object>> records = new ArrayList<>();
+    for (int i = 0; i < size; i++) {
+      records.add(new Tuple2<Object, Object>(i, "record" + i));
+    }
+    return new PairRDDCollection<>(null, jsc, null, null, jsc.parallelizePairs(records));
+  }
+
+  private StorageLevel getStorageLevel(SparkPairCollection<Object, Object> collection) {
+    return collection.<JavaPairRDD<Object, Object>>getUnderlying().getStorageLevel();
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.etl.spark.function;
+
+import co.cask.cdap.etl.api.Combiner;
+import co.cask.cdap.etl.api.Destroyable;
+import co.cask.cdap.etl.api.Emitter;
+import co.cask.cdap.etl.common.CombiningBuffer;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Assert;
+import org.junit.Test;
+import scala.Tuple2;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for the combining of a partition by {@link AggregatorCombineFunction}.
+ */
+public class AggregatorCombineFunctionTest {
+
+  @Test
+  public void testCombine() {
+    SumCombiner combiner = new SumCombiner();
+    List<Tuple2<String, Long>> input = new ArrayList<>();
+    for (long i = 0; i < 10; i++) {
+      input.add(new Tuple2<>(i % 2 == 0 ? "even" : "odd", i));
+    }
+
+    Iterator<Tuple2<String, Long>> combined = new AggregatorCombineFunction.CombiningIterator<>(
+      input.iterator(), new CombiningBuffer<>(combiner, 4), combiner);
+
+    Map<String, Long> sums = new HashMap<>();
+    int count = 0;
+    while (combined.hasNext()) {
+      Assert.assertFalse(combiner.destroyed);
+      Tuple2<String, Long> entry = combined.next();
+      Long sum = sums.get(entry._1());
+      sums.put(entry._1(), sum == null ? entry._2() : sum + entry._2());
+      count++;
+    }
+    // the buffer is flushed after 4, 8 and 10 values, each time with two groups
+    Assert.assertEquals(6, count);
+    Assert.assertEquals(ImmutableMap.of("even", 20L, "odd", 25L), sums);
+    // the combiner is destroyed once the partition is consumed
+    Assert.assertTrue(combiner.destroyed);
+  }
+
+  @Test
+  public void testDestroyOnFailure() {
+    SumCombiner combiner = new SumCombiner();
+    List<Tuple2<String, Long>> input = ImmutableList.of(new Tuple2<>("a", 1L), new Tuple2<>("a", -1L));
+
+    Iterator<Tuple2<String, Long>> combined = new AggregatorCombineFunction.CombiningIterator<>(
+      input.iterator(), new CombiningBuffer<>(combiner, 10), combiner);
+    try {
+      combined.hasNext();
+      Assert.fail("Expected the combiner to fail on a negative value");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    Assert.assertTrue(combiner.destroyed);
+  }
+
+  /**
+   * Combiner that sums the values of a group and fails on negative values.
+   */
+  private static final class SumCombiner implements Combiner<String, Long>, Destroyable {
+    private boolean destroyed;
+
+    @Override
+    public void combine(String groupKey, Iterator<Long> groupValues, Emitter<Long> emitter) {
+      long sum = 0;
+      while (groupValues.hasNext()) {
+        long value = groupValues.next();
+        if (value < 0) {
+          throw new IllegalArgumentException("Negative value " + value);
+        }
+        sum += value;
+      }
+      emitter.emit(sum);
+    }
+
+    @Override
+    public void destroy() {
+      destroyed = true;
+    }
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package co.cask.cdap.etl.spark.function;
+
+import co.cask.cdap.etl.api.Combiner;
+import co.cask.cdap.etl.api.Emitter;
+import co.cask.cdap.etl.spark.SaltedKey;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Assert;
+import org.junit.Test;
+import scala.Tuple2;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for the combining of the salted groups of heavy keys by {@link AggregatorSaltedCombineFunction}.
+ */
+public class AggregatorSaltedCombineFunctionTest {
+
+  @Test
+  public void testCombineHeavyKey() throws Exception {
+    SaltKeyFunction<String, Long> saltFunction = new SaltKeyFunction<>(ImmutableSet.of("heavy"), 4, false);
+    AggregatorSaltedCombineFunction<String, Long> combineFunction =
+      new AggregatorSaltedCombineFunction<>(new SumCombiner());
+
+    // salt and group the records, as the shuffle before combining does
+    Map<SaltedKey<String>, List<Long>> saltedGroups = new HashMap<>();
+    for (long i = 0; i < 100; i++) {
+      for (Tuple2<SaltedKey<String>, Long> salted : saltFunction.call(new Tuple2<>("heavy", i))) {
+        List<Long> values = saltedGroups.get(salted._1());
+        if (values == null) {
+          values = new ArrayList<>();
+          saltedGroups.put(salted._1(), values);
+        }
+        values.add(salted._2());
+      }
+    }
+    Assert.assertEquals(4, saltedGroups.size());
+
+    // each salted group is combined into a single value of the unsalted key
+    long sum = 0;
+    int count = 0;
+    for (Map.Entry<SaltedKey<String>, List<Long>> saltedGroup : saltedGroups.entrySet()) {
+      for (Tuple2<String, Long> combined :
+        combineFunction.call(new Tuple2<SaltedKey<String>, Iterable<Long>>(saltedGroup.getKey(),
+                                                                             saltedGroup.getValue()))) {
+        Assert.assertEquals("heavy", combined._1());
+        sum += combined._2();
+        count++;
+      }
+    }
+    Assert.assertEquals(4, count);
+    Assert.assertEquals(4950L, sum);
+  }
+
+  @Test
+  public void testCombineMultipleValues() throws Exception {
+    AggregatorSaltedCombineFunction<String, Long> combineFunction =
+      new AggregatorSaltedCombineFunction<>(new SumCombiner());
+    List<Long> values = new ArrayList<>();
+    values.add(-1L);
+    values.add(3L);
+    values.add(-2L);
+
+    // the combiner can emit multiple values for a group, which are all emitted with the unsalted key
+    Map<Long, String> output = new HashMap<>();
+    for (Tuple2<String, Long> combined :
+      combineFunction.call(new Tuple2<SaltedKey<String>, Iterable<Long>>(new SaltedKey<>("k", 2), values))) {
+      output.put(combined._2(), combined._1());
+    }
+    Assert.assertEquals(ImmutableMap.of(-3L, "k", 3L, "k"), output);
+  }
+
+  /**
+   * Combiner that sums the negative and the non-negative values of a group separately.
+   */
+  private static final class SumCombiner implements Combiner<String, Long> {
+
+    @Override
+    public void combine(String groupKey, Iterator<Long> groupValues, Emitter<Long> emitter) {
+      long negativeSum = 0;
+      long sum = 0;
+      boolean negative = false;
+      while (groupValues.hasNext()) {
+        long value = groupValues.next();
+        if (value < 0) {
+          negativeSum += value;
+          negative = true;
+        } else {
+          sum += value;
+        }
+      }
+      if (negative) {
+        emitter.emit(negativeSum);
+      }
+      emitter.emit(sum);
+    }
+  }
+}
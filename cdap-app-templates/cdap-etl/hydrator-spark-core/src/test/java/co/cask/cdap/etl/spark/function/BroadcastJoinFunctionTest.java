@@ -0,0 +1,94 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package co.cask.cdap.etl.spark.function;
+
+import co.cask.cdap.etl.api.JoinElement;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.broadcast.Broadcast;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import scala.Tuple2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for {@link BroadcastJoinFunction}.
+ */
+public class BroadcastJoinFunctionTest {
+
+  private static JavaSparkContext jsc;
+  private static Broadcast<Map<String, List<String>>> broadcast;
+
+  @BeforeClass
+  public static void init() {
+    jsc = new JavaSparkContext("local", BroadcastJoinFunctionTest.class.getSimpleName());
+    Map<String, List<String>> records = ImmutableMap.<String, List<String>>of(
+      "k1", ImmutableList.of("b1"),
+      "k2", ImmutableList.of("b2", "b3"));
+    broadcast = jsc.broadcast(records);
+  }
+
+  @AfterClass
+  public static void finish() {
+    jsc.stop();
+  }
+
+  @Test
+  public void testRequired() throws Exception {
+    BroadcastJoinFunction<String, String> function = new BroadcastJoinFunction<>("b", broadcast, true);
+
+    // a key with multiple broadcast records is joined with each of them
+    List<List<String>> joined = join(function, "k2", "a2");
+    Assert.assertEquals(ImmutableList.of(ImmutableList.of("a:a2", "b:b2"), ImmutableList.of("a:a2", "b:b3")), joined);
+    Assert.assertEquals(ImmutableList.of(ImmutableList.of("a:a1", "b:b1")), join(function, "k1", "a1"));
+    // a key without broadcast records is dropped
+    Assert.assertTrue(join(function, "k3", "a3").isEmpty());
+  }
+
+  @Test
+  public void testNotRequired() throws Exception {
+    BroadcastJoinFunction<String, String> function = new BroadcastJoinFunction<>("b", broadcast, false);
+
+    Assert.assertEquals(ImmutableList.of(ImmutableList.of("a:a1", "b:b1")), join(function, "k1", "a1"));
+    // a key without broadcast records is kept as is
+    Assert.assertEquals(ImmutableList.of(ImmutableList.of("a:a3")), join(function, "k3", "a3"));
+  }
+
+  /**
+   * Joins a record of stage 'a' with the given key, and returns the joined records as 'stage:record' strings.
+   */
+  private List<List<String>> join(BroadcastJoinFunction<String, String> function,
+                                  String key, String record) throws Exception {
+    List<JoinElement<String>> elements = new ArrayList<>();
+    elements.add(new JoinElement<>("a", record));
+    List<List<String>> joined = new ArrayList<>();
+    for (Tuple2<String, List<JoinElement<String>>> output : function.call(new Tuple2<>(key, elements))) {
+      Assert.assertEquals(key, output._1());
+      List<String> joinedElements = new ArrayList<>();
+      for (JoinElement<String> element : output._2()) {
+        joinedElements.add(element.getStageName() + ":" + element.getInputRecord());
+      }
+      joined.add(joinedElements);
+    }
+    return joined;
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package co.cask.cdap.etl.spark.function;
+
+import co.cask.cdap.etl.spark.SaltedKey;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Assert;
+import org.junit.Test;
+import scala.Tuple2;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for {@link SaltKeyFunction}.
+ */
+public class SaltKeyFunctionTest {
+
+  @Test
+  public void testSpread() throws Exception {
+    SaltKeyFunction<String, Integer> function = new SaltKeyFunction<>(ImmutableSet.of("heavy"), 4, false);
+
+    int[] counts = new int[4];
+    for (int i = 0; i < 100; i++) {
+      // equal records of a heavy key are spread too
+      List<Tuple2<SaltedKey<String>, Integer>> output = call(function, "heavy", 1);
+      Assert.assertEquals(1, output.size());
+      SaltedKey<String> saltedKey = output.get(0)._1();
+      Assert.assertEquals("heavy", saltedKey.getKey());
+      Assert.assertEquals(Integer.valueOf(1), output.get(0)._2());
+      counts[saltedKey.getSalt()]++;
+    }
+    // the records of a heavy key are spread evenly over all salts
+    Assert.assertArrayEquals(new int[] { 25, 25, 25, 25 }, counts);
+  }
+
+  @Test
+  public void testDeterministic() throws Exception {
+    // the records get the same salts when the partition is computed again by a new task, which deserializes
+    // a new instance of the function
+    SaltKeyFunction<String, String> function = new SaltKeyFunction<>(ImmutableSet.of("heavy"), 16, false);
+    SaltKeyFunction<String, String> retryFunction =
+      deserialize(serialize(new SaltKeyFunction<String, String>(ImmutableSet.of("heavy"), 16, false)));
+    for (int i = 0; i < 100; i++) {
+      String value = i % 3 == 0 ? "light" : "heavy";
+      Assert.assertEquals(call(function, value, "value" + i), call(retryFunction, value, "value" + i));
+    }
+    // null values are salted too
+    Assert.assertEquals(1, call(function, "heavy", null).size());
+  }
+
+  @Test
+  public void testReplicate() throws Exception {
+    SaltKeyFunction<String, String> function = new SaltKeyFunction<>(ImmutableSet.of("heavy"), 3, true);
+
+    Assert.assertEquals(ImmutableList.of(new Tuple2<>(new SaltedKey<>("heavy", 0), "v"),
+                                         new Tuple2<>(new SaltedKey<>("heavy", 1), "v"),
+                                         new Tuple2<>(new SaltedKey<>("heavy", 2), "v")),
+                        call(function, "heavy", "v"));
+  }
+
+  @Test
+  public void testLightKey() throws Exception {
+    for (boolean replicate : new boolean[] { true, false }) {
+      SaltKeyFunction<String, String> function = new SaltKeyFunction<>(ImmutableSet.of("heavy"), 3, replicate);
+      Assert.assertEquals(ImmutableList.of(new Tuple2<>(new SaltedKey<>("light", 0), "v")),
+                          call(function, "light", "v"));
+    }
+  }
+
+  private byte[] serialize(Object object) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    try (ObjectOutputStream output = new ObjectOutputStream(os)) {
+      output.writeObject(object);
+    }
+    return os.toByteArray();
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> T deserialize(byte[] bytes) throws Exception {
+    try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+      return (T) input.readObject();
+    }
+  }
+
+  private <V> List<Tuple2<SaltedKey<String>, V>> call(SaltKeyFunction<String, V> function,
+                                                      String key, V value) throws Exception {
+    List<Tuple2<SaltedKey<String>, V>> output = new ArrayList<>();
+    for (Tuple2<SaltedKey<String>, V> entry : function.call(new Tuple2<>(key, value))) {
+      output.add(entry);
+    }
+    return output;
+  }
+}
@@ -512,6 +512,8 @@ public final class Constants {
 
     // Key prefix for retention seconds. The actual key is suffixed by the table resolution.
     public static final String RETENTION_SECONDS = "metrics.data.table.retention.resolution";
+    // Number of seconds the in-memory index of metric tags used for search is trusted before reloading
+    public static final String SEARCH_INDEX_REFRESH_SECONDS = "metrics.search.index.refresh.seconds";
 
     public static final String SERVER_ADDRESS = "metrics.query.bind.address";
     public static final String SERVER_PORT = "metrics.query.bind.port";
@@ -527,6 +529,7 @@ public final class Constants {
     public static final String DEFAULT_METRIC_TABLE_PREFIX = "metrics.v2.table";
     public static final int DEFAULT_TIME_SERIES_TABLE_ROLL_TIME = 3600;
     public static final long DEFAULT_RETENTION_HOURS = 2;
+    public static final long DEFAULT_SEARCH_INDEX_REFRESH_SECONDS = 0;
 
     public static final int DEFAULT_KAFKA_CONSUMER_PERSIST_THRESHOLD = 100;
 
@@ -631,6 +634,11 @@ public final class Constants {
       public static final class Log {
         public static final String PROCESS_DELAY = "log.process.delay";
         public static final String PROCESS_MESSAGES_COUNT = "log.process.message.count";
+        public static final String COMPACTION_FILES_MERGED = "log.compaction.files.merged";
+        public static final String COMPACTION_BYTES_SAVED = "log.compaction.bytes.saved";
+        public static final String ARCHIVE_FILES_WRITTEN = "log.archive.files.written";
+        public static final String APPENDER_DROPPED_EVENTS = "log.appender.dropped.events";
+        public static final String APPENDER_BUFFERED_EVENTS = "log.appender.buffered.events";
       }
     }
 
@@ -51,6 +51,8 @@ import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.SortedSet;
 import javax.annotation.Nullable;
 
@@ -162,6 +164,79 @@ public class DefaultCube implements Cube, MeteredDataset {
          function if needed.
     */
 
+    return query(ImmutableList.of(query)).get(0);
+  }
+
+  /**
+   * Executes a batch of queries. Queries that end up reading the same aggregation in the same resolution with the
+   * same dimension values and have overlapping time ranges are planned together: they share a single scan over the
+   * union of their measures and time ranges, and every scanned fact is then aggregated into the results of the
+   * queries it belongs to.
+   *
+   * @param queries queries to execute
+   * @return results of the queries, in the same order as the given queries
+   */
+  public List<Collection<TimeSeries>> query(List<CubeQuery> queries) {
+    // 1) plan: find aggregation to query and a scan for every query, group queries that read the same rows
+    Map<ScanKey, List<Integer>> scanGroups = Maps.newLinkedHashMap();
+    for (int i = 0; i < queries.size(); i++) {
+      ScanKey scanKey = planScan(queries.get(i));
+      List<Integer> group = scanGroups.get(scanKey);
+      if (group == null) {
+        group = Lists.newArrayList();
+        scanGroups.put(scanKey, group);
+      }
+      group.add(i);
+    }
+
+    // 2) execute scan queries, collecting the results of each query
+    List<Table<Map<String, String>, String, Map<Long, Long>>> resultMaps = Lists.newArrayList();
+    for (int i = 0; i < queries.size(); i++) {
+      resultMaps.add(HashBasedTable.<Map<String, String>, String, Map<Long, Long>>create());
+    }
+    int scans = 0;
+    for (Map.Entry<ScanKey, List<Integer>> scanGroup : scanGroups.entrySet()) {
+      // only queries with overlapping time ranges share a scan
+      for (List<Integer> scanQueries : splitByTimeRange(queries, scanGroup.getValue())) {
+        List<CubeQuery> groupQueries = Lists.newArrayList();
+        List<Table<Map<String, String>, String, Map<Long, Long>>> groupResults = Lists.newArrayList();
+        for (int index : scanQueries) {
+          groupQueries.add(queries.get(index));
+          groupResults.add(resultMaps.get(index));
+        }
+
+        FactScan scan = createScan(scanGroup.getKey(), groupQueries);
+        FactTable table = resolutionToFactTable.get(scanGroup.getKey().resolution);
+        FactScanner scanner = table.scan(scan);
+        try {
+          getTimeSeries(groupQueries, scanner, groupResults);
+        } finally {
+          scanner.close();
+        }
+        scans++;
+      }
+    }
+    incrementMetric("cube.query.scan.count", scans);
+
+    // 3) convert results of each query
+    List<Collection<TimeSeries>> result = Lists.newArrayListWithCapacity(queries.size());
+    for (int i = 0; i < queries.size(); i++) {
+      Table<Map<String, String>, String, Map<Long, Long>> resultMap = resultMaps.get(i);
+      incrementMetric("cube.query.request.success.count", 1);
+      incrementMetric("cube.query.result.size", resultMap.size());
+
+      Collection<TimeSeries> timeSeries = convertToQueryResult(queries.get(i), resultMap);
+      incrementMetric("cube.query.result.timeseries.count", timeSeries.size());
+      result.add(timeSeries);
+    }
+
+    return result;
+  }
+
+  /**
+   * Finds aggregation to execute the given query in and returns the key of the scan to be performed in it.
+   */
+  private ScanKey planScan(CubeQuery query) {
     incrementMetric("cube.query.request.count", 1);
 
     if (!resolutionToFactTable.containsKey(query.getResolution())) {
@@ -204,21 +279,49 @@ public class DefaultCube implements Cube, MeteredDataset {
       dimensionValues.add(new DimensionValue(dimensionName, query.getDimensionValues().get(dimensionName)));
     }
 
-    FactScan scan = new FactScan(query.getStartTs(), query.getEndTs(),
-                                 query.getMeasurements().keySet(), dimensionValues);
-
-    // 3) execute scan query
-    FactTable table = resolutionToFactTable.get(query.getResolution());
-    FactScanner scanner = table.scan(scan);
-    Table<Map<String, String>, String, Map<Long, Long>> resultMap = getTimeSeries(query, scanner);
-
-    incrementMetric("cube.query.request.success.count", 1);
-    incrementMetric("cube.query.result.size", resultMap.size());
+    return new ScanKey(query.getResolution(), dimensionValues);
+  }
 
-    Collection<TimeSeries> timeSeries = convertToQueryResult(query, resultMap);
-    incrementMetric("cube.query.result.timeseries.count", timeSeries.size());
+  /**
+   * Splits the queries of the given indexes into groups of queries with overlapping time ranges.
+   */
+  private List<List<Integer>> splitByTimeRange(final List<CubeQuery> queries, List<Integer> indexes) {
+    List<Integer> sorted = Lists.newArrayList(indexes);
+    Collections.sort(sorted, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer i1, Integer i2) {
+        return Long.compare(queries.get(i1).getStartTs(), queries.get(i2).getStartTs());
+      }
+    });
+
+    List<List<Integer>> groups = Lists.newArrayList();
+    List<Integer> group = null;
+    long groupEndTs = Long.MIN_VALUE;
+    for (int index : sorted) {
+      CubeQuery query = queries.get(index);
+      if (group == null || query.getStartTs() > groupEndTs) {
+        group = Lists.newArrayList();
+        groups.add(group);
+      }
+      group.add(index);
+      groupEndTs = Math.max(groupEndTs, query.getEndTs());
+    }
+    return groups;
+  }
 
-    return timeSeries;
+  /**
+   * Creates a scan that covers measures and time ranges of all given queries.
+   */
+  private FactScan createScan(ScanKey scanKey, List<CubeQuery> queries) {
+    long startTs = Long.MAX_VALUE;
+    long endTs = Long.MIN_VALUE;
+    Set<String> measureNames = Sets.newHashSet();
+    for (CubeQuery query : queries) {
+      startTs = Math.min(startTs, query.getStartTs());
+      endTs = Math.max(endTs, query.getEndTs());
+      measureNames.addAll(query.getMeasurements().keySet());
+    }
+    return new FactScan(startTs, endTs, measureNames, scanKey.dimensionValues);
   }
 
   @Override
@@ -329,75 +432,100 @@ public class DefaultCube implements Cube, MeteredDataset {
     return currentBest;
   }
 
-  private Table<Map<String, String>, String, Map<Long, Long>> getTimeSeries(CubeQuery query, FactScanner scanner) {
-    // {dimension values, measure} -> {time -> value}s
-    Table<Map<String, String>, String, Map<Long, Long>> result = HashBasedTable.create();
-
-    int count = 0;
-    while (scanner.hasNext()) {
+  private void getTimeSeries(List<CubeQuery> queries, FactScanner scanner,
+                             List<Table<Map<String, String>, String, Map<Long, Long>>> results) {
+    // number of records added to the result of each query
+    int[] counts = new int[queries.size()];
+    int completed = 0;
+    // the shared scan reads no more records than the queries would read with a scan each
+    long maxScanned = (long) MAX_RECORDS_TO_SCAN * queries.size();
+    long scanned = 0;
+    while (completed < queries.size() && scanned < maxScanned && scanner.hasNext()) {
       FactScanResult next = scanner.next();
+      scanned++;
       incrementMetric("cube.query.scan.records.count", 1);
 
-      boolean skip = false;
-      // using tree map, as we are using it as a key for a map
-      Map<String, String> seriesDimensions = Maps.newTreeMap();
-      for (String dimensionName : query.getGroupByDimensions()) {
-        // todo: use Map<String, String> instead of List<DimensionValue> into a String, String, everywhere
-        for (DimensionValue dimensionValue : next.getDimensionValues()) {
-          if (dimensionName.equals(dimensionValue.getName())) {
-            if (dimensionValue.getValue() == null) {
-              // Currently, we do NOT return null as grouped by value.
-              // Depending on whether dimension is required or not the records with null value in it may or may not be
-              // in aggregation. At this moment, the choosing of the aggregation for query doesn't look at this, so
-              // potentially null may or may not be included in results, depending on the aggregation selected
-              // querying. We don't want to produce inconsistent results varying due to different aggregations selected,
-              // so don't return nulls in any of those cases.
-              skip = true;
-              continue;
-            }
-            seriesDimensions.put(dimensionName, dimensionValue.getValue());
-            break;
-          }
+      for (int i = 0; i < queries.size(); i++) {
+        CubeQuery query = queries.get(i);
+        if (counts[i] >= MAX_RECORDS_TO_SCAN || !query.getMeasurements().containsKey(next.getMeasureName())) {
+          continue;
+        }
+        if (addToTimeSeries(query, next, results.get(i)) && ++counts[i] >= MAX_RECORDS_TO_SCAN) {
+          completed++;
         }
       }
+    }
+  }
 
-      if (skip) {
-        incrementMetric("cube.query.scan.skipped.count", 1);
-        continue;
+  /**
+   * Adds time values of the scanned fact to the query result.
+   *
+   * @return {@code false} if the fact was skipped or none of its time values is in the time range of the query
+   */
+  private boolean addToTimeSeries(CubeQuery query, FactScanResult next,
+                                  Table<Map<String, String>, String, Map<Long, Long>> result) {
+    boolean skip = false;
+    // using tree map, as we are using it as a key for a map
+    Map<String, String> seriesDimensions = Maps.newTreeMap();
+    for (String dimensionName : query.getGroupByDimensions()) {
+      // todo: use Map<String, String> instead of List<DimensionValue> into a String, String, everywhere
+      for (DimensionValue dimensionValue : next.getDimensionValues()) {
+        if (dimensionName.equals(dimensionValue.getName())) {
+          if (dimensionValue.getValue() == null) {
+            // Currently, we do NOT return null as grouped by value.
+            // Depending on whether dimension is required or not the records with null value in it may or may not be
+            // in aggregation. At this moment, the choosing of the aggregation for query doesn't look at this, so
+            // potentially null may or may not be included in results, depending on the aggregation selected
+            // querying. We don't want to produce inconsistent results varying due to different aggregations selected,
+            // so don't return nulls in any of those cases.
+            skip = true;
+            continue;
+          }
+          seriesDimensions.put(dimensionName, dimensionValue.getValue());
+          break;
+        }
       }
+    }
 
-      for (TimeValue timeValue : next) {
-        Map<Long, Long> timeValues = result.get(seriesDimensions, next.getMeasureName());
-        if (timeValues == null) {
-          result.put(seriesDimensions, next.getMeasureName(), Maps.<Long, Long>newHashMap());
-        }
+    if (skip) {
+      incrementMetric("cube.query.scan.skipped.count", 1);
+      return false;
+    }
 
-        AggregationFunction function = query.getMeasurements().get(next.getMeasureName());
-        if (AggregationFunction.SUM == function) {
-          Long value =  result.get(seriesDimensions, next.getMeasureName()).get(timeValue.getTimestamp());
-          value = value == null ? 0 : value;
-          value += timeValue.getValue();
-          result.get(seriesDimensions, next.getMeasureName()).put(timeValue.getTimestamp(), value);
-        } else if (AggregationFunction.MAX == function) {
-          Long value = result.get(seriesDimensions, next.getMeasureName()).get(timeValue.getTimestamp());
-          value = value != null && value > timeValue.getValue() ? value : timeValue.getValue();
-          result.get(seriesDimensions, next.getMeasureName()).put(timeValue.getTimestamp(), value);
-        } else if (AggregationFunction.MIN == function) {
-          Long value =  result.get(seriesDimensions, next.getMeasureName()).get(timeValue.getTimestamp());
-          value = value != null && value < timeValue.getValue() ? value : timeValue.getValue();
-          result.get(seriesDimensions, next.getMeasureName()).put(timeValue.getTimestamp(), value);
-        } else if (AggregationFunction.LATEST == function) {
-          result.get(seriesDimensions, next.getMeasureName()).put(timeValue.getTimestamp(), timeValue.getValue());
-        } else {
-          // should never happen: developer error
-          throw new RuntimeException("Unknown MeasureType: " + function);
-        }
+    boolean added = false;
+    for (TimeValue timeValue : next) {
+      // scan may be shared with other queries, so it can cover wider time range
+      if (timeValue.getTimestamp() < query.getStartTs() || timeValue.getTimestamp() > query.getEndTs()) {
+        continue;
       }
-      if (++count >= MAX_RECORDS_TO_SCAN) {
-        break;
+      added = true;
+      Map<Long, Long> timeValues = result.get(seriesDimensions, next.getMeasureName());
+      if (timeValues == null) {
+        result.put(seriesDimensions, next.getMeasureName(), Maps.<Long, Long>newHashMap());
+      }
+
+      AggregationFunction function = query.getMeasurements().get(next.getMeasureName());
+      if (AggregationFunction.SUM == function) {
+        Long value =  result.get(seriesDimensions, next.getMeasureName()).get(timeValue.getTimestamp());
+        value = value == null ? 0 : value;
+        value += timeValue.getValue();
+        result.get(seriesDimensions, next.getMeasureName()).put(timeValue.getTimestamp(), value);
+      } else if (AggregationFunction.MAX == function) {
+        Long value = result.get(seriesDimensions, next.getMeasureName()).get(timeValue.getTimestamp());
+        value = value != null && value > timeValue.getValue() ? value : timeValue.getValue();
+        result.get(seriesDimensions, next.getMeasureName()).put(timeValue.getTimestamp(), value);
+      } else if (AggregationFunction.MIN == function) {
+        Long value =  result.get(seriesDimensions, next.getMeasureName()).get(timeValue.getTimestamp());
+        value = value != null && value < timeValue.getValue() ? value : timeValue.getValue();
+        result.get(seriesDimensions, next.getMeasureName()).put(timeValue.getTimestamp(), value);
+      } else if (AggregationFunction.LATEST == function) {
+        result.get(seriesDimensions, next.getMeasureName()).put(timeValue.getTimestamp(), timeValue.getValue());
+      } else {
+        // should never happen: developer error
+        throw new RuntimeException("Unknown MeasureType: " + function);
       }
     }
-    return result;
+    return added;
   }
 
   private Collection<TimeSeries> convertToQueryResult(CubeQuery query,
@@ -444,6 +572,37 @@ public class DefaultCube implements Cube, MeteredDataset {
     }
   }
 
+  /**
+   * Identifies the rows of a fact table that multiple queries read. Queries with the same key share a scan if their
+   * time ranges overlap.
+   */
+  private static final class ScanKey {
+    private final int resolution;
+    private final List<DimensionValue> dimensionValues;
+
+    private ScanKey(int resolution, List<DimensionValue> dimensionValues) {
+      this.resolution = resolution;
+      this.dimensionValues = dimensionValues;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      ScanKey that = (ScanKey) o;
+      return resolution == that.resolution && dimensionValues.equals(that.dimensionValues);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(resolution, dimensionValues);
+    }
+  }
+
   private static final class DimensionValueComparator implements Comparator<DimensionValue> {
     @Override
     public int compare(DimensionValue t1, DimensionValue t2) {
@@ -0,0 +1,347 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.timeseries;
+
+import co.cask.cdap.api.dataset.lib.cube.DimensionValue;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory inverted index of the dimension values stored in a {@link FactTable}. It is used to answer search
+ * requests ({@link FactTable#findSingleDimensionValue} and {@link FactTable#findMeasureNames}) without scanning
+ * fact rows.
+ * <p/>
+ * The index is kept per aggregation group (list of dimension names) and per row timebase. Every distinct
+ * combination of dimension values and measure name within a timebase is given a sequential id, and for every
+ * dimension value a {@link BitSet} of the ids it appears in is maintained. A search intersects the bitmaps of the
+ * values given in the slice and then inspects only the matching combinations.
+ * <p/>
+ * The index of an aggregation group is loaded lazily from the table for a range of timebases and is updated with
+ * the facts written through the owning {@link FactTable}. Since facts can also be written by other processes, the
+ * loaded index is only trusted for the configured refresh interval, after which it is reloaded on the next search.
+ * <p/>
+ * This class is thread safe.
+ */
+final class DimensionValueIndex {
+
+  private final long refreshIntervalMillis;
+  private final int maxEntries;
+  private final ConcurrentMap<List<String>, AggregationIndex> indexes;
+
+  /**
+   * Creates an instance of {@link DimensionValueIndex}.
+   *
+   * @param refreshIntervalSeconds number of seconds a loaded index is used before it gets reloaded from the table
+   * @param maxEntries maximum number of distinct dimension values and measure name combinations to keep per
+   *                   aggregation group. Aggregation groups that exceed it are not indexed.
+   */
+  DimensionValueIndex(long refreshIntervalSeconds, int maxEntries) {
+    this.refreshIntervalMillis = TimeUnit.SECONDS.toMillis(refreshIntervalSeconds);
+    this.maxEntries = maxEntries;
+    this.indexes = Maps.newConcurrentMap();
+  }
+
+  /**
+   * Returns {@code true} if the index for the given aggregation group is loaded, up to date and covers the given
+   * range of timebases; {@code false} if it has to be (re)loaded first.
+   */
+  boolean isAvailable(List<String> dimensionNames, int startTimeBase, int endTimeBase) {
+    AggregationIndex index = indexes.get(dimensionNames);
+    return index != null && index.isAvailable(startTimeBase, endTimeBase, System.currentTimeMillis());
+  }
+
+  /**
+   * Returns {@code true} if the given aggregation group could not be indexed recently because it has too many
+   * distinct dimension values. Searches should not attempt to load it until the refresh interval passes.
+   */
+  boolean isOverflown(List<String> dimensionNames) {
+    AggregationIndex index = indexes.get(dimensionNames);
+    return index != null && index.isOverflown(System.currentTimeMillis());
+  }
+
+  /**
+   * Replaces the index of the given aggregation group with an empty one that covers the given range of timebases
+   * once loaded. Entries should be added with {@link #add} and the load completed with {@link #loaded}.
+   */
+  void startLoading(List<String> dimensionNames, int startTimeBase, int endTimeBase) {
+    indexes.put(ImmutableList.copyOf(dimensionNames),
+                new AggregationIndex(dimensionNames.size(), startTimeBase, endTimeBase));
+  }
+
+  /**
+   * Marks the index of the given aggregation group as loaded.
+   */
+  void loaded(List<String> dimensionNames) {
+    AggregationIndex index = indexes.get(dimensionNames);
+    if (index != null) {
+      index.loaded(System.currentTimeMillis());
+    }
+  }
+
+  /**
+   * Marks the given aggregation group as too big to be indexed, until the refresh interval passes.
+   */
+  void overflown(List<String> dimensionNames) {
+    AggregationIndex index = indexes.get(dimensionNames);
+    if (index != null) {
+      index.overflown(System.currentTimeMillis());
+    }
+  }
+
+  /**
+   * Adds a combination of dimension values and measure name written in the given timebase. It is ignored if
+   * the aggregation group is not indexed.
+   *
+   * @return {@code false} if the aggregation group exceeded the maximum number of entries and is no longer indexed
+   */
+  boolean add(List<DimensionValue> dimensionValues, String measureName, int timeBase) {
+    List<String> dimensionNames = Lists.newArrayListWithCapacity(dimensionValues.size());
+    String[] values = new String[dimensionValues.size()];
+    for (int i = 0; i < values.length; i++) {
+      DimensionValue dimensionValue = dimensionValues.get(i);
+      dimensionNames.add(dimensionValue.getName());
+      values[i] = dimensionValue.getValue();
+    }
+    AggregationIndex index = indexes.get(dimensionNames);
+    if (index == null) {
+      return true;
+    }
+    if (!index.add(values, measureName, timeBase, maxEntries)) {
+      index.overflown(System.currentTimeMillis());
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Drops all indexed data. Should be called when facts are deleted from the table.
+   */
+  void clear() {
+    indexes.clear();
+  }
+
+  /**
+   * Same as {@link FactTable#findSingleDimensionValue}, but answered from the index. The caller must make sure the
+   * index is available for the given aggregation group and timebases.
+   */
+  Set<DimensionValue> findSingleDimensionValue(List<String> allDimensionNames, Map<String, String> dimensionSlice,
+                                               int startTimeBase, int endTimeBase) {
+    List<Integer> dimToFillIndexes = Lists.newArrayList();
+    for (int i = 0; i < allDimensionNames.size(); i++) {
+      if (!dimensionSlice.containsKey(allDimensionNames.get(i))) {
+        dimToFillIndexes.add(i);
+      }
+    }
+
+    Set<DimensionValue> result = Sets.newHashSet();
+    if (dimToFillIndexes.isEmpty()) {
+      return result;
+    }
+
+    AggregationIndex index = indexes.get(allDimensionNames);
+    if (index == null) {
+      return result;
+    }
+    synchronized (index) {
+      for (Bucket bucket : index.buckets.subMap(startTimeBase, true, endTimeBase, true).values()) {
+        BitSet matches = bucket.match(allDimensionNames, dimensionSlice);
+        for (int id = matches.nextSetBit(0); id >= 0; id = matches.nextSetBit(id + 1)) {
+          // same as with scanning, we fill in the first non-null dimension value not defined in the slice
+          String[] values = bucket.values.get(id);
+          for (int dimIndex : dimToFillIndexes) {
+            if (values[dimIndex] != null) {
+              result.add(new DimensionValue(allDimensionNames.get(dimIndex), values[dimIndex]));
+              break;
+            }
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Same as {@link FactTable#findMeasureNames}, but answered from the index. The caller must make sure the
+   * index is available for the given aggregation group and timebases.
+   */
+  Set<String> findMeasureNames(List<String> allDimensionNames, Map<String, String> dimensionSlice,
+                               int startTimeBase, int endTimeBase) {
+    Set<String> result = Sets.newHashSet();
+    AggregationIndex index = indexes.get(allDimensionNames);
+    if (index == null) {
+      return result;
+    }
+    synchronized (index) {
+      for (Bucket bucket : index.buckets.subMap(startTimeBase, true, endTimeBase, true).values()) {
+        BitSet matches = bucket.match(allDimensionNames, dimensionSlice);
+        for (int id = matches.nextSetBit(0); id >= 0; id = matches.nextSetBit(id + 1)) {
+          result.add(bucket.measureNames.get(id));
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Index of a single aggregation group.
+   */
+  private final class AggregationIndex {
+    private final int dimensionCount;
+    private final int startTimeBase;
+    private final int endTimeBase;
+    private final NavigableMap<Integer, Bucket> buckets;
+    private int entries;
+    // time in millis when index was loaded or found to overflow, -1 while loading
+    private long loadTime = -1L;
+    private boolean overflown;
+
+    private AggregationIndex(int dimensionCount, int startTimeBase, int endTimeBase) {
+      this.dimensionCount = dimensionCount;
+      this.startTimeBase = startTimeBase;
+      this.endTimeBase = endTimeBase;
+      this.buckets = Maps.newTreeMap();
+    }
+
+    synchronized boolean isAvailable(int start, int end, long now) {
+      return !overflown && loadTime >= 0 && now - loadTime < refreshIntervalMillis
+        && startTimeBase <= start && end <= endTimeBase;
+    }
+
+    synchronized boolean isOverflown(long now) {
+      return overflown && now - loadTime < refreshIntervalMillis;
+    }
+
+    synchronized void loaded(long now) {
+      if (!overflown) {
+        loadTime = now;
+      }
+    }
+
+    synchronized void overflown(long now) {
+      overflown = true;
+      loadTime = now;
+      // free up the memory, the index is not going to be used
+      buckets.clear();
+    }
+
+    synchronized boolean add(String[] values, String measureName, int timeBase, int maxEntries) {
+      if (overflown) {
+        return false;
+      }
+      Bucket bucket = buckets.get(timeBase);
+      if (bucket == null) {
+        bucket = new Bucket(dimensionCount);
+        buckets.put(timeBase, bucket);
+      }
+      if (bucket.add(values, measureName)) {
+        entries++;
+      }
+      return entries <= maxEntries;
+    }
+  }
+
+  /**
+   * Index of the combinations of dimension values and measure names in a single timebase.
+   */
+  private static final class Bucket {
+    // combination id -> dimension values and measure name
+    private final List<String[]> values;
+    private final List<String> measureNames;
+    // dimension values and measure name -> combination id
+    private final Map<List<String>, Integer> ids;
+    // dimension position -> dimension value -> ids of combinations that have it
+    private final List<Map<String, BitSet>> postings;
+
+    private Bucket(int dimensionCount) {
+      this.values = Lists.newArrayList();
+      this.measureNames = Lists.newArrayList();
+      this.ids = Maps.newHashMap();
+      this.postings = Lists.newArrayListWithCapacity(dimensionCount);
+      for (int i = 0; i < dimensionCount; i++) {
+        postings.add(Maps.<String, BitSet>newHashMap());
+      }
+    }
+
+    /**
+     * @return {@code true} if the combination was not yet indexed
+     */
+    private boolean add(String[] dimensionValues, String measureName) {
+      String[] key = Arrays.copyOf(dimensionValues, dimensionValues.length + 1);
+      key[dimensionValues.length] = measureName;
+      List<String> keyList = Arrays.asList(key);
+      if (ids.containsKey(keyList)) {
+        return false;
+      }
+      int id = values.size();
+      ids.put(keyList, id);
+      values.add(dimensionValues);
+      measureNames.add(measureName);
+      for (int i = 0; i < dimensionValues.length; i++) {
+        if (dimensionValues[i] == null) {
+          continue;
+        }
+        BitSet posting = postings.get(i).get(dimensionValues[i]);
+        if (posting == null) {
+          posting = new BitSet();
+          postings.get(i).put(dimensionValues[i], posting);
+        }
+        posting.set(id);
+      }
+      return true;
+    }
+
+    /**
+     * Returns ids of the combinations that match the given slice. Same as with fuzzy scanning, a dimension that is
+     * in the slice with {@code null} value matches any value, including no value.
+     */
+    private BitSet match(List<String> dimensionNames, Map<String, String> dimensionSlice) {
+      BitSet result = null;
+      for (int i = 0; i < dimensionNames.size(); i++) {
+        String value = dimensionSlice.get(dimensionNames.get(i));
+        if (value == null) {
+          // either not in the slice or in the slice with null value, both match any value
+          continue;
+        }
+        BitSet posting = postings.get(i).get(value);
+        if (posting == null) {
+          return new BitSet();
+        }
+        if (result == null) {
+          result = (BitSet) posting.clone();
+        } else {
+          result.and(posting);
+        }
+      }
+      if (result == null) {
+        result = new BitSet();
+        result.set(0, values.size());
+      }
+      return result;
+    }
+  }
+}
@@ -264,14 +264,28 @@ public class FactCodec {
   }
 
   public long getTimestamp(byte[] rowKey, byte[] column) {
-    // timebase is encoded as int after the encoded agg group
-    int timebase = Bytes.toInt(rowKey, VERSION.length + entityTable.getIdSize());
+    int timebase = getTimeBase(rowKey);
     // time leftover is encoded as 2 byte column name
     int leftover = Bytes.toShort(column) * resolution;
 
     return timebase + leftover;
   }
 
+  /**
+   * Returns timebase of the row with the given row key.
+   */
+  public int getTimeBase(byte[] rowKey) {
+    // timebase is encoded as int after the encoded agg group
+    return Bytes.toInt(rowKey, VERSION.length + entityTable.getIdSize());
+  }
+
+  /**
+   * Returns timebase of the row that the given timestamp is written to.
+   */
+  public int getRowTimeBase(long ts) {
+    return getTimeBase(roundToResolution(ts));
+  }
+
   static byte[][] getSplits(int aggGroupsCount) {
     // Row key format:
     // <version><encoded agg group><time base>...
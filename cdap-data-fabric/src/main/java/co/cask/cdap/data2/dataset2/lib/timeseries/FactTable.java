@@ -60,6 +60,8 @@ public final class FactTable implements Closeable {
   // hard limits on some ops to stay on safe side
   private static final int MAX_RECORDS_TO_SCAN_DURING_SEARCH = 10 * 1000 * 1000;
   private static final int MAX_SCANS_DURING_SEARCH = 10 * 1000;
+  // max number of distinct dimension values and measure name combinations to index per aggregation group
+  private static final int MAX_DIMENSION_INDEX_ENTRIES = 100 * 1000;
 
   private static final Function<byte[], Long> BYTES_TO_LONG = new Function<byte[], Long>() {
     @Override
@@ -86,6 +88,9 @@ public final class FactTable implements Closeable {
   private final String putCountMetric;
   private final String incrementCountMetric;
 
+  @Nullable
+  private final DimensionValueIndex dimensionIndex;
+
   @Nullable
   private MetricsCollector metrics;
 
@@ -102,6 +107,24 @@ public final class FactTable implements Closeable {
    */
   public FactTable(MetricsTable timeSeriesTable,
                    EntityTable entityTable, int resolution, int rollTime) {
+    this(timeSeriesTable, entityTable, resolution, rollTime, -1L);
+  }
+
+  /**
+   * Creates an instance of {@link FactTable} that answers search requests from an in-memory index of dimension values
+   * instead of scanning the fact rows.
+   *
+   * @param timeSeriesTable A table for storing facts information.
+   * @param entityTable The table for storing dimension encoding mappings.
+   * @param resolution Resolution in seconds
+   * @param rollTime Number of resolution for writing to a new row with a new timebase.
+   *                 See {@link #FactTable(MetricsTable, EntityTable, int, int)}.
+   * @param indexRefreshSeconds Number of seconds the dimension values index is used before it is reloaded from the
+   *                            table, to pick up facts written by other processes. Non-positive value disables the
+   *                            index.
+   */
+  public FactTable(MetricsTable timeSeriesTable,
+                   EntityTable entityTable, int resolution, int rollTime, long indexRefreshSeconds) {
     // Two bytes for column name, which is a delta timestamp
     Preconditions.checkArgument(rollTime <= MAX_ROLL_TIME, "Rolltime should be <= " + MAX_ROLL_TIME);
 
@@ -112,6 +135,8 @@ public final class FactTable implements Closeable {
     this.rollTime = rollTime;
     this.putCountMetric = "factTable." + resolution + ".put.count";
     this.incrementCountMetric = "factTable." + resolution + ".increment.count";
+    this.dimensionIndex = indexRefreshSeconds > 0
+      ? new DimensionValueIndex(indexRefreshSeconds, MAX_DIMENSION_INDEX_ENTRIES) : null;
   }
 
   public void setMetricsCollector(MetricsCollector metrics) {
@@ -126,6 +151,9 @@ public final class FactTable implements Closeable {
       for (Measurement measurement : fact.getMeasurements()) {
         byte[] rowKey = codec.createRowKey(fact.getDimensionValues(), measurement.getName(), fact.getTimestamp());
         byte[] column = codec.createColumn(fact.getTimestamp());
+        if (dimensionIndex != null) {
+          dimensionIndex.add(fact.getDimensionValues(), measurement.getName(), codec.getTimeBase(rowKey));
+        }
 
         if (MeasureType.COUNTER == measurement.getType()) {
           inc(incrementsTable, rowKey, column, measurement.getValue());
@@ -219,6 +247,9 @@ public final class FactTable implements Closeable {
    * @param scan specifies deletion criteria
    */
   public void delete(FactScan scan) {
+    if (dimensionIndex != null) {
+      dimensionIndex.clear();
+    }
     try (Scanner scanner = getScanner(scan)) {
       Row row;
       while ((row = scanner.next()) != null) {
@@ -292,6 +323,11 @@ public final class FactTable implements Closeable {
       return Collections.emptySet();
     }
 
+    if (useDimensionIndex(allDimensionNames, startTs, endTs)) {
+      return dimensionIndex.findSingleDimensionValue(allDimensionNames, dimensionSlice,
+                                                     codec.getRowTimeBase(startTs), codec.getRowTimeBase(endTs));
+    }
+
     Set<DimensionValue> result = Sets.newHashSet();
     int scans = 0;
     int scannedRecords = 0;
@@ -374,6 +410,10 @@ public final class FactTable implements Closeable {
   // todo: pass a limit on number of measures returned
   public Set<String> findMeasureNames(List<String> allDimensionNames, Map<String, String> dimensionSlice,
                                       long startTs, long endTs) {
+    if (useDimensionIndex(allDimensionNames, startTs, endTs)) {
+      return dimensionIndex.findMeasureNames(allDimensionNames, dimensionSlice,
+                                             codec.getRowTimeBase(startTs), codec.getRowTimeBase(endTs));
+    }
 
     List<DimensionValue> allDimensions = Lists.newArrayList();
     for (String dimensionName : allDimensionNames) {
@@ -415,6 +455,78 @@ public final class FactTable implements Closeable {
     return measureNames;
   }
 
+  /**
+   * Returns {@code true} if search in the given aggregation group and time range can be answered by the dimension
+   * values index, loading the index from the table if needed.
+   */
+  private boolean useDimensionIndex(List<String> allDimensionNames, long startTs, long endTs) {
+    if (dimensionIndex == null) {
+      return false;
+    }
+    int startTimeBase = codec.getRowTimeBase(startTs);
+    int endTimeBase = codec.getRowTimeBase(endTs);
+    if (dimensionIndex.isAvailable(allDimensionNames, startTimeBase, endTimeBase)) {
+      return true;
+    }
+
+    synchronized (dimensionIndex) {
+      // check again, the index may have been loaded by other thread
+      if (dimensionIndex.isAvailable(allDimensionNames, startTimeBase, endTimeBase)) {
+        return true;
+      }
+      if (dimensionIndex.isOverflown(allDimensionNames)) {
+        return false;
+      }
+      return loadDimensionIndex(allDimensionNames, startTs, endTs);
+    }
+  }
+
+  /**
+   * Loads dimension values index of the given aggregation group for the given time range by scanning all its rows.
+   *
+   * @return {@code false} if the aggregation group has too many distinct dimension values to be indexed
+   */
+  private boolean loadDimensionIndex(List<String> allDimensionNames, long startTs, long endTs) {
+    List<DimensionValue> allDimensions = Lists.newArrayList();
+    for (String dimensionName : allDimensionNames) {
+      allDimensions.add(new DimensionValue(dimensionName, null));
+    }
+
+    byte[] startRow = codec.createStartRowKey(allDimensions, null, startTs, false);
+    byte[] endRow = codec.createEndRowKey(allDimensions, null, endTs, false);
+    endRow = Bytes.stopKeyForPrefix(endRow);
+    FuzzyRowFilter fuzzyRowFilter =
+      createFuzzyRowFilter(new FactScan(startTs, endTs, ImmutableList.<String>of(), allDimensions), startRow);
+
+    // facts written while we are scanning are added to the index being loaded
+    dimensionIndex.startLoading(allDimensionNames, codec.getRowTimeBase(startTs), codec.getRowTimeBase(endTs));
+    int scannedRecords = 0;
+    try (Scanner scanner = timeSeriesTable.scan(startRow, endRow, fuzzyRowFilter)) {
+      Row rowResult;
+      while ((rowResult = scanner.next()) != null) {
+        scannedRecords++;
+        // same limit as with searching by scanning, the index is not loaded for aggregation groups that are too big
+        if (scannedRecords > MAX_RECORDS_TO_SCAN_DURING_SEARCH) {
+          LOG.debug("Too many records to index in aggregation {}, searching by scanning the table instead.",
+                    allDimensionNames);
+          dimensionIndex.overflown(allDimensionNames);
+          return false;
+        }
+        byte[] rowKey = rowResult.getRow();
+        if (!dimensionIndex.add(codec.getDimensionValues(rowKey), codec.getMeasureName(rowKey),
+                                codec.getTimeBase(rowKey))) {
+          LOG.debug("Too many dimension values to index in aggregation {}, searching by scanning the table instead.",
+                    allDimensionNames);
+          return false;
+        }
+      }
+    }
+    dimensionIndex.loaded(allDimensionNames);
+
+    LOG.trace("loading dimension values index completed, scanned records: {}", scannedRecords);
+    return true;
+  }
+
   @Override
   public void close() throws IOException {
     timeSeriesTable.close();
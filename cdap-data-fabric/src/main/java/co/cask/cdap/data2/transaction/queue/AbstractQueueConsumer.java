@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2015 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -60,7 +60,7 @@ public abstract class AbstractQueueConsumer implements QueueConsumer, Transactio
 
   // TODO: Make these configurable.
   // Minimum number of rows to fetch per scan.
-  private static final int MIN_FETCH_ROWS = 100;
+  protected static final int MIN_FETCH_ROWS = 100;
   // Multiple of batches to fetch per scan.
   // Number of rows to scan = max(MIN_FETCH_ROWS, dequeueBatchSize * groupSize * PREFETCH_BATCHES)
   private static final int PREFETCH_BATCHES = 10;
@@ -202,6 +202,13 @@ public abstract class AbstractQueueConsumer implements QueueConsumer, Transactio
     return true;
   }
 
+  /**
+   * Returns the number of rows to fetch from the queue when the cache doesn't have enough entries for a dequeue.
+   */
+  protected int getFetchSize(int maxBatchSize) {
+    return Math.max(MIN_FETCH_ROWS, maxBatchSize * PREFETCH_BATCHES);
+  }
+
   /**
    * Called when the start row is updated.
    */
@@ -316,7 +323,7 @@ public abstract class AbstractQueueConsumer implements QueueConsumer, Transactio
     long readPointer = transaction.getReadPointer();
 
     // Scan the table for queue entries.
-    int numRows = Math.max(MIN_FETCH_ROWS, maxBatchSize * PREFETCH_BATCHES);
+    int numRows = getFetchSize(maxBatchSize);
     QueueScanner scanner = getScanner(scanStartRow,
                                       QueueEntryRow.getStopRowForTransaction(queueRowPrefix, transaction),
                                       numRows);
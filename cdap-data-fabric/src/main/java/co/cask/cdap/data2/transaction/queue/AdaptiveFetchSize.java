@@ -0,0 +1,84 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.transaction.queue;
+
+/**
+ * Computes the number of rows a queue consumer should fetch per scan from the rate the consumer is processing
+ * entries. The rate is measured as the number of entries dequeued divided by the time between two dequeue calls,
+ * which includes the time spent to process the previous batch, and is smoothed with an exponential moving average.
+ * <p/>
+ * A scan fetches enough rows to keep the consumer busy for the target time, so that slow consumers don't
+ * fetch rows that get stale in the cache, while fast consumers don't scan for every batch.
+ * <p/>
+ * This class is not thread safe.
+ */
+public final class AdaptiveFetchSize {
+
+  // Weight of the latest observation in the moving average of the processing rate.
+  private static final double SMOOTHING_FACTOR = 0.3d;
+
+  private final long targetMillis;
+  private final int minRows;
+  private final int maxRows;
+
+  // entries processed per millisecond, negative until measured
+  private double rate = -1d;
+  private long lastDequeueNanos = -1L;
+
+  /**
+   * Creates an instance of {@link AdaptiveFetchSize}.
+   *
+   * @param targetMillis the processing time in milliseconds that the rows fetched by one scan should cover
+   * @param minRows the minimum number of rows to fetch per scan
+   * @param maxRows the maximum number of rows to fetch per scan
+   */
+  public AdaptiveFetchSize(long targetMillis, int minRows, int maxRows) {
+    this.targetMillis = targetMillis;
+    this.minRows = minRows;
+    this.maxRows = maxRows;
+  }
+
+  /**
+   * Records a dequeue call.
+   *
+   * @param count number of entries returned by the dequeue call
+   * @param nanoTime time of the call as returned by {@link System#nanoTime()}
+   */
+  public void dequeued(int count, long nanoTime) {
+    if (lastDequeueNanos >= 0 && nanoTime > lastDequeueNanos) {
+      double elapsedMillis = (nanoTime - lastDequeueNanos) / 1000000d;
+      double observed = count / elapsedMillis;
+      rate = rate < 0 ? observed : SMOOTHING_FACTOR * observed + (1 - SMOOTHING_FACTOR) * rate;
+    }
+    lastDequeueNanos = nanoTime;
+  }
+
+  /**
+   * Returns the number of rows to fetch per scan.
+   *
+   * @param maxBatchSize the number of entries requested per dequeue, which is fetched at least unless it
+   *                     exceeds the maximum number of rows
+   * @param defaultRows the number of rows to fetch until the processing rate is known
+   */
+  public int getFetchSize(int maxBatchSize, int defaultRows) {
+    if (rate < 0) {
+      return defaultRows;
+    }
+    long rows = Math.max(Math.max(minRows, maxBatchSize), (long) Math.ceil(rate * targetMillis));
+    return (int) Math.min(rows, maxRows);
+  }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2015 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -15,7 +15,12 @@
  */
 package co.cask.cdap.data2.transaction.queue.hbase;
 
+import co.cask.cdap.api.metrics.MetricsCollectionService;
+import co.cask.cdap.api.metrics.MetricsContext;
+import co.cask.cdap.api.metrics.NoopMetricsContext;
 import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.metrics.MetricsTags;
 import co.cask.cdap.common.queue.QueueName;
 import co.cask.cdap.data2.metadata.writer.ProgramContextAware;
 import co.cask.cdap.data2.queue.ConsumerConfig;
@@ -32,6 +37,7 @@ import co.cask.cdap.data2.transaction.queue.QueueConstants.QueueType;
 import co.cask.cdap.data2.transaction.queue.QueueMetrics;
 import co.cask.cdap.data2.util.TableId;
 import co.cask.cdap.data2.util.hbase.HBaseTableUtil;
+import co.cask.cdap.proto.id.FlowletId;
 import co.cask.cdap.proto.id.NamespacedEntityId;
 import co.cask.cdap.proto.id.ProgramRunId;
 import com.google.common.annotations.VisibleForTesting;
@@ -55,7 +61,9 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 
 /**
@@ -74,6 +82,8 @@ public class HBaseQueueClientFactory implements QueueClientFactory, ProgramConte
   private final HBaseQueueUtil queueUtil;
   private final HBaseTableUtil hBaseTableUtil;
   private final TransactionExecutorFactory txExecutorFactory;
+  private MetricsCollectionService metricsCollectionService;
+  private MetricsContext metricsContext = new NoopMetricsContext();
 
   @Inject
   public HBaseQueueClientFactory(CConfiguration cConf, Configuration hConf, HBaseTableUtil hBaseTableUtil,
@@ -94,6 +104,17 @@ public class HBaseQueueClientFactory implements QueueClientFactory, ProgramConte
   @Override
   public void initContext(ProgramRunId run, NamespacedEntityId componentId) {
     queueAdmin.initContext(run, componentId);
+    if (metricsCollectionService != null && componentId instanceof FlowletId) {
+      Map<String, String> tags = new HashMap<>(MetricsTags.flowlet((FlowletId) componentId));
+      tags.put(Constants.Metrics.Tag.RUN_ID, run.getRun());
+      metricsContext = metricsCollectionService.getContext(tags);
+    }
+  }
+
+  @SuppressWarnings("unused")
+  @Inject(optional = true)
+  public void setMetricsCollectionService(MetricsCollectionService metricsCollectionService) {
+    this.metricsCollectionService = metricsCollectionService;
   }
 
   @Override
@@ -190,9 +211,12 @@ public class HBaseQueueClientFactory implements QueueClientFactory, ProgramConte
             HBaseQueueStrategy strategy = (state.getPreviousBarrier() == null)
                                           ? new SaltedHBaseQueueStrategy(hBaseTableUtil, distributorBuckets)
                                           : new ShardedHBaseQueueStrategy(hBaseTableUtil, distributorBuckets);
-            consumers.add(queueUtil.getQueueConsumer(cConf, hTable, queueName, state,
-                                                     admin.getConsumerStateStore(queueName),
-                                                     strategy));
+            HBaseQueueConsumer consumer = queueUtil.getQueueConsumer(cConf, hTable, queueName, state,
+                                                                     admin.getConsumerStateStore(queueName),
+                                                                     strategy);
+            consumer.setMetricsContext(
+              metricsContext.childContext(Constants.Metrics.Tag.FLOWLET_QUEUE, queueName.getSimpleName()));
+            consumers.add(consumer);
           }
           return consumers;
         }
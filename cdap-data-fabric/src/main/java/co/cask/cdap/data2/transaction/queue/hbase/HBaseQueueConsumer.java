@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2015 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -16,11 +16,14 @@
 package co.cask.cdap.data2.transaction.queue.hbase;
 
 import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.metrics.MetricsContext;
+import co.cask.cdap.api.metrics.NoopMetricsContext;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.queue.QueueName;
 import co.cask.cdap.data2.queue.ConsumerConfig;
 import co.cask.cdap.data2.queue.DequeueResult;
 import co.cask.cdap.data2.transaction.queue.AbstractQueueConsumer;
+import co.cask.cdap.data2.transaction.queue.AdaptiveFetchSize;
 import co.cask.cdap.data2.transaction.queue.QueueEntryRow;
 import co.cask.cdap.data2.transaction.queue.QueueScanner;
 import com.google.common.collect.Lists;
@@ -40,13 +43,23 @@ import java.util.Set;
 
 /**
  * Queue consumer for HBase.
+ * <p/>
+ * The number of rows fetched per scan adapts to the rate the flowlet processes entries (see
+ * {@link AdaptiveFetchSize}).
  */
 abstract class HBaseQueueConsumer extends AbstractQueueConsumer {
 
+  // Processing time in milliseconds that the rows fetched by one scan should cover.
+  private static final long TARGET_FETCH_MILLIS = 1000L;
+  // Maximum number of rows to fetch per scan.
+  private static final int MAX_FETCH_ROWS = 10000;
+
   private final HTable hTable;
   private final HBaseConsumerState state;
   private final HBaseConsumerStateStore stateStore;
   private final HBaseQueueStrategy queueStrategy;
+  private final AdaptiveFetchSize fetchSize;
+  private MetricsContext metricsContext;
   private boolean closed;
   private boolean canConsume;
   private boolean completed;
@@ -69,11 +82,21 @@ abstract class HBaseQueueConsumer extends AbstractQueueConsumer {
     this.stateStore = stateStore;
     this.queueStrategy = queueStrategy;
     this.canConsume = false;
+    this.fetchSize = new AdaptiveFetchSize(TARGET_FETCH_MILLIS, MIN_FETCH_ROWS, MAX_FETCH_ROWS);
+    this.metricsContext = new NoopMetricsContext();
+  }
+
+  /**
+   * Sets the {@link MetricsContext} for emitting the fetch size metric.
+   */
+  void setMetricsContext(MetricsContext metricsContext) {
+    this.metricsContext = metricsContext;
   }
 
   @Override
   public DequeueResult<byte[]> dequeue(int maxBatchSize) throws IOException {
     DequeueResult<byte[]> result = super.dequeue(maxBatchSize);
+    fetchSize.dequeued(result.size(), System.nanoTime());
 
     if (canConsume && result.isEmpty() && state.getNextBarrier() != null) {
       long groupId = state.getConsumerConfig().getGroupId();
@@ -141,6 +164,13 @@ abstract class HBaseQueueConsumer extends AbstractQueueConsumer {
     return queueStrategy.createScanner(getConfig(), hTable, scan, numRows);
   }
 
+  @Override
+  protected int getFetchSize(int maxBatchSize) {
+    int rows = fetchSize.getFetchSize(maxBatchSize, super.getFetchSize(maxBatchSize));
+    metricsContext.gauge("queue.fetch.rows", rows);
+    return rows;
+  }
+
   @Override
   public void close() throws IOException {
     if (closed) {
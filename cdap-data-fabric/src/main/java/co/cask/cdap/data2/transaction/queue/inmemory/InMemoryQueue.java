@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -22,122 +22,71 @@ import co.cask.cdap.data2.queue.DequeueStrategy;
 import co.cask.cdap.data2.queue.QueueEntry;
 import co.cask.cdap.data2.transaction.queue.ConsumerEntryState;
 import com.google.common.base.Objects;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import org.apache.tephra.Transaction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.List;
-import java.util.NavigableSet;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.ConcurrentNavigableMap;
-import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
 
 /**
- * Implementation of an in-memory queue.
+ * Base class for in-memory queues. Implementations decide how entries are stored, while the consumer group
+ * semantics (claiming, hashing, acking and eviction) are shared.
+ *
+ * @see SkipListInMemoryQueue
+ * @see RingBufferInMemoryQueue
  */
-public class InMemoryQueue {
+public abstract class InMemoryQueue {
 
   private static final Logger LOG = LoggerFactory.getLogger(InMemoryQueue.class);
 
-  private final ConcurrentNavigableMap<Key, Item> entries = new ConcurrentSkipListMap<>();
-
-  public void clear() {
-    entries.clear();
-  }
+  public abstract void clear();
 
-  public int getSize() {
-    return entries.size();
-  }
+  public abstract int getSize();
 
-  public void enqueue(long txId, int seqId, QueueEntry entry) {
-    entries.put(new Key(txId, seqId), new Item(entry));
-  }
+  /**
+   * Appends an entry to the queue.
+   *
+   * @return the key of the entry, to undo the enqueue with
+   */
+  public abstract Key enqueue(long txId, int seqId, QueueEntry entry);
 
-  public void undoEnqueue(long txId, int seqId) {
-    entries.remove(new Key(txId, seqId));
+  /**
+   * Removes an entry enqueued by a transaction that is rolled back.
+   */
+  public void undoEnqueue(Key key) {
+    remove(key);
   }
 
-  public ImmutablePair<List<Key>, List<byte[]>> dequeue(Transaction tx, ConsumerConfig config,
-                                                        ConsumerState consumerState, int maxBatchSize) {
+  /**
+   * Dequeues up to {@code maxBatchSize} entries visible to the given transaction.
+   *
+   * @return the keys and the data of the dequeued entries or {@code null} if there is nothing to dequeue
+   */
+  @Nullable
+  public abstract ImmutablePair<List<Key>, List<byte[]>> dequeue(Transaction tx, ConsumerConfig config,
+                                                                 ConsumerState consumerState, int maxBatchSize);
 
-    List<Key> keys = Lists.newArrayListWithCapacity(maxBatchSize);
-    List<byte[]> datas = Lists.newArrayListWithCapacity(maxBatchSize);
-    NavigableSet<Key> keysToScan = consumerState.startKey == null ? entries.navigableKeySet() :
-      entries.tailMap(consumerState.startKey).navigableKeySet();
-    boolean updateStartKey = true;
+  /**
+   * Returns the item stored for the given key or {@code null} if the entry no longer exists.
+   */
+  @Nullable
+  abstract Item getItem(Key key);
 
-    // navigableKeySet is immune to concurrent modification
-    for (Key key : keysToScan) {
-      if (keys.size() >= maxBatchSize) {
-        break;
-      }
-      if (updateStartKey && key.txId < tx.getFirstShortInProgress()) {
-        // See QueueEntryRow#canCommit for reason.
-        consumerState.startKey = key;
-      }
-      if (tx.getReadPointer() < key.txId) {
-        // the entry is newer than the current transaction. so are all subsequent entries. bail out.
-        break;
-      } else if (tx.isInProgress(key.txId)) {
-        // the entry is in the exclude list of current transaction. There is a chance that visible entries follow.
-        updateStartKey = false; // next time we have to revisit this entry
-        continue;
-      }
-      Item item = entries.get(key);
-      if (item == null) {
-        // entry was deleted (evicted or undone) after we started iterating
-        continue;
-      }
-      // check whether this is processed already
-      ConsumerEntryState state = item.getConsumerState(config.getGroupId());
-      if (ConsumerEntryState.PROCESSED.equals(state)) {
-        // already processed but not yet evicted. move on
-        continue;
-      }
-      if (config.getDequeueStrategy().equals(DequeueStrategy.FIFO)) {
-        // for FIFO, attempt to claim the entry and return it
-        if (item.claim(config)) {
-          keys.add(key);
-          datas.add(item.entry.getData());
-        }
-        // else: someone else claimed it, or it was already processed, move on, but we may have to revisit this.
-        updateStartKey = false;
-        continue;
-      }
-      // for hash/round robin, if group size is 1, just take it
-      if (config.getGroupSize() == 1) {
-        keys.add(key);
-        datas.add(item.entry.getData());
-        updateStartKey = false;
-        continue;
-      }
-      // hash by entry hash key or entry id
-      int hash;
-      if (config.getDequeueStrategy().equals(DequeueStrategy.ROUND_ROBIN)) {
-        hash = key.hashCode();
-      } else {
-        Integer hashFoundInEntry = item.entry.getHashKey(config.getHashKey());
-        hash = hashFoundInEntry == null ? 0 : hashFoundInEntry;
-      }
-      // modulo of a negative is negative, make sure we're positive or 0.
-      if (Math.abs(hash) % config.getGroupSize() == config.getInstanceId()) {
-        keys.add(key);
-        datas.add(item.entry.getData());
-        updateStartKey = false;
-      }
-    }
-    return keys.isEmpty() ? null : ImmutablePair.of(keys, datas);
-  }
+  /**
+   * Removes the entry of the given key from the queue.
+   */
+  abstract void remove(Key key);
 
   public void ack(List<Key> dequeuedKeys, ConsumerConfig config) {
     if (dequeuedKeys == null) {
       return;
     }
     for (Key key : dequeuedKeys) {
-      Item item = entries.get(key);
+      Item item = getItem(key);
       if (item == null) {
         LOG.warn("Attempting to ack non-existing entry " + key);
         continue;
@@ -151,7 +100,7 @@ public class InMemoryQueue {
       return;
     }
     for (Key key : dequeuedKeys) {
-      Item item = entries.get(key);
+      Item item = getItem(key);
       if (item == null) {
         LOG.warn("Attempting to undo dequeue for non-existing entry " + key);
         continue;
@@ -168,28 +117,79 @@ public class InMemoryQueue {
       return;
     }
     for (Key key : dequeuedKeys) {
-      Item item = entries.get(key);
+      Item item = getItem(key);
       if (item == null) {
         LOG.warn("Attempting to evict non-existing entry " + key);
         continue;
       }
       if (item.incrementProcessed() >= numGroups) {
         // all consumer groups have processed _and_ reached the post-commit hook: safe to evict
-        entries.remove(key);
+        remove(key);
       }
     }
   }
 
+  /**
+   * Decides what the given consumer does with an entry that is visible to its transaction. For FIFO, this
+   * attempts to claim the entry.
+   */
+  static Selection select(Key key, Item item, ConsumerConfig config) {
+    // check whether this is processed already
+    ConsumerEntryState state = item.getConsumerState(config.getGroupId());
+    if (ConsumerEntryState.PROCESSED.equals(state)) {
+      // already processed but not yet evicted. move on
+      return Selection.SKIP;
+    }
+    if (config.getDequeueStrategy().equals(DequeueStrategy.FIFO)) {
+      // for FIFO, attempt to claim the entry and return it
+      // else: someone else claimed it, or it was already processed, move on, but we may have to revisit this.
+      return item.claim(config) ? Selection.TAKE : Selection.REVISIT;
+    }
+    // for hash/round robin, if group size is 1, just take it
+    if (config.getGroupSize() == 1) {
+      return Selection.TAKE;
+    }
+    // hash by entry hash key or entry id
+    int hash;
+    if (config.getDequeueStrategy().equals(DequeueStrategy.ROUND_ROBIN)) {
+      hash = key.hashCode();
+    } else {
+      Integer hashFoundInEntry = item.entry.getHashKey(config.getHashKey());
+      hash = hashFoundInEntry == null ? 0 : hashFoundInEntry;
+    }
+    // modulo of a negative is negative, make sure we're positive or 0.
+    return Math.abs(hash) % config.getGroupSize() == config.getInstanceId() ? Selection.TAKE : Selection.SKIP;
+  }
+
+  /**
+   * Outcome of {@link #select(Key, Item, ConsumerConfig)}.
+   */
+  enum Selection {
+    // the entry is to be returned to the consumer
+    TAKE,
+    // the entry is processed by the consumer group or belongs to another consumer instance
+    SKIP,
+    // the entry is not returned, but the consumer may have to revisit it
+    REVISIT
+  }
+
   /**
    * Used as the key of each queue item, composed of a transaction id and a sequence number within the transaction.
    */
   public static final class Key implements Comparable<Key> {
     final long txId;
     final int seqNo;
+    // position of the entry in a RingBufferInMemoryQueue, not part of equality
+    final long position;
 
     Key(long tx, int seq) {
-      txId = tx;
-      seqNo = seq;
+      this(tx, seq, -1L);
+    }
+
+    Key(long tx, int seq, long position) {
+      this.txId = tx;
+      this.seqNo = seq;
+      this.position = position;
     }
 
     public boolean equals(Object obj) {
@@ -225,7 +225,7 @@ public class InMemoryQueue {
   }
 
   // represents an entry of the queue plus meta data
-  private static final class Item {
+  static final class Item {
     final QueueEntry entry;
 //    ConcurrentMap<Long, ConsumerEntryState> consumerStates = Maps.newConcurrentMap();
     ConcurrentMap<Long, ItemEntryState> consumerStates = Maps.newConcurrentMap();
@@ -301,7 +301,11 @@ public class InMemoryQueue {
    * The state of a single consumer, gets modified.
    */
   public static class ConsumerState {
+    // used by SkipListInMemoryQueue, the key to start the next dequeue from
     Key startKey = null;
+    // used by RingBufferInMemoryQueue, the position to start the next dequeue from and the queue it belongs to
+    long startPosition;
+    InMemoryQueue startPositionQueue;
   }
 
 }
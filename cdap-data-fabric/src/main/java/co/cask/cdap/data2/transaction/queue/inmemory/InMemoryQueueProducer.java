@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -20,8 +20,11 @@ import co.cask.cdap.common.queue.QueueName;
 import co.cask.cdap.data2.queue.QueueEntry;
 import co.cask.cdap.data2.transaction.queue.AbstractQueueProducer;
 import co.cask.cdap.data2.transaction.queue.QueueMetrics;
+import com.google.common.collect.Lists;
 import org.apache.tephra.Transaction;
 
+import java.util.List;
+
 /**
  * Producer for an in-memory queue.
  */
@@ -29,7 +32,8 @@ public class InMemoryQueueProducer extends AbstractQueueProducer {
 
   private final QueueName queueName;
   private final InMemoryQueueService queueService;
-  private int lastEnqueueCount;
+  // keys of the entries enqueued by the last persist, to undo them on rollback
+  private final List<InMemoryQueue.Key> lastEnqueued = Lists.newArrayList();
   private Transaction commitTransaction;
 
   public InMemoryQueueProducer(QueueName queueName, InMemoryQueueService queueService, QueueMetrics queueMetrics) {
@@ -51,15 +55,15 @@ public class InMemoryQueueProducer extends AbstractQueueProducer {
   @Override
   protected int persist(Iterable<QueueEntry> entries, Transaction transaction) throws Exception {
     commitTransaction = transaction;
+    lastEnqueued.clear();
     int seqId = 0;
     int bytes = 0;
 
     InMemoryQueue queue = getQueue();
     for (QueueEntry entry : entries) {
-      queue.enqueue(transaction.getWritePointer(), seqId++, entry);
+      lastEnqueued.add(queue.enqueue(transaction.getWritePointer(), seqId++, entry));
       bytes += entry.getData().length;
     }
-    lastEnqueueCount = seqId;
     return bytes;
   }
 
@@ -67,8 +71,8 @@ public class InMemoryQueueProducer extends AbstractQueueProducer {
   protected void doRollback() {
     if (commitTransaction != null) {
       InMemoryQueue queue = getQueue();
-      for (int seqId = 0; seqId < lastEnqueueCount; seqId++) {
-        queue.undoEnqueue(commitTransaction.getWritePointer(), seqId);
+      for (InMemoryQueue.Key key : lastEnqueued) {
+        queue.undoEnqueue(key);
       }
     }
   }
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -16,7 +16,9 @@
 
 package co.cask.cdap.data2.transaction.queue.inmemory;
 
+import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.queue.QueueName;
+import co.cask.cdap.data2.transaction.queue.QueueConstants;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.inject.Inject;
@@ -35,19 +37,21 @@ import javax.annotation.Nullable;
 public final class InMemoryQueueService {
 
   private final ConcurrentMap<QueueName, InMemoryQueue> queues;
+  private final boolean ringBufferEnabled;
 
   /**
    * Package visible constructor so that instance of this class can only be created through Guice.
    */
   @Inject
-  private InMemoryQueueService() {
+  private InMemoryQueueService(CConfiguration cConf) {
     queues = Maps.newConcurrentMap();
+    ringBufferEnabled = cConf.getBoolean(QueueConstants.ConfigKeys.INMEMORY_QUEUE_RING_BUFFER_ENABLED, false);
   }
 
   InMemoryQueue getQueue(QueueName queueName) {
     InMemoryQueue queue = queues.get(queueName);
     if (queue == null) {
-      queue = new InMemoryQueue();
+      queue = ringBufferEnabled ? new RingBufferInMemoryQueue() : new SkipListInMemoryQueue();
       InMemoryQueue existing = queues.putIfAbsent(queueName, queue);
       if (existing != null) {
         queue = existing;
@@ -0,0 +1,283 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.transaction.queue.inmemory;
+
+import co.cask.cdap.common.utils.ImmutablePair;
+import co.cask.cdap.data2.queue.ConsumerConfig;
+import co.cask.cdap.data2.queue.QueueEntry;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.tephra.Transaction;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import javax.annotation.Nullable;
+
+/**
+ * Implementation of an in-memory queue that appends entries to a segmented ring buffer.
+ * <p/>
+ * Every enqueued entry is given a monotonically increasing position by atomically incrementing the tail, and is
+ * published into the slot of that position without excluding other enqueues. Slots are allocated in fixed size
+ * segments, which are released as a whole once all of their entries were evicted or undone, so memory is reclaimed
+ * without rebalancing a sorted structure.
+ * <p/>
+ * Since entries are appended in the order they are enqueued, rather than sorted by transaction id, every consumer
+ * keeps its own cursor, which is the position that all entries before it are known to be not needed by the
+ * consumer: they are either removed, processed by its group or belong to another instance of the group. The
+ * cursor only moves past entries that are visible to the consumer's transaction, which makes it the transaction
+ * visibility watermark of the consumer. Dequeue starts from the cursor and returns the visible entries claimed by
+ * the consumer, with the same semantics as {@link SkipListInMemoryQueue}.
+ * <p/>
+ * The segments and the size are replaced together when the queue is cleared. Enqueues share a read lock that
+ * {@link #clear()} takes exclusively, so that no entry is published to the replaced segments or counted in the new
+ * size. The key returned by an enqueue has the position of the entry, hence undoing it doesn't search for it.
+ */
+final class RingBufferInMemoryQueue extends InMemoryQueue {
+
+  private static final int SEGMENT_SHIFT = 10;
+  private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+  private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+  // marks a slot whose entry was evicted or undone
+  private static final Slot REMOVED = new Slot(null, null);
+
+  private final Lock enqueueLock;
+  private final Lock clearLock;
+  // position of the next entry to enqueue
+  private final AtomicLong tail = new AtomicLong();
+  private volatile Segments segments = new Segments();
+  // all entries before this position are removed
+  private volatile long head;
+
+  RingBufferInMemoryQueue() {
+    ReadWriteLock lock = new ReentrantReadWriteLock();
+    this.enqueueLock = lock.readLock();
+    this.clearLock = lock.writeLock();
+  }
+
+  @Override
+  public void clear() {
+    clearLock.lock();
+    try {
+      synchronized (this) {
+        // Move the tail to the next segment boundary, so that the segment of the new head never has slots before it.
+        long boundary = (tail.get() + SEGMENT_MASK) & ~((long) SEGMENT_MASK);
+        tail.set(boundary);
+        head = boundary;
+        segments = new Segments();
+      }
+    } finally {
+      clearLock.unlock();
+    }
+  }
+
+  @Override
+  public int getSize() {
+    return segments.size.get();
+  }
+
+  @Override
+  public Key enqueue(long txId, int seqId, QueueEntry entry) {
+    enqueueLock.lock();
+    try {
+      long position = tail.getAndIncrement();
+      Segments segments = this.segments;
+      Key key = new Key(txId, seqId, position);
+      getSegment(segments, position).slots.set((int) (position & SEGMENT_MASK), new Slot(key, new Item(entry)));
+      segments.size.incrementAndGet();
+      return key;
+    } finally {
+      enqueueLock.unlock();
+    }
+  }
+
+  @Override
+  public ImmutablePair<List<Key>, List<byte[]>> dequeue(Transaction tx, ConsumerConfig config,
+                                                        ConsumerState consumerState, int maxBatchSize) {
+    List<Key> keys = Lists.newArrayListWithCapacity(maxBatchSize);
+    List<byte[]> datas = Lists.newArrayListWithCapacity(maxBatchSize);
+
+    // the cursor is only valid for the queue it was obtained from, the queue may have been dropped and recreated
+    long startPosition = head;
+    if (consumerState.startPositionQueue == this) {
+      startPosition = Math.max(consumerState.startPosition, startPosition);
+    }
+    long endPosition = tail.get();
+    boolean updateStartPosition = true;
+
+    for (long position = startPosition; position < endPosition && keys.size() < maxBatchSize; position++) {
+      Slot slot = getSlot(position);
+      if (slot == REMOVED) {
+        if (updateStartPosition) {
+          startPosition = position + 1;
+        }
+        continue;
+      }
+      if (slot == null) {
+        // the producer has not yet published the entry, hence its transaction is still in progress
+        updateStartPosition = false;
+        continue;
+      }
+      Key key = slot.key;
+      if (tx.getReadPointer() < key.txId || tx.isInProgress(key.txId)) {
+        // the entry is not visible to the current transaction, unlike with a sorted queue, visible entries may follow
+        updateStartPosition = false;
+        continue;
+      }
+      switch (select(key, slot.item, config)) {
+        case TAKE:
+          keys.add(key);
+          datas.add(slot.item.entry.getData());
+          updateStartPosition = false;
+          break;
+        case REVISIT:
+          updateStartPosition = false;
+          break;
+        default:
+          // SKIP. Entries enqueued later are always appended after the tail, hence it is safe to move past it.
+          if (updateStartPosition) {
+            startPosition = position + 1;
+          }
+          break;
+      }
+    }
+
+    consumerState.startPositionQueue = this;
+    consumerState.startPosition = startPosition;
+    return keys.isEmpty() ? null : ImmutablePair.of(keys, datas);
+  }
+
+  @Override
+  Item getItem(Key key) {
+    Slot slot = getSlot(key.position);
+    return slot == null || slot == REMOVED || !slot.key.equals(key) ? null : slot.item;
+  }
+
+  @Override
+  void remove(Key key) {
+    if (key.position < head) {
+      return;
+    }
+    Segments segments = this.segments;
+    Segment segment = segments.map.get(key.position >>> SEGMENT_SHIFT);
+    if (segment == null) {
+      return;
+    }
+    int offset = (int) (key.position & SEGMENT_MASK);
+    Slot slot = segment.slots.get(offset);
+    if (slot == null || slot == REMOVED || !slot.key.equals(key)) {
+      return;
+    }
+    if (!segment.slots.compareAndSet(offset, slot, REMOVED)) {
+      // removed concurrently
+      return;
+    }
+    segments.size.decrementAndGet();
+    if (segment.live.decrementAndGet() == 0) {
+      releaseSegments();
+    }
+  }
+
+  /**
+   * Returns the slot of the given position, {@link #REMOVED} if the segment of it was released or {@code null} if
+   * no entry is published in it yet.
+   */
+  @Nullable
+  private Slot getSlot(long position) {
+    if (position < head) {
+      return REMOVED;
+    }
+    Segment segment = segments.map.get(position >>> SEGMENT_SHIFT);
+    if (segment == null) {
+      // segment may have been released since the head check above
+      return position < head ? REMOVED : null;
+    }
+    return segment.slots.get((int) (position & SEGMENT_MASK));
+  }
+
+  /**
+   * Returns the segment of the given position to publish an entry to, creating it if needed.
+   */
+  private Segment getSegment(Segments segments, long position) {
+    long index = position >>> SEGMENT_SHIFT;
+    Segment segment = segments.map.get(index);
+    if (segment != null) {
+      return segment;
+    }
+    // a new segment is needed only once every SEGMENT_SIZE entries, hence it is fine to lock
+    synchronized (this) {
+      segment = segments.map.get(index);
+      if (segment == null) {
+        segment = new Segment();
+        segments.map.put(index, segment);
+      }
+      return segment;
+    }
+  }
+
+  /**
+   * Releases the segments at the head of the queue that have all their entries removed.
+   */
+  private synchronized void releaseSegments() {
+    while (true) {
+      long index = head >>> SEGMENT_SHIFT;
+      Segment segment = segments.map.get(index);
+      if (segment == null || segment.live.get() > 0) {
+        return;
+      }
+      segments.map.remove(index);
+      head = (index + 1) << SEGMENT_SHIFT;
+    }
+  }
+
+  /**
+   * The segments of the queue and the number of entries in them, which are replaced together by a clear.
+   */
+  private static final class Segments {
+    // segment index -> segment
+    final ConcurrentMap<Long, Segment> map = Maps.newConcurrentMap();
+    final AtomicInteger size = new AtomicInteger();
+  }
+
+  /**
+   * A fixed size block of slots.
+   */
+  private static final class Segment {
+    final AtomicReferenceArray<Slot> slots = new AtomicReferenceArray<>(SEGMENT_SIZE);
+    // number of slots that are not yet removed, including the ones not yet published
+    final AtomicInteger live = new AtomicInteger(SEGMENT_SIZE);
+  }
+
+  /**
+   * An entry of the queue together with its key.
+   */
+  private static final class Slot {
+    final Key key;
+    final Item item;
+
+    Slot(Key key, Item item) {
+      this.key = key;
+      this.item = item;
+    }
+  }
+}
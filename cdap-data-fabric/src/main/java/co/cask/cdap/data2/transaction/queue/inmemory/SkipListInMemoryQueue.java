@@ -0,0 +1,112 @@
+/*
+ * Copyright © 2014-2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.transaction.queue.inmemory;
+
+import co.cask.cdap.common.utils.ImmutablePair;
+import co.cask.cdap.data2.queue.ConsumerConfig;
+import co.cask.cdap.data2.queue.QueueEntry;
+import com.google.common.collect.Lists;
+import org.apache.tephra.Transaction;
+
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Implementation of an in-memory queue that keeps the entries sorted by transaction id in a skip list.
+ */
+final class SkipListInMemoryQueue extends InMemoryQueue {
+
+  private final ConcurrentNavigableMap<Key, Item> entries = new ConcurrentSkipListMap<>();
+
+  @Override
+  public void clear() {
+    entries.clear();
+  }
+
+  @Override
+  public int getSize() {
+    return entries.size();
+  }
+
+  @Override
+  public Key enqueue(long txId, int seqId, QueueEntry entry) {
+    Key key = new Key(txId, seqId);
+    entries.put(key, new Item(entry));
+    return key;
+  }
+
+  @Override
+  public ImmutablePair<List<Key>, List<byte[]>> dequeue(Transaction tx, ConsumerConfig config,
+                                                        ConsumerState consumerState, int maxBatchSize) {
+
+    List<Key> keys = Lists.newArrayListWithCapacity(maxBatchSize);
+    List<byte[]> datas = Lists.newArrayListWithCapacity(maxBatchSize);
+    NavigableSet<Key> keysToScan = consumerState.startKey == null ? entries.navigableKeySet() :
+      entries.tailMap(consumerState.startKey).navigableKeySet();
+    boolean updateStartKey = true;
+
+    // navigableKeySet is immune to concurrent modification
+    for (Key key : keysToScan) {
+      if (keys.size() >= maxBatchSize) {
+        break;
+      }
+      if (updateStartKey && key.txId < tx.getFirstShortInProgress()) {
+        // See QueueEntryRow#canCommit for reason.
+        consumerState.startKey = key;
+      }
+      if (tx.getReadPointer() < key.txId) {
+        // the entry is newer than the current transaction. so are all subsequent entries. bail out.
+        break;
+      } else if (tx.isInProgress(key.txId)) {
+        // the entry is in the exclude list of current transaction. There is a chance that visible entries follow.
+        updateStartKey = false; // next time we have to revisit this entry
+        continue;
+      }
+      Item item = entries.get(key);
+      if (item == null) {
+        // entry was deleted (evicted or undone) after we started iterating
+        continue;
+      }
+      switch (select(key, item, config)) {
+        case TAKE:
+          keys.add(key);
+          datas.add(item.entry.getData());
+          updateStartKey = false;
+          break;
+        case REVISIT:
+          updateStartKey = false;
+          break;
+        default:
+          // SKIP, keep moving the start key
+          break;
+      }
+    }
+    return keys.isEmpty() ? null : ImmutablePair.of(keys, datas);
+  }
+
+  @Override
+  Item getItem(Key key) {
+    return entries.get(key);
+  }
+
+  @Override
+  void remove(Key key) {
+    entries.remove(key);
+  }
+}
@@ -16,14 +16,26 @@
 
 package co.cask.cdap.data2.dataset2.lib.cube;
 
+import co.cask.cdap.api.dataset.lib.cube.AggregationFunction;
 import co.cask.cdap.api.dataset.lib.cube.Cube;
+import co.cask.cdap.api.dataset.lib.cube.CubeQuery;
+import co.cask.cdap.api.dataset.lib.cube.TimeSeries;
+import co.cask.cdap.api.metrics.MetricsCollector;
 import co.cask.cdap.data2.dataset2.lib.table.inmemory.InMemoryMetricsTable;
 import co.cask.cdap.data2.dataset2.lib.table.inmemory.InMemoryTableService;
 import co.cask.cdap.data2.dataset2.lib.timeseries.EntityTable;
 import co.cask.cdap.data2.dataset2.lib.timeseries.FactTable;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import org.junit.Assert;
+import org.junit.Test;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  *
@@ -48,4 +60,103 @@ public class DefaultCubeTest extends AbstractCubeTest {
 
     return new DefaultCube(resolutions, supplier, aggregations, ImmutableMap.<String, AggregationAlias>of());
   }
+
+  @Test
+  public void testBatchQuery() throws Exception {
+    Aggregation agg1 = new DefaultAggregation(ImmutableList.of("dim1", "dim2"));
+    Aggregation agg2 = new DefaultAggregation(ImmutableList.of("dim1"));
+    DefaultCube cube = (DefaultCube) getCube("batchCube", new int[] {1}, ImmutableMap.of("agg1", agg1, "agg2", agg2));
+
+    writeInc(cube, "metric1", 1, 1, "1", "1");
+    writeInc(cube, "metric1", 2, 2, "1", "2");
+    writeInc(cube, "metric2", 2, 3, "1", "1");
+    writeInc(cube, "metric2", 5, 4, "1", "2");
+    writeInc(cube, "metric1", 6, 5, "2", "1");
+
+    // first two queries share the scan, but ask for different measures and time ranges
+    List<CubeQuery> queries = ImmutableList.of(
+      createQuery("metric1", 0, 3, ImmutableMap.of("dim1", "1"), ImmutableList.of("dim2")),
+      createQuery("metric2", 2, 10, ImmutableMap.of("dim1", "1"), ImmutableList.of("dim2")),
+      createQuery("metric1", 0, 10, ImmutableMap.<String, String>of(), ImmutableList.of("dim1")),
+      createQuery("metric1", 2, 10, ImmutableMap.of("dim1", "1"), ImmutableList.<String>of()));
+
+    List<Collection<TimeSeries>> results = cube.query(queries);
+    Assert.assertEquals(queries.size(), results.size());
+    // results of the batch are same as of executing queries one-by-one
+    for (int i = 0; i < queries.size(); i++) {
+      Assert.assertEquals(ImmutableSet.copyOf(cube.query(queries.get(i))), ImmutableSet.copyOf(results.get(i)));
+    }
+
+    Assert.assertEquals(
+      ImmutableSet.of(new TimeSeries("metric1", ImmutableMap.of("dim2", "1"), timeValues(1, 1)),
+                      new TimeSeries("metric1", ImmutableMap.of("dim2", "2"), timeValues(2, 2))),
+      ImmutableSet.copyOf(results.get(0)));
+    Assert.assertEquals(
+      ImmutableSet.of(new TimeSeries("metric2", ImmutableMap.of("dim2", "1"), timeValues(2, 3)),
+                      new TimeSeries("metric2", ImmutableMap.of("dim2", "2"), timeValues(5, 4))),
+      ImmutableSet.copyOf(results.get(1)));
+    Assert.assertEquals(
+      ImmutableSet.of(new TimeSeries("metric1", ImmutableMap.of("dim1", "1"), timeValues(1, 1, 2, 2)),
+                      new TimeSeries("metric1", ImmutableMap.of("dim1", "2"), timeValues(6, 5))),
+      ImmutableSet.copyOf(results.get(2)));
+    Assert.assertEquals(
+      ImmutableSet.of(new TimeSeries("metric1", ImmutableMap.<String, String>of(), timeValues(2, 2))),
+      ImmutableSet.copyOf(results.get(3)));
+  }
+
+  @Test
+  public void testBatchQueryTimeRanges() throws Exception {
+    Aggregation agg = new DefaultAggregation(ImmutableList.of("dim1", "dim2"));
+    DefaultCube cube = (DefaultCube) getCube("batchRangeCube", new int[] {1}, ImmutableMap.of("agg", agg));
+    final Map<String, Long> metrics = Maps.newHashMap();
+    cube.setMetricsCollector(new MetricsCollector() {
+      @Override
+      public void increment(String metricName, long value) {
+        Long current = metrics.get(metricName);
+        metrics.put(metricName, current == null ? value : current + value);
+      }
+
+      @Override
+      public void gauge(String metricName, long value) {
+        metrics.put(metricName, value);
+      }
+    });
+
+    writeInc(cube, "metric1", 1, 1, "1", "1");
+    writeInc(cube, "metric1", 2, 2, "1", "1");
+    writeInc(cube, "metric1", 1001, 3, "1", "1");
+
+    // queries with the same slice but far apart time ranges don't share a scan
+    List<CubeQuery> queries = ImmutableList.of(
+      createQuery("metric1", 0, 1, ImmutableMap.of("dim1", "1"), ImmutableList.of("dim2")),
+      createQuery("metric1", 1000, 1010, ImmutableMap.of("dim1", "1"), ImmutableList.of("dim2")),
+      createQuery("metric1", 1, 5, ImmutableMap.of("dim1", "1"), ImmutableList.of("dim2")));
+    List<Collection<TimeSeries>> results = cube.query(queries);
+    Assert.assertEquals(2L, (long) metrics.get("cube.query.scan.count"));
+
+    Assert.assertEquals(
+      ImmutableSet.of(new TimeSeries("metric1", ImmutableMap.of("dim2", "1"), timeValues(1, 1))),
+      ImmutableSet.copyOf(results.get(0)));
+    Assert.assertEquals(
+      ImmutableSet.of(new TimeSeries("metric1", ImmutableMap.of("dim2", "1"), timeValues(1001, 3))),
+      ImmutableSet.copyOf(results.get(1)));
+    Assert.assertEquals(
+      ImmutableSet.of(new TimeSeries("metric1", ImmutableMap.of("dim2", "1"), timeValues(1, 1, 2, 2))),
+      ImmutableSet.copyOf(results.get(2)));
+  }
+
+  private CubeQuery createQuery(String measureName, long startTs, long endTs,
+                                Map<String, String> dimValues, List<String> groupByDims) {
+    return CubeQuery.builder()
+      .select()
+        .measurement(measureName, AggregationFunction.SUM)
+      .from(null).resolution(1, TimeUnit.SECONDS)
+      .where()
+        .dimensions(dimValues)
+        .timeRange(startTs, endTs)
+      .groupBy()
+        .dimensions(groupByDims)
+      .limit(Integer.MAX_VALUE)
+      .build();
+  }
 }
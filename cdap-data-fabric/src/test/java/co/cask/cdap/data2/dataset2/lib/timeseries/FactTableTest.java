@@ -207,14 +207,57 @@ public class FactTableTest {
 
   @Test
   public void testSearch() throws Exception {
-    InMemoryTableService.create("SearchEntityTable");
-    InMemoryTableService.create("SearchDataTable");
+    testSearch("Search", -1L);
+  }
+
+  @Test
+  public void testSearchWithIndex() throws Exception {
+    testSearch("IndexedSearch", 3600L);
+
+    // index loaded from the table should give same results as the one updated on writes
+    FactTable table = new FactTable(new InMemoryMetricsTable("IndexedSearchDataTable"),
+                                    new EntityTable(new InMemoryMetricsTable("IndexedSearchEntityTable")),
+                                    Integer.MAX_VALUE, 2, 3600L);
+    List<String> aggregationList = ImmutableList.of("dim1", "dim2", "dim3", "dim4");
+    testTagSearch(table, aggregationList, ImmutableMap.of("dim1", "value2", "dim2", "value2"),
+                  ImmutableSet.of(new DimensionValue("dim3", "x3"), new DimensionValue("dim4", "y4")));
+    testMetricNamesSearch(table, aggregationList, ImmutableMap.of("dim2", "value3"),
+                          ImmutableSet.of("metric-d0", "metric-d1"));
+    // null value in the slice matches any value, including no value
+    Map<String, String> slice = Maps.newHashMap();
+    slice.put("dim2", "value2");
+    slice.put("dim3", null);
+    testTagSearch(table, aggregationList, slice,
+                  ImmutableSet.of(new DimensionValue("dim1", "value1"), new DimensionValue("dim1", "value2")));
+    testMetricNamesSearch(table, aggregationList, slice,
+                          ImmutableSet.of("metric-a0", "metric-a1", "metric-b0", "metric-b1",
+                                          "metric-c0", "metric-c1"));
+
+    // newly written facts are visible in the loaded index
+    writeInc(table, "metric-e", 0, 1, "dim1", "value5", "dim2", "value5", "dim3", "value5", "dim4", "value5");
+    testTagSearch(table, aggregationList, ImmutableMap.<String, String>of(),
+                  ImmutableSet.of(new DimensionValue("dim1", "value1"), new DimensionValue("dim1", "value2"),
+                                  new DimensionValue("dim1", "value5")));
+    testMetricNamesSearch(table, aggregationList, ImmutableMap.of("dim4", "value5"), ImmutableSet.of("metric-e"));
+
+    // deleted facts are no longer found
+    table.delete(new FactScan(0, 1, ImmutableList.of("metric-e"),
+                              ImmutableList.of(new DimensionValue("dim1", "value5"),
+                                               new DimensionValue("dim2", "value5"),
+                                               new DimensionValue("dim3", "value5"),
+                                               new DimensionValue("dim4", "value5"))));
+    testMetricNamesSearch(table, aggregationList, ImmutableMap.of("dim4", "value5"), ImmutableSet.<String>of());
+  }
+
+  private void testSearch(String tablePrefix, long indexRefreshSeconds) throws Exception {
+    InMemoryTableService.create(tablePrefix + "EntityTable");
+    InMemoryTableService.create(tablePrefix + "DataTable");
     int resolution = Integer.MAX_VALUE;
     int rollTimebaseInterval = 2;
 
-    FactTable table = new FactTable(new InMemoryMetricsTable("SearchDataTable"),
-                                    new EntityTable(new InMemoryMetricsTable("SearchEntityTable")),
-                                    resolution, rollTimebaseInterval);
+    FactTable table = new FactTable(new InMemoryMetricsTable(tablePrefix + "DataTable"),
+                                    new EntityTable(new InMemoryMetricsTable(tablePrefix + "EntityTable")),
+                                    resolution, rollTimebaseInterval, indexRefreshSeconds);
 
     // aligned to start of resolution bucket
     // "/1000" because time is expected to be in seconds
@@ -0,0 +1,65 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.transaction.queue;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit test for {@link AdaptiveFetchSize}.
+ */
+public class AdaptiveFetchSizeTest {
+
+  @Test
+  public void testFetchSize() {
+    AdaptiveFetchSize fetchSize = new AdaptiveFetchSize(1000L, 5, 5000);
+
+    // Default is used until the rate is known
+    Assert.assertEquals(100, fetchSize.getFetchSize(10, 100));
+    long time = 0L;
+    fetchSize.dequeued(10, time);
+    Assert.assertEquals(100, fetchSize.getFetchSize(10, 100));
+
+    // Fast consumer, 10 entries every ms, the fetch size is capped
+    for (int i = 0; i < 50; i++) {
+      time += TimeUnit.MILLISECONDS.toNanos(1);
+      fetchSize.dequeued(10, time);
+    }
+    Assert.assertEquals(5000, fetchSize.getFetchSize(10, 100));
+
+    // Slow consumer, 10 entries every second, fetches just about the entries for a second
+    for (int i = 0; i < 50; i++) {
+      time += TimeUnit.SECONDS.toNanos(1);
+      fetchSize.dequeued(10, time);
+    }
+    int rows = fetchSize.getFetchSize(10, 100);
+    Assert.assertTrue("Unexpected fetch size " + rows, rows >= 10 && rows <= 11);
+
+    // Idle consumer never fetches less than a batch or the minimum
+    for (int i = 0; i < 50; i++) {
+      time += TimeUnit.SECONDS.toNanos(5);
+      fetchSize.dequeued(0, time);
+    }
+    Assert.assertEquals(10, fetchSize.getFetchSize(10, 100));
+    Assert.assertEquals(5, fetchSize.getFetchSize(1, 100));
+
+    // Never fetches more than the maximum
+    Assert.assertEquals(5000, fetchSize.getFetchSize(Integer.MAX_VALUE, 100));
+  }
+}
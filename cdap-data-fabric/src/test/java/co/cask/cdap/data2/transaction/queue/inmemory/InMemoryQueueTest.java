@@ -15,6 +15,7 @@
  */
 package co.cask.cdap.data2.transaction.queue.inmemory;
 
+import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.guice.ConfigModule;
 import co.cask.cdap.common.guice.DiscoveryRuntimeModule;
 import co.cask.cdap.common.guice.NonCustomLocationUnitTestModule;
@@ -52,9 +53,12 @@ public class InMemoryQueueTest extends QueueTest {
 
   @BeforeClass
   public static void init() throws Exception {
+    init(CConfiguration.create());
+  }
 
+  protected static void init(CConfiguration cConf) throws Exception {
     injector = Guice.createInjector(
-      new ConfigModule(),
+      new ConfigModule(cConf),
       new NonCustomLocationUnitTestModule().getModule(),
       new DiscoveryRuntimeModule().getInMemoryModules(),
       new SystemDatasetRuntimeModule().getInMemoryModules(),
@@ -0,0 +1,140 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.transaction.queue.inmemory;
+
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.utils.ImmutablePair;
+import co.cask.cdap.data2.queue.ConsumerConfig;
+import co.cask.cdap.data2.queue.DequeueStrategy;
+import co.cask.cdap.data2.queue.QueueEntry;
+import co.cask.cdap.data2.transaction.queue.QueueConstants;
+import org.apache.tephra.Transaction;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-memory queue tests with the queues backed by {@link RingBufferInMemoryQueue}.
+ */
+public class RingBufferInMemoryQueueTest extends InMemoryQueueTest {
+
+  @BeforeClass
+  public static void init() throws Exception {
+    CConfiguration cConf = CConfiguration.create();
+    cConf.setBoolean(QueueConstants.ConfigKeys.INMEMORY_QUEUE_RING_BUFFER_ENABLED, true);
+    init(cConf);
+  }
+
+  @Test
+  public void testSegmentRelease() {
+    RingBufferInMemoryQueue queue = new RingBufferInMemoryQueue();
+    int count = 5000;
+    for (int i = 0; i < count; i++) {
+      queue.enqueue(1L, i, new QueueEntry(new byte[] { (byte) i }));
+    }
+    Assert.assertEquals(count, queue.getSize());
+
+    ConsumerConfig config = new ConsumerConfig(0L, 0, 1, DequeueStrategy.FIFO, null);
+    InMemoryQueue.ConsumerState state = new InMemoryQueue.ConsumerState();
+    Transaction tx = new Transaction(2L, 3L, new long[0], new long[0], Transaction.NO_TX_IN_PROGRESS);
+    int dequeued = 0;
+    ImmutablePair<List<InMemoryQueue.Key>, List<byte[]>> result;
+    while ((result = queue.dequeue(tx, config, state, 700)) != null) {
+      for (byte[] data : result.getSecond()) {
+        Assert.assertEquals((byte) dequeued++, data[0]);
+      }
+      queue.ack(result.getFirst(), config);
+      queue.evict(result.getFirst(), 1);
+    }
+    Assert.assertEquals(count, dequeued);
+    Assert.assertEquals(0, queue.getSize());
+
+    // entries enqueued after all segments were released and after a clear are still dequeued
+    queue.enqueue(4L, 0, new QueueEntry(new byte[] { 1 }));
+    queue.clear();
+    queue.enqueue(5L, 0, new QueueEntry(new byte[] { 2 }));
+    tx = new Transaction(5L, 6L, new long[0], new long[0], Transaction.NO_TX_IN_PROGRESS);
+    result = queue.dequeue(tx, config, state, 10);
+    Assert.assertNotNull(result);
+    Assert.assertEquals(1, result.getSecond().size());
+    Assert.assertEquals(2, result.getSecond().get(0)[0]);
+  }
+
+  @Test
+  public void testUndoEnqueue() {
+    RingBufferInMemoryQueue queue = new RingBufferInMemoryQueue();
+    List<InMemoryQueue.Key> keys = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      keys.add(queue.enqueue(1L, i, new QueueEntry(new byte[] { (byte) i })));
+    }
+    queue.undoEnqueue(keys.get(1));
+    // undoing an entry twice has no effect
+    queue.undoEnqueue(keys.get(1));
+    Assert.assertEquals(2, queue.getSize());
+
+    ConsumerConfig config = new ConsumerConfig(0L, 0, 1, DequeueStrategy.FIFO, null);
+    Transaction tx = new Transaction(2L, 3L, new long[0], new long[0], Transaction.NO_TX_IN_PROGRESS);
+    ImmutablePair<List<InMemoryQueue.Key>, List<byte[]>> result =
+      queue.dequeue(tx, config, new InMemoryQueue.ConsumerState(), 10);
+    Assert.assertNotNull(result);
+    Assert.assertEquals(2, result.getSecond().size());
+    Assert.assertEquals(0, result.getSecond().get(0)[0]);
+    Assert.assertEquals(2, result.getSecond().get(1)[0]);
+  }
+
+  @Test
+  public void testConcurrentClear() throws InterruptedException {
+    final RingBufferInMemoryQueue queue = new RingBufferInMemoryQueue();
+    final int count = 20000;
+    List<Thread> producers = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      final long txId = i + 1;
+      Thread producer = new Thread() {
+        @Override
+        public void run() {
+          for (int seqId = 0; seqId < count; seqId++) {
+            queue.enqueue(txId, seqId, new QueueEntry(new byte[] { 1 }));
+          }
+        }
+      };
+      producer.start();
+      producers.add(producer);
+    }
+    for (int i = 0; i < 100; i++) {
+      queue.clear();
+      Thread.yield();
+    }
+    for (Thread producer : producers) {
+      producer.join();
+    }
+
+    // the size counts exactly the entries that were not cleared
+    ConsumerConfig config = new ConsumerConfig(0L, 0, 1, DequeueStrategy.FIFO, null);
+    InMemoryQueue.ConsumerState state = new InMemoryQueue.ConsumerState();
+    Transaction tx = new Transaction(10L, 11L, new long[0], new long[0], Transaction.NO_TX_IN_PROGRESS);
+    int dequeued = 0;
+    ImmutablePair<List<InMemoryQueue.Key>, List<byte[]>> result;
+    while ((result = queue.dequeue(tx, config, state, 1000)) != null) {
+      dequeued += result.getFirst().size();
+      queue.ack(result.getFirst(), config);
+    }
+    Assert.assertEquals(dequeued, queue.getSize());
+  }
+}
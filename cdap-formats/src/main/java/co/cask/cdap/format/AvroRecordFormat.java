@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -38,7 +38,8 @@ import javax.annotation.concurrent.NotThreadSafe;
 
 
 /**
- * Stream record format that interprets the body as avro encoded binary data.
+ * Stream record format that interprets the body as avro encoded binary data. Callers that only use a few fields of
+ * wide records can read the events with {@link #readLazy(StreamEvent)} instead, which decodes the fields on access.
  */
 public class AvroRecordFormat extends AbstractStreamEventRecordFormat<StructuredRecord> {
   private final ByteBufferInputStream byteBufferInput = new ByteBufferInputStream(ByteBuffer.wrap(new byte[0]));
@@ -55,33 +56,61 @@ public class AvroRecordFormat extends AbstractStreamEventRecordFormat<Structured
   private String formatSchemaHash;
   private String eventSchemaHash;
   private StructuredRecordDatumReader datumReader;
+  private StructuredRecordCodec formatCodec;
   private BinaryDecoder binaryDecoder;
 
   @Override
   public StructuredRecord read(StreamEvent event) {
     try {
-      // Check if the event has different schema then the read schema. If it does update the datumReader
-      String eventSchemaStr = event.getHeaders().get(SCHEMA);
-      if (eventSchemaStr != null) {
-        String eventSchemaHash = event.getHeaders().get(SCHEMA_HASH);
-        if (!this.eventSchemaHash.equals(eventSchemaHash)) {
-          org.apache.avro.Schema eventSchema = new org.apache.avro.Schema.Parser().parse(eventSchemaStr);
-          datumReader.setSchema(eventSchema);
-          this.eventSchemaHash = eventSchemaHash;
-        }
-      } else {
-        // If no schema is available on the event, assume it's the same as read schema
-        datumReader.setSchema(avroFormatSchema);
-        eventSchemaHash = formatSchemaHash;
-      }
-
+      boolean resolve = updateEventSchema(event);
       binaryDecoder = decoderFactory.binaryDecoder(byteBufferInput.reset(event.getBody()), binaryDecoder);
+      if (!resolve) {
+        return formatCodec.decode(binaryDecoder);
+      }
       return datumReader.read(null, binaryDecoder);
     } catch (IOException e) {
       throw new UnexpectedFormatException("Unable to decode the stream body as avro.", e);
     }
   }
 
+  /**
+   * Reads the given event as a record that decodes its fields on first access. The record is a view over the body of
+   * the event, which must not be modified while the record is used. Events written with a different schema than the
+   * format schema need schema resolution, hence they are decoded right away.
+   *
+   * @param event the event to read
+   * @return the record of the event
+   */
+  public LazyStructuredRecord readLazy(StreamEvent event) {
+    if (!updateEventSchema(event)) {
+      return LazyStructuredRecord.of(formatSchema, formatCodec, event.getBody());
+    }
+    return LazyStructuredRecord.of(read(event));
+  }
+
+  /**
+   * Updates the schema used to decode events if the given event has a different schema than the previous one.
+   *
+   * @return {@code true} if the event needs schema resolution, or {@code false} if it is written with the format schema
+   */
+  private boolean updateEventSchema(StreamEvent event) {
+    // Check if the event has different schema then the read schema. If it does update the datumReader
+    String eventSchemaStr = event.getHeaders().get(SCHEMA);
+    if (eventSchemaStr != null) {
+      String eventSchemaHash = event.getHeaders().get(SCHEMA_HASH);
+      if (!this.eventSchemaHash.equals(eventSchemaHash)) {
+        org.apache.avro.Schema eventSchema = new org.apache.avro.Schema.Parser().parse(eventSchemaStr);
+        datumReader.setSchema(eventSchema);
+        this.eventSchemaHash = eventSchemaHash;
+      }
+    } else {
+      // If no schema is available on the event, assume it's the same as read schema
+      eventSchemaHash = formatSchemaHash;
+    }
+    // Events written with the read schema don't need schema resolution
+    return !formatSchemaHash.equals(eventSchemaHash);
+  }
+
   @Override
   protected Schema getDefaultSchema() {
     return null;
@@ -109,6 +138,7 @@ public class AvroRecordFormat extends AbstractStreamEventRecordFormat<Structured
       formatSchemaHash = Bytes.toHexString(md5.digest(Bytes.toBytes(avroFormatSchema.toString())));
       eventSchemaHash = formatSchemaHash;
       datumReader = new StructuredRecordDatumReader(formatSchema, avroFormatSchema);
+      formatCodec = StructuredRecordCodec.of(formatSchema, true);
     } catch (NoSuchAlgorithmException e) {
       // This shouldn't happen.
       throw new RuntimeException(e);
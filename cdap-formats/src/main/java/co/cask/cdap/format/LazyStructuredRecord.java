@@ -0,0 +1,201 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.format;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.format.UnexpectedFormatException;
+import co.cask.cdap.api.data.schema.Schema;
+import com.google.common.base.Preconditions;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.DecoderFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A view over the binary encoding of a {@link StructuredRecord}, as written by {@link StructuredRecordCodec}, that
+ * decodes each field on first access. {@link AvroRecordFormat#readLazy} reads stream events as such records.
+ * <p/>
+ * The view reads the encoded record from the source bytes without copying them, hence the source bytes must not be
+ * modified while the record is used, unless all its fields are decoded already. Fields are
+ * located with the field offset table of the schema, which gives the offset of the fields after fixed size fields
+ * only, and with the offsets of the other fields found while skipping over the fields before them, which are kept per
+ * record. Reading a few fields of a wide record therefore only decodes those fields. {@link #toStructuredRecord()}
+ * decodes the remaining fields into a {@link StructuredRecord}.
+ */
+@NotThreadSafe
+public final class LazyStructuredRecord {
+
+  private static final Object NOT_DECODED = new Object();
+
+  private final Schema schema;
+  private final StructuredRecordCodec codec;
+  private final byte[] bytes;
+  private final int start;
+  private final int length;
+  private final Object[] values;
+  // Offset of every field from the start of the record, or -1 if not known yet
+  private final int[] offsets;
+  private BinaryDecoder decoder;
+
+  /**
+   * Creates a record of the given schema over the encoded record in the given byte array.
+   */
+  public static LazyStructuredRecord of(Schema schema, byte[] bytes, int offset, int length) {
+    return new LazyStructuredRecord(schema, StructuredRecordCodec.of(schema), bytes, offset, length);
+  }
+
+  /**
+   * Creates a record of the given schema over the remaining bytes of the given buffer. The position of the buffer is
+   * not changed. The bytes of a buffer without an accessible array, such as a direct buffer, are copied.
+   */
+  public static LazyStructuredRecord of(Schema schema, ByteBuffer buffer) {
+    return of(schema, StructuredRecordCodec.of(schema), buffer);
+  }
+
+  /**
+   * Creates a record of the given schema over the remaining bytes of the given buffer, decoded with the given codec.
+   */
+  static LazyStructuredRecord of(Schema schema, StructuredRecordCodec codec, ByteBuffer buffer) {
+    if (buffer.hasArray()) {
+      return new LazyStructuredRecord(schema, codec, buffer.array(), buffer.arrayOffset() + buffer.position(),
+                                      buffer.remaining());
+    }
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.duplicate().get(bytes);
+    return new LazyStructuredRecord(schema, codec, bytes, 0, bytes.length);
+  }
+
+  /**
+   * Creates a record with all fields decoded already from the given record.
+   */
+  static LazyStructuredRecord of(StructuredRecord record) {
+    Schema schema = record.getSchema();
+    LazyStructuredRecord lazyRecord = new LazyStructuredRecord(schema, StructuredRecordCodec.of(schema),
+                                                               new byte[0], 0, 0);
+    for (int i = 0; i < lazyRecord.values.length; i++) {
+      lazyRecord.values[i] = record.get(lazyRecord.codec.getFieldName(i));
+    }
+    return lazyRecord;
+  }
+
+  private LazyStructuredRecord(Schema schema, StructuredRecordCodec codec, byte[] bytes, int start, int length) {
+    Preconditions.checkPositionIndexes(start, start + length, bytes.length);
+    this.schema = schema;
+    this.codec = codec;
+    this.bytes = bytes;
+    this.start = start;
+    this.length = length;
+    this.values = new Object[codec.getFieldCount()];
+    this.offsets = new int[values.length];
+    Arrays.fill(values, NOT_DECODED);
+    for (int i = 0; i < offsets.length; i++) {
+      offsets[i] = codec.getFixedOffset(i);
+    }
+  }
+
+  /**
+   * Returns the schema of the record.
+   */
+  public Schema getSchema() {
+    return schema;
+  }
+
+  /**
+   * Returns the value of the given field, decoding it if it is not decoded yet.
+   *
+   * @param fieldName name of the field
+   * @param <T> type of the value
+   * @return the value of the field, or {@code null} if the value is null or the record doesn't have the field
+   * @throws UnexpectedFormatException if the field cannot be decoded
+   */
+  @Nullable
+  @SuppressWarnings("unchecked")
+  public <T> T get(String fieldName) {
+    int index = codec.getFieldIndex(fieldName);
+    return index < 0 ? null : (T) getValue(index);
+  }
+
+  /**
+   * Returns whether the value of the given field is decoded already.
+   */
+  public boolean isDecoded(String fieldName) {
+    int index = codec.getFieldIndex(fieldName);
+    return index >= 0 && values[index] != NOT_DECODED;
+  }
+
+  /**
+   * Decodes the fields that are not decoded yet and returns the record.
+   *
+   * @throws UnexpectedFormatException if a field cannot be decoded
+   */
+  public StructuredRecord toStructuredRecord() {
+    StructuredRecord.Builder builder = StructuredRecord.builder(schema);
+    for (int i = 0; i < values.length; i++) {
+      Object value = getValue(i);
+      if (value != null) {
+        builder.set(codec.getFieldName(i), value);
+      }
+    }
+    return builder.build();
+  }
+
+  @Nullable
+  private Object getValue(int index) {
+    Object value = values[index];
+    if (value != NOT_DECODED) {
+      return value;
+    }
+    try {
+      seek(index);
+      value = codec.decodeField(index, decoder);
+      updateOffset(index + 1);
+    } catch (IOException e) {
+      throw new UnexpectedFormatException("Failed to decode field " + codec.getFieldName(index), e);
+    }
+    values[index] = value;
+    return value;
+  }
+
+  /**
+   * Positions the decoder at the given field, skipping over the fields before it with unknown offsets.
+   */
+  private void seek(int index) throws IOException {
+    // Find the closest field before it with a known offset
+    int known = index;
+    while (offsets[known] < 0) {
+      known--;
+    }
+    decoder = DecoderFactory.get().binaryDecoder(bytes, start + offsets[known], length - offsets[known], decoder);
+    for (int i = known; i < index; i++) {
+      codec.skipField(i, decoder);
+      updateOffset(i + 1);
+    }
+  }
+
+  /**
+   * Records the current position of the decoder as the offset of the given field.
+   */
+  private void updateOffset(int index) throws IOException {
+    if (index < offsets.length && offsets[index] < 0) {
+      offsets[index] = length - decoder.inputStream().available();
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.format;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.Encoder;
+import org.apache.avro.io.EncoderFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Utility class for converting {@link StructuredRecord} to and from a compact binary form.
+ * <p/>
+ * Values are written with the Avro binary encoding of the record schema, hence records with Avro compatible schemas
+ * are readable by Avro. The only difference is that map keys are encoded based on the key schema, since the schema
+ * allows keys that are not strings. The schema itself is not written and must be known for decoding.
+ * <p/>
+ * Records are encoded and decoded by the {@link StructuredRecordCodec} of their schema.
+ */
+public final class StructuredRecordBinaryConverter {
+
+  /**
+   * Converts a {@link StructuredRecord} to bytes.
+   */
+  public static byte[] toBytes(StructuredRecord record) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    BinaryEncoder encoder = EncoderFactory.get().directBinaryEncoder(os, null);
+    encode(record, encoder);
+    encoder.flush();
+    return os.toByteArray();
+  }
+
+  /**
+   * Converts a {@link StructuredRecord} to bytes, writing map entries in the order of their encoded keys instead of
+   * the iteration order of the map. Equal records are therefore converted to equal bytes, which makes the bytes
+   * suitable for comparing records. The bytes are read by {@link #fromBytes(byte[], Schema)}.
+   */
+  public static byte[] toSortableBytes(StructuredRecord record) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    BinaryEncoder encoder = EncoderFactory.get().directBinaryEncoder(os, null);
+    StructuredRecordCodec.of(record.getSchema(), false, true).encode(record, encoder);
+    encoder.flush();
+    return os.toByteArray();
+  }
+
+  /**
+   * Converts bytes created by {@link #toBytes(StructuredRecord)} to a {@link StructuredRecord} based on the schema.
+   */
+  public static StructuredRecord fromBytes(byte[] bytes, Schema schema) throws IOException {
+    return fromBytes(bytes, 0, bytes.length, schema);
+  }
+
+  /**
+   * Converts bytes created by {@link #toBytes(StructuredRecord)} to a {@link StructuredRecord} based on the schema.
+   */
+  public static StructuredRecord fromBytes(byte[] bytes, int offset, int length, Schema schema) throws IOException {
+    BinaryDecoder decoder = DecoderFactory.get().binaryDecoder(bytes, offset, length, null);
+    return decode(decoder, schema);
+  }
+
+  /**
+   * Writes a {@link StructuredRecord} to the given {@link Encoder}.
+   */
+  public static void encode(StructuredRecord record, Encoder encoder) throws IOException {
+    StructuredRecordCodec.of(record.getSchema()).encode(record, encoder);
+  }
+
+  /**
+   * Reads a {@link StructuredRecord} of the given schema from the given {@link Decoder}.
+   */
+  public static StructuredRecord decode(Decoder decoder, Schema schema) throws IOException {
+    return StructuredRecordCodec.of(schema).decode(decoder);
+  }
+
+  private StructuredRecordBinaryConverter() {
+    //inaccessible constructor for static class
+  }
+}
@@ -0,0 +1,836 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.format;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.api.data.schema.SchemaHash;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.primitives.UnsignedBytes;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.io.Encoder;
+import org.apache.avro.io.EncoderFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Encodes and decodes {@link StructuredRecord} of one record schema with the Avro binary encoding.
+ * <p/>
+ * The codec is compiled from the schema once, into a tree of value codecs that each handle one type of the schema.
+ * Encoding and decoding then dispatch directly to the codec of every field, without switching on the schema type
+ * or looking up the schema of every value. Codecs are cached by schema, including the record names, which the
+ * schema fingerprint ignores but which the decoded records carry in their schema.
+ * <p/>
+ * The encoding is the same as the one of {@link StructuredRecordBinaryConverter}.
+ */
+@ThreadSafe
+public final class StructuredRecordCodec {
+
+  private static final int MAX_CACHED_CODECS = 1000;
+  private static final Cache<CacheKey, StructuredRecordCodec> CODECS =
+    CacheBuilder.newBuilder().maximumSize(MAX_CACHED_CODECS).build();
+
+  private final RecordCodec recordCodec;
+
+  /**
+   * Returns the codec of the given record schema, which decodes bytes values to {@code byte[]}.
+   */
+  public static StructuredRecordCodec of(Schema schema) {
+    return of(schema, false, false);
+  }
+
+  /**
+   * Returns the codec of the given record schema.
+   *
+   * @param schema the record schema
+   * @param bytesAsBuffer {@code true} to decode bytes values to {@link ByteBuffer} like Avro does, or {@code false}
+   *                      to decode them to {@code byte[]}
+   */
+  static StructuredRecordCodec of(Schema schema, boolean bytesAsBuffer) {
+    return of(schema, bytesAsBuffer, false);
+  }
+
+  /**
+   * Returns the codec of the given record schema.
+   *
+   * @param schema the record schema
+   * @param bytesAsBuffer {@code true} to decode bytes values to {@link ByteBuffer} like Avro does, or {@code false}
+   *                      to decode them to {@code byte[]}
+   * @param sortMapKeys {@code true} to encode map entries in the order of their encoded keys, so that equal records
+   *                    are encoded to equal bytes, or {@code false} to encode them in the iteration order of the map
+   */
+  static StructuredRecordCodec of(final Schema schema, final boolean bytesAsBuffer, final boolean sortMapKeys) {
+    Preconditions.checkArgument(schema.getType() == Schema.Type.RECORD, "Schema must be a record: %s", schema);
+    try {
+      CacheKey key = new CacheKey(schema, bytesAsBuffer, sortMapKeys);
+      return CODECS.get(key, new Callable<StructuredRecordCodec>() {
+        @Override
+        public StructuredRecordCodec call() {
+          return new StructuredRecordCodec(schema, bytesAsBuffer, sortMapKeys);
+        }
+      });
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  private StructuredRecordCodec(Schema schema, boolean bytesAsBuffer, boolean sortMapKeys) {
+    this.recordCodec = (RecordCodec) new Compiler(bytesAsBuffer, sortMapKeys).compile(schema);
+  }
+
+  /**
+   * Reads a {@link StructuredRecord} from the given {@link Decoder}.
+   */
+  public StructuredRecord decode(Decoder decoder) throws IOException {
+    return recordCodec.read(decoder);
+  }
+
+  /**
+   * Writes a {@link StructuredRecord} to the given {@link Encoder}.
+   */
+  public void encode(StructuredRecord record, Encoder encoder) throws IOException {
+    recordCodec.write(encoder, record);
+  }
+
+  /**
+   * Returns the record schema of this codec.
+   */
+  Schema getSchema() {
+    return recordCodec.schema;
+  }
+
+  /**
+   * Returns the number of fields of the record.
+   */
+  int getFieldCount() {
+    return recordCodec.fieldNames.length;
+  }
+
+  /**
+   * Returns the index of the given field in the record, or {@code -1} if the record doesn't have the field.
+   */
+  int getFieldIndex(String fieldName) {
+    Integer index = recordCodec.fieldIndices.get(fieldName);
+    return index == null ? -1 : index;
+  }
+
+  /**
+   * Returns the name of the field of the given index.
+   */
+  String getFieldName(int index) {
+    return recordCodec.fieldNames[index];
+  }
+
+  /**
+   * Returns the offset of the given field from the start of every encoded record, or {@code -1} if the offset
+   * depends on the values of the fields before it.
+   */
+  int getFixedOffset(int index) {
+    return recordCodec.fixedOffsets[index];
+  }
+
+  /**
+   * Reads the value of the field of the given index from a {@link Decoder} positioned at the field.
+   */
+  @Nullable
+  Object decodeField(int index, Decoder decoder) throws IOException {
+    return recordCodec.fieldCodecs[index].read(decoder);
+  }
+
+  /**
+   * Skips the value of the field of the given index of a {@link Decoder} positioned at the field.
+   */
+  void skipField(int index, Decoder decoder) throws IOException {
+    recordCodec.fieldCodecs[index].skip(decoder);
+  }
+
+  /**
+   * Creates the {@link ValueCodec} of schemas.
+   */
+  private static final class Compiler {
+
+    private final boolean bytesAsBuffer;
+    private final boolean sortMapKeys;
+    // Codecs of the records being compiled, for recursive records
+    private final Map<String, RecordCodec> recordCodecs = new HashMap<>();
+
+    private Compiler(boolean bytesAsBuffer, boolean sortMapKeys) {
+      this.bytesAsBuffer = bytesAsBuffer;
+      this.sortMapKeys = sortMapKeys;
+    }
+
+    ValueCodec compile(Schema schema) {
+      switch (schema.getType()) {
+        case NULL:
+          return new NullCodec(schema);
+        case BOOLEAN:
+          return new BooleanCodec(schema);
+        case INT:
+          return new IntCodec(schema);
+        case LONG:
+          return new LongCodec(schema);
+        case FLOAT:
+          return new FloatCodec(schema);
+        case DOUBLE:
+          return new DoubleCodec(schema);
+        case BYTES:
+          return new BytesCodec(schema, bytesAsBuffer);
+        case STRING:
+          return new StringCodec(schema);
+        case ENUM:
+          return new EnumCodec(schema);
+        case ARRAY:
+          return new ArrayCodec(schema, compile(schema.getComponentSchema()));
+        case MAP:
+          Map.Entry<Schema, Schema> mapSchema = schema.getMapSchema();
+          ValueCodec keyCodec = compile(mapSchema.getKey());
+          ValueCodec valueCodec = compile(mapSchema.getValue());
+          return sortMapKeys ? new SortedMapCodec(schema, keyCodec, valueCodec)
+                             : new MapCodec(schema, keyCodec, valueCodec);
+        case RECORD:
+          return compileRecord(schema);
+        case UNION:
+          List<Schema> unionSchemas = schema.getUnionSchemas();
+          ValueCodec[] codecs = new ValueCodec[unionSchemas.size()];
+          for (int i = 0; i < codecs.length; i++) {
+            codecs[i] = compile(unionSchemas.get(i));
+          }
+          return new UnionCodec(schema, codecs);
+      }
+      throw new IllegalArgumentException("Unsupported schema: " + schema);
+    }
+
+    private RecordCodec compileRecord(Schema schema) {
+      RecordCodec codec = recordCodecs.get(schema.getRecordName());
+      if (codec != null) {
+        return codec;
+      }
+      // Register the codec before compiling the fields, which may refer to the record
+      codec = new RecordCodec(schema);
+      recordCodecs.put(schema.getRecordName(), codec);
+
+      List<Schema.Field> fields = schema.getFields();
+      ValueCodec[] fieldCodecs = new ValueCodec[fields.size()];
+      for (int i = 0; i < fieldCodecs.length; i++) {
+        fieldCodecs[i] = compile(fields.get(i).getSchema());
+      }
+      codec.setFieldCodecs(fieldCodecs);
+      return codec;
+    }
+  }
+
+  /**
+   * Reads and writes the values of one schema.
+   */
+  private abstract static class ValueCodec {
+
+    final Schema schema;
+
+    ValueCodec(Schema schema) {
+      this.schema = schema;
+    }
+
+    abstract Object read(Decoder decoder) throws IOException;
+
+    abstract void write(Encoder encoder, @Nullable Object value) throws IOException;
+
+    /**
+     * Skips a value without decoding it.
+     */
+    abstract void skip(Decoder decoder) throws IOException;
+
+    /**
+     * Returns the number of bytes of every encoded value, or {@code -1} if it depends on the value.
+     */
+    int getFixedSize() {
+      return -1;
+    }
+
+    /**
+     * Checks that a value is not {@code null} before writing it.
+     */
+    final void checkNotNull(@Nullable Object value) throws IOException {
+      if (value == null) {
+        throw new IOException("Null value is not valid for schema " + schema);
+      }
+    }
+  }
+
+  private static final class NullCodec extends ValueCodec {
+
+    NullCodec(Schema schema) {
+      super(schema);
+    }
+
+    @Override
+    Object read(Decoder decoder) throws IOException {
+      decoder.readNull();
+      return null;
+    }
+
+    @Override
+    int getFixedSize() {
+      return 0;
+    }
+
+    @Override
+    void skip(Decoder decoder) throws IOException {
+      decoder.readNull();
+    }
+
+    @Override
+    void write(Encoder encoder, @Nullable Object value) throws IOException {
+      encoder.writeNull();
+    }
+  }
+
+  private static final class BooleanCodec extends ValueCodec {
+
+    BooleanCodec(Schema schema) {
+      super(schema);
+    }
+
+    @Override
+    Object read(Decoder decoder) throws IOException {
+      return decoder.readBoolean();
+    }
+
+    @Override
+    int getFixedSize() {
+      return 1;
+    }
+
+    @Override
+    void skip(Decoder decoder) throws IOException {
+      decoder.readBoolean();
+    }
+
+    @Override
+    void write(Encoder encoder, @Nullable Object value) throws IOException {
+      checkNotNull(value);
+      encoder.writeBoolean((Boolean) value);
+    }
+  }
+
+  private static final class IntCodec extends ValueCodec {
+
+    IntCodec(Schema schema) {
+      super(schema);
+    }
+
+    @Override
+    Object read(Decoder decoder) throws IOException {
+      return decoder.readInt();
+    }
+
+    @Override
+    void skip(Decoder decoder) throws IOException {
+      decoder.readInt();
+    }
+
+    @Override
+    void write(Encoder encoder, @Nullable Object value) throws IOException {
+      checkNotNull(value);
+      encoder.writeInt(((Number) value).intValue());
+    }
+  }
+
+  private static final class LongCodec extends ValueCodec {
+
+    LongCodec(Schema schema) {
+      super(schema);
+    }
+
+    @Override
+    Object read(Decoder decoder) throws IOException {
+      return decoder.readLong();
+    }
+
+    @Override
+    void skip(Decoder decoder) throws IOException {
+      decoder.readLong();
+    }
+
+    @Override
+    void write(Encoder encoder, @Nullable Object value) throws IOException {
+      checkNotNull(value);
+      encoder.writeLong(((Number) value).longValue());
+    }
+  }
+
+  private static final class FloatCodec extends ValueCodec {
+
+    FloatCodec(Schema schema) {
+      super(schema);
+    }
+
+    @Override
+    Object read(Decoder decoder) throws IOException {
+      return decoder.readFloat();
+    }
+
+    @Override
+    int getFixedSize() {
+      return 4;
+    }
+
+    @Override
+    void skip(Decoder decoder) throws IOException {
+      decoder.readFloat();
+    }
+
+    @Override
+    void write(Encoder encoder, @Nullable Object value) throws IOException {
+      checkNotNull(value);
+      encoder.writeFloat(((Number) value).floatValue());
+    }
+  }
+
+  private static final class DoubleCodec extends ValueCodec {
+
+    DoubleCodec(Schema schema) {
+      super(schema);
+    }
+
+    @Override
+    Object read(Decoder decoder) throws IOException {
+      return decoder.readDouble();
+    }
+
+    @Override
+    int getFixedSize() {
+      return 8;
+    }
+
+    @Override
+    void skip(Decoder decoder) throws IOException {
+      decoder.readDouble();
+    }
+
+    @Override
+    void write(Encoder encoder, @Nullable Object value) throws IOException {
+      checkNotNull(value);
+      encoder.writeDouble(((Number) value).doubleValue());
+    }
+  }
+
+  private static final class BytesCodec extends ValueCodec {
+
+    private final boolean asBuffer;
+
+    BytesCodec(Schema schema, boolean asBuffer) {
+      super(schema);
+      this.asBuffer = asBuffer;
+    }
+
+    @Override
+    Object read(Decoder decoder) throws IOException {
+      ByteBuffer buffer = decoder.readBytes(null);
+      if (asBuffer) {
+        return buffer;
+      }
+      byte[] bytes = new byte[buffer.remaining()];
+      buffer.get(bytes);
+      return bytes;
+    }
+
+    @Override
+    void skip(Decoder decoder) throws IOException {
+      decoder.skipBytes();
+    }
+
+    @Override
+    void write(Encoder encoder, @Nullable Object value) throws IOException {
+      checkNotNull(value);
+      if (value instanceof ByteBuffer) {
+        // writeBytes(ByteBuffer) doesn't modify the buffer position
+        encoder.writeBytes((ByteBuffer) value);
+      } else if (value instanceof byte[]) {
+        byte[] bytes = (byte[]) value;
+        encoder.writeBytes(bytes, 0, bytes.length);
+      } else {
+        throw new IOException("Expects either ByteBuffer or byte[]. Got " + value.getClass());
+      }
+    }
+  }
+
+  private static final class StringCodec extends ValueCodec {
+
+    StringCodec(Schema schema) {
+      super(schema);
+    }
+
+    @Override
+    Object read(Decoder decoder) throws IOException {
+      return decoder.readString();
+    }
+
+    @Override
+    void skip(Decoder decoder) throws IOException {
+      decoder.skipString();
+    }
+
+    @Override
+    void write(Encoder encoder, @Nullable Object value) throws IOException {
+      checkNotNull(value);
+      encoder.writeString(value.toString());
+    }
+  }
+
+  private static final class EnumCodec extends ValueCodec {
+
+    private final String[] symbols;
+
+    EnumCodec(Schema schema) {
+      super(schema);
+      this.symbols = new String[schema.getEnumValues().size()];
+      for (int i = 0; i < symbols.length; i++) {
+        symbols[i] = schema.getEnumValue(i);
+      }
+    }
+
+    @Override
+    Object read(Decoder decoder) throws IOException {
+      // Currently there is no standard container to represent enum type
+      return symbols[decoder.readEnum()];
+    }
+
+    @Override
+    void skip(Decoder decoder) throws IOException {
+      decoder.readEnum();
+    }
+
+    @Override
+    void write(Encoder encoder, @Nullable Object value) throws IOException {
+      checkNotNull(value);
+      String symbol = value instanceof Enum ? ((Enum) value).name() : value.toString();
+      int idx = schema.getEnumIndex(symbol);
+      if (idx < 0) {
+        throw new IOException("Value " + symbol + " is not a valid enum value of " + schema);
+      }
+      encoder.writeEnum(idx);
+    }
+  }
+
+  private static final class ArrayCodec extends ValueCodec {
+
+    private final ValueCodec elementCodec;
+
+    ArrayCodec(Schema schema, ValueCodec elementCodec) {
+      super(schema);
+      this.elementCodec = elementCodec;
+    }
+
+    @Override
+    Object read(Decoder decoder) throws IOException {
+      long count = decoder.readArrayStart();
+      List<Object> result = new ArrayList<>((int) Math.min(count, Integer.MAX_VALUE));
+      for (; count > 0; count = decoder.arrayNext()) {
+        for (long i = 0; i < count; i++) {
+          result.add(elementCodec.read(decoder));
+        }
+      }
+      return result;
+    }
+
+    @Override
+    void skip(Decoder decoder) throws IOException {
+      for (long count = decoder.skipArray(); count > 0; count = decoder.skipArray()) {
+        for (long i = 0; i < count; i++) {
+          elementCodec.skip(decoder);
+        }
+      }
+    }
+
+    @Override
+    void write(Encoder encoder, @Nullable Object value) throws IOException {
+      checkNotNull(value);
+      if (!(value instanceof Collection) && !value.getClass().isArray()) {
+        throw new IOException("Expects either Collection or array. Got: " + value.getClass());
+      }
+
+      encoder.writeArrayStart();
+      if (value instanceof Collection) {
+        Collection<?> collection = (Collection<?>) value;
+        encoder.setItemCount(collection.size());
+        for (Object element : collection) {
+          encoder.startItem();
+          elementCodec.write(encoder, element);
+        }
+      } else {
+        int length = Array.getLength(value);
+        encoder.setItemCount(length);
+        for (int i = 0; i < length; i++) {
+          encoder.startItem();
+          elementCodec.write(encoder, Array.get(value, i));
+        }
+      }
+      encoder.writeArrayEnd();
+    }
+  }
+
+  private static class MapCodec extends ValueCodec {
+
+    final ValueCodec keyCodec;
+    final ValueCodec valueCodec;
+
+    MapCodec(Schema schema, ValueCodec keyCodec, ValueCodec valueCodec) {
+      super(schema);
+      this.keyCodec = keyCodec;
+      this.valueCodec = valueCodec;
+    }
+
+    @Override
+    Object read(Decoder decoder) throws IOException {
+      Map<Object, Object> result = new HashMap<>();
+      for (long count = decoder.readMapStart(); count > 0; count = decoder.mapNext()) {
+        for (long i = 0; i < count; i++) {
+          Object key = keyCodec.read(decoder);
+          result.put(key, valueCodec.read(decoder));
+        }
+      }
+      return result;
+    }
+
+    @Override
+    void skip(Decoder decoder) throws IOException {
+      for (long count = decoder.skipMap(); count > 0; count = decoder.skipMap()) {
+        for (long i = 0; i < count; i++) {
+          keyCodec.skip(decoder);
+          valueCodec.skip(decoder);
+        }
+      }
+    }
+
+    @Override
+    void write(Encoder encoder, @Nullable Object value) throws IOException {
+      checkNotNull(value);
+      if (!(value instanceof Map)) {
+        throw new IOException("Expects Map. Got: " + value.getClass());
+      }
+
+      Map<?, ?> map = (Map<?, ?>) value;
+      encoder.writeMapStart();
+      encoder.setItemCount(map.size());
+      writeEntries(encoder, map);
+      encoder.writeMapEnd();
+    }
+
+    void writeEntries(Encoder encoder, Map<?, ?> map) throws IOException {
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        encoder.startItem();
+        keyCodec.write(encoder, entry.getKey());
+        valueCodec.write(encoder, entry.getValue());
+      }
+    }
+  }
+
+  /**
+   * A {@link MapCodec} that writes the entries in the order of the encoded keys, independent of the iteration order
+   * of the map. Each key is encoded twice, hence it is only used when a stable encoding is needed.
+   */
+  private static final class SortedMapCodec extends MapCodec {
+
+    private static final Comparator<byte[]> KEY_COMPARATOR = UnsignedBytes.lexicographicalComparator();
+
+    SortedMapCodec(Schema schema, ValueCodec keyCodec, ValueCodec valueCodec) {
+      super(schema, keyCodec, valueCodec);
+    }
+
+    @Override
+    void writeEntries(Encoder encoder, Map<?, ?> map) throws IOException {
+      List<Map.Entry<byte[], Object>> entries = new ArrayList<>(map.size());
+      ByteArrayOutputStream os = new ByteArrayOutputStream();
+      BinaryEncoder keyEncoder = null;
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        os.reset();
+        keyEncoder = EncoderFactory.get().directBinaryEncoder(os, keyEncoder);
+        keyCodec.write(keyEncoder, entry.getKey());
+        keyEncoder.flush();
+        entries.add(new AbstractMap.SimpleImmutableEntry<>(os.toByteArray(), (Object) entry.getValue()));
+      }
+      Collections.sort(entries, new Comparator<Map.Entry<byte[], Object>>() {
+        @Override
+        public int compare(Map.Entry<byte[], Object> o1, Map.Entry<byte[], Object> o2) {
+          return KEY_COMPARATOR.compare(o1.getKey(), o2.getKey());
+        }
+      });
+      for (Map.Entry<byte[], Object> entry : entries) {
+        encoder.startItem();
+        // The key is already encoded, hence written as is
+        encoder.writeFixed(entry.getKey());
+        valueCodec.write(encoder, entry.getValue());
+      }
+    }
+  }
+
+  private static final class RecordCodec extends ValueCodec {
+
+    private final String[] fieldNames;
+    private final Map<String, Integer> fieldIndices;
+    private ValueCodec[] fieldCodecs;
+    private int[] fixedOffsets;
+
+    RecordCodec(Schema schema) {
+      super(schema);
+      List<Schema.Field> fields = schema.getFields();
+      this.fieldNames = new String[fields.size()];
+      this.fieldIndices = new HashMap<>();
+      for (int i = 0; i < fieldNames.length; i++) {
+        fieldNames[i] = fields.get(i).getName();
+        fieldIndices.put(fieldNames[i], i);
+      }
+    }
+
+    void setFieldCodecs(ValueCodec[] fieldCodecs) {
+      this.fieldCodecs = fieldCodecs;
+      // The fields after fixed size fields only are at the same offset in every record
+      this.fixedOffsets = new int[fieldCodecs.length];
+      int offset = 0;
+      for (int i = 0; i < fieldCodecs.length; i++) {
+        fixedOffsets[i] = offset;
+        int size = fieldCodecs[i].getFixedSize();
+        offset = offset < 0 || size < 0 ? -1 : offset + size;
+      }
+    }
+
+    @Override
+    StructuredRecord read(Decoder decoder) throws IOException {
+      StructuredRecord.Builder builder = StructuredRecord.builder(schema);
+      for (int i = 0; i < fieldCodecs.length; i++) {
+        Object value = fieldCodecs[i].read(decoder);
+        if (value != null) {
+          builder.set(fieldNames[i], value);
+        }
+      }
+      return builder.build();
+    }
+
+    @Override
+    void skip(Decoder decoder) throws IOException {
+      for (ValueCodec fieldCodec : fieldCodecs) {
+        fieldCodec.skip(decoder);
+      }
+    }
+
+    @Override
+    void write(Encoder encoder, @Nullable Object value) throws IOException {
+      checkNotNull(value);
+      if (!(value instanceof StructuredRecord)) {
+        throw new IOException("Expects StructuredRecord. Got: " + value.getClass());
+      }
+
+      StructuredRecord record = (StructuredRecord) value;
+      for (int i = 0; i < fieldCodecs.length; i++) {
+        fieldCodecs[i].write(encoder, record.get(fieldNames[i]));
+      }
+    }
+  }
+
+  private static final class UnionCodec extends ValueCodec {
+
+    private final List<Schema> unionSchemas;
+    private final ValueCodec[] codecs;
+
+    UnionCodec(Schema schema, ValueCodec[] codecs) {
+      super(schema);
+      this.unionSchemas = schema.getUnionSchemas();
+      this.codecs = codecs;
+    }
+
+    @Override
+    Object read(Decoder decoder) throws IOException {
+      return codecs[decoder.readIndex()].read(decoder);
+    }
+
+    @Override
+    void skip(Decoder decoder) throws IOException {
+      codecs[decoder.readIndex()].skip(decoder);
+    }
+
+    @Override
+    void write(Encoder encoder, @Nullable Object value) throws IOException {
+      Schema valueSchema = StructuredRecordStringConverter.findUnionSchema(schema, value);
+      // findUnionSchema returns one of the union schemas, which is found by identity
+      for (int i = 0; i < codecs.length; i++) {
+        if (unionSchemas.get(i) == valueSchema) {
+          encoder.writeIndex(i);
+          codecs[i].write(encoder, value);
+          return;
+        }
+      }
+      throw new IOException("Value schema " + valueSchema + " not found in union: " + schema);
+    }
+  }
+
+  /**
+   * Key of the codec cache. Schemas that only differ in their record names have the same {@link SchemaHash}, hence
+   * the schema string, which has the record names, is compared as well.
+   */
+  private static final class CacheKey {
+    private final SchemaHash schemaHash;
+    private final String schemaString;
+    private final boolean bytesAsBuffer;
+    private final boolean sortMapKeys;
+
+    private CacheKey(Schema schema, boolean bytesAsBuffer, boolean sortMapKeys) {
+      this.schemaHash = schema.getSchemaHash();
+      this.schemaString = schema.toString();
+      this.bytesAsBuffer = bytesAsBuffer;
+      this.sortMapKeys = sortMapKeys;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+
+      CacheKey cacheKey = (CacheKey) o;
+      return bytesAsBuffer == cacheKey.bytesAsBuffer && sortMapKeys == cacheKey.sortMapKeys
+        && schemaHash.equals(cacheKey.schemaHash) && schemaString.equals(cacheKey.schemaString);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(schemaHash, bytesAsBuffer, sortMapKeys);
+    }
+  }
+}
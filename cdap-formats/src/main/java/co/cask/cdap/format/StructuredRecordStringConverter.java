@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -388,7 +388,7 @@ public final class StructuredRecordStringConverter {
     writer.endObject();
   }
 
-  private static Schema findUnionSchema(Schema unionSchema, @Nullable Object value) throws IOException {
+  static Schema findUnionSchema(Schema unionSchema, @Nullable Object value) throws IOException {
     Schema.Type type = getSchemaType(value);
 
     for (Schema schema : unionSchema.getUnionSchemas()) {
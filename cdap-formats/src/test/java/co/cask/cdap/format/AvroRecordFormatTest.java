@@ -195,6 +195,47 @@ public class AvroRecordFormatTest {
     Assert.assertEquals(record.get("name").toString(), projectedRecord.get("name").toString());
   }
 
+  @Test
+  public void testReadLazy() throws Exception {
+    Schema sourceSchema = Schema.recordOf("source",
+                                          Schema.Field.of("id", Schema.of(Schema.Type.INT)),
+                                          Schema.Field.of("name", Schema.nullableOf(Schema.of(Schema.Type.STRING))));
+    Schema readSchema = Schema.recordOf("read",
+                                        Schema.Field.of("id", Schema.of(Schema.Type.INT)),
+                                        Schema.Field.of("bytes", Schema.of(Schema.Type.BYTES)),
+                                        Schema.Field.of("name", Schema.of(Schema.Type.STRING)));
+    FormatSpecification formatSpecification = new FormatSpecification(Formats.AVRO, readSchema,
+                                                                      ImmutableMap.<String, String>of());
+    RecordFormat<StreamEvent, StructuredRecord> format = RecordFormats.createInitializedFormat(formatSpecification);
+    Assert.assertTrue(format instanceof AvroRecordFormat);
+    AvroRecordFormat avroFormat = (AvroRecordFormat) format;
+
+    // Events written with the read schema are decoded on access, like by read
+    GenericRecord record = new GenericRecordBuilder(convertSchema(readSchema))
+      .set("id", 1)
+      .set("bytes", Charsets.UTF_8.encode("hello"))
+      .set("name", "value")
+      .build();
+    LazyStructuredRecord lazyRecord = avroFormat.readLazy(toStreamEvent(record));
+    Assert.assertFalse(lazyRecord.isDecoded("name"));
+    Assert.assertEquals("value", lazyRecord.get("name"));
+    Assert.assertFalse(lazyRecord.isDecoded("id"));
+    Assert.assertEquals(format.read(toStreamEvent(record)), lazyRecord.toStructuredRecord());
+
+    // Events written with another schema are resolved right away
+    record = new GenericRecordBuilder(convertSchema(sourceSchema))
+      .set("id", 2)
+      .set("name", "value2")
+      .build();
+    readSchema = Schema.recordOf("read", Schema.Field.of("name", Schema.of(Schema.Type.STRING)));
+    formatSpecification = new FormatSpecification(Formats.AVRO, readSchema, ImmutableMap.<String, String>of());
+    avroFormat = (AvroRecordFormat) RecordFormats.<StreamEvent, StructuredRecord>createInitializedFormat(
+      formatSpecification);
+    lazyRecord = avroFormat.readLazy(toStreamEvent(record, true));
+    Assert.assertTrue(lazyRecord.isDecoded("name"));
+    Assert.assertEquals("value2", lazyRecord.get("name"));
+  }
+
   private org.apache.avro.Schema convertSchema(Schema cdapSchema) {
     return new org.apache.avro.Schema.Parser().parse(cdapSchema.toString());
   }
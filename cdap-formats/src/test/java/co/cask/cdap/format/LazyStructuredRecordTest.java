@@ -0,0 +1,153 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.format;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for {@link LazyStructuredRecord}.
+ */
+public class LazyStructuredRecordTest {
+
+  private static final Schema SCHEMA = Schema.recordOf(
+    "record",
+    Schema.Field.of("flag", Schema.of(Schema.Type.BOOLEAN)),
+    Schema.Field.of("score", Schema.of(Schema.Type.DOUBLE)),
+    Schema.Field.of("id", Schema.of(Schema.Type.LONG)),
+    Schema.Field.of("tags", Schema.arrayOf(Schema.of(Schema.Type.STRING))),
+    Schema.Field.of("counts", Schema.mapOf(Schema.of(Schema.Type.STRING), Schema.of(Schema.Type.INT))),
+    Schema.Field.of("payload", Schema.of(Schema.Type.BYTES)),
+    Schema.Field.of("comment", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+    Schema.Field.of("inner", Schema.recordOf("inner", Schema.Field.of("s", Schema.of(Schema.Type.STRING)))),
+    Schema.Field.of("name", Schema.of(Schema.Type.STRING)));
+
+  @Test
+  public void testLazyDecode() throws IOException {
+    StructuredRecord record = createRecord();
+    byte[] encoded = StructuredRecordBinaryConverter.toBytes(record);
+    // The record is a view over part of a larger array
+    byte[] bytes = new byte[encoded.length + 20];
+    Arrays.fill(bytes, (byte) 0xff);
+    System.arraycopy(encoded, 0, bytes, 10, encoded.length);
+
+    LazyStructuredRecord lazyRecord = LazyStructuredRecord.of(SCHEMA, bytes, 10, encoded.length);
+    Assert.assertFalse(lazyRecord.isDecoded("name"));
+
+    // Only the accessed fields are decoded, in any order
+    Assert.assertEquals("n", lazyRecord.get("name"));
+    Assert.assertEquals(5L, lazyRecord.<Long>get("id").longValue());
+    Assert.assertEquals(1.5d, lazyRecord.get("score"));
+    Assert.assertTrue(lazyRecord.isDecoded("name"));
+    Assert.assertTrue(lazyRecord.isDecoded("id"));
+    Assert.assertFalse(lazyRecord.isDecoded("tags"));
+    Assert.assertFalse(lazyRecord.isDecoded("flag"));
+    Assert.assertNull(lazyRecord.get("comment"));
+    Assert.assertNull(lazyRecord.get("unknown"));
+    Assert.assertEquals(ImmutableMap.of("a", 1), lazyRecord.get("counts"));
+    Assert.assertEquals(record.get("inner"), lazyRecord.get("inner"));
+    Assert.assertArrayEquals(new byte[] { 1, 2 }, (byte[]) lazyRecord.get("payload"));
+
+    Assert.assertArrayEquals(encoded, StructuredRecordBinaryConverter.toBytes(lazyRecord.toStructuredRecord()));
+  }
+
+  @Test
+  public void testToStructuredRecord() throws IOException {
+    Schema schema = Schema.recordOf("rec", Schema.Field.of("id", Schema.of(Schema.Type.INT)),
+                                    Schema.Field.of("name", Schema.nullableOf(Schema.of(Schema.Type.STRING))));
+    StructuredRecord record = StructuredRecord.builder(schema).set("id", 1).build();
+    byte[] encoded = StructuredRecordBinaryConverter.toBytes(record);
+
+    LazyStructuredRecord lazyRecord = LazyStructuredRecord.of(schema, encoded, 0, encoded.length);
+    Assert.assertEquals(1, (int) lazyRecord.get("id"));
+    Assert.assertEquals(record, lazyRecord.toStructuredRecord());
+  }
+
+  @Test
+  public void testRecordNames() throws IOException {
+    StructuredRecord record = createRecord();
+    byte[] encoded = StructuredRecordBinaryConverter.toBytes(record);
+
+    // A schema that only differs in the record names decodes to records with its own names
+    List<Schema.Field> fields = new ArrayList<>();
+    for (Schema.Field field : SCHEMA.getFields()) {
+      if (field.getName().equals("inner")) {
+        field = Schema.Field.of("inner", Schema.recordOf("otherInner", field.getSchema().getFields()));
+      }
+      fields.add(field);
+    }
+    Schema schema = Schema.recordOf("other", fields);
+    Assert.assertEquals(SCHEMA.getSchemaHash(), schema.getSchemaHash());
+    LazyStructuredRecord lazyRecord = LazyStructuredRecord.of(schema, encoded, 0, encoded.length);
+    Assert.assertEquals("other", lazyRecord.getSchema().getRecordName());
+    Assert.assertEquals("otherInner", lazyRecord.<StructuredRecord>get("inner").getSchema().getRecordName());
+    Assert.assertEquals("other", lazyRecord.toStructuredRecord().getSchema().getRecordName());
+  }
+
+  @Test
+  public void testHeapBuffer() throws IOException {
+    StructuredRecord record = createRecord();
+    byte[] encoded = StructuredRecordBinaryConverter.toBytes(record);
+    byte[] bytes = new byte[encoded.length + 10];
+    System.arraycopy(encoded, 0, bytes, 5, encoded.length);
+    ByteBuffer buffer = ByteBuffer.wrap(bytes, 3, encoded.length + 2).slice();
+    buffer.position(2);
+
+    // The record reads the array of the buffer without copying it
+    LazyStructuredRecord lazyRecord = LazyStructuredRecord.of(SCHEMA, buffer);
+    bytes[bytes.length - 6] = 'm';
+    Assert.assertEquals("m", lazyRecord.get("name"));
+    Assert.assertEquals(ImmutableList.of("x", "y"), lazyRecord.get("tags"));
+    Assert.assertEquals(2, buffer.position());
+  }
+
+  @Test
+  public void testDirectBuffer() throws IOException {
+    StructuredRecord record = createRecord();
+    byte[] encoded = StructuredRecordBinaryConverter.toBytes(record);
+    ByteBuffer buffer = ByteBuffer.allocateDirect(encoded.length);
+    buffer.put(encoded).flip();
+
+    LazyStructuredRecord lazyRecord = LazyStructuredRecord.of(SCHEMA, buffer);
+    Assert.assertEquals(ImmutableList.of("x", "y"), lazyRecord.get("tags"));
+    Assert.assertEquals("n", lazyRecord.get("name"));
+    Assert.assertEquals(encoded.length, buffer.remaining());
+  }
+
+  private StructuredRecord createRecord() {
+    return StructuredRecord.builder(SCHEMA)
+      .set("flag", true)
+      .set("score", 1.5d)
+      .set("id", 5L)
+      .set("tags", ImmutableList.of("x", "y"))
+      .set("counts", ImmutableMap.of("a", 1))
+      .set("payload", new byte[] { 1, 2 })
+      .set("inner", StructuredRecord.builder(SCHEMA.getField("inner").getSchema()).set("s", "i").build())
+      .set("name", "n")
+      .build();
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.format;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.DecoderFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for {@link StructuredRecordBinaryConverter}.
+ */
+public class StructuredRecordBinaryConverterTest {
+
+  private static final Schema INNER_SCHEMA = Schema.recordOf(
+    "inner",
+    Schema.Field.of("i", Schema.of(Schema.Type.INT)),
+    Schema.Field.of("s", Schema.nullableOf(Schema.of(Schema.Type.STRING))));
+
+  private static final Schema SCHEMA = Schema.recordOf(
+    "record",
+    Schema.Field.of("boolean", Schema.of(Schema.Type.BOOLEAN)),
+    Schema.Field.of("int", Schema.of(Schema.Type.INT)),
+    Schema.Field.of("long", Schema.of(Schema.Type.LONG)),
+    Schema.Field.of("float", Schema.of(Schema.Type.FLOAT)),
+    Schema.Field.of("double", Schema.of(Schema.Type.DOUBLE)),
+    Schema.Field.of("bytes", Schema.of(Schema.Type.BYTES)),
+    Schema.Field.of("string", Schema.of(Schema.Type.STRING)),
+    Schema.Field.of("nullable", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+    Schema.Field.of("enum", Schema.enumWith("A", "B", "C")),
+    Schema.Field.of("array", Schema.arrayOf(Schema.of(Schema.Type.LONG))),
+    Schema.Field.of("map", Schema.mapOf(Schema.of(Schema.Type.STRING), Schema.of(Schema.Type.INT))),
+    Schema.Field.of("intMap", Schema.mapOf(Schema.of(Schema.Type.INT), INNER_SCHEMA)),
+    Schema.Field.of("union", Schema.unionOf(Schema.of(Schema.Type.INT), Schema.of(Schema.Type.STRING))),
+    Schema.Field.of("record", INNER_SCHEMA));
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    StructuredRecord inner = StructuredRecord.builder(INNER_SCHEMA).set("i", 5).build();
+    StructuredRecord record = StructuredRecord.builder(SCHEMA)
+      .set("boolean", true)
+      .set("int", Integer.MIN_VALUE)
+      .set("long", Long.MAX_VALUE)
+      .set("float", 1.5f)
+      .set("double", -2.25d)
+      .set("bytes", ByteBuffer.wrap(new byte[] { 1, 2, 3 }))
+      .set("string", "идыло")
+      .set("enum", "B")
+      .set("array", ImmutableList.of(1L, 2L, 3L))
+      .set("map", ImmutableMap.of("a", 1, "b", 2))
+      .set("intMap", ImmutableMap.of(7, inner))
+      .set("union", "str")
+      .set("record", StructuredRecord.builder(INNER_SCHEMA).set("i", 6).set("s", "x").build())
+      .build();
+
+    StructuredRecord decoded = StructuredRecordBinaryConverter.fromBytes(
+      StructuredRecordBinaryConverter.toBytes(record), SCHEMA);
+
+    Assert.assertEquals(true, decoded.get("boolean"));
+    Assert.assertEquals(Integer.MIN_VALUE, decoded.get("int"));
+    Assert.assertEquals(Long.MAX_VALUE, decoded.get("long"));
+    Assert.assertEquals(1.5f, decoded.get("float"));
+    Assert.assertEquals(-2.25d, decoded.get("double"));
+    Assert.assertArrayEquals(new byte[] { 1, 2, 3 }, (byte[]) decoded.get("bytes"));
+    Assert.assertEquals("идыло", decoded.get("string"));
+    Assert.assertNull(decoded.get("nullable"));
+    Assert.assertEquals("B", decoded.get("enum"));
+    Assert.assertEquals(ImmutableList.of(1L, 2L, 3L), decoded.get("array"));
+    Assert.assertEquals(ImmutableMap.of("a", 1, "b", 2), decoded.get("map"));
+    Map<Integer, StructuredRecord> intMap = decoded.get("intMap");
+    Assert.assertEquals(5, intMap.get(7).get("i"));
+    Assert.assertNull(intMap.get(7).get("s"));
+    Assert.assertEquals("str", decoded.get("union"));
+    StructuredRecord decodedInner = decoded.get("record");
+    Assert.assertEquals(6, decodedInner.get("i"));
+    Assert.assertEquals("x", decodedInner.get("s"));
+  }
+
+  @Test
+  public void testAvroCompatible() throws IOException {
+    Schema schema = Schema.recordOf(
+      "rec",
+      Schema.Field.of("id", Schema.of(Schema.Type.LONG)),
+      Schema.Field.of("name", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+      Schema.Field.of("tags", Schema.arrayOf(Schema.of(Schema.Type.STRING))));
+    List<String> tags = Arrays.asList("a", "b");
+    StructuredRecord record = StructuredRecord.builder(schema)
+      .set("id", 10L).set("name", "n").set("tags", tags).build();
+
+    // The encoded record should be readable by Avro
+    org.apache.avro.Schema avroSchema = new org.apache.avro.Schema.Parser().parse(schema.toString());
+    GenericRecord avroRecord = new GenericDatumReader<GenericRecord>(avroSchema).read(
+      null, DecoderFactory.get().binaryDecoder(StructuredRecordBinaryConverter.toBytes(record), null));
+    Assert.assertEquals(10L, avroRecord.get("id"));
+    Assert.assertEquals("n", avroRecord.get("name").toString());
+    Assert.assertEquals(2, ((List<?>) avroRecord.get("tags")).size());
+  }
+
+  @Test(expected = IOException.class)
+  public void testInvalidEnum() throws IOException {
+    Schema schema = Schema.recordOf("rec", Schema.Field.of("e", Schema.enumWith("A", "B")));
+    StructuredRecordBinaryConverter.toBytes(StructuredRecord.builder(schema).set("e", "C").build());
+  }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.format;
+
+import co.cask.cdap.api.data.format.StructuredRecord;
+import co.cask.cdap.api.data.schema.Schema;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link StructuredRecordCodec}.
+ */
+public class StructuredRecordCodecTest {
+
+  private static final Schema SCHEMA = Schema.recordOf(
+    "event",
+    Schema.Field.of("id", Schema.of(Schema.Type.LONG)),
+    Schema.Field.of("name", Schema.of(Schema.Type.STRING)),
+    Schema.Field.of("score", Schema.of(Schema.Type.DOUBLE)),
+    Schema.Field.of("payload", Schema.of(Schema.Type.BYTES)),
+    Schema.Field.of("tags", Schema.arrayOf(Schema.of(Schema.Type.STRING))),
+    Schema.Field.of("counts", Schema.mapOf(Schema.of(Schema.Type.STRING), Schema.of(Schema.Type.INT))),
+    Schema.Field.of("comment", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+    Schema.Field.of("source", Schema.recordOf("source", Schema.Field.of("host", Schema.of(Schema.Type.STRING)))));
+
+  @Test
+  public void testCached() throws IOException {
+    StructuredRecordCodec codec = StructuredRecordCodec.of(SCHEMA);
+    // Equal schemas share a codec
+    Assert.assertSame(codec, StructuredRecordCodec.of(Schema.parseJson(SCHEMA.toString())));
+    Assert.assertNotSame(codec, StructuredRecordCodec.of(SCHEMA, true));
+  }
+
+  @Test
+  public void testRecordNames() throws IOException {
+    Schema schema1 = Schema.recordOf("rec1", Schema.Field.of("inner", Schema.recordOf(
+      "inner1", Schema.Field.of("i", Schema.of(Schema.Type.INT)))));
+    Schema schema2 = Schema.recordOf("rec2", Schema.Field.of("inner", Schema.recordOf(
+      "inner2", Schema.Field.of("i", Schema.of(Schema.Type.INT)))));
+    // The schemas only differ in the record names, which the fingerprint ignores
+    Assert.assertEquals(schema1.getSchemaHash(), schema2.getSchemaHash());
+
+    StructuredRecord record = StructuredRecord.builder(schema1)
+      .set("inner", StructuredRecord.builder(schema1.getField("inner").getSchema()).set("i", 1).build())
+      .build();
+    byte[] bytes = encode(StructuredRecordCodec.of(schema1), record);
+
+    // The decoded records have the record names of the schema they are decoded with
+    for (Schema schema : ImmutableList.of(schema1, schema2, schema1)) {
+      StructuredRecord decoded = decode(StructuredRecordCodec.of(schema), bytes);
+      Assert.assertEquals(schema.getRecordName(), decoded.getSchema().getRecordName());
+      StructuredRecord inner = decoded.get("inner");
+      Assert.assertEquals(schema.getField("inner").getSchema().getRecordName(), inner.getSchema().getRecordName());
+      Assert.assertEquals(1, (int) inner.get("i"));
+    }
+  }
+
+  @Test
+  public void testRecursive() throws IOException {
+    Schema schema = Schema.recordOf(
+      "node",
+      Schema.Field.of("value", Schema.of(Schema.Type.INT)),
+      Schema.Field.of("next", Schema.nullableOf(Schema.recordOf("node"))));
+    Schema nextSchema = schema.getField("next").getSchema().getNonNullable();
+    StructuredRecord record = StructuredRecord.builder(schema)
+      .set("value", 1)
+      .set("next", StructuredRecord.builder(nextSchema)
+        .set("value", 2)
+        .set("next", StructuredRecord.builder(nextSchema).set("value", 3).build())
+        .build())
+      .build();
+
+    StructuredRecordCodec codec = StructuredRecordCodec.of(schema);
+    StructuredRecord decoded = decode(codec, encode(codec, record));
+    Assert.assertEquals(1, decoded.get("value"));
+    StructuredRecord next = decoded.get("next");
+    Assert.assertEquals(2, next.get("value"));
+    next = next.get("next");
+    Assert.assertEquals(3, next.get("value"));
+    Assert.assertNull(next.get("next"));
+  }
+
+  @Test
+  public void testSameAsDatumReader() throws IOException {
+    StructuredRecord record = createRecord(1);
+    byte[] bytes = encode(StructuredRecordCodec.of(SCHEMA), record);
+
+    // Decoding for Avro record formats gives the same record as the Avro datum reader
+    org.apache.avro.Schema avroSchema = new org.apache.avro.Schema.Parser().parse(SCHEMA.toString());
+    StructuredRecordDatumReader datumReader = new StructuredRecordDatumReader(SCHEMA, avroSchema);
+    datumReader.setSchema(avroSchema);
+    StructuredRecord expected = datumReader.read(null, DecoderFactory.get().binaryDecoder(bytes, null));
+    Assert.assertEquals(expected, decode(StructuredRecordCodec.of(SCHEMA, true), bytes));
+
+    // By default bytes are decoded to byte array
+    StructuredRecord decoded = decode(StructuredRecordCodec.of(SCHEMA), bytes);
+    Assert.assertArrayEquals(new byte[] { 1, 2, 3 }, (byte[]) decoded.get("payload"));
+    Assert.assertEquals(record.get("tags"), decoded.get("tags"));
+    Assert.assertEquals(record.get("counts"), decoded.get("counts"));
+    Assert.assertEquals(record.get("source"), decoded.get("source"));
+  }
+
+  @Test(expected = IOException.class)
+  public void testMissingValue() throws IOException {
+    Schema schema = Schema.recordOf("rec", Schema.Field.of("s", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+                                    Schema.Field.of("i", Schema.of(Schema.Type.INT)));
+    Schema otherSchema = Schema.recordOf("rec", Schema.Field.of("s", Schema.of(Schema.Type.STRING)));
+    // The record doesn't have the non-nullable field of the codec schema
+    encode(StructuredRecordCodec.of(schema), StructuredRecord.builder(otherSchema).set("s", "x").build());
+  }
+
+  /**
+   * Compares the speed of decoding with the codec and with the Avro datum reader.
+   */
+  @Ignore
+  @Test
+  public void testSpeed() throws IOException {
+    int count = 200000;
+    StructuredRecordCodec codec = StructuredRecordCodec.of(SCHEMA, true);
+    byte[] bytes = encode(codec, createRecord(1));
+
+    org.apache.avro.Schema avroSchema = new org.apache.avro.Schema.Parser().parse(SCHEMA.toString());
+    StructuredRecordDatumReader datumReader = new StructuredRecordDatumReader(SCHEMA, avroSchema);
+    datumReader.setSchema(avroSchema);
+
+    // Run twice to warm up
+    for (int run = 0; run < 2; run++) {
+      BinaryDecoder decoder = null;
+      long startTime = System.nanoTime();
+      for (int i = 0; i < count; i++) {
+        decoder = DecoderFactory.get().binaryDecoder(bytes, decoder);
+        datumReader.read(null, decoder);
+      }
+      long endTime = System.nanoTime();
+      System.out.println("Datum reader time spent: " +
+                           TimeUnit.MILLISECONDS.convert(endTime - startTime, TimeUnit.NANOSECONDS));
+
+      startTime = System.nanoTime();
+      for (int i = 0; i < count; i++) {
+        decoder = DecoderFactory.get().binaryDecoder(bytes, decoder);
+        codec.decode(decoder);
+      }
+      endTime = System.nanoTime();
+      System.out.println("Codec time spent: " +
+                           TimeUnit.MILLISECONDS.convert(endTime - startTime, TimeUnit.NANOSECONDS));
+    }
+  }
+
+  private StructuredRecord createRecord(int i) {
+    return StructuredRecord.builder(SCHEMA)
+      .set("id", (long) i)
+      .set("name", "event" + i)
+      .set("score", i / 2d)
+      .set("payload", ByteBuffer.wrap(new byte[] { 1, 2, 3 }))
+      .set("tags", ImmutableList.of("a", "b"))
+      .set("counts", ImmutableMap.of("x", i, "y", i + 1))
+      .set("source", StructuredRecord.builder(SCHEMA.getField("source").getSchema()).set("host", "h" + i).build())
+      .build();
+  }
+
+  private byte[] encode(StructuredRecordCodec codec, StructuredRecord record) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    BinaryEncoder encoder = EncoderFactory.get().directBinaryEncoder(os, null);
+    codec.encode(record, encoder);
+    encoder.flush();
+    return os.toByteArray();
+  }
+
+  private StructuredRecord decode(StructuredRecordCodec codec, byte[] bytes) throws IOException {
+    return codec.decode(DecoderFactory.get().binaryDecoder(bytes, null));
+  }
+}
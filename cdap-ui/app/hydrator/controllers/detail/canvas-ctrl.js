@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -105,7 +105,11 @@ angular.module(PKG.name + '.feature.hydrator')
       angular.forEach(arr, function (item) {
         obj[item.nodeName] = {
           recordsOut: item.recordsOut,
-          recordsIn: item.recordsIn
+          recordsIn: item.recordsIn,
+          recordsOutBytes: item.recordsOutBytes,
+          processTimeMicros: item.processTimeMicros,
+          processCpuMicros: item.processCpuMicros,
+          processTimePerRecordNanos: item.processTimePerRecordNanos
         };
       });
 
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -18,6 +18,15 @@ angular.module(PKG.name + '.feature.hydrator')
   .service('HydratorPlusPlusDetailMetricsStore', function(HydratorPlusPlusDetailMetricsDispatcher) {
 
     var dispatcher = HydratorPlusPlusDetailMetricsDispatcher.getDispatcher();
+    // stage metric name -> property of the stage metrics
+    var STAGE_METRICS = {
+      'records.in': 'recordsIn',
+      'records.out': 'recordsOut',
+      'records.out.bytes': 'recordsOutBytes',
+      'process.time.micros': 'processTimeMicros',
+      'process.cpu.micros': 'processCpuMicros',
+      'process.time.per.record.nanos': 'processTimePerRecordNanos'
+    };
     this.changeListeners = [];
     this.emitChange = function() {
       this.changeListeners.forEach(function(listener) {
@@ -56,10 +65,10 @@ angular.module(PKG.name + '.feature.hydrator')
           };
         }
 
-        if (metric.metricName.indexOf(split[1] + '.records.in') !== -1) {
-          metricObj[key].recordsIn = metric.data[0].value;
-        } else if (metric.metricName.indexOf(split[1] + '.records.out') !== -1) {
-          metricObj[key].recordsOut = metric.data[0].value;
+        // the name of a stage metric is 'user.<stage>.<metric>'
+        var stageMetric = split.slice(2).join('.');
+        if (STAGE_METRICS[stageMetric]) {
+          metricObj[key][STAGE_METRICS[stageMetric]] = metric.data[0].value;
         }
 
       });
@@ -17,6 +17,7 @@
 package co.cask.cdap.api.metrics;
 
 import java.util.Collection;
+import java.util.List;
 
 /**
  * Stores and provides access to metrics data.
@@ -50,6 +51,13 @@ public interface MetricStore {
    */
   Collection<MetricTimeSeries> query(MetricDataQuery query);
 
+  /**
+   * Queries metrics data with a batch of queries. Queries that read the same data are executed together.
+   * @param queries queries to execute
+   * @return time series that satisfy each of the queries, in the same order as the given queries
+   */
+  List<Collection<MetricTimeSeries>> query(List<MetricDataQuery> queries);
+
   /**
    * Deletes all metric data before given timestamp. Used for applying TTL policy.
    * @param timestamp time up to which to delete metrics data, in ms since epoch
@@ -44,16 +44,35 @@ public final class LoggingConfiguration {
   public static final String LOG_MAX_FILE_SIZE_BYTES = "log.max.file.size.bytes";
   public static final String KAFKA_PRODUCER_TYPE = "kafka.producer.type";
   public static final String KAFKA_PROCUDER_BUFFER_MS = "kafka.producer.buffer.ms";
+  public static final String KAFKA_PRODUCER_COMPRESSION_CODEC = "kafka.producer.compression.codec";
+  public static final String LOG_PUBLISH_BUFFER_SIZE = "log.publish.buffer.size";
+  public static final String LOG_PUBLISH_BATCH_SIZE = "log.publish.batch.size";
+  public static final String LOG_PUBLISH_OVERFLOW_POLICY = "log.publish.overflow.policy";
+  public static final String LOG_PUBLISH_OVERFLOW_SAMPLE_RATE = "log.publish.overflow.sample.rate";
   public static final String LOG_CLEANUP_RUN_INTERVAL_MINS = "log.cleanup.run.interval.mins";
+  public static final String LOG_READER_PARALLELISM = "log.reader.parallelism";
+  public static final String LOG_READER_READ_AHEAD_EVENTS = "log.reader.read.ahead.events";
+  public static final String LOG_TAIL_POLL_INTERVAL_MS = "log.tail.poll.interval.ms";
+  public static final String LOG_TAIL_THREADS = "log.tail.threads";
 
   // Constants
   // Table used to store log metadata
   public static final String LOG_META_DATA_TABLE = "log.meta";
   // Defaults
   public static final String DEFAULT_LOG_PATTERN = "%d{ISO8601} - %-5p [%t:%c{1}@%L] - %m%n";
-  public static final String DEFAULT_KAFKA_PRODUCER_TYPE = "async";
+  // Log events are buffered and batched by the log appender, which publishes them with a synchronous producer
+  public static final String DEFAULT_KAFKA_PRODUCER_TYPE = "sync";
   public static final long DEFAULT_KAFKA_PROCUDER_BUFFER_MS = 1000;
+  public static final String DEFAULT_KAFKA_PRODUCER_COMPRESSION_CODEC = "snappy";
+  public static final int DEFAULT_LOG_PUBLISH_BUFFER_SIZE = 8192;
+  public static final int DEFAULT_LOG_PUBLISH_BATCH_SIZE = 500;
+  public static final String DEFAULT_LOG_PUBLISH_OVERFLOW_POLICY = "drop-debug";
+  public static final int DEFAULT_LOG_PUBLISH_OVERFLOW_SAMPLE_RATE = 10;
   public static final int DEFAULT_LOG_CLEANUP_RUN_INTERVAL_MINS = 24 * 60;
+  public static final int DEFAULT_LOG_READER_PARALLELISM = 4;
+  public static final int DEFAULT_LOG_READER_READ_AHEAD_EVENTS = 1000;
+  public static final long DEFAULT_LOG_TAIL_POLL_INTERVAL_MS = 1000;
+  public static final int DEFAULT_LOG_TAIL_THREADS = 4;
 
   public static final long DEFAULT_LOG_SAVER_EVENT_BUCKET_INTERVAL_MS = 1 * 1000;
   public static final long DEFAULT_LOG_SAVER_MAXIMUM_INMEMORY_EVENT_BUCKETS = 4;
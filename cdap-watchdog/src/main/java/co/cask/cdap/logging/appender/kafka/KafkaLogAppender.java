@@ -16,44 +16,138 @@
 
 package co.cask.cdap.logging.appender.kafka;
 
+import ch.qos.logback.classic.Level;
+import co.cask.cdap.api.metrics.MetricsCollectionService;
+import co.cask.cdap.api.metrics.MetricsContext;
 import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.logging.LoggingConfiguration;
 import co.cask.cdap.logging.appender.LogAppender;
 import co.cask.cdap.logging.appender.LogMessage;
+import co.cask.cdap.proto.id.NamespaceId;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 import com.google.inject.Inject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Log appender that publishes log messages to Kafka.
+ * <p/>
+ * Log messages are added to a bounded {@link RingBuffer}, and serialized and published to Kafka in batches by a
+ * publisher thread, so that the threads emitting the log messages never wait for Kafka. When Kafka is slower than
+ * the program and the buffer fills up, the {@link OverflowPolicy} decides which log messages are dropped, if any.
+ * The number of dropped and buffered log messages are emitted as metrics.
  */
 public final class KafkaLogAppender extends LogAppender {
   private static final Logger LOG = LoggerFactory.getLogger(KafkaLogAppender.class);
 
   private static final String APPENDER_NAME = "KafkaLogAppender";
-  private final SimpleKafkaProducer producer;
+  private static final String METRICS_COMPONENT = "log.appender";
+  private static final long STOP_TIMEOUT_SECONDS = 10;
+  private static final long MAX_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+  private static final long BLOCK_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+  private static final long METRICS_INTERVAL_MS = TimeUnit.SECONDS.toMillis(1);
+
+  private final Publisher publisher;
   private final LoggingEventSerializer loggingEventSerializer;
+  private final RingBuffer<LogMessage> buffer;
+  private final int batchSize;
+  private final OverflowPolicy overflowPolicy;
+  private final int sampleRate;
+  // buffer size above which the overflow policy applies
+  private final int highWaterMark;
+  private final AtomicLong droppedEvents = new AtomicLong();
+  private final AtomicLong sampledEvents = new AtomicLong();
+  // only accessed by the publisher thread
+  private long reportedDroppedEvents;
 
   private final AtomicBoolean stopped = new AtomicBoolean(false);
+  private volatile MetricsContext metricsContext;
+  private volatile Thread publisherThread;
+  // whether the publisher thread is waiting for log messages
+  private volatile boolean publisherIdle;
 
   @Inject
   KafkaLogAppender(CConfiguration cConf) {
+    this(cConf, createPublisher(new SimpleKafkaProducer(cConf)));
+  }
+
+  @VisibleForTesting
+  KafkaLogAppender(CConfiguration cConf, Publisher publisher) {
     setName(APPENDER_NAME);
     addInfo("Initializing KafkaLogAppender...");
 
-    this.producer = new SimpleKafkaProducer(cConf);
+    this.publisher = publisher;
     this.loggingEventSerializer = new LoggingEventSerializer();
+    this.buffer = new RingBuffer<>(cConf.getInt(LoggingConfiguration.LOG_PUBLISH_BUFFER_SIZE,
+                                                LoggingConfiguration.DEFAULT_LOG_PUBLISH_BUFFER_SIZE));
+    this.batchSize = Math.max(1, cConf.getInt(LoggingConfiguration.LOG_PUBLISH_BATCH_SIZE,
+                                              LoggingConfiguration.DEFAULT_LOG_PUBLISH_BATCH_SIZE));
+    this.overflowPolicy = OverflowPolicy.parse(cConf.get(LoggingConfiguration.LOG_PUBLISH_OVERFLOW_POLICY,
+                                                         LoggingConfiguration.DEFAULT_LOG_PUBLISH_OVERFLOW_POLICY));
+    this.sampleRate = Math.max(1, cConf.getInt(LoggingConfiguration.LOG_PUBLISH_OVERFLOW_SAMPLE_RATE,
+                                               LoggingConfiguration.DEFAULT_LOG_PUBLISH_OVERFLOW_SAMPLE_RATE));
+    this.highWaterMark = buffer.getCapacity() / 4 * 3;
     addInfo("Successfully initialized KafkaLogAppender.");
   }
 
+  /**
+   * Sets the {@link MetricsCollectionService} to emit the number of dropped and buffered log messages with.
+   */
+  @Inject(optional = true)
+  void setMetricsCollectionService(MetricsCollectionService metricsCollectionService) {
+    this.metricsContext = metricsCollectionService.getContext(
+      ImmutableMap.of(Constants.Metrics.Tag.NAMESPACE, NamespaceId.SYSTEM.getNamespace(),
+                      Constants.Metrics.Tag.COMPONENT, METRICS_COMPONENT));
+  }
+
+  @Override
+  public void start() {
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        publish();
+      }
+    }, "kafka-log-publisher");
+    thread.setDaemon(true);
+    publisherThread = thread;
+    thread.start();
+    super.start();
+  }
+
   @Override
   protected void append(LogMessage logMessage) {
-    try {
-      byte [] bytes = loggingEventSerializer.toBytes(logMessage.getLoggingEvent(), logMessage.getLoggingContext());
-      producer.publish(logMessage.getLoggingContext().getLogPartition(), bytes);
-    } catch (Throwable t) {
-      LOG.error("Got exception while serializing log event {}.", logMessage.getLoggingEvent(), t);
+    // MDC, thread name and formatted message are taken from the current thread
+    logMessage.prepareForDeferredProcessing();
+
+    if (buffer.size() >= highWaterMark && !shouldKeep(logMessage)) {
+      droppedEvents.incrementAndGet();
+      return;
+    }
+    boolean added = buffer.offer(logMessage);
+    // The publisher thread may log while publishing, it must never wait for itself
+    if (!added && overflowPolicy == OverflowPolicy.BLOCK && Thread.currentThread() != publisherThread) {
+      while (!added && !stopped.get()) {
+        LockSupport.parkNanos(BLOCK_WAIT_NANOS);
+        added = buffer.offer(logMessage);
+      }
+    }
+    if (!added) {
+      droppedEvents.incrementAndGet();
+      return;
+    }
+    if (publisherIdle) {
+      LockSupport.unpark(publisherThread);
     }
   }
 
@@ -64,6 +158,124 @@ public final class KafkaLogAppender extends LogAppender {
     }
 
     super.stop();
-    producer.stop();
+    Thread thread = publisherThread;
+    if (thread != null) {
+      // The publisher thread publishes the buffered log messages before stopping
+      LockSupport.unpark(thread);
+      try {
+        thread.join(TimeUnit.SECONDS.toMillis(STOP_TIMEOUT_SECONDS));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      if (thread.isAlive()) {
+        addWarn("Timeout when publishing buffered log messages to Kafka, " + buffer.size() + " were dropped");
+      }
+    }
+    publisher.stop();
+  }
+
+  @VisibleForTesting
+  long getDroppedEvents() {
+    return droppedEvents.get();
+  }
+
+  /**
+   * Returns whether a log message should be added to a buffer that is filling up, according to the overflow policy.
+   */
+  private boolean shouldKeep(LogMessage logMessage) {
+    Level level = logMessage.getLevel();
+    switch (overflowPolicy) {
+      case DROP_DEBUG:
+        return level.isGreaterOrEqual(Level.INFO);
+      case SAMPLE:
+        return level.isGreaterOrEqual(Level.WARN) || sampledEvents.incrementAndGet() % sampleRate == 0;
+      default:
+        return true;
+    }
+  }
+
+  /**
+   * Publishes the buffered log messages in batches, until the appender is stopped and the buffer is empty.
+   */
+  private void publish() {
+    List<Map.Entry<String, byte[]>> batch = new ArrayList<>(batchSize);
+    long nextMetricsTime = 0L;
+    while (true) {
+      LogMessage logMessage = buffer.poll();
+      if (logMessage != null) {
+        try {
+          byte[] bytes = loggingEventSerializer.toBytes(logMessage.getLoggingEvent(),
+                                                        logMessage.getLoggingContext());
+          batch.add(Maps.immutableEntry(logMessage.getLoggingContext().getLogPartition(), bytes));
+        } catch (Throwable t) {
+          LOG.error("Got exception while serializing log event {}.", logMessage.getLoggingEvent(), t);
+        }
+        if (batch.size() < batchSize) {
+          continue;
+        }
+      }
+
+      if (!batch.isEmpty()) {
+        publisher.publish(batch);
+        batch.clear();
+      }
+      long now = System.currentTimeMillis();
+      if (now >= nextMetricsTime) {
+        emitMetrics();
+        nextMetricsTime = now + METRICS_INTERVAL_MS;
+      }
+      if (logMessage == null) {
+        // Log messages may be added after the poll, while the batch was published
+        if (stopped.get() && buffer.isEmpty()) {
+          break;
+        }
+        publisherIdle = true;
+        if (buffer.isEmpty()) {
+          LockSupport.parkNanos(MAX_IDLE_NANOS);
+        }
+        publisherIdle = false;
+      }
+    }
+    emitMetrics();
+  }
+
+  private void emitMetrics() {
+    MetricsContext metricsContext = this.metricsContext;
+    long dropped = droppedEvents.get();
+    long reported = reportedDroppedEvents;
+    if (dropped > reported) {
+      addWarn("Dropped " + (dropped - reported) + " log messages because the log buffer is full");
+      reportedDroppedEvents = dropped;
+    }
+    if (metricsContext != null) {
+      if (dropped > reported) {
+        metricsContext.increment(Constants.Metrics.Name.Log.APPENDER_DROPPED_EVENTS, dropped - reported);
+      }
+      metricsContext.gauge(Constants.Metrics.Name.Log.APPENDER_BUFFERED_EVENTS, buffer.size());
+    }
+  }
+
+  private static Publisher createPublisher(final SimpleKafkaProducer producer) {
+    return new Publisher() {
+      @Override
+      public void publish(List<Map.Entry<String, byte[]>> messages) {
+        producer.publish(messages);
+      }
+
+      @Override
+      public void stop() {
+        producer.stop();
+      }
+    };
+  }
+
+  /**
+   * Publishes batches of serialized log messages, each keyed by its log partition.
+   */
+  @VisibleForTesting
+  interface Publisher {
+    void publish(List<Map.Entry<String, byte[]>> messages);
+
+    void stop();
   }
 }
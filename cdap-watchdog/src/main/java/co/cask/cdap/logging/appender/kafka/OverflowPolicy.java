@@ -0,0 +1,49 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.logging.appender.kafka;
+
+import java.util.Locale;
+
+/**
+ * What the {@link KafkaLogAppender} does with log events when its buffer of events to publish is filling up, which
+ * happens when Kafka is slower than the program emitting the events.
+ */
+enum OverflowPolicy {
+
+  /**
+   * Drops the events below INFO once the buffer is filling up, and any event that doesn't fit in the buffer.
+   */
+  DROP_DEBUG,
+
+  /**
+   * Keeps one of every N events below WARN once the buffer is filling up, and drops any event that doesn't fit in
+   * the buffer.
+   */
+  SAMPLE,
+
+  /**
+   * Blocks the threads emitting the events until there is space in the buffer, which never drops events.
+   */
+  BLOCK;
+
+  /**
+   * Returns the policy of the given configuration value, such as {@code drop-debug}.
+   */
+  static OverflowPolicy parse(String value) {
+    return valueOf(value.trim().replace('-', '_').toUpperCase(Locale.ENGLISH));
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.logging.appender.kafka;
+
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A bounded, lock-free queue backed by an array, which never blocks the threads adding or removing elements.
+ * <p/>
+ * Every slot of the array has a sequence number, which tells whether the slot is free for the position being added
+ * or holds the element of the position being removed. Threads claim a position with a compare and set of the add or
+ * remove counter, and publish the slot by updating its sequence number.
+ */
+@ThreadSafe
+final class RingBuffer<T> {
+
+  private final int capacity;
+  private final int mask;
+  private final AtomicReferenceArray<T> elements;
+  private final AtomicLongArray sequences;
+  // position of the next element to add
+  private final AtomicLong tail = new AtomicLong();
+  // position of the next element to remove
+  private final AtomicLong head = new AtomicLong();
+
+  /**
+   * Creates a buffer with the given capacity, rounded up to a power of two.
+   */
+  RingBuffer(int capacity) {
+    Preconditions.checkArgument(capacity > 0 && capacity <= 1 << 30, "Invalid ring buffer capacity %s", capacity);
+    this.capacity = Integer.bitCount(capacity) == 1 ? capacity : Integer.highestOneBit(capacity) << 1;
+    this.mask = this.capacity - 1;
+    this.elements = new AtomicReferenceArray<>(this.capacity);
+    this.sequences = new AtomicLongArray(this.capacity);
+    for (int i = 0; i < this.capacity; i++) {
+      sequences.set(i, i);
+    }
+  }
+
+  /**
+   * Adds an element to the buffer.
+   *
+   * @return {@code false} if the buffer is full
+   */
+  boolean offer(T element) {
+    Preconditions.checkNotNull(element);
+    while (true) {
+      long position = tail.get();
+      int index = (int) (position & mask);
+      long diff = sequences.get(index) - position;
+      if (diff == 0) {
+        if (tail.compareAndSet(position, position + 1)) {
+          elements.lazySet(index, element);
+          sequences.set(index, position + 1);
+          return true;
+        }
+      } else if (diff < 0) {
+        // the slot still holds the element added one round before
+        return false;
+      }
+      // otherwise another thread added an element at the position, try the next one
+    }
+  }
+
+  /**
+   * Removes the oldest element of the buffer.
+   *
+   * @return the element or {@code null} if the buffer is empty
+   */
+  @Nullable
+  T poll() {
+    while (true) {
+      long position = head.get();
+      int index = (int) (position & mask);
+      long diff = sequences.get(index) - (position + 1);
+      if (diff == 0) {
+        if (head.compareAndSet(position, position + 1)) {
+          T element = elements.get(index);
+          elements.lazySet(index, null);
+          sequences.set(index, position + capacity);
+          return element;
+        }
+      } else if (diff < 0) {
+        // the element of the position is not added yet
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Returns the number of elements in the buffer, which is only an estimate while elements are added or removed.
+   */
+  int size() {
+    long size = tail.get() - head.get();
+    return (int) Math.max(0, Math.min(capacity, size));
+  }
+
+  boolean isEmpty() {
+    return size() == 0;
+  }
+
+  int getCapacity() {
+    return capacity;
+  }
+}
@@ -27,6 +27,9 @@ import org.apache.twill.common.Threads;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
@@ -53,6 +56,8 @@ public final class SimpleKafkaProducer {
                        LoggingConfiguration.DEFAULT_KAFKA_PRODUCER_TYPE));
     props.setProperty("queue.buffering.max.ms", cConf.get(LoggingConfiguration.KAFKA_PROCUDER_BUFFER_MS,
                       Long.toString(LoggingConfiguration.DEFAULT_KAFKA_PROCUDER_BUFFER_MS)));
+    props.setProperty("compression.codec", cConf.get(LoggingConfiguration.KAFKA_PRODUCER_COMPRESSION_CODEC,
+                      LoggingConfiguration.DEFAULT_KAFKA_PRODUCER_COMPRESSION_CODEC));
     props.setProperty(Constants.Logging.NUM_PARTITIONS, cConf.get(Constants.Logging.NUM_PARTITIONS));
 
     ProducerConfig config = new ProducerConfig(props);
@@ -76,6 +81,29 @@ public final class SimpleKafkaProducer {
     }
   }
 
+  /**
+   * Publishes a batch of log messages, each keyed by its log partition.
+   */
+  public void publish(List<Map.Entry<String, byte[]>> messages) {
+    // Clear the interrupt flag, otherwise it won't be able to publish
+    boolean threadInterrupted = Thread.interrupted();
+    try {
+      List<KeyedMessage<String, byte[]>> data = new ArrayList<>(messages.size());
+      for (Map.Entry<String, byte[]> message : messages) {
+        data.add(new KeyedMessage<>(kafkaTopic, message.getKey(), message.getValue()));
+      }
+      producer.send(data);
+    } catch (Throwable t) {
+      LOG.error("Exception when trying to publish {} log messages to kafka with topic {}",
+                messages.size(), kafkaTopic, t);
+    } finally {
+      // Reset the interrupt flag if needed
+      if (threadInterrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
   public void stop() {
     producer.close();
   }
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -42,6 +42,10 @@ public class AndFilter implements Filter {
     return true;
   }
 
+  public List<? extends Filter> getExpressions() {
+    return expressions;
+  }
+
   @Override
   public String toString() {
     return Objects.toStringHelper(this)
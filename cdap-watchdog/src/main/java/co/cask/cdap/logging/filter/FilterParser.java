@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -94,6 +94,12 @@ public final class FilterParser {
     } else if (key.equals("loglevel")) {
       // Log level
       return new LogLevelExpression(value);
+    } else if (key.equals("message")) {
+      // Terms of the log message
+      return new MessageExpression(value);
+    } else if (key.equals("logger")) {
+      // Logger and its descendants
+      return new LoggerExpression(value);
     } else {
       throw new IllegalArgumentException(String.format("Unknown expression of type %s", key));
     }
@@ -0,0 +1,59 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.logging.filter;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import com.google.common.base.Objects;
+
+import javax.annotation.Nullable;
+
+/**
+ * Represents an expression that matches the events of a logger and of its descendants, following the logger
+ * hierarchy, so that {@code co.cask} matches the events of {@code co.cask} and {@code co.cask.cdap.Main}, but not
+ * the ones of {@code co.caskdata}.
+ */
+public class LoggerExpression implements Filter {
+  private final String loggerName;
+
+  public LoggerExpression(String loggerName) {
+    this.loggerName = loggerName;
+  }
+
+  @Override
+  public boolean match(ILoggingEvent event) {
+    return matches(event.getLoggerName());
+  }
+
+  /**
+   * Returns whether the given logger name is the logger of this expression or one of its descendants.
+   */
+  public boolean matches(@Nullable String name) {
+    return name != null && name.startsWith(loggerName)
+      && (name.length() == loggerName.length() || name.charAt(loggerName.length()) == '.');
+  }
+
+  public String getLoggerName() {
+    return loggerName;
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+      .add("loggerName", loggerName)
+      .toString();
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.logging.filter;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import com.google.common.base.Objects;
+
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Represents an expression that matches log messages containing all the terms of a text. Terms are the sequences of
+ * letters and digits of the text and are compared case insensitively, so that the expression can be answered from
+ * an index of the terms of the log messages.
+ */
+public class MessageExpression implements Filter {
+  private final String text;
+  private final Set<String> terms;
+
+  public MessageExpression(String text) {
+    this.text = text;
+    this.terms = tokenize(text);
+  }
+
+  @Override
+  public boolean match(ILoggingEvent event) {
+    if (terms.isEmpty()) {
+      return true;
+    }
+    String message = event.getFormattedMessage();
+    return message != null && tokenize(message).containsAll(terms);
+  }
+
+  public String getText() {
+    return text;
+  }
+
+  public Set<String> getTerms() {
+    return terms;
+  }
+
+  /**
+   * Returns the lower case terms of the given text.
+   */
+  public static Set<String> tokenize(String text) {
+    Set<String> terms = new LinkedHashSet<>();
+    int start = -1;
+    for (int i = 0; i <= text.length(); i++) {
+      boolean termChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+      if (termChar && start < 0) {
+        start = i;
+      } else if (!termChar && start >= 0) {
+        terms.add(text.substring(start, i).toLowerCase(Locale.ENGLISH));
+        start = -1;
+      }
+    }
+    return terms;
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+      .add("text", text)
+      .toString();
+  }
+}
@@ -0,0 +1,543 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.logging.format;
+
+import co.cask.cdap.logging.filter.AndFilter;
+import co.cask.cdap.logging.filter.Filter;
+import co.cask.cdap.logging.filter.LogLevelExpression;
+import co.cask.cdap.logging.filter.LoggerExpression;
+import co.cask.cdap.logging.filter.MdcExpression;
+import co.cask.cdap.logging.filter.OrFilter;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Closeables;
+import org.apache.avro.Schema;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.file.SeekableInput;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.twill.filesystem.Location;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Deflater;
+import javax.annotation.Nullable;
+
+/**
+ * Column oriented file format for old log events, which takes a fraction of the space of the row oriented log files
+ * and can be scanned without decoding the events that don't match a filter.
+ * <p/>
+ * An archive is an Avro data file, each record of which is a block of consecutive events, stored column by column:
+ * the timestamps as deltas, the levels as integers, the logger and thread names and the MDC keys and values as
+ * dictionaries with the ids of the values of each event, and every other field of the events as an array of values.
+ * Together with the deflate compression of the Avro blocks, this removes most of the repetition between the events.
+ * Every block also has the number of events, the time range and the highest level of its events. The archive is
+ * indexed with a {@link LogFileIndex} that has one entry per block, so that readers seek to the blocks of a time
+ * window and skip the blocks that cannot have events matching a filter.
+ * <p/>
+ * Archives are named with the {@link #SUFFIX}, which tells readers to read them with a {@link Reader} instead of as
+ * row oriented log files.
+ */
+public final class LogArchive {
+
+  public static final String SUFFIX = ".archive.avro";
+
+  private static final String BLOCK_RECORD_NAME = "LogArchiveBlock";
+  private static final String COUNT = "count";
+  private static final String MIN_TIMESTAMP = "minTimestamp";
+  private static final String MAX_TIMESTAMP = "maxTimestamp";
+  private static final String MAX_LEVEL = "maxLevel";
+  private static final String TIMESTAMP = "timestamp";
+  private static final String LEVEL = "level";
+  private static final String LOGGER_NAME = "loggerName";
+  private static final String MDC = "mdc";
+  private static final String MDC_KEYS = "mdcKeys";
+  private static final String MDC_VALUES = "mdcValues";
+  private static final String DICTIONARY_SUFFIX = "Dictionary";
+  // string fields of the events that are dictionary encoded
+  private static final Set<String> DICTIONARY_FIELDS = ImmutableSet.of("threadName", LOGGER_NAME);
+  // id of a null value in a dictionary encoded column, also the only id in the MDC of an event without MDC
+  private static final int NULL_ID = -1;
+
+  private LogArchive() {
+  }
+
+  /**
+   * Returns whether the given log file is an archive.
+   */
+  public static boolean isArchive(Location logFile) {
+    return logFile.getName().endsWith(SUFFIX);
+  }
+
+  /**
+   * Returns the schema of the blocks of an archive of events with the given schema.
+   */
+  static Schema getBlockSchema(Schema eventSchema) {
+    List<Schema.Field> fields = new ArrayList<>();
+    fields.add(createField(COUNT, Schema.create(Schema.Type.INT)));
+    fields.add(createField(MIN_TIMESTAMP, Schema.create(Schema.Type.LONG)));
+    fields.add(createField(MAX_TIMESTAMP, Schema.create(Schema.Type.LONG)));
+    fields.add(createField(MAX_LEVEL, Schema.create(Schema.Type.INT)));
+    for (Schema.Field field : eventSchema.getFields()) {
+      String name = field.name();
+      if (TIMESTAMP.equals(name)) {
+        fields.add(createArrayField(name, Schema.create(Schema.Type.LONG)));
+      } else if (LEVEL.equals(name)) {
+        fields.add(createArrayField(name, Schema.create(Schema.Type.INT)));
+      } else if (DICTIONARY_FIELDS.contains(name)) {
+        fields.add(createArrayField(name + DICTIONARY_SUFFIX, Schema.create(Schema.Type.STRING)));
+        fields.add(createArrayField(name, Schema.create(Schema.Type.INT)));
+      } else if (MDC.equals(name)) {
+        fields.add(createArrayField(MDC_KEYS, Schema.create(Schema.Type.STRING)));
+        fields.add(createArrayField(MDC_VALUES, Schema.create(Schema.Type.STRING)));
+        // the key and value ids of the MDC entries of each event
+        fields.add(createArrayField(name, Schema.createArray(Schema.create(Schema.Type.INT))));
+      } else {
+        fields.add(createArrayField(name, field.schema()));
+      }
+    }
+    Schema schema = Schema.createRecord(BLOCK_RECORD_NAME, null, eventSchema.getNamespace(), false);
+    schema.setFields(fields);
+    return schema;
+  }
+
+  private static Schema.Field createField(String name, Schema schema) {
+    return new Schema.Field(name, schema, null, null);
+  }
+
+  private static Schema.Field createArrayField(String name, Schema elementSchema) {
+    return createField(name, Schema.createArray(elementSchema));
+  }
+
+  /**
+   * Values of a dictionary encoded column of a block.
+   */
+  private static final class Dictionary {
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> values = new ArrayList<>();
+
+    int getId(@Nullable Object value) {
+      if (value == null) {
+        return NULL_ID;
+      }
+      String string = value.toString();
+      Integer id = ids.get(string);
+      if (id == null) {
+        id = values.size();
+        ids.put(string, id);
+        values.add(string);
+      }
+      return id;
+    }
+  }
+
+  /**
+   * Writes an archive. The events are appended in blocks of {@link LogFileIndex.Writer#MAX_EVENTS_PER_ENTRY} events,
+   * which is the number of events of an index entry.
+   */
+  public static final class Writer implements Closeable {
+
+    private final Schema eventSchema;
+    private final Schema blockSchema;
+    private final DataFileWriter<GenericRecord> dataFileWriter;
+    private final LogFileIndex.Writer index;
+    private final Map<String, List<Object>> columns;
+    private final Map<String, Dictionary> dictionaries;
+    private int count;
+    private long minTimestamp;
+    private long maxTimestamp;
+    private int maxLevel;
+    private long prevTimestamp;
+    private boolean closed;
+
+    /**
+     * Creates an archive at the given location.
+     *
+     * @param location the location of the archive, which should have the {@link #SUFFIX}
+     * @param eventSchema schema of the logging event records to archive
+     */
+    public Writer(Location location, Schema eventSchema) throws IOException {
+      this.eventSchema = eventSchema;
+      this.blockSchema = getBlockSchema(eventSchema);
+      this.dataFileWriter = new DataFileWriter<>(new GenericDatumWriter<GenericRecord>(blockSchema));
+      this.dataFileWriter.setCodec(CodecFactory.deflateCodec(Deflater.BEST_COMPRESSION));
+      this.dataFileWriter.create(blockSchema, location.getOutputStream());
+      this.index = new LogFileIndex.Writer(location, dataFileWriter.sync());
+      this.columns = new HashMap<>();
+      this.dictionaries = new HashMap<>();
+      reset();
+    }
+
+    /**
+     * Appends an event to the archive. The record can be reused by the caller after this method returns.
+     */
+    public void append(GenericRecord event) throws IOException {
+      for (Schema.Field field : eventSchema.getFields()) {
+        String name = field.name();
+        Object value = event.get(name);
+        if (TIMESTAMP.equals(name)) {
+          long timestamp = (Long) value;
+          columns.get(name).add(timestamp - prevTimestamp);
+          prevTimestamp = timestamp;
+          minTimestamp = count == 0 ? timestamp : Math.min(minTimestamp, timestamp);
+          maxTimestamp = count == 0 ? timestamp : Math.max(maxTimestamp, timestamp);
+        } else if (LEVEL.equals(name)) {
+          int level = (Integer) value;
+          columns.get(name).add(level);
+          maxLevel = count == 0 ? level : Math.max(maxLevel, level);
+        } else if (DICTIONARY_FIELDS.contains(name)) {
+          columns.get(name).add(dictionaries.get(name).getId(value));
+        } else if (MDC.equals(name)) {
+          List<Integer> ids = new ArrayList<>();
+          if (value == null) {
+            ids.add(NULL_ID);
+          } else {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+              ids.add(dictionaries.get(MDC_KEYS).getId(entry.getKey()));
+              ids.add(dictionaries.get(MDC_VALUES).getId(entry.getValue()));
+            }
+          }
+          columns.get(name).add(ids);
+        } else {
+          columns.get(name).add(GenericData.get().deepCopy(field.schema(), value));
+        }
+      }
+      count++;
+      if (index.append(event)) {
+        writeBlock();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      try {
+        writeBlock();
+        dataFileWriter.close();
+      } finally {
+        Closeables.closeQuietly(index);
+      }
+    }
+
+    private void writeBlock() throws IOException {
+      if (count == 0) {
+        return;
+      }
+      GenericRecord block = new GenericData.Record(blockSchema);
+      block.put(COUNT, count);
+      block.put(MIN_TIMESTAMP, minTimestamp);
+      block.put(MAX_TIMESTAMP, maxTimestamp);
+      block.put(MAX_LEVEL, maxLevel);
+      for (Map.Entry<String, List<Object>> column : columns.entrySet()) {
+        block.put(column.getKey(), column.getValue());
+      }
+      for (Map.Entry<String, Dictionary> dictionary : dictionaries.entrySet()) {
+        String name = dictionary.getKey();
+        block.put(DICTIONARY_FIELDS.contains(name) ? name + DICTIONARY_SUFFIX : name, dictionary.getValue().values);
+      }
+      dataFileWriter.append(block);
+      index.sync(dataFileWriter.sync());
+      reset();
+    }
+
+    private void reset() {
+      columns.clear();
+      dictionaries.clear();
+      for (Schema.Field field : eventSchema.getFields()) {
+        String name = field.name();
+        columns.put(name, new ArrayList<>());
+        if (DICTIONARY_FIELDS.contains(name)) {
+          dictionaries.put(name, new Dictionary());
+        } else if (MDC.equals(name)) {
+          dictionaries.put(MDC_KEYS, new Dictionary());
+          dictionaries.put(MDC_VALUES, new Dictionary());
+        }
+      }
+      count = 0;
+      prevTimestamp = 0L;
+    }
+  }
+
+  /**
+   * Reads the events of an archive that are at or after a given time and may match a filter. The time, log level,
+   * logger and MDC conditions of the filter are evaluated on the columns of the blocks, and only the events
+   * matching them are decoded into records. Other conditions are not evaluated, hence the events returned still
+   * need to be matched against the filter.
+   */
+  public static final class Reader implements Closeable {
+
+    private final Schema eventSchema;
+    private final DataFileReader<GenericRecord> dataFileReader;
+    private final Filter filter;
+    private final long fromTimeMs;
+    // whether a logger in the dictionary of the current block matches a logger expression of the filter
+    private final Map<LoggerExpression, boolean[]> loggerMatches;
+    @Nullable
+    private LogFileIndex index;
+    // the next index entry to read
+    private int entry;
+
+    private GenericRecord block;
+    private int rows;
+    private int row;
+    private long[] timestamps;
+    private Map<String, Integer> mdcKeyIds;
+    private Map<String, Integer> mdcValueIds;
+
+    /**
+     * Creates a reader of an archive.
+     *
+     * @param input the archive
+     * @param eventSchema schema of the logging event records to read
+     * @param index the index of the archive, or {@code null} to scan all the blocks
+     */
+    public Reader(SeekableInput input, Schema eventSchema, @Nullable LogFileIndex index,
+                  Filter filter, long fromTimeMs) throws IOException {
+      this.eventSchema = eventSchema;
+      this.dataFileReader = new DataFileReader<>(input, new GenericDatumReader<GenericRecord>());
+      this.index = index == null || index.size() == 0 ? null : index;
+      this.filter = filter;
+      this.fromTimeMs = fromTimeMs;
+      this.loggerMatches = new IdentityHashMap<>();
+    }
+
+    /**
+     * Returns the record of the next event that is at or after the start time and may match the filter, or
+     * {@code null} if there are no more such events. The record is only valid until the next call.
+     */
+    @Nullable
+    public GenericRecord next() throws IOException {
+      while (true) {
+        while (row < rows) {
+          int current = row++;
+          if (timestamps[current] >= fromTimeMs && mayMatch(filter, current)) {
+            return getEvent(current);
+          }
+        }
+        if (!nextBlock()) {
+          return null;
+        }
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      dataFileReader.close();
+    }
+
+    /**
+     * Reads the next block that can have events at or after the start time matching the filter.
+     *
+     * @return {@code false} if there are no more blocks
+     */
+    private boolean nextBlock() throws IOException {
+      while (true) {
+        if (index != null) {
+          while (entry < index.size()
+            && (index.getMaxTimestamp(entry) < fromTimeMs || !index.mayMatch(entry, filter))) {
+            entry++;
+          }
+          if (entry < index.size()) {
+            dataFileReader.seek(index.getStartPosition(entry++));
+          } else {
+            // scan the blocks that are not indexed, if the index is incomplete
+            dataFileReader.seek(index.getIndexedEnd());
+            index = null;
+          }
+        }
+        if (!dataFileReader.hasNext()) {
+          rows = 0;
+          return false;
+        }
+        block = dataFileReader.next(block);
+        if ((Long) block.get(MAX_TIMESTAMP) >= fromTimeMs && mayMatchBlock(filter)) {
+          decodeBlock();
+          return true;
+        }
+      }
+    }
+
+    private void decodeBlock() {
+      rows = (Integer) block.get(COUNT);
+      row = 0;
+      timestamps = new long[rows];
+      List<?> deltas = getColumn(TIMESTAMP);
+      long timestamp = 0L;
+      for (int i = 0; i < rows; i++) {
+        timestamp += (Long) deltas.get(i);
+        timestamps[i] = timestamp;
+      }
+      loggerMatches.clear();
+      mdcKeyIds = null;
+      mdcValueIds = null;
+    }
+
+    /**
+     * Returns whether the current block may have events matching the given filter according to its highest level.
+     */
+    private boolean mayMatchBlock(Filter filter) {
+      if (filter instanceof AndFilter) {
+        for (Filter expression : ((AndFilter) filter).getExpressions()) {
+          if (!mayMatchBlock(expression)) {
+            return false;
+          }
+        }
+        return true;
+      }
+      if (filter instanceof OrFilter) {
+        for (Filter expression : ((OrFilter) filter).getExpressions()) {
+          if (mayMatchBlock(expression)) {
+            return true;
+          }
+        }
+        return false;
+      }
+      if (filter instanceof LogLevelExpression) {
+        return (Integer) block.get(MAX_LEVEL) >= ((LogLevelExpression) filter).getLevel().toInt();
+      }
+      return true;
+    }
+
+    /**
+     * Returns whether the event of the given row of the current block may match the given filter. Only the log level,
+     * logger and MDC expressions, and their combinations with {@link AndFilter} and {@link OrFilter} are evaluated.
+     */
+    private boolean mayMatch(Filter filter, int row) {
+      if (filter instanceof AndFilter) {
+        for (Filter expression : ((AndFilter) filter).getExpressions()) {
+          if (!mayMatch(expression, row)) {
+            return false;
+          }
+        }
+        return true;
+      }
+      if (filter instanceof OrFilter) {
+        for (Filter expression : ((OrFilter) filter).getExpressions()) {
+          if (mayMatch(expression, row)) {
+            return true;
+          }
+        }
+        return false;
+      }
+      if (filter instanceof LogLevelExpression) {
+        return (Integer) getColumn(LEVEL).get(row) >= ((LogLevelExpression) filter).getLevel().toInt();
+      }
+      if (filter instanceof LoggerExpression) {
+        int id = (Integer) getColumn(LOGGER_NAME).get(row);
+        return id != NULL_ID && getLoggerMatches((LoggerExpression) filter)[id];
+      }
+      if (filter instanceof MdcExpression) {
+        return hasMdc((MdcExpression) filter, row);
+      }
+      return true;
+    }
+
+    private boolean[] getLoggerMatches(LoggerExpression expression) {
+      boolean[] matches = loggerMatches.get(expression);
+      if (matches == null) {
+        List<?> loggers = getColumn(LOGGER_NAME + DICTIONARY_SUFFIX);
+        matches = new boolean[loggers.size()];
+        for (int i = 0; i < matches.length; i++) {
+          matches[i] = expression.matches(loggers.get(i).toString());
+        }
+        loggerMatches.put(expression, matches);
+      }
+      return matches;
+    }
+
+    private boolean hasMdc(MdcExpression expression, int row) {
+      if (mdcKeyIds == null) {
+        mdcKeyIds = getIds(getColumn(MDC_KEYS));
+        mdcValueIds = getIds(getColumn(MDC_VALUES));
+      }
+      Integer keyId = mdcKeyIds.get(expression.getKey());
+      Integer valueId = mdcValueIds.get(expression.getValue());
+      if (keyId == null || valueId == null) {
+        return false;
+      }
+      List<?> ids = (List<?>) getColumn(MDC).get(row);
+      for (int i = 0; i + 1 < ids.size(); i += 2) {
+        if (keyId.equals(ids.get(i)) && valueId.equals(ids.get(i + 1))) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * Decodes the event of the given row of the current block.
+     */
+    private GenericRecord getEvent(int row) {
+      GenericRecord event = new GenericData.Record(eventSchema);
+      for (Schema.Field field : eventSchema.getFields()) {
+        String name = field.name();
+        if (block.getSchema().getField(name) == null) {
+          continue;
+        }
+        if (TIMESTAMP.equals(name)) {
+          event.put(name, timestamps[row]);
+        } else if (DICTIONARY_FIELDS.contains(name)) {
+          event.put(name, getValue(getColumn(name + DICTIONARY_SUFFIX), (Integer) getColumn(name).get(row)));
+        } else if (MDC.equals(name)) {
+          List<?> ids = (List<?>) getColumn(name).get(row);
+          if (ids.size() == 1 && (Integer) ids.get(0) == NULL_ID) {
+            event.put(name, null);
+          } else {
+            Map<String, String> mdc = new HashMap<>();
+            for (int i = 0; i + 1 < ids.size(); i += 2) {
+              mdc.put(getValue(getColumn(MDC_KEYS), (Integer) ids.get(i)),
+                      getValue(getColumn(MDC_VALUES), (Integer) ids.get(i + 1)));
+            }
+            event.put(name, mdc);
+          }
+        } else {
+          event.put(name, getColumn(name).get(row));
+        }
+      }
+      return event;
+    }
+
+    private List<?> getColumn(String name) {
+      return (List<?>) block.get(name);
+    }
+
+    @Nullable
+    private static String getValue(List<?> dictionary, int id) {
+      return id == NULL_ID ? null : dictionary.get(id).toString();
+    }
+
+    private static Map<String, Integer> getIds(List<?> dictionary) {
+      Map<String, Integer> ids = new HashMap<>();
+      for (int i = 0; i < dictionary.size(); i++) {
+        ids.put(dictionary.get(i).toString(), i);
+      }
+      return ids;
+    }
+  }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.cdap.logging.format;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import co.cask.cdap.api.dataset.lib.AbstractCloseableIterator;
+import co.cask.cdap.common.io.Locations;
+import co.cask.cdap.common.io.SeekableInputStream;
+import co.cask.cdap.logging.filter.Filter;
+import co.cask.cdap.logging.serialize.LoggingEvent;
+import co.cask.cdap.proto.id.NamespaceId;
+import co.cask.cdap.security.impersonation.Impersonator;
+import com.google.common.base.Function;
+import org.apache.avro.Schema;
+import org.apache.avro.file.SeekableInput;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.twill.filesystem.Location;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import javax.annotation.Nullable;
+
+/**
+ * An iterator over the log events of a {@link LogArchive}, which only decodes the events that may match the filter
+ * according to the columns of the archive. Like for the row oriented log files, the events from the start time are
+ * returned until the end time or the maximum number of events is reached, but never ending in the middle of the
+ * events of a timestamp.
+ * <p/>
+ * It is shared by the readers of the log files, which create their own event type from the logging events. A failure
+ * to open or read the archive is logged and ends its events.
+ *
+ * @param <T> type of the events returned
+ */
+public final class LogArchiveEventIterator<T> extends AbstractCloseableIterator<T> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(LogArchiveEventIterator.class);
+
+  private final Location file;
+  private final Filter logFilter;
+  private final long toTimeMs;
+  private final long maxEvents;
+  private final Function<ILoggingEvent, T> eventFactory;
+
+  private LogArchive.Reader reader;
+  private int count = 0;
+  private long prevTimestamp = -1;
+
+  /**
+   * Creates an iterator over the events of an archive, which is read as the owner of the given namespace.
+   *
+   * @param eventFactory creates the events returned from the logging events read
+   */
+  public LogArchiveEventIterator(final Location file, Schema schema, Filter logFilter, long fromTimeMs,
+                                 long toTimeMs, long maxEvents, NamespaceId namespaceId, Impersonator impersonator,
+                                 Function<ILoggingEvent, T> eventFactory) {
+    this.file = file;
+    this.logFilter = logFilter;
+    this.toTimeMs = toTimeMs;
+    this.maxEvents = maxEvents;
+    this.eventFactory = eventFactory;
+    try {
+      SeekableInputStream is = impersonator.doAs(namespaceId, new Callable<SeekableInputStream>() {
+        @Override
+        public SeekableInputStream call() throws Exception {
+          return Locations.newInputSupplier(file).getInput();
+        }
+      });
+      reader = new LogArchive.Reader(new StreamSeekableInput(is, file.length()), schema,
+                                     readIndex(namespaceId, impersonator), logFilter, fromTimeMs);
+    } catch (Exception e) {
+      // we want to ignore invalid or missing log files
+      LOG.error("Got exception while reading log file {}", file, e);
+    }
+  }
+
+  @Override
+  protected T computeNext() {
+    try {
+      GenericRecord datum;
+      while (reader != null && (datum = reader.next()) != null) {
+        ILoggingEvent loggingEvent = LoggingEvent.decode(datum);
+        if (logFilter.match(loggingEvent)) {
+          ++count;
+          if ((count > maxEvents || loggingEvent.getTimeStamp() >= toTimeMs)
+            && loggingEvent.getTimeStamp() != prevTimestamp) {
+            break;
+          }
+          prevTimestamp = loggingEvent.getTimeStamp();
+          return eventFactory.apply(loggingEvent);
+        }
+        prevTimestamp = loggingEvent.getTimeStamp();
+      }
+    } catch (Exception e) {
+      // same as for other log files, a failure to read the archive ends its events
+      LOG.error("Got exception while reading log file {}", file, e);
+    }
+    return endOfData();
+  }
+
+  @Override
+  public void close() {
+    if (reader != null) {
+      try {
+        reader.close();
+      } catch (IOException e) {
+        LOG.error("Got exception while closing log file {}", file, e);
+      }
+      reader = null;
+    }
+  }
+
+  /**
+   * Reads the index of the archive, or returns {@code null} if it is not indexed.
+   */
+  @Nullable
+  private LogFileIndex readIndex(NamespaceId namespaceId, Impersonator impersonator) {
+    try {
+      return impersonator.doAs(namespaceId, new Callable<LogFileIndex>() {
+        @Override
+        public LogFileIndex call() throws Exception {
+          return LogFileIndex.read(file);
+        }
+      });
+    } catch (Exception e) {
+      LOG.debug("Failed to read the index of log file {}", file, e);
+      return null;
+    }
+  }
+
+  /**
+   * An implementation of Avro SeekableInput over a {@link SeekableInputStream}.
+   */
+  private static final class StreamSeekableInput implements SeekableInput {
+
+    private final SeekableInputStream is;
+    private final long len;
+
+    StreamSeekableInput(SeekableInputStream is, long len) {
+      this.is = is;
+      this.len = len;
+    }
+
+    @Override
+    public void seek(long p) throws IOException {
+      is.seek(p);
+    }
+
+    @Override
+    public long tell() throws IOException {
+      return is.getPos();
+    }
+
+    @Override
+    public long length() throws IOException {
+      return len;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      return is.read(b, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+      is.close();
+    }
+  }
+}
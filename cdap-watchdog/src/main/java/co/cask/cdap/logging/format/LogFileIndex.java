@@ -0,0 +1,495 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.logging.format;
+
+import ch.qos.logback.classic.Level;
+import co.cask.cdap.common.io.Locations;
+import co.cask.cdap.logging.filter.AndFilter;
+import co.cask.cdap.logging.filter.Filter;
+import co.cask.cdap.logging.filter.LogLevelExpression;
+import co.cask.cdap.logging.filter.MdcExpression;
+import co.cask.cdap.logging.filter.MessageExpression;
+import co.cask.cdap.logging.filter.OrFilter;
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Closeables;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.twill.filesystem.Location;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * Sidecar index of a log Avro file, which maps ranges of event time to Avro sync positions in the file, so that
+ * readers can seek to the blocks of a time window instead of scanning the file from the start.
+ * <p/>
+ * The index is stored next to the log file, with {@link #SUFFIX} appended to the file name. It consists of a header
+ * followed by entries, each of which has the start and end sync position of a range of Avro blocks, the minimum and
+ * maximum timestamp and the highest level of the events in them, and a Bloom filter of the MDC values and message
+ * terms of the events. Readers use the entries to skip the blocks that cannot have events matching a log filter,
+ * see {@link #mayMatch(int, Filter)}. Entries are appended while the log file is written, hence the index of an open
+ * file only covers the file up to the end of the last entry and readers must treat the rest of the file as not
+ * indexed. A partially written entry and entries beyond the end of the log file are ignored.
+ */
+public final class LogFileIndex {
+
+  public static final String SUFFIX = ".idx";
+
+  private static final Logger LOG = LoggerFactory.getLogger(LogFileIndex.class);
+  private static final int MAGIC = 0x4C494458;
+  private static final int VERSION = 2;
+
+  private static final HashFunction TERM_HASH = Hashing.murmur3_128();
+  // number of bits set in the Bloom filter per term
+  private static final int BLOOM_HASHES = 4;
+  // number of bits of the Bloom filter per term, which gives about 1% false positives
+  private static final int BLOOM_BITS_PER_TERM = 10;
+  private static final int MAX_BLOOM_LONGS = 4096;
+
+  private final int size;
+  private final long[] startPositions;
+  private final long[] endPositions;
+  private final long[] minTimestamps;
+  private final long[] maxTimestamps;
+  private final int[] maxLevels;
+  // Bloom filter of the terms of each entry, empty if the entry has too many terms to be indexed
+  private final long[][] termBlooms;
+
+  /**
+   * Returns the location of the index of the given log file.
+   */
+  public static Location getIndexLocation(Location logFile) throws IOException {
+    Location parent = Locations.getParent(logFile);
+    if (parent == null) {
+      throw new IOException("Log file " + logFile + " has no parent directory");
+    }
+    return parent.append(logFile.getName() + SUFFIX);
+  }
+
+  /**
+   * Reads the index of the given log file.
+   *
+   * @return the index or {@code null} if the log file has no valid index
+   */
+  @Nullable
+  public static LogFileIndex read(Location logFile) {
+    try {
+      Location indexLocation = getIndexLocation(logFile);
+      if (!indexLocation.exists()) {
+        return null;
+      }
+      try (InputStream is = indexLocation.getInputStream()) {
+        return read(is, logFile.length());
+      }
+    } catch (IOException e) {
+      LOG.debug("Failed to read the index of log file {}, reading the file without index", logFile, e);
+      return null;
+    }
+  }
+
+  /**
+   * Reads an index from the given stream.
+   *
+   * @param is the stream to read from
+   * @param logFileLength length of the indexed log file, entries beyond it are ignored
+   * @return the index or {@code null} if the stream does not contain a valid index
+   */
+  @Nullable
+  static LogFileIndex read(InputStream is, long logFileLength) throws IOException {
+    DataInputStream input = new DataInputStream(new BufferedInputStream(is));
+    try {
+      if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+        return null;
+      }
+    } catch (EOFException e) {
+      return null;
+    }
+
+    int size = 0;
+    long[] startPositions = new long[16];
+    long[] endPositions = new long[16];
+    long[] minTimestamps = new long[16];
+    long[] maxTimestamps = new long[16];
+    int[] maxLevels = new int[16];
+    long[][] termBlooms = new long[16][];
+    try {
+      while (true) {
+        long start = input.readLong();
+        long end = input.readLong();
+        long minTimestamp = input.readLong();
+        long maxTimestamp = input.readLong();
+        int maxLevel = input.readInt();
+        int bloomLongs = input.readInt();
+        if (bloomLongs < 0 || bloomLongs > MAX_BLOOM_LONGS || Integer.bitCount(bloomLongs) > 1) {
+          LOG.debug("Ignoring invalid index entries from entry {}", size);
+          break;
+        }
+        long[] termBloom = new long[bloomLongs];
+        for (int i = 0; i < bloomLongs; i++) {
+          termBloom[i] = input.readLong();
+        }
+        if (end > logFileLength) {
+          // the log file was not synced after the entry was written
+          break;
+        }
+        if (size == startPositions.length) {
+          startPositions = Arrays.copyOf(startPositions, size * 2);
+          endPositions = Arrays.copyOf(endPositions, size * 2);
+          minTimestamps = Arrays.copyOf(minTimestamps, size * 2);
+          maxTimestamps = Arrays.copyOf(maxTimestamps, size * 2);
+          maxLevels = Arrays.copyOf(maxLevels, size * 2);
+          termBlooms = Arrays.copyOf(termBlooms, size * 2);
+        }
+        startPositions[size] = start;
+        endPositions[size] = end;
+        minTimestamps[size] = minTimestamp;
+        maxTimestamps[size] = maxTimestamp;
+        maxLevels[size] = maxLevel;
+        termBlooms[size] = termBloom;
+        size++;
+      }
+    } catch (EOFException e) {
+      // end of the index, possibly in the middle of an entry that is still being written
+    }
+    return new LogFileIndex(size, startPositions, endPositions, minTimestamps, maxTimestamps, maxLevels, termBlooms);
+  }
+
+  private LogFileIndex(int size, long[] startPositions, long[] endPositions, long[] minTimestamps,
+                       long[] maxTimestamps, int[] maxLevels, long[][] termBlooms) {
+    this.size = size;
+    this.startPositions = startPositions;
+    this.endPositions = endPositions;
+    this.minTimestamps = minTimestamps;
+    this.maxTimestamps = maxTimestamps;
+    this.maxLevels = maxLevels;
+    this.termBlooms = termBlooms;
+  }
+
+  /**
+   * Returns the number of entries in the index.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the sync position where the blocks of the given entry start.
+   */
+  public long getStartPosition(int entry) {
+    return startPositions[entry];
+  }
+
+  /**
+   * Returns the sync position where the blocks of the given entry end, which is the start of the following blocks.
+   */
+  public long getEndPosition(int entry) {
+    return endPositions[entry];
+  }
+
+  /**
+   * Returns the minimum timestamp of the events in the given entry.
+   */
+  public long getMinTimestamp(int entry) {
+    return minTimestamps[entry];
+  }
+
+  /**
+   * Returns the maximum timestamp of the events in the given entry.
+   */
+  public long getMaxTimestamp(int entry) {
+    return maxTimestamps[entry];
+  }
+
+  /**
+   * Returns the sync position where the indexed part of the log file ends, or {@code -1} if the index is empty.
+   */
+  public long getIndexedEnd() {
+    return size == 0 ? -1L : endPositions[size - 1];
+  }
+
+  /**
+   * Returns the highest level of the events in the given entry, as returned by {@link Level#toInt()}.
+   */
+  public int getMaxLevel(int entry) {
+    return maxLevels[entry];
+  }
+
+  /**
+   * Returns the first entry with events that have timestamp greater than or equal to the given time, or the number
+   * of entries if there is none. All events before the entry have smaller timestamps.
+   */
+  public int firstEntry(long fromTimeMs) {
+    for (int i = 0; i < size; i++) {
+      if (maxTimestamps[i] >= fromTimeMs) {
+        return i;
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Returns the sync position to start reading from for events with timestamp greater than or equal to the
+   * given time, which is the start of the first entry with such events, or the end of the indexed part of the file
+   * if there is none. All events before the returned position have smaller timestamps.
+   *
+   * @return the sync position or {@code -1} if the index is empty
+   */
+  public long seekPosition(long fromTimeMs) {
+    int entry = firstEntry(fromTimeMs);
+    return entry < size ? startPositions[entry] : getIndexedEnd();
+  }
+
+  /**
+   * Returns whether the given entry may have events that match the given filter. Only the log level, MDC and
+   * message expressions, and their combinations with {@link AndFilter} and {@link OrFilter} are answered from the
+   * index, every other filter may match any entry. A {@code false} result is exact, while a {@code true} result
+   * can be a false positive of the Bloom filter.
+   */
+  public boolean mayMatch(int entry, Filter filter) {
+    if (filter instanceof AndFilter) {
+      for (Filter expression : ((AndFilter) filter).getExpressions()) {
+        if (!mayMatch(entry, expression)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    if (filter instanceof OrFilter) {
+      for (Filter expression : ((OrFilter) filter).getExpressions()) {
+        if (mayMatch(entry, expression)) {
+          return true;
+        }
+      }
+      return false;
+    }
+    if (filter instanceof LogLevelExpression) {
+      return maxLevels[entry] >= ((LogLevelExpression) filter).getLevel().toInt();
+    }
+    if (filter instanceof MdcExpression) {
+      MdcExpression expression = (MdcExpression) filter;
+      return mayContain(termBlooms[entry], getMdcTerm(expression.getKey(), expression.getValue()));
+    }
+    if (filter instanceof MessageExpression) {
+      for (String term : ((MessageExpression) filter).getTerms()) {
+        if (!mayContain(termBlooms[entry], term)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    return true;
+  }
+
+  /**
+   * Returns the term of an MDC entry, which cannot collide with message terms as these only contain letters and
+   * digits.
+   */
+  private static String getMdcTerm(String key, String value) {
+    return "mdc:" + key + "=" + value;
+  }
+
+  private static boolean mayContain(long[] bloom, String term) {
+    if (bloom.length == 0) {
+      // entry has too many terms to be indexed
+      return true;
+    }
+    long[] hashes = hash(term);
+    int mask = bloom.length * Long.SIZE - 1;
+    for (int i = 0; i < BLOOM_HASHES; i++) {
+      int bit = (int) (hashes[0] + i * hashes[1]) & mask;
+      if ((bloom[bit >>> 6] & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static long[] hash(String term) {
+    ByteBuffer hash = ByteBuffer.wrap(TERM_HASH.hashString(term, Charsets.UTF_8).asBytes());
+    return new long[] { hash.getLong(), hash.getLong() };
+  }
+
+  /**
+   * Appends entries to the index of a log file while the log file is written. The owner of the log file calls
+   * {@link #append(GenericRecord)} for every event appended to the log file and {@link #sync(long)} with every sync
+   * position of the log file that ends an entry.
+   * <p/>
+   * Failures to write the index don't fail the log file. The index simply stops growing, and readers treat the rest
+   * of the log file as not indexed.
+   */
+  public static final class Writer implements Closeable {
+
+    // maximum number of events per entry, which bounds the number of events to scan after seeking
+    public static final int MAX_EVENTS_PER_ENTRY = 1024;
+    // maximum number of distinct terms per entry, an entry with more terms matches every term
+    public static final int MAX_TERMS_PER_ENTRY = 8192;
+
+    private final Location logFile;
+    private final Set<String> terms = new HashSet<>();
+    private FSDataOutputStream output;
+    private long startPosition;
+    private long minTimestamp;
+    private long maxTimestamp;
+    private int maxLevel;
+    private boolean termsOverflow;
+    private int events;
+
+    /**
+     * Creates the index of the given log file.
+     *
+     * @param logFile the log file to index
+     * @param startPosition sync position of the first block of the log file
+     */
+    public Writer(Location logFile, long startPosition) {
+      this.logFile = logFile;
+      this.startPosition = startPosition;
+      try {
+        this.output = new FSDataOutputStream(getIndexLocation(logFile).getOutputStream(), null);
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+      } catch (IOException e) {
+        failed(e);
+      }
+    }
+
+    /**
+     * Records an event appended to the log file.
+     *
+     * @param record the logging event record as appended to the log file
+     * @return {@code true} if the current entry is full, in which case the log file should be synced and the
+     *         sync position passed to {@link #sync(long)}
+     */
+    public boolean append(GenericRecord record) {
+      long timestamp = (Long) record.get("timestamp");
+      int level = (Integer) record.get("level");
+      if (events == 0) {
+        minTimestamp = timestamp;
+        maxTimestamp = timestamp;
+        maxLevel = level;
+      } else {
+        minTimestamp = Math.min(minTimestamp, timestamp);
+        maxTimestamp = Math.max(maxTimestamp, timestamp);
+        maxLevel = Math.max(maxLevel, level);
+      }
+
+      if (!termsOverflow) {
+        Map<?, ?> mdc = (Map<?, ?>) record.get("mdc");
+        if (mdc != null) {
+          for (Map.Entry<?, ?> entry : mdc.entrySet()) {
+            if (entry.getKey() != null && entry.getValue() != null) {
+              terms.add(getMdcTerm(entry.getKey().toString(), entry.getValue().toString()));
+            }
+          }
+        }
+        Object message = record.get("formattedMessage");
+        if (message != null) {
+          terms.addAll(MessageExpression.tokenize(message.toString()));
+        }
+        if (terms.size() > MAX_TERMS_PER_ENTRY) {
+          termsOverflow = true;
+          terms.clear();
+        }
+      }
+      return ++events >= MAX_EVENTS_PER_ENTRY;
+    }
+
+    /**
+     * Ends the current entry at the given sync position of the log file, as returned by the Avro
+     * {@link org.apache.avro.file.DataFileWriter#sync()} after the last event of the entry was appended.
+     */
+    public void sync(long syncPosition) {
+      if (events == 0 || syncPosition <= startPosition) {
+        return;
+      }
+      if (output != null) {
+        try {
+          output.writeLong(startPosition);
+          output.writeLong(syncPosition);
+          output.writeLong(minTimestamp);
+          output.writeLong(maxTimestamp);
+          output.writeInt(maxLevel);
+          long[] bloom = termsOverflow ? new long[0] : createBloom(terms);
+          output.writeInt(bloom.length);
+          for (long bits : bloom) {
+            output.writeLong(bits);
+          }
+        } catch (IOException e) {
+          failed(e);
+        }
+      }
+      startPosition = syncPosition;
+      events = 0;
+      terms.clear();
+      termsOverflow = false;
+    }
+
+    /**
+     * Flushes the entries written so far, which should be called after the log file is flushed.
+     */
+    public void flush() {
+      if (output != null) {
+        try {
+          output.hflush();
+        } catch (IOException e) {
+          failed(e);
+        }
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (output != null) {
+        output.close();
+        output = null;
+      }
+    }
+
+    private long[] createBloom(Set<String> terms) {
+      // power of two number of bits, so that bits are selected by masking the hashes
+      int bits = Math.max(Long.SIZE, Integer.highestOneBit(terms.size() * BLOOM_BITS_PER_TERM - 1) << 1);
+      long[] bloom = new long[bits / Long.SIZE];
+      for (String term : terms) {
+        long[] hashes = hash(term);
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+          int bit = (int) (hashes[0] + i * hashes[1]) & (bits - 1);
+          bloom[bit >>> 6] |= 1L << bit;
+        }
+      }
+      return bloom;
+    }
+
+    private void failed(IOException e) {
+      LOG.warn("Failed to write the index of log file {}, the rest of the file will not be indexed", logFile, e);
+      Closeables.closeQuietly(output);
+      output = null;
+    }
+  }
+}
@@ -21,13 +21,18 @@ import ch.qos.logback.core.AppenderBase;
 import ch.qos.logback.core.LogbackException;
 import ch.qos.logback.core.spi.FilterReply;
 import ch.qos.logback.core.status.WarnStatus;
+import co.cask.cdap.api.metrics.MetricsCollectionService;
+import co.cask.cdap.api.metrics.MetricsContext;
+import co.cask.cdap.api.metrics.NoopMetricsContext;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.logging.serialize.LogSchema;
 import co.cask.cdap.logging.write.FileMetaDataManager;
 import co.cask.cdap.proto.id.NamespaceId;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
 import com.google.inject.Inject;
+import org.apache.twill.common.Threads;
 import org.apache.twill.filesystem.LocationFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,6 +42,9 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Log Appender implementation for CDAP Log framework
@@ -60,9 +68,17 @@ public class CDAPLogAppender extends AppenderBase<ILoggingEvent> implements Flus
   private FileMetaDataManager fileMetaDataManager;
   @Inject
   private LocationFactory locationFactory;
+  @Inject(optional = true)
+  private MetricsCollectionService metricsCollectionService;
 
   private int syncIntervalBytes;
   private long maxFileLifetimeMs;
+  private long compactionIntervalMs = TimeUnit.HOURS.toMillis(1);
+  private long compactionSmallFileSizeBytes = 1024 * 1024;
+  private long compactionMaxFileSizeBytes = 100 * 1024 * 1024;
+  private long archiveAfterMs = TimeUnit.DAYS.toMillis(7);
+  private long compactionDeleteGraceMs = TimeUnit.HOURS.toMillis(1);
+  private ScheduledExecutorService compactionExecutor;
 
 
   /**
@@ -80,13 +96,68 @@ public class CDAPLogAppender extends AppenderBase<ILoggingEvent> implements Flus
     this.maxFileLifetimeMs = maxFileLifetimeMs;
   }
 
+  /**
+   * Sets the interval between compactions of the small log files written by this appender. A value of zero or less
+   * disables the compaction.
+   */
+  public void setCompactionIntervalMs(long compactionIntervalMs) {
+    this.compactionIntervalMs = compactionIntervalMs;
+  }
+
+  /**
+   * Sets the size below which log files are merged by the compaction.
+   */
+  public void setCompactionSmallFileSizeBytes(long compactionSmallFileSizeBytes) {
+    this.compactionSmallFileSizeBytes = compactionSmallFileSizeBytes;
+  }
+
+  /**
+   * Sets the maximum total size of the log files merged into one file by the compaction.
+   */
+  public void setCompactionMaxFileSizeBytes(long compactionMaxFileSizeBytes) {
+    this.compactionMaxFileSizeBytes = compactionMaxFileSizeBytes;
+  }
+
+  /**
+   * Sets the age after which log files are rewritten by the compaction in the columnar archive format. A value of
+   * zero or less disables the archiving.
+   */
+  public void setArchiveAfterMs(long archiveAfterMs) {
+    this.archiveAfterMs = archiveAfterMs;
+  }
+
+  /**
+   * Sets the time to keep the log files replaced by the compaction, so that readers that listed them before can finish
+   * reading them.
+   */
+  public void setCompactionDeleteGraceMs(long compactionDeleteGraceMs) {
+    this.compactionDeleteGraceMs = compactionDeleteGraceMs;
+  }
+
   @Override
   public void start() {
     super.start();
+    if (compactionIntervalMs > 0) {
+      compactionExecutor = Executors.newSingleThreadScheduledExecutor(Threads.createDaemonThreadFactory(
+        "log-file-compactor"));
+      compactionExecutor.scheduleWithFixedDelay(createCompactor(), compactionIntervalMs, compactionIntervalMs,
+                                                TimeUnit.MILLISECONDS);
+    }
     this.logFileManager = new LogFileManager(maxFileLifetimeMs, syncIntervalBytes, LogSchema.LoggingEvent.SCHEMA,
                                              fileMetaDataManager, locationFactory);
   }
 
+  @VisibleForTesting
+  LogFileCompactor createCompactor() {
+    Map<String, String> tags = ImmutableMap.of(Constants.Metrics.Tag.NAMESPACE, NamespaceId.SYSTEM.getNamespace(),
+                                               Constants.Metrics.Tag.COMPONENT, Constants.Service.LOGSAVER);
+    MetricsContext metricsContext = metricsCollectionService == null
+      ? new NoopMetricsContext(tags) : metricsCollectionService.getContext(tags);
+    return new LogFileCompactor(fileMetaDataManager, LogSchema.LoggingEvent.SCHEMA, syncIntervalBytes,
+                                compactionSmallFileSizeBytes, compactionMaxFileSizeBytes, archiveAfterMs,
+                                compactionDeleteGraceMs, metricsContext);
+  }
+
   @Override
   public void doAppend(ILoggingEvent eventObject) throws LogbackException {
     long timestamp = eventObject.getTimeStamp();
@@ -129,6 +200,10 @@ public class CDAPLogAppender extends AppenderBase<ILoggingEvent> implements Flus
   @Override
   public void stop() {
     try {
+      if (compactionExecutor != null) {
+        compactionExecutor.shutdownNow();
+        compactionExecutor = null;
+      }
       logFileManager.close();
     } finally {
       super.stop();
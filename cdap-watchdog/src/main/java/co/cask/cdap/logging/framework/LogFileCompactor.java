@@ -0,0 +1,407 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.logging.framework;
+
+import co.cask.cdap.api.metrics.MetricsContext;
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.io.Locations;
+import co.cask.cdap.logging.format.LogArchive;
+import co.cask.cdap.logging.format.LogFileIndex;
+import co.cask.cdap.logging.write.FileMetaDataManager;
+import co.cask.cdap.logging.write.LogLocation;
+import com.google.common.io.Closeables;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.apache.avro.Schema;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.twill.filesystem.Location;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * Merges adjacent small log files of a logging context into larger files, so that programs with little logging
+ * and short runs don't leave many small files behind, each of which adds to the meta data and to the cost of
+ * reading the logs. The merged files are compressed and indexed like the files written by {@link LogFileManager}.
+ * Files older than the archive age are then rewritten as {@link LogArchive}s, which take a fraction of the space and
+ * are faster to scan with a filter.
+ * <p/>
+ * The meta data of the merged files is replaced by the meta data of the new file in a single transaction. The merged
+ * files are not deleted right away, as readers that listed them before the replacement may still be reading them;
+ * they are deleted by the first run after a grace period. Files left behind when the log saver stops before that are
+ * removed by {@link co.cask.cdap.logging.write.LogCleanup} after the retention period. Only files whose event time
+ * ranges don't overlap are merged, so that the events of a merged file stay in time order.
+ * <p/>
+ * The logging contexts to compact are listed from the meta data, and only their files written by the log appender
+ * are compacted. The file of a logging context created last is never merged, as it can still be written to. Files
+ * written by the previous log saver are neither merged nor archived, as their meta data cannot be replaced; they are
+ * removed by {@link co.cask.cdap.logging.write.LogCleanup} after the retention period.
+ */
+class LogFileCompactor implements Runnable {
+  private static final Logger LOG = LoggerFactory.getLogger(LogFileCompactor.class);
+
+  private static final Comparator<LogLocation> FILE_ORDER = new Comparator<LogLocation>() {
+    @Override
+    public int compare(LogLocation o1, LogLocation o2) {
+      int cmp = Long.compare(o1.getEventTimeMs(), o2.getEventTimeMs());
+      return cmp != 0 ? cmp : Long.compare(o1.getFileCreationTimeMs(), o2.getFileCreationTimeMs());
+    }
+  };
+
+  private final FileMetaDataManager fileMetaDataManager;
+  private final Schema schema;
+  private final int syncIntervalBytes;
+  private final long smallFileSizeBytes;
+  private final long maxFileSizeBytes;
+  private final long archiveAfterMs;
+  private final long deleteGraceMs;
+  private final MetricsContext metricsContext;
+  // replaced files to delete, with the time after which they can be deleted
+  private final Map<Location, Long> replacedFiles = new LinkedHashMap<>();
+
+  /**
+   * Creates a compactor.
+   *
+   * @param smallFileSizeBytes files smaller than this size are merged
+   * @param maxFileSizeBytes maximum total size of the files merged into one file
+   * @param archiveAfterMs files created longer than this time ago are archived, zero or less disables archiving
+   * @param deleteGraceMs time to keep the merged and archived files for readers that are still reading them
+   */
+  LogFileCompactor(FileMetaDataManager fileMetaDataManager, Schema schema, int syncIntervalBytes,
+                   long smallFileSizeBytes, long maxFileSizeBytes, long archiveAfterMs, long deleteGraceMs,
+                   MetricsContext metricsContext) {
+    this.fileMetaDataManager = fileMetaDataManager;
+    this.schema = schema;
+    this.syncIntervalBytes = syncIntervalBytes;
+    this.smallFileSizeBytes = smallFileSizeBytes;
+    this.maxFileSizeBytes = maxFileSizeBytes;
+    this.archiveAfterMs = archiveAfterMs;
+    this.deleteGraceMs = deleteGraceMs;
+    this.metricsContext = metricsContext;
+  }
+
+  @Override
+  public void run() {
+    deleteReplacedFiles(System.currentTimeMillis());
+
+    List<LogPathIdentifier> identifiers;
+    try {
+      identifiers = fileMetaDataManager.listLoggingContexts();
+    } catch (Throwable t) {
+      LOG.warn("Failed to list the logging contexts to compact. Will try again later.", t);
+      return;
+    }
+    LOG.debug("Running log file compaction for {} logging contexts", identifiers.size());
+    for (LogPathIdentifier identifier : identifiers) {
+      try {
+        compact(identifier);
+        if (archiveAfterMs > 0) {
+          archive(identifier, System.currentTimeMillis() - archiveAfterMs);
+        }
+      } catch (Throwable t) {
+        LOG.warn("Failed to compact log files of logging context {}. Will try again later.",
+                 identifier.getRowKey(), t);
+      }
+    }
+  }
+
+  /**
+   * Deletes the files replaced by merging or archiving whose grace period has passed before the given time.
+   */
+  void deleteReplacedFiles(long currentTimeMs) {
+    Iterator<Map.Entry<Location, Long>> iterator = replacedFiles.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<Location, Long> entry = iterator.next();
+      if (entry.getValue() <= currentTimeMs) {
+        deleteLogFile(entry.getKey());
+        iterator.remove();
+      }
+    }
+  }
+
+  /**
+   * Merges the adjacent small files of the given logging context whose event time ranges don't overlap.
+   *
+   * @return the number of files that were merged
+   */
+  int compact(LogPathIdentifier identifier) throws Exception {
+    List<LogLocation> files = new ArrayList<>();
+    for (LogLocation file : listClosedFiles(identifier)) {
+      if (!LogArchive.isArchive(file.getLocation())) {
+        files.add(file);
+      }
+    }
+
+    int merged = 0;
+    List<LogLocation> group = new ArrayList<>();
+    long groupSize = 0;
+    // the latest event time of the files in the group
+    long groupEndMs = Long.MIN_VALUE;
+    for (LogLocation file : files) {
+      long size = file.getLocation().length();
+      long[] range = size < smallFileSizeBytes ? getEventTimeRange(file.getLocation()) : null;
+      if (range == null || groupSize + size > maxFileSizeBytes || range[0] < groupEndMs) {
+        merged += merge(identifier, group);
+        group.clear();
+        groupSize = 0;
+        groupEndMs = Long.MIN_VALUE;
+      }
+      if (range != null) {
+        group.add(file);
+        groupSize += size;
+        groupEndMs = Math.max(groupEndMs, range[1]);
+      }
+    }
+    merged += merge(identifier, group);
+    return merged;
+  }
+
+  /**
+   * Rewrites the files of the given logging context that were created before the given time as archives.
+   *
+   * @return the number of files that were archived
+   */
+  int archive(LogPathIdentifier identifier, long createdBeforeMs) throws Exception {
+    int archived = 0;
+    for (LogLocation file : listClosedFiles(identifier)) {
+      if (file.getFileCreationTimeMs() < createdBeforeMs && !LogArchive.isArchive(file.getLocation())
+        && archive(identifier, file)) {
+        archived++;
+      }
+    }
+    return archived;
+  }
+
+  /**
+   * Lists the files of the given logging context written by the log appender, except for the file created last that
+   * may still be written to, in event time order. The file created last is not necessarily the one with the latest
+   * events, as a file is created for late events too. Merged and archived files keep the creation time of their
+   * first file, hence they are never the file created last unless they are the only file.
+   */
+  private List<LogLocation> listClosedFiles(LogPathIdentifier identifier) throws Exception {
+    List<LogLocation> files = new ArrayList<>();
+    LogLocation latest = null;
+    for (LogLocation file : fileMetaDataManager.listFiles(identifier)) {
+      if (LogLocation.VERSION_1.equals(file.getFrameworkVersion())) {
+        files.add(file);
+        if (latest == null || file.getFileCreationTimeMs() > latest.getFileCreationTimeMs()) {
+          latest = file;
+        }
+      }
+    }
+    files.remove(latest);
+    Collections.sort(files, FILE_ORDER);
+    return files;
+  }
+
+  /**
+   * Merges the given files into one file.
+   *
+   * @return the number of files that were merged
+   */
+  private int merge(LogPathIdentifier identifier, List<LogLocation> files) throws Exception {
+    if (files.size() < 2) {
+      return 0;
+    }
+
+    long sizeBefore = 0;
+    for (LogLocation file : files) {
+      sizeBefore += file.getLocation().length();
+    }
+
+    Location location = createLocation(files.get(0).getLocation(), ".avro");
+    LOG.debug("Merging {} log files of logging context {} into {}", files.size(), identifier.getRowKey(), location);
+    boolean replaced = false;
+    try {
+      final LogFileOutputStream output = new LogFileOutputStream(
+        location, schema, syncIntervalBytes, System.currentTimeMillis(), new Closeable() {
+        @Override
+        public void close() throws IOException {
+          // no-op
+        }
+      }, CodecFactory.deflateCodec(Deflater.DEFAULT_COMPRESSION));
+      try {
+        for (LogLocation file : files) {
+          copyEvents(file.getLocation(), new EventWriter() {
+            @Override
+            public void append(GenericRecord record) throws IOException {
+              output.append(record);
+            }
+          });
+        }
+      } finally {
+        output.close();
+      }
+      replaced = fileMetaDataManager.replaceMetaData(identifier, files, location);
+    } finally {
+      if (!replaced) {
+        deleteLogFile(location);
+      }
+    }
+    if (!replaced) {
+      LOG.debug("Log files of logging context {} changed during compaction", identifier.getRowKey());
+      return 0;
+    }
+
+    for (LogLocation file : files) {
+      replaced(file.getLocation());
+    }
+    long bytesSaved = sizeBefore - location.length();
+    LOG.info("Merged {} log files of logging context {} into {}, saving {} bytes",
+             files.size(), identifier.getRowKey(), location, bytesSaved);
+    metricsContext.increment(Constants.Metrics.Name.Log.COMPACTION_FILES_MERGED, files.size());
+    metricsContext.increment(Constants.Metrics.Name.Log.COMPACTION_BYTES_SAVED, bytesSaved);
+    return files.size();
+  }
+
+  /**
+   * Rewrites the given file as an archive.
+   *
+   * @return {@code true} if the file was archived
+   */
+  private boolean archive(LogPathIdentifier identifier, LogLocation file) throws Exception {
+    long sizeBefore = file.getLocation().length();
+    Location location = createLocation(file.getLocation(), LogArchive.SUFFIX);
+    LOG.debug("Archiving log file {} of logging context {} to {}", file.getLocation(), identifier.getRowKey(),
+              location);
+    boolean replaced = false;
+    try {
+      final LogArchive.Writer writer = new LogArchive.Writer(location, schema);
+      try {
+        copyEvents(file.getLocation(), new EventWriter() {
+          @Override
+          public void append(GenericRecord record) throws IOException {
+            writer.append(record);
+          }
+        });
+      } finally {
+        writer.close();
+      }
+      replaced = fileMetaDataManager.replaceMetaData(identifier, Collections.singletonList(file), location);
+    } finally {
+      if (!replaced) {
+        deleteLogFile(location);
+      }
+    }
+    if (!replaced) {
+      LOG.debug("Log file {} of logging context {} changed during archiving", file.getLocation(),
+                identifier.getRowKey());
+      return false;
+    }
+
+    replaced(file.getLocation());
+    long bytesSaved = sizeBefore - location.length();
+    LOG.info("Archived log file {} of logging context {} to {}, saving {} bytes",
+             file.getLocation(), identifier.getRowKey(), location, bytesSaved);
+    metricsContext.increment(Constants.Metrics.Name.Log.ARCHIVE_FILES_WRITTEN, 1);
+    metricsContext.increment(Constants.Metrics.Name.Log.COMPACTION_BYTES_SAVED, bytesSaved);
+    return true;
+  }
+
+  /**
+   * Returns the earliest and the latest event time of a log file. The events of a file are not necessarily in time
+   * order, hence all of them are read.
+   */
+  private long[] getEventTimeRange(Location file) throws IOException {
+    final long[] range = { Long.MAX_VALUE, Long.MIN_VALUE };
+    copyEvents(file, new EventWriter() {
+      @Override
+      public void append(GenericRecord record) {
+        long timestamp = (Long) record.get("timestamp");
+        range[0] = Math.min(range[0], timestamp);
+        range[1] = Math.max(range[1], timestamp);
+      }
+    });
+    return range;
+  }
+
+  /**
+   * Copies the events of a log file. Unlike reading the logs, any failure to read the file fails the copy, so that
+   * events are never lost by a compaction.
+   */
+  private void copyEvents(Location file, EventWriter output) throws IOException {
+    InputStream is = file.getInputStream();
+    try {
+      DataFileStream<GenericRecord> dataFileStream =
+        new DataFileStream<>(is, new GenericDatumReader<GenericRecord>(schema));
+      try {
+        GenericRecord record = null;
+        while (dataFileStream.hasNext()) {
+          record = dataFileStream.next(record);
+          output.append(record);
+        }
+      } finally {
+        Closeables.closeQuietly(dataFileStream);
+      }
+    } finally {
+      Closeables.closeQuietly(is);
+    }
+  }
+
+  /**
+   * Creates a new log file with the given suffix in the directory of the given file.
+   */
+  private Location createLocation(Location file, String suffix) throws IOException {
+    Location parent = Locations.getParent(file);
+    if (parent == null) {
+      throw new IOException("Log file " + file + " has no parent directory");
+    }
+    Location location = parent.append(System.currentTimeMillis() + suffix);
+    while (!location.createNew()) {
+      Uninterruptibles.sleepUninterruptibly(1L, TimeUnit.MILLISECONDS);
+      location = parent.append(System.currentTimeMillis() + suffix);
+    }
+    return location;
+  }
+
+  /**
+   * Schedules the deletion of a file whose meta data was replaced after the grace period.
+   */
+  private void replaced(Location location) {
+    replacedFiles.put(location, System.currentTimeMillis() + deleteGraceMs);
+  }
+
+  private void deleteLogFile(Location location) {
+    try {
+      Locations.deleteQuietly(LogFileIndex.getIndexLocation(location));
+    } catch (IOException e) {
+      LOG.warn("Failed to delete the index of log file {}", location, e);
+    }
+    Locations.deleteQuietly(location);
+  }
+
+  /**
+   * Destination of the events copied from log files.
+   */
+  private interface EventWriter {
+    void append(GenericRecord record) throws IOException;
+  }
+}
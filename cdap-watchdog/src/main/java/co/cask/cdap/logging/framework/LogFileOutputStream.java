@@ -17,8 +17,10 @@
 package co.cask.cdap.logging.framework;
 
 import ch.qos.logback.classic.spi.ILoggingEvent;
+import co.cask.cdap.logging.format.LogFileIndex;
 import com.google.common.io.Closeables;
 import org.apache.avro.Schema;
+import org.apache.avro.file.CodecFactory;
 import org.apache.avro.file.DataFileWriter;
 import org.apache.avro.generic.GenericDatumWriter;
 import org.apache.avro.generic.GenericRecord;
@@ -31,6 +33,7 @@ import java.io.Closeable;
 import java.io.Flushable;
 import java.io.IOException;
 import java.io.OutputStream;
+import javax.annotation.Nullable;
 
 /**
  * Represents output stream for a log file.
@@ -49,17 +52,30 @@ class LogFileOutputStream implements Closeable, Flushable {
 
   private OutputStream outputStream;
   private DataFileWriter<GenericRecord> dataFileWriter;
+  private LogFileIndex.Writer index;
 
   LogFileOutputStream(Location location, Schema schema, int syncIntervalBytes, long createTime,
                       Closeable closeable) throws IOException {
+    this(location, schema, syncIntervalBytes, createTime, closeable, null);
+  }
+
+  /**
+   * Creates a log file that is compressed with the given codec, or not compressed if the codec is {@code null}.
+   */
+  LogFileOutputStream(Location location, Schema schema, int syncIntervalBytes, long createTime,
+                      Closeable closeable, @Nullable CodecFactory codec) throws IOException {
     this.location = location;
     this.schema = schema;
     this.closeable = closeable;
     try {
       this.outputStream = location.getOutputStream();
       this.dataFileWriter = new DataFileWriter<>(new GenericDatumWriter<GenericRecord>(schema));
+      if (codec != null) {
+        this.dataFileWriter.setCodec(codec);
+      }
       this.dataFileWriter.create(schema, outputStream);
       this.dataFileWriter.setSyncInterval(syncIntervalBytes);
+      this.index = new LogFileIndex.Writer(location, dataFileWriter.sync());
       this.createTime = createTime;
     } catch (IOException e) {
       Closeables.closeQuietly(outputStream);
@@ -73,7 +89,17 @@ class LogFileOutputStream implements Closeable, Flushable {
   }
 
   void append(ILoggingEvent event) throws IOException {
-    dataFileWriter.append(co.cask.cdap.logging.serialize.LoggingEvent.encode(schema, event));
+    append(co.cask.cdap.logging.serialize.LoggingEvent.encode(schema, event));
+  }
+
+  /**
+   * Appends a logging event record, as read from another log file.
+   */
+  void append(GenericRecord record) throws IOException {
+    dataFileWriter.append(record);
+    if (index.append(record)) {
+      index.sync(dataFileWriter.sync());
+    }
   }
 
   /**
@@ -86,12 +112,15 @@ class LogFileOutputStream implements Closeable, Flushable {
 
   @Override
   public void flush() throws IOException {
+    long syncPosition = dataFileWriter.sync();
     dataFileWriter.flush();
     if (outputStream instanceof Syncable) {
       ((Syncable) outputStream).hsync();
     } else {
       outputStream.flush();
     }
+    index.sync(syncPosition);
+    index.flush();
   }
 
 
@@ -99,9 +128,15 @@ class LogFileOutputStream implements Closeable, Flushable {
   public void close() throws IOException {
     LOG.trace("Closing file {}", location);
     try {
-      dataFileWriter.close();
+      // end the index entry of the events appended since the last flush
+      index.sync(dataFileWriter.sync());
     } finally {
-      closeable.close();
+      try {
+        dataFileWriter.close();
+      } finally {
+        Closeables.closeQuietly(index);
+        closeable.close();
+      }
     }
   }
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -27,6 +27,7 @@ import org.jboss.netty.handler.codec.http.HttpResponseStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Flushable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
@@ -38,8 +39,9 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * LogReader Callback class that uses {@link ChunkResponder} to send logs back in chunks.
+ * Flushing sends the logs encoded so far without waiting for a full chunk.
  */
-public abstract class AbstractChunkedCallback implements Callback {
+public abstract class AbstractChunkedCallback implements Callback, Flushable {
   private static final Logger LOG = LoggerFactory.getLogger(AbstractChunkedCallback.class);
 
   private final AtomicBoolean initialized = new AtomicBoolean();
@@ -88,6 +90,15 @@ public abstract class AbstractChunkedCallback implements Callback {
     count.incrementAndGet();
   }
 
+  @Override
+  public void flush() throws IOException {
+    if (chunkBuffer.position() > 0) {
+      chunkBuffer.flip();
+      chunkResponder.sendChunk(ChannelBuffers.copiedBuffer(chunkBuffer));
+      chunkBuffer.clear();
+    }
+  }
+
   @Override
   public void close() {
     // If closed already, then return
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -18,6 +18,7 @@ package co.cask.cdap.logging.gateway.handlers;
 
 import co.cask.cdap.logging.read.LogEvent;
 import co.cask.http.HttpResponder;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.Multimap;
@@ -26,26 +27,68 @@ import org.jboss.netty.handler.codec.http.HttpHeaders;
 
 import java.io.IOException;
 import java.nio.CharBuffer;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * LogReader callback that sends JSON objects.
+ * LogReader callback that sends JSON objects, either as a JSON array, or as a stream of server-sent events with
+ * one JSON object per event.
  */
 public abstract class AbstractJSONCallback extends AbstractChunkedCallback {
   protected static final Gson GSON = new Gson();
+  // Interval for sending a comment on an idle event stream, to detect closed connections
+  private static final long HEARTBEAT_INTERVAL_MS = TimeUnit.SECONDS.toMillis(10);
+
   private final AtomicBoolean started = new AtomicBoolean();
+  private final boolean eventStream;
+  private final long heartbeatIntervalMs;
+  private long lastSendTime;
 
   AbstractJSONCallback(HttpResponder responder) {
+    this(responder, false);
+  }
+
+  /**
+   * Creates a callback.
+   *
+   * @param eventStream {@code true} to send the log events as {@code text/event-stream} server-sent events
+   */
+  AbstractJSONCallback(HttpResponder responder, boolean eventStream) {
+    this(responder, eventStream, HEARTBEAT_INTERVAL_MS);
+  }
+
+  @VisibleForTesting
+  AbstractJSONCallback(HttpResponder responder, boolean eventStream, long heartbeatIntervalMs) {
     super(responder);
+    this.eventStream = eventStream;
+    this.heartbeatIntervalMs = heartbeatIntervalMs;
   }
 
   @Override
   protected Multimap<String, String> getResponseHeaders() {
+    if (eventStream) {
+      return ImmutableMultimap.of(HttpHeaders.Names.CONTENT_TYPE, "text/event-stream",
+                                  HttpHeaders.Names.CACHE_CONTROL, HttpHeaders.Values.NO_CACHE);
+    }
     return ImmutableMultimap.of(HttpHeaders.Names.CONTENT_TYPE, "application/json");
   }
 
+  @Override
+  public void flush() throws IOException {
+    long now = System.currentTimeMillis();
+    if (eventStream && now - lastSendTime >= heartbeatIntervalMs) {
+      encodeSend(CharBuffer.wrap(":\n\n"), false);
+      lastSendTime = now;
+    }
+    super.flush();
+  }
+
   @Override
   public void writeFinal() throws IOException {
+    if (eventStream) {
+      super.writeFinal();
+      return;
+    }
     // If an object has been sent already, then simply send closing bracket.
     // If nothing has been sent so far, then send '[]' indicating an empty list
     if (started.get()) {
@@ -58,6 +101,12 @@ public abstract class AbstractJSONCallback extends AbstractChunkedCallback {
   @Override
   public void handleEvent(LogEvent logEvent) {
     try {
+      if (eventStream) {
+        encodeSend(CharBuffer.wrap("data: " + GSON.toJson(encodeSend(logEvent)) + "\n\n"), false);
+        lastSendTime = System.currentTimeMillis();
+        return;
+      }
+
       // If it is the first logEvent, send an opening bracket.
       // If it is not the first logEvent, send a , to indicate that it is the next element in the list of JSON objects
       if (started.compareAndSet(false, true)) {
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -32,7 +32,11 @@ public class LogDataOffsetCallback extends AbstractJSONCallback {
   private final List<String> fieldsToSuppress;
 
   LogDataOffsetCallback(HttpResponder responder, List<String> fieldsToSuppress) {
-    super(responder);
+    this(responder, fieldsToSuppress, false);
+  }
+
+  LogDataOffsetCallback(HttpResponder responder, List<String> fieldsToSuppress, boolean eventStream) {
+    super(responder, eventStream);
     this.fieldsToSuppress = fieldsToSuppress;
     validate();
   }
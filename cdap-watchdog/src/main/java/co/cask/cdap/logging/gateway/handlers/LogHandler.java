@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2016 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -30,6 +30,7 @@ import co.cask.cdap.logging.read.Callback;
 import co.cask.cdap.logging.read.LogEvent;
 import co.cask.cdap.logging.read.LogOffset;
 import co.cask.cdap.logging.read.LogReader;
+import co.cask.cdap.logging.read.LogTailer;
 import co.cask.cdap.logging.read.ReadRange;
 import co.cask.cdap.proto.Id;
 import co.cask.cdap.proto.ProgramType;
@@ -63,12 +64,14 @@ public class LogHandler extends AbstractHttpHandler {
   private static final Logger LOG = LoggerFactory.getLogger(LogHandler.class);
 
   private final LogReader logReader;
+  private final LogTailer logTailer;
   private final ProgramStore programStore;
   private final String logPattern;
 
   @Inject
-  public LogHandler(LogReader logReader, CConfiguration cConfig, ProgramStore programStore) {
+  public LogHandler(LogReader logReader, LogTailer logTailer, CConfiguration cConfig, ProgramStore programStore) {
     this.logReader = logReader;
+    this.logTailer = logTailer;
     this.programStore = programStore;
     this.logPattern = cConfig.get(LoggingConfiguration.LOG_PATTERN, LoggingConfiguration.DEFAULT_LOG_PATTERN);
   }
@@ -199,6 +202,54 @@ public class LogHandler extends AbstractHttpHandler {
     }
   }
 
+  @GET
+  @Path("/namespaces/{namespace-id}/apps/{app-id}/{program-type}/{program-id}/logs/tail")
+  public void tail(HttpRequest request, HttpResponder responder, @PathParam("namespace-id") String namespaceId,
+                   @PathParam("app-id") String appId, @PathParam("program-type") String programType,
+                   @PathParam("program-id") String programId,
+                   @QueryParam("escape") @DefaultValue("true") boolean escape,
+                   @QueryParam("filter") @DefaultValue("") String filterStr,
+                   @QueryParam("format") @DefaultValue("text") String format,
+                   @QueryParam("suppress") List<String> suppress) {
+    LoggingContext loggingContext =
+      LoggingContextHelper.getLoggingContext(namespaceId, appId,
+                                             programId, ProgramType.valueOfCategoryName(programType));
+    doTail(responder, loggingContext, escape, filterStr, format, suppress);
+  }
+
+  @GET
+  @Path("/namespaces/{namespace-id}/apps/{app-id}/{program-type}/{program-id}/runs/{run-id}/logs/tail")
+  public void runIdTail(HttpRequest request, HttpResponder responder, @PathParam("namespace-id") String namespaceId,
+                        @PathParam("app-id") String appId, @PathParam("program-type") String programType,
+                        @PathParam("program-id") String programId, @PathParam("run-id") String runId,
+                        @QueryParam("escape") @DefaultValue("true") boolean escape,
+                        @QueryParam("filter") @DefaultValue("") String filterStr,
+                        @QueryParam("format") @DefaultValue("text") String format,
+                        @QueryParam("suppress") List<String> suppress) {
+    ProgramType type = ProgramType.valueOfCategoryName(programType);
+    RunRecordMeta runRecord = programStore.getRun(new ProgramId(namespaceId, appId, type, programId), runId);
+    LoggingContext loggingContext = LoggingContextHelper.getLoggingContextWithRunId(namespaceId, appId, programId, type,
+                                                                                    runId, runRecord.getSystemArgs());
+    doTail(responder, loggingContext, escape, filterStr, format, suppress);
+  }
+
+  /**
+   * Streams the new log events of a logging context as server-sent events, until the client closes the connection.
+   */
+  private void doTail(HttpResponder responder, LoggingContext loggingContext, boolean escape, String filterStr,
+                      String format, List<String> fieldsToSuppress) {
+    try {
+      Filter filter = FilterParser.parse(filterStr);
+      AbstractJSONCallback callback = getTailCallback(format, responder, fieldsToSuppress, escape);
+      // The callback is closed when the subscription is cancelled, which happens once sending to the client fails
+      logTailer.tail(loggingContext, filter, callback);
+    } catch (SecurityException e) {
+      responder.sendStatus(HttpResponseStatus.UNAUTHORIZED);
+    } catch (IllegalArgumentException e) {
+      responder.sendString(HttpResponseStatus.BAD_REQUEST, e.getMessage());
+    }
+  }
+
   /**
    * If readRange is outside runRecord's range, then the readRange is adjusted to fall within runRecords range.
    */
@@ -339,6 +390,19 @@ public class LogHandler extends AbstractHttpHandler {
     doPrev(responder, loggingContext, maxEvents, fromOffsetStr, escape, filterStr, null, format, suppress);
   }
 
+  @GET
+  @Path("/system/{component-id}/{service-id}/logs/tail")
+  public void sysTail(HttpRequest request, HttpResponder responder, @PathParam("component-id") String componentId,
+                      @PathParam("service-id") String serviceId,
+                      @QueryParam("escape") @DefaultValue("true") boolean escape,
+                      @QueryParam("filter") @DefaultValue("") String filterStr,
+                      @QueryParam("format") @DefaultValue("text") String format,
+                      @QueryParam("suppress") List<String> suppress) {
+    LoggingContext loggingContext = LoggingContextHelper.getLoggingContext(Id.Namespace.SYSTEM.getId(), componentId,
+                                                                           serviceId);
+    doTail(responder, loggingContext, escape, filterStr, format, suppress);
+  }
+
   private static final class TimeRange {
     private final long fromMillis;
     private final long toMillis;
@@ -399,6 +463,17 @@ public class LogHandler extends AbstractHttpHandler {
     }
   }
 
+  private AbstractJSONCallback getTailCallback(String format, HttpResponder responder, List<String> suppress,
+                                               boolean escape) {
+    LogFormatType formatType = getFormatType(format);
+    switch (formatType) {
+      case JSON:
+        return new LogDataOffsetCallback(responder, suppress, true);
+      default:
+        return new TextOffsetCallback(responder, logPattern, escape, true);
+    }
+  }
+
   private static LogFormatType getFormatType(String format) {
     return LogFormatType.valueOf(format.toUpperCase());
   }
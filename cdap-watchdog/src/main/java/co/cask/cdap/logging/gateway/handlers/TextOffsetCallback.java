@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -32,7 +32,11 @@ public class TextOffsetCallback extends AbstractJSONCallback {
   private final boolean escape;
 
   public TextOffsetCallback(HttpResponder responder, String logPattern, boolean escape) {
-    super(responder);
+    this(responder, logPattern, escape, false);
+  }
+
+  public TextOffsetCallback(HttpResponder responder, String logPattern, boolean escape, boolean eventStream) {
+    super(responder, eventStream);
     this.escape = escape;
 
     ch.qos.logback.classic.Logger rootLogger =
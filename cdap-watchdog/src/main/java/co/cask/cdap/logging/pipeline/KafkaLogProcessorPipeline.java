@@ -24,6 +24,7 @@ import co.cask.cdap.logging.appender.ForwardingAppender;
 import co.cask.cdap.logging.appender.kafka.LoggingEventSerializer;
 import co.cask.cdap.logging.save.Checkpoint;
 import co.cask.cdap.logging.save.CheckpointManager;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.util.concurrent.AbstractExecutionThreadService;
 import kafka.api.FetchRequest;
@@ -46,11 +47,19 @@ import org.slf4j.LoggerFactory;
 
 import java.io.Flushable;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -59,6 +68,13 @@ import javax.annotation.Nullable;
 
 /**
  * A log processing pipeline for a {@link Appender}.
+ * <p/>
+ * The partitions consumed by the pipeline are divided among {@link KafkaPipelineConfig#getProcessorThreads()}
+ * processors, each running in its own thread with its own event buffer and checkpoints. The maximum queue size of the
+ * pipeline is divided evenly among the event buffers of the processors. Events are sorted by
+ * timestamp within the partitions of a processor, which keeps the order of the events of a logging context, since
+ * the log events of a logging context are always published to the same partition. All processors append to
+ * the same {@link Appender}. The failure of any processor fails the pipeline.
  */
 final class KafkaLogProcessorPipeline extends AbstractExecutionThreadService {
 
@@ -70,17 +86,14 @@ final class KafkaLogProcessorPipeline extends AbstractExecutionThreadService {
   private final EventAppender appender;
   private final CheckpointManager checkpointManager;
   private final BrokerService brokerService;
-  private final Map<Integer, MutableCheckpoint> checkpoints;
-  private final LoggingEventSerializer serializer;
   private final KafkaPipelineConfig config;
-  private final TimeEventQueue<ILoggingEvent, Long> eventQueue;
-  private final Map<BrokerInfo, KafkaSimpleConsumer> kafkaConsumers;
+  private final ConcurrentMap<BrokerInfo, KafkaSimpleConsumer> kafkaConsumers;
+  private final List<PartitionProcessor> processors;
 
   private ExecutorService fetchExecutor;
+  private ExecutorService processExecutor;
   private volatile Thread runThread;
   private volatile boolean stopped;
-  private long lastCheckpointTime;
-  private int unFlushedEvents;
 
   KafkaLogProcessorPipeline(EffectiveLevelProvider effectiveLevelProvider, Appender<ILoggingEvent> appender,
                             CheckpointManager checkpointManager, BrokerService brokerService,
@@ -90,24 +103,33 @@ final class KafkaLogProcessorPipeline extends AbstractExecutionThreadService {
     this.checkpointManager = checkpointManager;
     this.brokerService = brokerService;
     this.config = config;
-    this.checkpoints = new HashMap<>();
-    this.eventQueue = new TimeEventQueue<>(config.getPartitions());
-    this.serializer = new LoggingEventSerializer();
-    this.kafkaConsumers = new HashMap<>();
+    this.kafkaConsumers = new ConcurrentHashMap<>();
+    this.processors = new ArrayList<>();
   }
 
   @Override
   protected void startUp() throws Exception {
     LOG.info("Starting log processor pipeline for {}", appender.getName());
 
-    // Reads the existing checkpoints
+    // Divides the partitions among the processors
     Set<Integer> partitions = config.getPartitions();
-    for (Map.Entry<Integer, Checkpoint> entry : checkpointManager.getCheckpoint(partitions).entrySet()) {
-      Checkpoint checkpoint = entry.getValue();
-      // Skip the partition that doesn't have previous checkpoint.
-      if (checkpoint.getNextOffset() >= 0 && checkpoint.getMaxEventTime() >= 0) {
-        checkpoints.put(entry.getKey(), new MutableCheckpoint(checkpoint));
-      }
+    List<Integer> sortedPartitions = new ArrayList<>(partitions);
+    Collections.sort(sortedPartitions);
+    int processorCount = Math.max(1, Math.min(config.getProcessorThreads(), sortedPartitions.size()));
+    List<Set<Integer>> processorPartitions = new ArrayList<>(processorCount);
+    for (int i = 0; i < processorCount; i++) {
+      processorPartitions.add(new HashSet<Integer>());
+    }
+    for (int i = 0; i < sortedPartitions.size(); i++) {
+      processorPartitions.get(i % processorCount).add(sortedPartitions.get(i));
+    }
+
+    // Reads the existing checkpoints
+    Map<Integer, Checkpoint> checkpoints = checkpointManager.getCheckpoint(partitions);
+    processors.clear();
+    long maxQueueSize = Math.max(1L, config.getMaxQueueSize() / processorCount);
+    for (Set<Integer> processorPartition : processorPartitions) {
+      processors.add(new PartitionProcessor(processorPartition, checkpoints, maxQueueSize));
     }
 
     // Failure in starting the appender will result in failure of starting this processing pipeline
@@ -115,8 +137,12 @@ final class KafkaLogProcessorPipeline extends AbstractExecutionThreadService {
 
     fetchExecutor = Executors.newFixedThreadPool(
       partitions.size(), Threads.createDaemonThreadFactory("fetcher-" + appender.getName() + "-%d"));
+    if (processors.size() > 1) {
+      processExecutor = Executors.newFixedThreadPool(
+        processors.size(), Threads.createDaemonThreadFactory("processor-" + appender.getName() + "-%d"));
+    }
 
-    LOG.info("Log processor pipeline for {} started", appender.getName());
+    LOG.info("Log processor pipeline for {} started with {} processors", appender.getName(), processors.size());
   }
 
   @Override
@@ -124,42 +150,30 @@ final class KafkaLogProcessorPipeline extends AbstractExecutionThreadService {
     runThread = Thread.currentThread();
 
     try {
-      Map<Integer, Long> offsets = initializeOffsets(new HashMap<Integer, Long>());
-      Map<Integer, Future<Iterable<MessageAndOffset>>> futures = new HashMap<>();
-      String topic = config.getTopic();
-
-      while (!stopped) {
-        boolean hasMessageProcessed = false;
-
-        for (Map.Entry<Integer, Future<Iterable<MessageAndOffset>>> entry : fetchAll(offsets, futures).entrySet()) {
-          int partition = entry.getKey();
-          try {
-            long offset = processMessages(topic, partition, entry.getValue());
-            if (offset >= 0) {
-              hasMessageProcessed = true;
-              offsets.put(partition, offset);
-            }
-          } catch (IOException e) {
-            LOG.warn("Failed to process messages fetched from {}:{} due to {}. Will be retried in next iteration.",
-                     topic, partition, e.getMessage());
-            LOG.debug("Failed to process messages fetched from {}:{}", topic, partition, e);
-          }
-        }
-
-        long now = System.currentTimeMillis();
-        unFlushedEvents += appendEvents(now, false);
-        long nextCheckpointDelay = tryFlushAndPersistCheckpoints(now);
+      if (processExecutor == null) {
+        processors.get(0).run();
+        return;
+      }
 
-        // If nothing has been processed (e.g. empty fetch from Kafka, fail to append anything to appender),
-        // Sleep until the earliest event in the buffer is time to be written out.
-        if (!hasMessageProcessed) {
-          long sleepMillis = config.getBufferMillis();
-          if (!eventQueue.isEmpty()) {
-            sleepMillis += eventQueue.first().getTimeStamp() - now;
-          }
-          if (sleepMillis > 0) {
-            TimeUnit.MILLISECONDS.sleep(Math.min(sleepMillis, nextCheckpointDelay));
+      CompletionService<Void> completionService = new ExecutorCompletionService<>(processExecutor);
+      for (final PartitionProcessor processor : processors) {
+        completionService.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            processor.run();
+            return null;
           }
+        });
+      }
+      for (int i = 0; i < processors.size(); i++) {
+        try {
+          completionService.take().get();
+        } catch (ExecutionException e) {
+          // Fails the pipeline, the same as a failure of the only processor. The other processors are stopped by the
+          // shutdown, which happens before the failure is reported.
+          LOG.error("Log processor of pipeline {} failed.", appender.getName(), e.getCause());
+          stopped = true;
+          throw Throwables.propagate(e.getCause());
         }
       }
     } catch (InterruptedException e) {
@@ -180,13 +194,20 @@ final class KafkaLogProcessorPipeline extends AbstractExecutionThreadService {
   protected void shutDown() throws Exception {
     LOG.info("Shutting down log processor pipeline for {}", appender.getName());
     fetchExecutor.shutdownNow();
+    if (processExecutor != null) {
+      // The processors must be done with the appender before stopping it
+      processExecutor.shutdownNow();
+      processExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
 
     try {
       appender.stop();
       // Persist the checkpoints. It can only be done after successfully stopping the appender,
       // as appender should close it's output, hence persisting any pending events on stop.
       // Since persistCheckpoint never throw, putting it inside try is ok.
-      persistCheckpoints();
+      for (PartitionProcessor processor : processors) {
+        processor.persistCheckpoints();
+      }
     } catch (Exception e) {
       // Just log, not to fail the shutdown
       LOG.warn("Exception raised when stopping appender {}", appender.getName(), e);
@@ -217,206 +238,284 @@ final class KafkaLogProcessorPipeline extends AbstractExecutionThreadService {
   }
 
   /**
-   * Initialize offsets for all partitions consumed by this pipeline.
-   *
-   * @param offsets the map for storing the offsets for each partition
-   * @return the same Map passed to this method
-   * @throws InterruptedException if there is an interruption
+   * Processes the messages of a subset of the partitions consumed by the pipeline, with its own event buffer and
+   * checkpoints.
    */
-  private Map<Integer, Long> initializeOffsets(Map<Integer, Long> offsets) throws InterruptedException {
-    // Setup initial offsets
-    Set<Integer> partitions = config.getPartitions();
-    while (offsets.size() != partitions.size() && !stopped) {
+  private final class PartitionProcessor {
+
+    private final Set<Integer> partitions;
+    private final Map<Integer, MutableCheckpoint> checkpoints;
+    private final TimeEventQueue<ILoggingEvent, Long> eventQueue;
+    private final long maxQueueSize;
+    private final LoggingEventSerializer serializer;
+    private long lastCheckpointTime;
+    private int unFlushedEvents;
+
+    PartitionProcessor(Set<Integer> partitions, Map<Integer, Checkpoint> checkpoints, long maxQueueSize) {
+      this.partitions = partitions;
+      this.maxQueueSize = maxQueueSize;
+      this.checkpoints = new HashMap<>();
+      this.eventQueue = new TimeEventQueue<>(partitions);
+      this.serializer = new LoggingEventSerializer();
+
       for (int partition : partitions) {
         Checkpoint checkpoint = checkpoints.get(partition);
-        if (checkpoint != null) {
-          // TODO: (CDAP-7684) Deal with wrong offset issue
-          offsets.put(partition, checkpoint.getNextOffset());
-          continue;
+        // Skip the partition that doesn't have previous checkpoint.
+        if (checkpoint != null && checkpoint.getNextOffset() >= 0 && checkpoint.getMaxEventTime() >= 0) {
+          this.checkpoints.put(partition, new MutableCheckpoint(checkpoint));
         }
+      }
+    }
 
-        try {
-          // If no checkpoint, fetch from the beginning.
-          offsets.put(partition, getLastOffset(partition, kafka.api.OffsetRequest.EarliestTime()));
-        } catch (Exception e) {
-          LOG.info("Failed to get Kafka earliest offset in {}:{} for appender {}. Will be retried",
-                   config.getTopic(), partition, appender.getName());
-          LOG.debug("Failed to get Kafka earliest offset in {}:{} for appender {}.",
-                    config.getTopic(), partition, appender.getName(), e);
-          TimeUnit.SECONDS.sleep(1);
-          break;
+    void run() throws InterruptedException {
+      Map<Integer, Long> offsets = initializeOffsets(new HashMap<Integer, Long>());
+      Map<Integer, Future<Iterable<MessageAndOffset>>> futures = new HashMap<>();
+      String topic = config.getTopic();
+
+      while (!stopped) {
+        boolean hasMessageProcessed = false;
+
+        for (Map.Entry<Integer, Future<Iterable<MessageAndOffset>>> entry : fetchAll(offsets, futures).entrySet()) {
+          int partition = entry.getKey();
+          try {
+            long offset = processMessages(topic, partition, offsets.get(partition), entry.getValue());
+            if (offset >= 0) {
+              hasMessageProcessed = true;
+              offsets.put(partition, offset);
+            }
+          } catch (IOException e) {
+            LOG.warn("Failed to process messages fetched from {}:{} due to {}. Will be retried in next iteration.",
+                     topic, partition, e.getMessage());
+            LOG.debug("Failed to process messages fetched from {}:{}", topic, partition, e);
+          }
+        }
+
+        long now = System.currentTimeMillis();
+        unFlushedEvents += appendEvents(now, false);
+        long nextCheckpointDelay = tryFlushAndPersistCheckpoints(now);
+
+        // If nothing has been processed (e.g. empty fetch from Kafka, fail to append anything to appender),
+        // Sleep until the earliest event in the buffer is time to be written out.
+        if (!hasMessageProcessed) {
+          long sleepMillis = config.getBufferMillis();
+          if (!eventQueue.isEmpty()) {
+            sleepMillis += eventQueue.first().getTimeStamp() - now;
+          }
+          if (sleepMillis > 0) {
+            TimeUnit.MILLISECONDS.sleep(Math.min(sleepMillis, nextCheckpointDelay));
+          }
         }
       }
     }
 
-    return offsets;
-  }
+    /**
+     * Initialize offsets for all partitions consumed by this processor.
+     *
+     * @param offsets the map for storing the offsets for each partition
+     * @return the same Map passed to this method
+     * @throws InterruptedException if there is an interruption
+     */
+    private Map<Integer, Long> initializeOffsets(Map<Integer, Long> offsets) throws InterruptedException {
+      // Setup initial offsets
+      while (offsets.size() != partitions.size() && !stopped) {
+        for (int partition : partitions) {
+          Checkpoint checkpoint = checkpoints.get(partition);
+          if (checkpoint != null) {
+            // TODO: (CDAP-7684) Deal with wrong offset issue
+            offsets.put(partition, checkpoint.getNextOffset());
+            continue;
+          }
 
-  /**
-   * Process messages fetched from a given partition.
-   */
-  private long processMessages(String topic, int partition,
-                               Future<Iterable<MessageAndOffset>> future) throws InterruptedException, IOException {
-    Iterable<MessageAndOffset> messages;
-    try {
-      messages = future.get();
-    } catch (ExecutionException e) {
-      try {
-        throw e.getCause();
-      } catch (OffsetOutOfRangeException cause) {
-        // This shouldn't happen under normal situation.
-        // If happened, usually is caused by race between kafka log rotation and fetching in here,
-        // hence just fetching from the beginning should be fine
-        return getLastOffset(partition, kafka.api.OffsetRequest.EarliestTime());
-      } catch (IOException cause) {
-        throw cause;
-      } catch (Throwable t) {
-        // For other type of exceptions, just throw an IOException. It will be handled by caller.
-        throw new IOException(t);
+          try {
+            // If no checkpoint, fetch from the beginning.
+            offsets.put(partition, getLastOffset(partition, kafka.api.OffsetRequest.EarliestTime()));
+          } catch (Exception e) {
+            LOG.info("Failed to get Kafka earliest offset in {}:{} for appender {}. Will be retried",
+                     config.getTopic(), partition, appender.getName());
+            LOG.debug("Failed to get Kafka earliest offset in {}:{} for appender {}.",
+                      config.getTopic(), partition, appender.getName(), e);
+            TimeUnit.SECONDS.sleep(1);
+            break;
+          }
+        }
       }
+
+      return offsets;
     }
 
-    long offset = -1L;
-    for (MessageAndOffset message : messages) {
-      if (eventQueue.getEventSize() >= config.getMaxQueueSize()) {
-        // Log a message. If this happen too often, it indicates that more memory is needed for the log processing
-        LOG.info("Maximum queue size {} reached for appender {}.", config.getMaxQueueSize(), appender.getName());
-        // If nothing has been appended (due to error), we break the loop so that no need event will be appended
-        // Since the offset is not updated, the same set of messages will be fetched again in next iteration.
-        int eventsAppended = appendEvents(System.currentTimeMillis(), true);
-        if (eventsAppended <= 0) {
-          break;
+    /**
+     * Process messages fetched from a given partition, starting from the given offset.
+     */
+    private long processMessages(String topic, int partition, long fetchOffset,
+                                 Future<Iterable<MessageAndOffset>> future) throws InterruptedException, IOException {
+      Iterable<MessageAndOffset> messages;
+      try {
+        messages = future.get();
+      } catch (ExecutionException e) {
+        try {
+          throw e.getCause();
+        } catch (OffsetOutOfRangeException cause) {
+          // This shouldn't happen under normal situation.
+          // If happened, usually is caused by race between kafka log rotation and fetching in here,
+          // hence just fetching from the beginning should be fine
+          return getLastOffset(partition, kafka.api.OffsetRequest.EarliestTime());
+        } catch (IOException cause) {
+          throw cause;
+        } catch (Throwable t) {
+          // For other type of exceptions, just throw an IOException. It will be handled by caller.
+          throw new IOException(t);
         }
-        unFlushedEvents += eventsAppended;
       }
 
-      try {
-        ILoggingEvent loggingEvent = serializer.fromBytes(message.message().payload());
-        if (needAppend(loggingEvent)) {
-          // Use the message payload size as the size estimate of the logging event
-          // Although it's not the same as the in memory object size, it should be just a constant factor, hence
-          // it is proportional to the actual object size.
-          eventQueue.add(loggingEvent, loggingEvent.getTimeStamp(),
-                         message.message().payloadSize(), partition, message.offset());
+      long offset = -1L;
+      for (MessageAndOffset message : messages) {
+        // A compressed message set is returned whole, including the messages before the requested offset
+        if (message.offset() < fetchOffset) {
+          continue;
         }
-      } catch (IOException e) {
-        // This should happen. In case it happens (e.g. someone published some garbage), just skip the message.
-        LOG.warn("Fail to decode logging event from {}:{} at offset {}. Skipping it.",
-                 topic, partition, message.offset(), e);
+        if (eventQueue.getEventSize() >= maxQueueSize) {
+          // Log a message. If this happen too often, it indicates that more memory is needed for the log processing
+          LOG.info("Maximum queue size {} reached for appender {}.", maxQueueSize, appender.getName());
+          // If nothing has been appended (due to error), we break the loop so that no need event will be appended
+          // Since the offset is not updated, the same set of messages will be fetched again in next iteration.
+          int eventsAppended = appendEvents(System.currentTimeMillis(), true);
+          if (eventsAppended <= 0) {
+            break;
+          }
+          unFlushedEvents += eventsAppended;
+        }
+
+        try {
+          ILoggingEvent loggingEvent = serializer.fromBytes(message.message().payload());
+          if (needAppend(loggingEvent)) {
+            // Use the message payload size as the size estimate of the logging event
+            // Although it's not the same as the in memory object size, it should be just a constant factor, hence
+            // it is proportional to the actual object size.
+            eventQueue.add(loggingEvent, loggingEvent.getTimeStamp(),
+                           message.message().payloadSize(), partition, message.offset());
+          }
+        } catch (IOException e) {
+          // This should happen. In case it happens (e.g. someone published some garbage), just skip the message.
+          LOG.warn("Fail to decode logging event from {}:{} at offset {}. Skipping it.",
+                   topic, partition, message.offset(), e);
+        }
+
+        offset = message.nextOffset();
       }
 
-      offset = message.nextOffset();
+      return offset;
     }
 
-    return offset;
-  }
+    /**
+     * Fetches messages from Kafka across all partitions of this processor simultaneously.
+     */
+    private <T extends Map<Integer, Future<Iterable<MessageAndOffset>>>> T fetchAll(Map<Integer, Long> offsets,
+                                                                                    T fetchFutures) {
+      for (final int partition : partitions) {
+        final long offset = offsets.get(partition);
+
+        fetchFutures.put(partition, fetchExecutor.submit(new Callable<Iterable<MessageAndOffset>>() {
+          @Override
+          public Iterable<MessageAndOffset> call() throws Exception {
+            return fetchMessages(partition, offset);
+          }
+        }));
+      }
 
-  /**
-   * Fetches messages from Kafka across all partitions simultaneously.
-   */
-  private <T extends Map<Integer, Future<Iterable<MessageAndOffset>>>> T fetchAll(Map<Integer, Long> offsets,
-                                                                                  T fetchFutures) {
-    for (final int partition : config.getPartitions()) {
-      final long offset = offsets.get(partition);
-
-      fetchFutures.put(partition, fetchExecutor.submit(new Callable<Iterable<MessageAndOffset>>() {
-        @Override
-        public Iterable<MessageAndOffset> call() throws Exception {
-          return fetchMessages(partition, offset);
-        }
-      }));
+      return fetchFutures;
     }
 
-    return fetchFutures;
-  }
+    /**
+     * Appends buffered events to appender. If the {@code force} parameter is {@code false}, buffered events
+     * that are older than the buffer milliseconds will be appended and removed from the buffer.
+     * If {@code force} is {@code true}, then at least {@code maxQueueSize * MIN_FREE_FACTOR} events will be appended
+     * and removed, regardless of the event time.
+     *
+     * @return number of events appended to the appender
+     */
+    private int appendEvents(long currentTimeMillis, boolean forced) {
+      long minEventTime = currentTimeMillis - config.getBufferMillis();
+      long maxRetainSize = forced ? (long) (maxQueueSize * MIN_FREE_FACTOR) : Long.MAX_VALUE;
+
+      TimeEventQueue.EventIterator<ILoggingEvent, Long> iterator = eventQueue.iterator();
+
+      int eventsAppended = 0;
+      while (iterator.hasNext()) {
+        ILoggingEvent event = iterator.next();
+
+        // If not forced to reduce the event queue size and the current event timestamp is still within the
+        // buffering time, no need to iterate anymore
+        if (eventQueue.getEventSize() <= maxRetainSize && event.getTimeStamp() >= minEventTime) {
+          break;
+        }
 
-  /**
-   * Appends buffered events to appender. If the {@code force} parameter is {@code false}, buffered events
-   * that are older than the buffer milliseconds will be appended and removed from the buffer.
-   * If {@code force} is {@code true}, then at least {@code maxQueueSize * MIN_FREE_FACTOR} events will be appended
-   * and removed, regardless of the event time.
-   *
-   * @return number of events appended to the appender
-   */
-  private int appendEvents(long currentTimeMillis, boolean forced) {
-    long minEventTime = currentTimeMillis - config.getBufferMillis();
-    long maxRetainSize = forced ? (long) (config.getMaxQueueSize() * MIN_FREE_FACTOR) : Long.MAX_VALUE;
+        try {
+          // Otherwise, append the event
+          appender.doAppend(event);
+        } catch (Exception e) {
+          LOG.warn("Failed to append log event to appender {} due to {}. Will be retried.",
+                   appender.getName(), e.getMessage());
+          LOG.debug("Failed to append log event to appender {}.", appender.getName(), e);
+          break;
+        }
 
-    TimeEventQueue.EventIterator<ILoggingEvent, Long> iterator = eventQueue.iterator();
+        // Updates the Kafka offset before removing the current event
+        int partition = iterator.getPartition();
+        MutableCheckpoint checkpoint = checkpoints.get(partition);
+        if (checkpoint == null) {
+          checkpoint = new MutableCheckpoint(eventQueue.getSmallestOffset(partition), event.getTimeStamp());
+          checkpoints.put(partition, checkpoint);
+        } else {
+          checkpoint
+            .setNextOffset(eventQueue.getSmallestOffset(partition))
+            .setMaxEventTime(event.getTimeStamp());
+        }
 
-    int eventsAppended = 0;
-    while (iterator.hasNext()) {
-      ILoggingEvent event = iterator.next();
+        iterator.remove();
+        eventsAppended++;
+      }
 
-      // If not forced to reduce the event queue size and the current event timestamp is still within the
-      // buffering time, no need to iterate anymore
-      if (eventQueue.getEventSize() <= maxRetainSize && event.getTimeStamp() >= minEventTime) {
-        break;
+      return eventsAppended;
+    }
+
+    /**
+     * Flushes the appender and persists checkpoints if it is time.
+     *
+     * @return delay in millisecond till the next flush time.
+     */
+    private long tryFlushAndPersistCheckpoints(long currentTimeMillis) {
+      if (currentTimeMillis - config.getCheckpointIntervalMillis() < lastCheckpointTime || unFlushedEvents <= 0) {
+        return config.getCheckpointIntervalMillis() - currentTimeMillis + lastCheckpointTime;
       }
 
+      // Flush the appender and persists checkpoints
       try {
-        // Otherwise, append the event
-        appender.doAppend(event);
+        appender.flush();
+        // Only persist if flush succeeded. Since persistCheckpoints never throw, it's ok to be inside the try.
+        persistCheckpoints();
+        lastCheckpointTime = currentTimeMillis;
+        unFlushedEvents = 0;
+        LOG.debug("Events flushed and checkpoint persisted for {} partitions {}", appender.getName(), partitions);
       } catch (Exception e) {
-        LOG.warn("Failed to append log event to appender {} due to {}. Will be retried.",
-                 appender.getName(), e.getMessage());
-        LOG.debug("Failed to append log event to appender {}.", appender.getName(), e);
-        break;
-      }
-
-      // Updates the Kafka offset before removing the current event
-      int partition = iterator.getPartition();
-      MutableCheckpoint checkpoint = checkpoints.get(partition);
-      if (checkpoint == null) {
-        checkpoint = new MutableCheckpoint(eventQueue.getSmallestOffset(partition), event.getTimeStamp());
-        checkpoints.put(partition, checkpoint);
-      } else {
-        checkpoint
-          .setNextOffset(eventQueue.getSmallestOffset(partition))
-          .setMaxEventTime(event.getTimeStamp());
+        LOG.warn("Failed to flush appender {} due to {}. Will be retried.", appender.getName(), e.getMessage());
+        LOG.debug("Failed to flush appender {}.", appender.getName(), e);
       }
-
-      iterator.remove();
-      eventsAppended++;
+      return config.getCheckpointIntervalMillis();
     }
 
-    return eventsAppended;
-  }
-
-  /**
-   * Flushes the appender and persists checkpoints if it is time.
-   *
-   * @return delay in millisecond till the next flush time.
-   */
-  private long tryFlushAndPersistCheckpoints(long currentTimeMillis) {
-    if (currentTimeMillis - config.getCheckpointIntervalMillis() < lastCheckpointTime || unFlushedEvents <= 0) {
-      return config.getCheckpointIntervalMillis() - currentTimeMillis + lastCheckpointTime;
-    }
-
-    // Flush the appender and persists checkpoints
-    try {
-      appender.flush();
-      // Only persist if flush succeeded. Since persistCheckpoints never throw, it's ok to be inside the try.
-      persistCheckpoints();
-      lastCheckpointTime = currentTimeMillis;
-      unFlushedEvents = 0;
-      LOG.debug("Events flushed and checkpoint persisted for {}", appender.getName());
-    } catch (Exception e) {
-      LOG.warn("Failed to flush appender {} due to {}. Will be retried.", appender.getName(), e.getMessage());
-      LOG.debug("Failed to flush appender {}.", appender.getName(), e);
-    }
-    return config.getCheckpointIntervalMillis();
-  }
-
-  /**
-   * Persists the checkpoints for all partitions.
-   */
-  private void persistCheckpoints() {
-    try {
-      checkpointManager.saveCheckpoints(checkpoints);
-    } catch (Exception e) {
-      // Just log as it is non-fatal if failed to save checkpoints
-      LOG.warn("Non-fatal failure when persist checkpoints for appender {}.", appender.getName(), e);
+    /**
+     * Persists the checkpoints for all partitions of this processor.
+     */
+    private void persistCheckpoints() {
+      try {
+        // Serialize the calls from different processors to the checkpoint manager
+        synchronized (checkpointManager) {
+          checkpointManager.saveCheckpoints(checkpoints);
+        }
+      } catch (Exception e) {
+        // Just log as it is non-fatal if failed to save checkpoints
+        LOG.warn("Non-fatal failure when persist checkpoints for appender {}.", appender.getName(), e);
+      }
     }
   }
 
@@ -437,7 +536,12 @@ final class KafkaLogProcessorPipeline extends AbstractExecutionThreadService {
 
     consumer = new KafkaSimpleConsumer(leader, KAFKA_SO_TIMEOUT, config.getKafkaBufferSize(),
                                        "client-" + appender.getName() + "-" + partition);
-    kafkaConsumers.put(leader, consumer);
+    // Partitions are fetched concurrently, hence another consumer for the same broker could have been created
+    KafkaSimpleConsumer existing = kafkaConsumers.putIfAbsent(leader, consumer);
+    if (existing != null) {
+      consumer.close();
+      return existing;
+    }
     return consumer;
   }
 
@@ -546,6 +650,8 @@ final class KafkaLogProcessorPipeline extends AbstractExecutionThreadService {
    * {@link Appender#doAppend(Object)} call before appending more events. This is the mechanism to prevent
    * underlying appender implementation buffered too many events if flushing is consistently failing, causing
    * out of memory of the pipeline processor.
+   *
+   * Appending and flushing are synchronized, as the appender is shared by all the partition processors.
    */
   private static final class EventAppender extends ForwardingAppender<ILoggingEvent> implements Flushable {
 
@@ -556,7 +662,7 @@ final class KafkaLogProcessorPipeline extends AbstractExecutionThreadService {
     }
 
     @Override
-    public void doAppend(ILoggingEvent event) throws LogbackException {
+    public synchronized void doAppend(ILoggingEvent event) throws LogbackException {
       if (needFlush) {
         try {
           flush();
@@ -568,7 +674,7 @@ final class KafkaLogProcessorPipeline extends AbstractExecutionThreadService {
     }
 
     @Override
-    public void flush() throws IOException {
+    public synchronized void flush() throws IOException {
       Appender<ILoggingEvent> appender = getDelegate();
       if (appender instanceof Flushable) {
         try {
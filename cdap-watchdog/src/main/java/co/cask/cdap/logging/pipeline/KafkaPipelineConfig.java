@@ -31,15 +31,31 @@ public final class KafkaPipelineConfig {
   private final long bufferMillis;
   private final int kafkaBufferSize;
   private final long checkpointIntervalMillis;
+  private final int processorThreads;
 
   public KafkaPipelineConfig(String topic, Iterable<Integer> partitions, long maxQueueSize,
                              long bufferMillis, int kafkaBufferSize, long checkpointIntervalMillis) {
+    this(topic, partitions, maxQueueSize, bufferMillis, kafkaBufferSize, checkpointIntervalMillis, 1);
+  }
+
+  /**
+   * Creates a config for a pipeline that processes the given partitions with multiple threads.
+   *
+   * @param maxQueueSize maximum size of the events buffered by the pipeline, which is divided evenly among the event
+   *                     buffers of the processor threads
+   * @param processorThreads number of threads for processing the partitions; each thread has its own event buffer
+   *                         for the partitions it processes
+   */
+  public KafkaPipelineConfig(String topic, Iterable<Integer> partitions, long maxQueueSize,
+                             long bufferMillis, int kafkaBufferSize, long checkpointIntervalMillis,
+                             int processorThreads) {
     this.topic = topic;
     this.partitions = Sets.newHashSet(partitions);
     this.maxQueueSize = maxQueueSize;
     this.bufferMillis = bufferMillis;
     this.kafkaBufferSize = kafkaBufferSize;
     this.checkpointIntervalMillis = checkpointIntervalMillis;
+    this.processorThreads = processorThreads;
   }
 
   String getTopic() {
@@ -66,6 +82,10 @@ public final class KafkaPipelineConfig {
     return checkpointIntervalMillis;
   }
 
+  int getProcessorThreads() {
+    return processorThreads;
+  }
+
   @Override
   public String toString() {
     return "KafkaPipelineConfig{" +
@@ -75,6 +95,7 @@ public final class KafkaPipelineConfig {
       ", bufferMillis=" + bufferMillis +
       ", kafkaBufferSize=" + kafkaBufferSize +
       ", checkpointIntervalMillis=" + checkpointIntervalMillis +
+      ", processorThreads=" + processorThreads +
       '}';
   }
 }
@@ -21,9 +21,13 @@ import co.cask.cdap.api.dataset.lib.CloseableIterator;
 import co.cask.cdap.common.io.Locations;
 import co.cask.cdap.common.io.SeekableInputStream;
 import co.cask.cdap.logging.filter.Filter;
+import co.cask.cdap.logging.format.LogArchive;
+import co.cask.cdap.logging.format.LogArchiveEventIterator;
+import co.cask.cdap.logging.format.LogFileIndex;
 import co.cask.cdap.logging.serialize.LoggingEvent;
 import co.cask.cdap.proto.id.NamespaceId;
 import co.cask.cdap.security.impersonation.Impersonator;
+import com.google.common.base.Function;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
@@ -38,18 +42,27 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.concurrent.Callable;
+import javax.annotation.Nullable;
 
 /**
- * Reads log events from an Avro file.
+ * Reads log events from an Avro file, which is either a row oriented log file or a {@link LogArchive}.
  */
 public class AvroFileReader {
   private static final Logger LOG = LoggerFactory.getLogger(AvroFileReader.class);
   private static final long DEFAULT_SKIP_LEN = 10 * 1024 * 1024;
+  private static final Function<ILoggingEvent, LogEvent> TO_LOG_EVENT = new Function<ILoggingEvent, LogEvent>() {
+    @Override
+    public LogEvent apply(ILoggingEvent event) {
+      return new LogEvent(event, new LogOffset(LogOffset.INVALID_KAFKA_OFFSET, event.getTimeStamp()));
+    }
+  };
 
   private final Schema schema;
 
@@ -67,6 +80,10 @@ public class AvroFileReader {
     private final long maxEvents;
 
     private DataFileReader<GenericRecord> dataFileReader;
+    private LogFileIndex index;
+    // the index entry at the read position, and whether it was checked against the filter
+    private int entry;
+    private boolean entryChecked;
 
     private ILoggingEvent loggingEvent;
     private GenericRecord datum;
@@ -88,7 +105,14 @@ public class AvroFileReader {
 
       try {
         dataFileReader = createReader(file, namespaceId, impersonator);
-        if (dataFileReader.hasNext()) {
+        index = readIndex(file, namespaceId, impersonator);
+        if (index != null && index.size() > 0) {
+          // Seek directly to the first block that can have events at or after fromTimeMs
+          entry = index.firstEntry(fromTimeMs);
+          long position = entry < index.size() ? index.getStartPosition(entry) : index.getIndexedEnd();
+          LOG.trace("Seeking to pos {} from index", position);
+          dataFileReader.seek(position);
+        } else if (dataFileReader.hasNext()) {
           datum = dataFileReader.next();
           loggingEvent = LoggingEvent.decode(datum);
           long prevPrevSyncPos = 0;
@@ -124,7 +148,11 @@ public class AvroFileReader {
     private void computeNext() {
       try {
         // read events from file
-        while (next == null && dataFileReader.hasNext()) {
+        while (next == null) {
+          skipEntries();
+          if (!dataFileReader.hasNext()) {
+            break;
+          }
           loggingEvent = LoggingEvent.decode(dataFileReader.next(datum));
           if (loggingEvent.getTimeStamp() >= fromTimeMs && logFilter.match(loggingEvent)) {
             ++count;
@@ -145,6 +173,35 @@ public class AvroFileReader {
       }
     }
 
+    /**
+     * Seeks past the index entries that cannot have events matching the filter, once the read position reaches
+     * such entries.
+     */
+    private void skipEntries() throws IOException {
+      if (index == null) {
+        return;
+      }
+      long position = dataFileReader.previousSync();
+      boolean skipped = false;
+      while (entry < index.size()) {
+        if (index.getEndPosition(entry) <= position) {
+          entry++;
+          entryChecked = false;
+        } else if (entryChecked || index.mayMatch(entry, logFilter)) {
+          entryChecked = true;
+          break;
+        } else {
+          entry++;
+          skipped = true;
+        }
+      }
+      if (skipped) {
+        long skipPosition = entry < index.size() ? index.getStartPosition(entry) : index.getIndexedEnd();
+        LOG.trace("Skipping to pos {} from index", skipPosition);
+        dataFileReader.seek(skipPosition);
+      }
+    }
+
     @Override
     public void close() {
       try {
@@ -178,6 +235,10 @@ public class AvroFileReader {
 
   public CloseableIterator<LogEvent> readLog(Location file, Filter logFilter, long fromTimeMs, long toTimeMs,
                                              int maxEvents, NamespaceId namespaceId, Impersonator impersonator) {
+    if (LogArchive.isArchive(file)) {
+      return new LogArchiveEventIterator<>(file, schema, logFilter, fromTimeMs, toTimeMs, maxEvents, namespaceId,
+                                           impersonator, TO_LOG_EVENT);
+    }
     return new LogEventIterator(file, logFilter, fromTimeMs, toTimeMs, maxEvents, namespaceId, impersonator);
   }
 
@@ -196,6 +257,9 @@ public class AvroFileReader {
   @SuppressWarnings("WeakerAccess")
   public Collection<LogEvent> readLogPrev(Location file, Filter logFilter, long fromTimeMs, final int maxEvents,
                                           NamespaceId namespaceId, Impersonator impersonator) throws IOException {
+    if (LogArchive.isArchive(file)) {
+      return readArchivePrev(file, logFilter, fromTimeMs, maxEvents, namespaceId, impersonator);
+    }
     DataFileReader<GenericRecord> dataFileReader = createReader(file, namespaceId, impersonator);
 
     try {
@@ -203,6 +267,11 @@ public class AvroFileReader {
         return ImmutableList.of();
       }
 
+      LogFileIndex index = readIndex(file, namespaceId, impersonator);
+      if (index != null && index.size() > 0) {
+        return readLogPrev(dataFileReader, index, logFilter, fromTimeMs, maxEvents);
+      }
+
       List<List<LogEvent>> logSegments = Lists.newArrayList();
       List<LogEvent> logSegment;
       int count = 0;
@@ -257,6 +326,67 @@ public class AvroFileReader {
     }
   }
 
+  /**
+   * Same as {@link #readLogPrev(Location, Filter, long, int, NamespaceId, Impersonator)}, but only reads the blocks
+   * that have events at or before fromTimeMs and may have events matching the filter according to the index,
+   * starting with the part of the file after the indexed blocks.
+   */
+  private Collection<LogEvent> readLogPrev(DataFileReader<GenericRecord> dataFileReader, LogFileIndex index,
+                                           Filter logFilter, long fromTimeMs, int maxEvents) throws IOException {
+    List<List<LogEvent>> logSegments = Lists.newArrayList();
+    int count = 0;
+
+    // Read the part of an open file that is not yet indexed
+    dataFileReader.seek(index.getIndexedEnd());
+    List<LogEvent> logSegment = readToEndSyncPosition(dataFileReader, logFilter, fromTimeMs, -1);
+    if (!logSegment.isEmpty()) {
+      logSegments.add(logSegment);
+      count += logSegment.size();
+    }
+
+    for (int i = index.size() - 1; i >= 0 && count < maxEvents; i--) {
+      if (index.getMinTimestamp(i) > fromTimeMs || !index.mayMatch(i, logFilter)) {
+        continue;
+      }
+      dataFileReader.seek(index.getStartPosition(i));
+      logSegment = readToEndSyncPosition(dataFileReader, logFilter, fromTimeMs, index.getEndPosition(i));
+      if (!logSegment.isEmpty()) {
+        logSegments.add(logSegment);
+        count += logSegment.size();
+      }
+      LOG.trace("Read logevents {} from index entry {}", count, i);
+    }
+
+    int skip = count >= maxEvents ? count - maxEvents : 0;
+    return Lists.newArrayList(Iterables.skip(Iterables.concat(Lists.reverse(logSegments)), skip));
+  }
+
+  /**
+   * Same as {@link #readLogPrev(Location, Filter, long, int, NamespaceId, Impersonator)} for a {@link LogArchive}.
+   * The archive is read forward up to fromTimeMs, which only decodes the events that may match the filter, keeping
+   * the last maxEvents events.
+   */
+  private Collection<LogEvent> readArchivePrev(Location file, Filter logFilter, long fromTimeMs, int maxEvents,
+                                               NamespaceId namespaceId, Impersonator impersonator) {
+    Deque<LogEvent> events = new ArrayDeque<>();
+    long toTimeMs = fromTimeMs == Long.MAX_VALUE ? fromTimeMs : fromTimeMs + 1;
+    try (CloseableIterator<LogEvent> iterator = new LogArchiveEventIterator<>(file, schema, logFilter, 0, toTimeMs,
+                                                                              Long.MAX_VALUE, namespaceId,
+                                                                              impersonator, TO_LOG_EVENT)) {
+      while (iterator.hasNext()) {
+        LogEvent event = iterator.next();
+        if (event.getLoggingEvent().getTimeStamp() > fromTimeMs) {
+          break;
+        }
+        events.add(event);
+        if (events.size() > maxEvents) {
+          events.removeFirst();
+        }
+      }
+    }
+    return new ArrayList<>(events);
+  }
+
   /**
    *  Read current block in Avro file from current block sync marker to next block sync marker
    */
@@ -303,6 +433,24 @@ public class AvroFileReader {
     return startPosition;
   }
 
+  /**
+   * Reads the index of the given log file, or returns {@code null} if the file is not indexed.
+   */
+  @Nullable
+  private LogFileIndex readIndex(final Location file, NamespaceId namespaceId, Impersonator impersonator) {
+    try {
+      return impersonator.doAs(namespaceId, new Callable<LogFileIndex>() {
+        @Override
+        public LogFileIndex call() throws Exception {
+          return LogFileIndex.read(file);
+        }
+      });
+    } catch (Exception e) {
+      LOG.debug("Failed to read the index of log file {}", file, e);
+      return null;
+    }
+  }
+
   private DataFileReader<GenericRecord> createReader(Location location, NamespaceId namespaceId,
                                                      Impersonator impersonator) throws IOException {
     return new DataFileReader<>(new LocationSeekableInput(location, namespaceId, impersonator),
@@ -36,6 +36,7 @@ import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import org.apache.avro.Schema;
+import org.apache.twill.common.Threads;
 import org.apache.twill.filesystem.Location;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,8 +45,14 @@ import java.io.IOException;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.NavigableMap;
 import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Reads log events from a file.
@@ -56,6 +63,9 @@ public class FileLogReader implements LogReader {
   private final FileMetaDataManager fileMetaDataManager;
   private final Schema schema;
   private final Impersonator impersonator;
+  private final int readerParallelism;
+  private final int readAheadEvents;
+  private final ExecutorService readExecutor;
 
   @Inject
   public FileLogReader(CConfiguration cConf, FileMetaDataManager fileMetaDataManager, Impersonator impersonator) {
@@ -66,6 +76,16 @@ public class FileLogReader implements LogReader {
       this.schema = LogSchema.LoggingEvent.SCHEMA;
       this.fileMetaDataManager = fileMetaDataManager;
       this.impersonator = impersonator;
+      this.readerParallelism = cConf.getInt(LoggingConfiguration.LOG_READER_PARALLELISM,
+                                            LoggingConfiguration.DEFAULT_LOG_READER_PARALLELISM);
+      this.readAheadEvents = cConf.getInt(LoggingConfiguration.LOG_READER_READ_AHEAD_EVENTS,
+                                          LoggingConfiguration.DEFAULT_LOG_READER_READ_AHEAD_EVENTS);
+      // threads are only kept while there are files to read
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(
+        readerParallelism, readerParallelism, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+        Threads.createDaemonThreadFactory("log-file-reader-%d"));
+      executor.allowCoreThreadTimeOut(true);
+      this.readExecutor = executor;
     } catch (Exception e) {
       LOG.error("Got exception", e);
       throw Throwables.propagate(e);
@@ -185,46 +205,12 @@ public class FileLogReader implements LogReader {
         };
       }
 
-      List<Location> filesInRange = getFilesInRange(sortedFiles, fromTimeMs, toTimeMs);
-
-      final AvroFileReader avroFileReader = new AvroFileReader(schema);
-      final Iterator<Location> filesIter = filesInRange.iterator();
-      final NamespaceId namespaceId = LoggingContextHelper.getNamespaceId(loggingContext);
-
-      CloseableIterator closeableIterator = new CloseableIterator() {
-        private CloseableIterator<LogEvent> curr = null;
-
-        @Override
-        public void close() {
-          if (curr != null) {
-            curr.close();
-          }
-        }
-
-        @Override
-        public boolean hasNext() {
-          return filesIter.hasNext();
-        }
-
-        @Override
-        public CloseableIterator<LogEvent> next() {
-          if (curr != null) {
-            curr.close();
-          }
-          Location file = filesIter.next();
-          LOG.trace("Reading file {}", file);
-          curr = avroFileReader.readLog(file, logFilter, fromTimeMs, toTimeMs, Integer.MAX_VALUE,
-                                        namespaceId, impersonator);
-          return curr;
-        }
-
-        @Override
-        public void remove() {
-          throw new UnsupportedOperationException("Remove not supported");
-        }
-      };
-
-      return concat(closeableIterator);
+      // Files of concurrent program instances overlap in time, hence they are read in parallel and merged by time
+      List<Map.Entry<Long, Location>> filesInRange =
+        Lists.newArrayList(getFilesInRangeMap(sortedFiles, fromTimeMs, toTimeMs).entrySet());
+      return new MergingLogFileIterator(new AvroFileReader(schema), filesInRange, logFilter, fromTimeMs, toTimeMs,
+                                        LoggingContextHelper.getNamespaceId(loggingContext), impersonator,
+                                        readExecutor, readerParallelism, readAheadEvents);
     } catch (Throwable e) {
       LOG.error("Got exception: ", e);
       throw Throwables.propagate(e);
@@ -309,6 +295,11 @@ public class FileLogReader implements LogReader {
 
   @VisibleForTesting
   static List<Location> getFilesInRange(NavigableMap<Long, Location> sortedFiles, long fromTimeMs, long toTimeMs) {
+    return ImmutableList.copyOf(getFilesInRangeMap(sortedFiles, fromTimeMs, toTimeMs).values());
+  }
+
+  private static NavigableMap<Long, Location> getFilesInRangeMap(NavigableMap<Long, Location> sortedFiles,
+                                                                 long fromTimeMs, long toTimeMs) {
     // Get a list of files to read based on fromMillis and toMillis.
     // Each file is associated with the time of the first log message in it.
     // Let c be the file with the largest timestamp smaller than readRange.getFromMillis().
@@ -321,9 +312,9 @@ public class FileLogReader implements LogReader {
       // deleted, in case of old program runs. For such requests both the start and toTimeMs
       // will fall outside the range sortedFiles. In that case return empty list.
       if (start > toTimeMs) {
-        return ImmutableList.of();
+        return new TreeMap<>();
       }
     }
-    return ImmutableList.copyOf(sortedFiles.subMap(start, toTimeMs).values());
+    return sortedFiles.subMap(start, true, toTimeMs, false);
   }
 }
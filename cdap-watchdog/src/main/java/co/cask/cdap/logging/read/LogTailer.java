@@ -0,0 +1,278 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.logging.read;
+
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.logging.LoggingContext;
+import co.cask.cdap.logging.LoggingConfiguration;
+import co.cask.cdap.logging.filter.Filter;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.apache.twill.common.Cancellable;
+import org.apache.twill.common.Threads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Flushable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Follows the logs of logging contexts, and pushes the new log events to subscribers as they are written.
+ * <p/>
+ * The log events of a logging context are read once with {@link LogReader#getLogNext} for all the subscribers of the
+ * logging context, and each subscriber receives the events matching its own {@link Filter}. Hence the cost of
+ * following a logging context doesn't grow with the number of subscribers, unlike clients polling for the next logs
+ * individually. A logging context is no longer read once its last subscriber is cancelled.
+ * <p/>
+ * If the {@link Callback} of a subscriber is {@link Flushable}, it is flushed after every batch of events, and also
+ * after polls that found no new events, which allows it to detect a closed connection. A subscriber whose callback
+ * throws an exception is cancelled.
+ */
+@Singleton
+public class LogTailer {
+  private static final Logger LOG = LoggerFactory.getLogger(LogTailer.class);
+  // Maximum number of events to read for a logging context in one poll
+  private static final int MAX_EVENTS_PER_POLL = 1000;
+
+  private final LogReader logReader;
+  private final long pollIntervalMillis;
+  private final int threads;
+  private final Map<String, ContextTail> tails;
+  private ScheduledExecutorService executor;
+
+  @Inject
+  LogTailer(LogReader logReader, CConfiguration cConf) {
+    this(logReader, cConf.getLong(LoggingConfiguration.LOG_TAIL_POLL_INTERVAL_MS,
+                                  LoggingConfiguration.DEFAULT_LOG_TAIL_POLL_INTERVAL_MS),
+         cConf.getInt(LoggingConfiguration.LOG_TAIL_THREADS, LoggingConfiguration.DEFAULT_LOG_TAIL_THREADS));
+  }
+
+  @VisibleForTesting
+  LogTailer(LogReader logReader, long pollIntervalMillis, int threads) {
+    this.logReader = logReader;
+    this.pollIntervalMillis = pollIntervalMillis;
+    this.threads = threads;
+    this.tails = new TreeMap<>();
+  }
+
+  /**
+   * Subscribes to the log events of the given logging context that are written from now on.
+   * {@link Callback#init()} is called before this method returns, and {@link Callback#close()} is called once the
+   * subscription is cancelled. The methods of the callback are called from a single thread at a time.
+   *
+   * @param loggingContext the logging context to follow
+   * @param filter the filter for the log events to send to the callback
+   * @param callback the callback to receive the log events
+   * @return a {@link Cancellable} to cancel the subscription
+   */
+  public synchronized Cancellable tail(LoggingContext loggingContext, Filter filter, Callback callback) {
+    String key = getKey(loggingContext);
+    ContextTail tail = tails.get(key);
+    if (tail == null) {
+      if (executor == null) {
+        executor = Executors.newScheduledThreadPool(threads, Threads.createDaemonThreadFactory("log-tailer-%d"));
+      }
+      tail = new ContextTail(key, loggingContext);
+      tails.put(key, tail);
+      executor.schedule(tail, pollIntervalMillis, TimeUnit.MILLISECONDS);
+      LOG.debug("Started following logs of {}", key);
+    }
+
+    callback.init();
+    Subscriber subscriber = new Subscriber(tail, filter, callback);
+    tail.subscribers.add(subscriber);
+    return subscriber;
+  }
+
+  /**
+   * Removes the tail of a logging context if it has no subscribers.
+   *
+   * @return {@code true} if the tail is removed
+   */
+  private synchronized boolean removeIfUnused(ContextTail tail) {
+    if (!tail.subscribers.isEmpty()) {
+      return false;
+    }
+    tails.remove(tail.key);
+    LOG.debug("Stopped following logs of {}", tail.key);
+    if (tails.isEmpty() && executor != null) {
+      executor.shutdown();
+      executor = null;
+    }
+    return true;
+  }
+
+  /**
+   * Returns a key identifying the log events of the given logging context.
+   */
+  private static String getKey(LoggingContext loggingContext) {
+    Map<String, String> tags = new TreeMap<>();
+    for (LoggingContext.SystemTag tag : loggingContext.getSystemTags()) {
+      tags.put(tag.getName(), tag.getValue());
+    }
+    return tags.toString();
+  }
+
+  /**
+   * Reads the new log events of one logging context for all its subscribers.
+   */
+  private final class ContextTail implements Runnable {
+
+    private final String key;
+    private final LoggingContext loggingContext;
+    private final List<Subscriber> subscribers;
+    private ReadRange readRange;
+
+    ContextTail(String key, LoggingContext loggingContext) {
+      this.key = key;
+      this.loggingContext = loggingContext;
+      this.subscribers = new CopyOnWriteArrayList<>();
+      this.readRange = new ReadRange(System.currentTimeMillis(), Long.MAX_VALUE, LogOffset.INVALID_KAFKA_OFFSET);
+    }
+
+    @Override
+    public void run() {
+      if (removeIfUnused(this)) {
+        return;
+      }
+
+      long delay = pollIntervalMillis;
+      try {
+        CollectingCallback collector = new CollectingCallback();
+        logReader.getLogNext(loggingContext, readRange, MAX_EVENTS_PER_POLL, Filter.EMPTY_FILTER, collector);
+        List<LogEvent> events = collector.getEvents();
+        if (!events.isEmpty()) {
+          readRange = ReadRange.createFromRange(events.get(events.size() - 1).getOffset());
+          if (events.size() >= MAX_EVENTS_PER_POLL) {
+            // More events are likely available already
+            delay = 0L;
+          }
+        }
+        for (Subscriber subscriber : subscribers) {
+          subscriber.send(events);
+        }
+      } catch (Throwable t) {
+        LOG.warn("Failed to read logs of {}. Will be retried.", key, t);
+      } finally {
+        schedule(delay);
+      }
+    }
+
+    private void schedule(long delay) {
+      synchronized (LogTailer.this) {
+        if (executor != null && !executor.isShutdown()) {
+          executor.schedule(this, delay, TimeUnit.MILLISECONDS);
+        }
+      }
+    }
+  }
+
+  /**
+   * A subscription to the log events of a logging context.
+   */
+  private final class Subscriber implements Cancellable {
+
+    private final ContextTail tail;
+    private final Filter filter;
+    private final Callback callback;
+    private final AtomicBoolean cancelled;
+
+    Subscriber(ContextTail tail, Filter filter, Callback callback) {
+      this.tail = tail;
+      this.filter = filter;
+      this.callback = callback;
+      this.cancelled = new AtomicBoolean();
+    }
+
+    void send(List<LogEvent> events) {
+      try {
+        synchronized (this) {
+          if (cancelled.get()) {
+            return;
+          }
+          for (LogEvent event : events) {
+            if (filter.match(event.getLoggingEvent())) {
+              callback.handle(event);
+            }
+          }
+          if (callback instanceof Flushable) {
+            ((Flushable) callback).flush();
+          }
+        }
+      } catch (Exception e) {
+        LOG.debug("Failed to send log events of {} to subscriber. Cancelling the subscription.", tail.key, e);
+        cancel();
+      }
+    }
+
+    @Override
+    public void cancel() {
+      if (!cancelled.compareAndSet(false, true)) {
+        return;
+      }
+      tail.subscribers.remove(this);
+      synchronized (this) {
+        try {
+          callback.close();
+        } catch (Exception e) {
+          LOG.debug("Exception raised when closing log subscriber of {}", tail.key, e);
+        }
+      }
+    }
+  }
+
+  /**
+   * A {@link Callback} that collects the log events read.
+   */
+  private static final class CollectingCallback implements Callback {
+
+    private final List<LogEvent> events = new ArrayList<>();
+
+    @Override
+    public void init() {
+      // no-op
+    }
+
+    @Override
+    public void handle(LogEvent event) {
+      events.add(event);
+    }
+
+    @Override
+    public int getCount() {
+      return events.size();
+    }
+
+    @Override
+    public void close() {
+      // no-op
+    }
+
+    List<LogEvent> getEvents() {
+      return events;
+    }
+  }
+}
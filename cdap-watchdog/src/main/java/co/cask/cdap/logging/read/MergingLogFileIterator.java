@@ -0,0 +1,262 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.logging.read;
+
+import co.cask.cdap.api.dataset.lib.AbstractCloseableIterator;
+import co.cask.cdap.api.dataset.lib.CloseableIterator;
+import co.cask.cdap.logging.filter.Filter;
+import co.cask.cdap.proto.id.NamespaceId;
+import co.cask.cdap.security.impersonation.Impersonator;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import org.apache.twill.filesystem.Location;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * A {@link CloseableIterator} of the log events of a list of log files, in timestamp order. Files are read
+ * concurrently in batches of events ahead of the events being consumed, and the events of files with overlapping
+ * time ranges are merged with a heap.
+ * <p/>
+ * A file is added to the merge before any event with timestamp greater than or equal to its start time is returned,
+ * hence only the files that actually overlap are merged, while the next files are read ahead. The number of events
+ * kept in memory is bounded by the read ahead size times the number of files being read. A file is closed as soon as
+ * all its events are returned.
+ */
+final class MergingLogFileIterator extends AbstractCloseableIterator<LogEvent> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MergingLogFileIterator.class);
+
+  private final AvroFileReader avroFileReader;
+  private final Filter logFilter;
+  private final long fromTimeMs;
+  private final long toTimeMs;
+  private final NamespaceId namespaceId;
+  private final Impersonator impersonator;
+  private final ExecutorService executor;
+  private final int parallelism;
+  private final int readAheadEvents;
+
+  private final List<Map.Entry<Long, Location>> files;
+  // sources of the files that are open, either being merged or read ahead
+  private final List<FileSource> sources;
+  // sources of the files being read ahead, in file order
+  private final Deque<FileSource> readAheadSources;
+  private final PriorityQueue<FileSource> heap;
+  // index of the next file to add to the merge
+  private int nextFile;
+  // index of the next file to start reading
+  private int nextRead;
+
+  /**
+   * Creates an iterator over the given files.
+   *
+   * @param files the files to read, sorted by the time of their first event, which is the key of each entry
+   * @param executor the executor to read the files with
+   * @param parallelism maximum number of files to read ahead of the files being merged
+   * @param readAheadEvents number of events to read from a file in each batch
+   */
+  MergingLogFileIterator(AvroFileReader avroFileReader, List<Map.Entry<Long, Location>> files, Filter logFilter,
+                         long fromTimeMs, long toTimeMs, NamespaceId namespaceId, Impersonator impersonator,
+                         ExecutorService executor, int parallelism, int readAheadEvents) {
+    this.avroFileReader = avroFileReader;
+    this.files = files;
+    this.logFilter = logFilter;
+    this.fromTimeMs = fromTimeMs;
+    this.toTimeMs = toTimeMs;
+    this.namespaceId = namespaceId;
+    this.impersonator = impersonator;
+    this.executor = executor;
+    this.parallelism = Math.max(1, parallelism);
+    this.readAheadEvents = Math.max(1, readAheadEvents);
+    this.sources = new ArrayList<>();
+    this.readAheadSources = new ArrayDeque<>();
+    this.heap = new PriorityQueue<>(Math.max(1, files.size()));
+  }
+
+  @Override
+  protected LogEvent computeNext() {
+    // Add the files that can have events at or before the earliest event in the merge
+    while (nextFile < files.size()
+      && (heap.isEmpty() || heap.peek().getTimestamp() >= files.get(nextFile).getKey())) {
+      advance(readAhead(nextFile++));
+    }
+    FileSource source = heap.poll();
+    if (source == null) {
+      return endOfData();
+    }
+    LogEvent event = source.current;
+    advance(source);
+    return event;
+  }
+
+  @Override
+  public void close() {
+    for (FileSource source : sources) {
+      source.close();
+    }
+    sources.clear();
+    readAheadSources.clear();
+    heap.clear();
+    nextFile = files.size();
+    nextRead = files.size();
+  }
+
+  /**
+   * Returns the source of the file at the given index, and starts reading the next files.
+   */
+  private FileSource readAhead(int fileIndex) {
+    for (; nextRead < files.size() && nextRead < fileIndex + parallelism; nextRead++) {
+      FileSource source = new FileSource(nextRead, files.get(nextRead).getValue());
+      source.fetch();
+      sources.add(source);
+      readAheadSources.add(source);
+    }
+    return readAheadSources.poll();
+  }
+
+  /**
+   * Moves the given source to its next event and puts it back to the merge, or closes it if it has no more events.
+   */
+  private void advance(FileSource source) {
+    if (source.advance()) {
+      heap.add(source);
+    } else {
+      source.close();
+      sources.remove(source);
+    }
+  }
+
+  /**
+   * The events of one file, read in batches by the executor.
+   */
+  private final class FileSource implements Comparable<FileSource> {
+
+    private final int fileIndex;
+    private final Location file;
+    private CloseableIterator<LogEvent> fileIterator;
+    private Future<List<LogEvent>> pending;
+    private Iterator<LogEvent> batch;
+    private LogEvent current;
+    private boolean done;
+
+    FileSource(int fileIndex, Location file) {
+      this.fileIndex = fileIndex;
+      this.file = file;
+    }
+
+    long getTimestamp() {
+      return current.getLoggingEvent().getTimeStamp();
+    }
+
+    /**
+     * Moves to the next event of the file.
+     *
+     * @return {@code false} if there are no more events in the file
+     */
+    boolean advance() {
+      while (batch == null || !batch.hasNext()) {
+        if (pending == null) {
+          current = null;
+          return false;
+        }
+        List<LogEvent> events = getBatch();
+        pending = null;
+        if (!done) {
+          // read the next batch while this batch is consumed
+          fetch();
+        }
+        batch = events.iterator();
+      }
+      current = batch.next();
+      return true;
+    }
+
+    /**
+     * Submits the reading of the next batch of events.
+     */
+    void fetch() {
+      pending = executor.submit(new Callable<List<LogEvent>>() {
+        @Override
+        public List<LogEvent> call() throws Exception {
+          if (fileIterator == null) {
+            LOG.trace("Reading file {}", file);
+            fileIterator = avroFileReader.readLog(file, logFilter, fromTimeMs, toTimeMs, Integer.MAX_VALUE,
+                                                  namespaceId, impersonator);
+          }
+          List<LogEvent> events = Lists.newArrayListWithCapacity(readAheadEvents);
+          while (events.size() < readAheadEvents && fileIterator.hasNext()) {
+            events.add(fileIterator.next());
+          }
+          done = !fileIterator.hasNext();
+          return events;
+        }
+      });
+    }
+
+    private List<LogEvent> getBatch() {
+      try {
+        return pending.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw Throwables.propagate(e);
+      } catch (ExecutionException e) {
+        // same as a failure to read from the file while iterating over it, which ends the events of the file
+        LOG.error("Got exception while reading log file {}", file, e.getCause());
+        done = true;
+        return new ArrayList<>();
+      }
+    }
+
+    void close() {
+      if (pending != null && !pending.cancel(false)) {
+        // wait for the batch being read, as the file iterator is not thread safe
+        try {
+          pending.get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+          // ignore, the file is being closed
+        }
+      }
+      pending = null;
+      batch = null;
+      if (fileIterator != null) {
+        fileIterator.close();
+        fileIterator = null;
+      }
+    }
+
+    @Override
+    public int compareTo(FileSource other) {
+      int cmp = Long.compare(getTimestamp(), other.getTimestamp());
+      return cmp != 0 ? cmp : Integer.compare(fileIndex, other.fileIndex);
+    }
+  }
+}
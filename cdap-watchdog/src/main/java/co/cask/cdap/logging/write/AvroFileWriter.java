@@ -19,10 +19,12 @@ package co.cask.cdap.logging.write;
 import co.cask.cdap.common.logging.LoggingContext;
 import co.cask.cdap.common.namespace.NamespacedLocationFactory;
 import co.cask.cdap.logging.context.LoggingContextHelper;
+import co.cask.cdap.logging.format.LogFileIndex;
 import co.cask.cdap.proto.id.NamespaceId;
 import co.cask.cdap.security.impersonation.Impersonator;
 import com.google.common.base.Throwables;
 import com.google.common.collect.Maps;
+import com.google.common.io.Closeables;
 import org.apache.avro.Schema;
 import org.apache.avro.file.DataFileWriter;
 import org.apache.avro.generic.GenericDatumWriter;
@@ -254,6 +256,10 @@ public final class AvroFileWriter implements Closeable, Flushable {
         if (avroFile.getLocation().exists()) {
           avroFile.getLocation().delete();
         }
+        Location indexLocation = LogFileIndex.getIndexLocation(avroFile.getLocation());
+        if (indexLocation.exists()) {
+          indexLocation.delete();
+        }
       }
     } catch (IOException e) {
       LOG.error("Error while closing and deleting file {}", avroFile.getLocation(), e);
@@ -270,6 +276,7 @@ public final class AvroFileWriter implements Closeable, Flushable {
     private final Location location;
     private FSDataOutputStream outputStream;
     private DataFileWriter<GenericRecord> dataFileWriter;
+    private LogFileIndex.Writer index;
     private long createTime;
     private boolean isOpen = false;
 
@@ -290,6 +297,7 @@ public final class AvroFileWriter implements Closeable, Flushable {
         this.dataFileWriter.create(schema, this.outputStream);
         this.dataFileWriter.setSyncInterval(syncIntervalBytes);
         this.createTime = System.currentTimeMillis();
+        this.index = new LogFileIndex.Writer(location, dataFileWriter.sync());
         // Sync the file as soon as it is created, otherwise a zero length Avro file can get created on OOM
         sync();
       } catch (Exception e) {
@@ -310,6 +318,9 @@ public final class AvroFileWriter implements Closeable, Flushable {
     public void append(LogWriteEvent event) throws IOException {
       try {
         dataFileWriter.append(event.getGenericRecord());
+        if (index.append(event.getGenericRecord())) {
+          index.sync(dataFileWriter.sync());
+        }
       } catch (Exception e) {
         close();
         throw new IOException("Exception while appending to file " + location, e);
@@ -331,8 +342,11 @@ public final class AvroFileWriter implements Closeable, Flushable {
 
     public void flush() throws IOException {
       try {
+        long syncPosition = dataFileWriter.sync();
         dataFileWriter.flush();
         outputStream.hflush();
+        index.sync(syncPosition);
+        index.flush();
       } catch (Exception e) {
         close();
         throw new IOException("Exception while flushing file " + location, e);
@@ -341,8 +355,11 @@ public final class AvroFileWriter implements Closeable, Flushable {
 
     public void sync() throws IOException {
       try {
+        long syncPosition = dataFileWriter.sync();
         dataFileWriter.flush();
         outputStream.hsync();
+        index.sync(syncPosition);
+        index.flush();
       } catch (Exception e) {
         close();
         throw new IOException("Exception while syncing file " + location, e);
@@ -363,8 +380,12 @@ public final class AvroFileWriter implements Closeable, Flushable {
           dataFileWriter.close();
         }
       } finally {
-        if (outputStream != null) {
-          outputStream.close();
+        try {
+          if (outputStream != null) {
+            outputStream.close();
+          }
+        } finally {
+          Closeables.closeQuietly(index);
         }
       }
     }
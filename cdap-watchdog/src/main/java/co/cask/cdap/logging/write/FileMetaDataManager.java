@@ -128,6 +128,51 @@ public final class FileMetaDataManager {
     });
   }
 
+  /**
+   * Atomically replaces the meta data of the given log files with the meta data of a single file that has all their
+   * events. The file takes the event time and creation time of the first given file, so that it keeps the position
+   * of the given files among the log files of the logging context.
+   *
+   * @param identifier logging context identifier.
+   * @param files log files to replace, in the order of their meta data.
+   * @param location log file that replaces the given files.
+   * @return {@code true} if the meta data was replaced, or {@code false} if the meta data of any of the given files
+   *         is no longer present, in which case the meta data is not changed.
+   */
+  public boolean replaceMetaData(final LogPathIdentifier identifier, final List<LogLocation> files,
+                                 final Location location) throws Exception {
+    Preconditions.checkArgument(!files.isEmpty(), "No log files to replace for %s", identifier.getRowKey());
+    LOG.debug("Replacing meta data of {} log files for logging context {} with location {}",
+              files.size(), identifier.getRowKey(), location);
+
+    return execute(new TransactionExecutor.Function<Table, Boolean>() {
+      @Override
+      public Boolean apply(Table table) throws Exception {
+        byte[] rowKey = getRowKey(identifier);
+        List<byte[]> columnKeys = new ArrayList<>(files.size());
+        Row row = table.get(rowKey);
+        for (LogLocation file : files) {
+          Preconditions.checkArgument(LogLocation.VERSION_1.equals(file.getFrameworkVersion()),
+                                      "Only log files of version %s can be replaced", LogLocation.VERSION_1);
+          byte[] columnKey = Bytes.add(COLUMN_PREFIX_VERSION, Bytes.toBytes(file.getEventTimeMs()),
+                                       Bytes.toBytes(file.getFileCreationTimeMs()));
+          byte[] value = row.get(columnKey);
+          if (value == null
+            || !URI.create(Bytes.toString(value)).getPath().equals(file.getLocation().toURI().getPath())) {
+            // the files were replaced or deleted concurrently
+            return false;
+          }
+          columnKeys.add(columnKey);
+        }
+        for (byte[] columnKey : columnKeys.subList(1, columnKeys.size())) {
+          table.delete(rowKey, columnKey);
+        }
+        table.put(rowKey, columnKeys.get(0), Bytes.toBytes(location.toURI().getPath()));
+        return true;
+      }
+    });
+  }
+
   /**
    * Persists meta data associated with a log file.
    *
@@ -233,6 +278,30 @@ public final class FileMetaDataManager {
     });
   }
 
+  /**
+   * Returns the logging contexts that have log files written in the current format, with a column version prefix.
+   *
+   * @return List of {@link LogPathIdentifier}
+   */
+  public List<LogPathIdentifier> listLoggingContexts() {
+    return execute(new TransactionExecutor.Function<Table, List<LogPathIdentifier>>() {
+      @Override
+      public List<LogPathIdentifier> apply(Table table) throws Exception {
+        List<LogPathIdentifier> identifiers = new ArrayList<>();
+        try (Scanner scanner = table.scan(ROW_KEY_PREFIX, ROW_KEY_PREFIX_END)) {
+          Row row;
+          while ((row = scanner.next()) != null) {
+            String[] partitions = getLogPartition(row.getRow()).split(":");
+            if (partitions.length == 3 && hasVersionPrefix(row.getColumns().keySet())) {
+              identifiers.add(new LogPathIdentifier(partitions[0], partitions[1], partitions[2]));
+            }
+          }
+        }
+        return identifiers;
+      }
+    });
+  }
+
   /**
    * Scans meta data and gathers all the files up to a limited number of records.
    *
@@ -461,6 +530,15 @@ public final class FileMetaDataManager {
     return Bytes.add(ROW_KEY_PREFIX, logPathIdentifier.getRowKey().getBytes());
   }
 
+  private boolean hasVersionPrefix(Set<byte[]> columnKeys) {
+    for (byte[] columnKey : columnKeys) {
+      if (columnKey.length == 17 && columnKey[0] == COLUMN_PREFIX_VERSION[0]) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   private byte [] getMaxKey(Map<byte[], byte[]> map) {
     if (map instanceof SortedMap) {
       return ((SortedMap<byte [], byte []>) map).lastKey();
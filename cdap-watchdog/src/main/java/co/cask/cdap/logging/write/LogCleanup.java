@@ -25,6 +25,7 @@ import co.cask.cdap.common.logging.NamespaceLoggingContext;
 import co.cask.cdap.common.namespace.NamespaceQueryAdmin;
 import co.cask.cdap.common.namespace.NamespacedLocationFactory;
 import co.cask.cdap.logging.context.LoggingContextHelper;
+import co.cask.cdap.logging.format.LogFileIndex;
 import co.cask.cdap.proto.NamespaceMeta;
 import co.cask.cdap.proto.id.NamespaceId;
 import co.cask.cdap.security.impersonation.Impersonator;
@@ -309,6 +310,10 @@ public final class LogCleanup implements Runnable {
         if (location.exists()) {
           LOG.info("Deleting log file {}", location);
           location.delete();
+          Location indexLocation = LogFileIndex.getIndexLocation(location);
+          if (indexLocation.exists()) {
+            indexLocation.delete();
+          }
           parentDirs.put(namespacedBaseDir, getParent(location));
         }
         return null;
@@ -21,12 +21,16 @@ import co.cask.cdap.api.dataset.lib.CloseableIterator;
 import co.cask.cdap.common.io.Locations;
 import co.cask.cdap.common.io.SeekableInputStream;
 import co.cask.cdap.logging.filter.Filter;
+import co.cask.cdap.logging.format.LogArchive;
+import co.cask.cdap.logging.format.LogArchiveEventIterator;
+import co.cask.cdap.logging.format.LogFileIndex;
 import co.cask.cdap.logging.read.LogEvent;
 import co.cask.cdap.logging.read.LogOffset;
 import co.cask.cdap.logging.serialize.LogSchema;
 import co.cask.cdap.logging.serialize.LoggingEvent;
 import co.cask.cdap.proto.id.NamespaceId;
 import co.cask.cdap.security.impersonation.Impersonator;
+import com.google.common.base.Function;
 import com.google.common.base.Throwables;
 import org.apache.avro.file.DataFileReader;
 import org.apache.avro.file.SeekableInput;
@@ -39,12 +43,19 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.NoSuchElementException;
 import java.util.concurrent.Callable;
+import javax.annotation.Nullable;
 
 /**
  * LogLocation representing a log file and methods to read the file's contents.
  */
 public class LogLocation {
   private static final Logger LOG = LoggerFactory.getLogger(LogLocation.class);
+  private static final Function<ILoggingEvent, LogEvent> TO_LOG_EVENT = new Function<ILoggingEvent, LogEvent>() {
+    @Override
+    public LogEvent apply(ILoggingEvent event) {
+      return new LogEvent(event, new LogOffset(LogOffset.INVALID_KAFKA_OFFSET, event.getTimeStamp()));
+    }
+  };
 
   // old version
   public static final String VERSION_0 = "V0";
@@ -108,6 +119,10 @@ public class LogLocation {
    * @return closeable iterator of log events
    */
   public CloseableIterator<LogEvent> readLog(Filter logFilter, long fromTimeMs, long toTimeMs, int maxEvents) {
+    if (LogArchive.isArchive(location)) {
+      return new LogArchiveEventIterator<>(location, LogSchema.LoggingEvent.SCHEMA, logFilter, fromTimeMs, toTimeMs,
+                                           maxEvents, namespaceId, impersonator, TO_LOG_EVENT);
+    }
     return new LogEventIterator(logFilter, fromTimeMs, toTimeMs, maxEvents);
   }
 
@@ -136,7 +151,13 @@ public class LogLocation {
 
       try {
         dataFileReader = createReader();
-        if (dataFileReader.hasNext()) {
+        LogFileIndex index = readIndex();
+        if (index != null && index.size() > 0) {
+          // Seek directly to the first block that can have events at or after fromTimeMs
+          long position = index.seekPosition(fromTimeMs);
+          LOG.trace("Seeking to pos {} from index", position);
+          dataFileReader.seek(position);
+        } else if (dataFileReader.hasNext()) {
           datum = dataFileReader.next();
           loggingEvent = LoggingEvent.decode(datum);
           long prevPrevSyncPos = 0;
@@ -224,6 +245,27 @@ public class LogLocation {
     }
   }
 
+  /**
+   * Reads the index of the log file, or returns {@code null} if the file is not indexed.
+   */
+  @Nullable
+  private LogFileIndex readIndex() {
+    if (!getFrameworkVersion().equals(VERSION_0)) {
+      return LogFileIndex.read(location);
+    }
+    try {
+      return impersonator.doAs(namespaceId, new Callable<LogFileIndex>() {
+        @Override
+        public LogFileIndex call() throws Exception {
+          return LogFileIndex.read(location);
+        }
+      });
+    } catch (Exception e) {
+      LOG.debug("Failed to read the index of log file {}", location, e);
+      return null;
+    }
+  }
+
   private DataFileReader<GenericRecord> createReader() throws IOException {
     boolean shouldImpersonate = this.getFrameworkVersion().equals(VERSION_0);
     return new DataFileReader<>(new LocationSeekableInput(location, namespaceId, impersonator, shouldImpersonate),
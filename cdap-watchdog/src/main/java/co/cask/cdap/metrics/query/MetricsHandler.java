@@ -199,10 +199,21 @@ public class MetricsHandler extends AbstractHttpHandler {
 
         LOG.trace("Received Queries {}", queries);
 
-        Map<String, MetricQueryResult> queryFinalResponse = Maps.newHashMap();
+        // execute all queries as a single batch, so that the ones reading same data share the scans
+        List<String> queryIds = Lists.newArrayList();
+        List<MetricQueryRequest> queryRequests = Lists.newArrayList();
+        List<MetricDataQuery> dataQueries = Lists.newArrayList();
         for (Map.Entry<String, QueryRequestFormat> query : queries.entrySet()) {
           MetricQueryRequest queryRequest = getQueryRequestFromFormat(query.getValue());
-          queryFinalResponse.put(query.getKey(), executeQuery(queryRequest));
+          queryIds.add(query.getKey());
+          queryRequests.add(queryRequest);
+          dataQueries.add(toMetricDataQuery(queryRequest));
+        }
+        List<Collection<MetricTimeSeries>> queryResults = metricStore.query(dataQueries);
+
+        Map<String, MetricQueryResult> queryFinalResponse = Maps.newHashMap();
+        for (int i = 0; i < queryIds.size(); i++) {
+          queryFinalResponse.put(queryIds.get(i), decorate(queryRequests.get(i), queryResults.get(i)));
         }
         responder.sendJson(HttpResponseStatus.OK, queryFinalResponse);
       } catch (IllegalArgumentException e) {
@@ -325,6 +336,10 @@ public class MetricsHandler extends AbstractHttpHandler {
   }
 
   private MetricQueryResult executeQuery(MetricQueryRequest queryRequest) throws Exception {
+    return decorate(queryRequest, metricStore.query(toMetricDataQuery(queryRequest)));
+  }
+
+  private MetricDataQuery toMetricDataQuery(MetricQueryRequest queryRequest) {
     if (queryRequest.getMetrics().size() == 0) {
       throw new IllegalArgumentException("Missing metrics parameter in the query");
     }
@@ -333,13 +348,15 @@ public class MetricsHandler extends AbstractHttpHandler {
 
     MetricQueryRequest.TimeRange timeRange = queryRequest.getTimeRange();
 
-    MetricDataQuery query = new MetricDataQuery(timeRange.getStart(), timeRange.getEnd(),
-                                                timeRange.getResolutionInSeconds(),
-                                                timeRange.getCount(), toMetrics(queryRequest.getMetrics()),
-                                                tagsSliceBy, transformGroupByTags(queryRequest.getGroupBy()),
-                                                timeRange.getInterpolate());
-    Collection<MetricTimeSeries> queryResult = metricStore.query(query);
+    return new MetricDataQuery(timeRange.getStart(), timeRange.getEnd(),
+                               timeRange.getResolutionInSeconds(),
+                               timeRange.getCount(), toMetrics(queryRequest.getMetrics()),
+                               tagsSliceBy, transformGroupByTags(queryRequest.getGroupBy()),
+                               timeRange.getInterpolate());
+  }
 
+  private MetricQueryResult decorate(MetricQueryRequest queryRequest, Collection<MetricTimeSeries> queryResult) {
+    MetricQueryRequest.TimeRange timeRange = queryRequest.getTimeRange();
     long endTime = timeRange.getEnd();
     if (timeRange.getResolutionInSeconds() == Integer.MAX_VALUE && endTime == 0) {
       // for aggregate query, we set the end time to be query time (current time)
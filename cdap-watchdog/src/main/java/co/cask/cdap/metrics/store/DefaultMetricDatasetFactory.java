@@ -98,7 +98,9 @@ public class DefaultMetricDatasetFactory implements MetricDatasetFactory {
 
     MetricsTable table = getOrCreateMetricsTable(tableName, props.build());
     LOG.info("FactTable created: {}", tableName);
-    return new FactTable(table, entityTable.get(), resolution, getRollTime(resolution));
+    long indexRefreshSeconds = cConf.getLong(Constants.Metrics.SEARCH_INDEX_REFRESH_SECONDS,
+                                             Constants.Metrics.DEFAULT_SEARCH_INDEX_REFRESH_SECONDS);
+    return new FactTable(table, entityTable.get(), resolution, getRollTime(resolution), indexRefreshSeconds);
   }
 
   @Override
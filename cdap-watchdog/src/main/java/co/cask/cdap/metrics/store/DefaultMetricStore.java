@@ -16,7 +16,6 @@
 
 package co.cask.cdap.metrics.store;
 
-import co.cask.cdap.api.dataset.lib.cube.Cube;
 import co.cask.cdap.api.dataset.lib.cube.CubeDeleteQuery;
 import co.cask.cdap.api.dataset.lib.cube.CubeExploreQuery;
 import co.cask.cdap.api.dataset.lib.cube.CubeFact;
@@ -84,7 +83,7 @@ public class DefaultMetricStore implements MetricStore {
                                                          Constants.Metrics.Tag.WORKFLOW_RUN_ID)));
 
   private final int resolutions[];
-  private final Supplier<Cube> cube;
+  private final Supplier<DefaultCube> cube;
   private MetricsContext metricsContext;
 
 
@@ -212,9 +211,9 @@ public class DefaultMetricStore implements MetricStore {
         return dsFactory.getOrCreateFactTable(resolution);
       }
     };
-    this.cube = Suppliers.memoize(new Supplier<Cube>() {
+    this.cube = Suppliers.memoize(new Supplier<DefaultCube>() {
       @Override
-      public Cube get() {
+      public DefaultCube get() {
         DefaultCube cube = new DefaultCube(resolutions, factTableSupplier, AGGREGATIONS, AGGREGATIONS_ALIAS_DIMENSIONS);
         cube.setMetricsCollector(metricsContext);
         return cube;
@@ -255,7 +254,23 @@ public class DefaultMetricStore implements MetricStore {
 
   @Override
   public Collection<MetricTimeSeries> query(MetricDataQuery query) {
-    Collection<TimeSeries> cubeResult = cube.get().query(buildCubeQuery(query));
+    return toMetricTimeSeries(cube.get().query(buildCubeQuery(query)));
+  }
+
+  @Override
+  public List<Collection<MetricTimeSeries>> query(List<MetricDataQuery> queries) {
+    List<CubeQuery> cubeQueries = Lists.newArrayListWithCapacity(queries.size());
+    for (MetricDataQuery query : queries) {
+      cubeQueries.add(buildCubeQuery(query));
+    }
+    List<Collection<MetricTimeSeries>> result = Lists.newArrayListWithCapacity(queries.size());
+    for (Collection<TimeSeries> cubeResult : cube.get().query(cubeQueries)) {
+      result.add(toMetricTimeSeries(cubeResult));
+    }
+    return result;
+  }
+
+  private Collection<MetricTimeSeries> toMetricTimeSeries(Collection<TimeSeries> cubeResult) {
     List<MetricTimeSeries> result = Lists.newArrayList();
     for (TimeSeries timeSeries : cubeResult) {
       result.add(new MetricTimeSeries(timeSeries.getMeasureName(),
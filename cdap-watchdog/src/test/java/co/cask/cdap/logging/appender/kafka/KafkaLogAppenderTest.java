@@ -0,0 +1,222 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.logging.appender.kafka;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.logging.LoggingContext;
+import co.cask.cdap.logging.LoggingConfiguration;
+import co.cask.cdap.logging.appender.LogMessage;
+import co.cask.cdap.logging.context.FlowletLoggingContext;
+import com.google.common.collect.Lists;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the buffering and overflow policies of {@link KafkaLogAppender}.
+ */
+public class KafkaLogAppenderTest {
+
+  private static final LoggingContext LOGGING_CONTEXT =
+    new FlowletLoggingContext("NS_1", "APP_1", "FLOW_1", "FLOWLET_1", "RUN1", "INSTANCE1");
+  private static final Logger LOGGER = (Logger) LoggerFactory.getLogger(KafkaLogAppenderTest.class);
+
+  @Test
+  public void testDropDebug() throws Exception {
+    BlockingPublisher publisher = new BlockingPublisher();
+    KafkaLogAppender appender = createAppender("drop-debug", publisher);
+    appender.start();
+    try {
+      blockPublisher(appender, publisher);
+
+      // below the high water mark of 12 events, every event is buffered
+      append(appender, Level.DEBUG, 12);
+      // above it, only events of INFO and above are buffered, until the buffer is full
+      append(appender, Level.DEBUG, 4);
+      append(appender, Level.INFO, 4);
+      append(appender, Level.ERROR, 4);
+      Assert.assertEquals(8, appender.getDroppedEvents());
+    } finally {
+      publisher.release();
+      appender.stop();
+    }
+
+    List<ILoggingEvent> events = publisher.getEvents();
+    Assert.assertEquals(17, events.size());
+    Assert.assertEquals(12, countLevel(events, Level.DEBUG));
+    Assert.assertEquals(5, countLevel(events, Level.INFO));
+    Assert.assertEquals(LOGGING_CONTEXT.getLogPartition(), publisher.getKeys().get(0));
+  }
+
+  @Test
+  public void testSample() throws Exception {
+    BlockingPublisher publisher = new BlockingPublisher();
+    KafkaLogAppender appender = createAppender("sample", publisher);
+    appender.start();
+    try {
+      blockPublisher(appender, publisher);
+
+      append(appender, Level.DEBUG, 12);
+      // above the high water mark, one of every two events below WARN is buffered
+      append(appender, Level.INFO, 4);
+      append(appender, Level.WARN, 4);
+      Assert.assertEquals(4, appender.getDroppedEvents());
+    } finally {
+      publisher.release();
+      appender.stop();
+    }
+
+    List<ILoggingEvent> events = publisher.getEvents();
+    Assert.assertEquals(17, events.size());
+    Assert.assertEquals(3, countLevel(events, Level.INFO));
+    Assert.assertEquals(2, countLevel(events, Level.WARN));
+  }
+
+  @Test
+  public void testBlock() throws Exception {
+    final BlockingPublisher publisher = new BlockingPublisher();
+    final KafkaLogAppender appender = createAppender("block", publisher);
+    appender.start();
+    try {
+      blockPublisher(appender, publisher);
+
+      Thread thread = new Thread() {
+        @Override
+        public void run() {
+          append(appender, Level.DEBUG, 100);
+        }
+      };
+      thread.start();
+
+      // the appending thread waits for space in the buffer
+      thread.join(200);
+      Assert.assertTrue(thread.isAlive());
+      publisher.release();
+      thread.join(10000);
+      Assert.assertFalse(thread.isAlive());
+    } finally {
+      publisher.release();
+      appender.stop();
+    }
+
+    Assert.assertEquals(0, appender.getDroppedEvents());
+    List<ILoggingEvent> events = publisher.getEvents();
+    Assert.assertEquals(101, events.size());
+    for (int i = 1; i < events.size(); i++) {
+      Assert.assertEquals("Event " + (i - 1), events.get(i).getFormattedMessage());
+    }
+  }
+
+  private KafkaLogAppender createAppender(String overflowPolicy, KafkaLogAppender.Publisher publisher) {
+    CConfiguration cConf = CConfiguration.create();
+    cConf.setInt(LoggingConfiguration.LOG_PUBLISH_BUFFER_SIZE, 16);
+    cConf.setInt(LoggingConfiguration.LOG_PUBLISH_BATCH_SIZE, 4);
+    cConf.set(LoggingConfiguration.LOG_PUBLISH_OVERFLOW_POLICY, overflowPolicy);
+    cConf.setInt(LoggingConfiguration.LOG_PUBLISH_OVERFLOW_SAMPLE_RATE, 2);
+    return new KafkaLogAppender(cConf, publisher);
+  }
+
+  /**
+   * Appends one event and waits until the publisher is publishing it, which leaves the buffer empty and the
+   * publisher blocked.
+   */
+  private void blockPublisher(KafkaLogAppender appender, BlockingPublisher publisher) throws InterruptedException {
+    appender.doAppend(new LogMessage(createEvent(Level.INFO, "Blocking"), LOGGING_CONTEXT));
+    Assert.assertTrue(publisher.awaitPublish());
+  }
+
+  private void append(KafkaLogAppender appender, Level level, int count) {
+    for (int i = 0; i < count; i++) {
+      appender.doAppend(new LogMessage(createEvent(level, "Event " + i), LOGGING_CONTEXT));
+    }
+  }
+
+  private ILoggingEvent createEvent(Level level, String message) {
+    return new LoggingEvent(getClass().getName(), LOGGER, level, message, null, null);
+  }
+
+  private int countLevel(List<ILoggingEvent> events, Level level) {
+    int count = 0;
+    for (ILoggingEvent event : events) {
+      if (event.getLevel() == level) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * A {@link KafkaLogAppender.Publisher} that blocks until released, and keeps the published events.
+   */
+  private static final class BlockingPublisher implements KafkaLogAppender.Publisher {
+
+    private final LoggingEventSerializer serializer = new LoggingEventSerializer();
+    private final CountDownLatch publishLatch = new CountDownLatch(1);
+    private final CountDownLatch releaseLatch = new CountDownLatch(1);
+    private final List<String> keys = Collections.synchronizedList(Lists.<String>newArrayList());
+    private final List<ILoggingEvent> events = Collections.synchronizedList(Lists.<ILoggingEvent>newArrayList());
+
+    @Override
+    public void publish(List<Map.Entry<String, byte[]>> messages) {
+      publishLatch.countDown();
+      try {
+        releaseLatch.await();
+        for (Map.Entry<String, byte[]> message : messages) {
+          keys.add(message.getKey());
+          events.add(serializer.fromBytes(ByteBuffer.wrap(message.getValue())));
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    @Override
+    public void stop() {
+      // no-op
+    }
+
+    boolean awaitPublish() throws InterruptedException {
+      return publishLatch.await(10, TimeUnit.SECONDS);
+    }
+
+    void release() {
+      releaseLatch.countDown();
+    }
+
+    List<String> getKeys() {
+      return keys;
+    }
+
+    List<ILoggingEvent> getEvents() {
+      return events;
+    }
+  }
+}
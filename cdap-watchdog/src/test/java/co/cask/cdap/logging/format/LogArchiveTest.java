@@ -0,0 +1,232 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.logging.format;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import co.cask.cdap.api.dataset.lib.CloseableIterator;
+import co.cask.cdap.logging.filter.Filter;
+import co.cask.cdap.logging.filter.FilterParser;
+import co.cask.cdap.logging.read.AvroFileReader;
+import co.cask.cdap.logging.read.LogEvent;
+import co.cask.cdap.logging.serialize.LogSchema;
+import co.cask.cdap.proto.id.NamespaceId;
+import co.cask.cdap.proto.id.NamespacedEntityId;
+import co.cask.cdap.security.impersonation.Impersonator;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.twill.filesystem.LocalLocationFactory;
+import org.apache.twill.filesystem.Location;
+import org.apache.twill.filesystem.LocationFactory;
+import org.junit.Assert;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Tests for {@link LogArchive}.
+ */
+public class LogArchiveTest {
+
+  @ClassRule
+  public static final TemporaryFolder TMP_FOLDER = new TemporaryFolder();
+
+  private static final Impersonator IMPERSONATOR = new Impersonator() {
+    @Override
+    public <T> T doAs(NamespacedEntityId entityId, Callable<T> callable) throws Exception {
+      return callable.call();
+    }
+
+    @Override
+    public UserGroupInformation getUGI(NamespacedEntityId entityId) throws IOException {
+      return UserGroupInformation.getCurrentUser();
+    }
+  };
+
+  private static final int EVENTS = 5000;
+  private static final long BASE_TIME = 1000000L;
+  private static final String[] LOGGERS = { "co.cask.cdap.Main", "co.cask.cdap.data.Table", "org.apache.Client" };
+
+  @Test
+  public void testArchive() throws Exception {
+    LocationFactory locationFactory = new LocalLocationFactory(TMP_FOLDER.newFolder());
+    Location file = locationFactory.create("1000.avro");
+    writeLogFile(file);
+    Location archive = locationFactory.create("1000" + LogArchive.SUFFIX);
+    archive(file, archive);
+
+    Assert.assertFalse(LogArchive.isArchive(file));
+    Assert.assertTrue(LogArchive.isArchive(archive));
+    // the columns remove most of the repetition between the events
+    Assert.assertTrue(archive.length() * 3 < file.length());
+
+    // one index entry per block
+    LogFileIndex index = LogFileIndex.read(archive);
+    Assert.assertNotNull(index);
+    Assert.assertEquals((EVENTS + LogFileIndex.Writer.MAX_EVENTS_PER_ENTRY - 1)
+                          / LogFileIndex.Writer.MAX_EVENTS_PER_ENTRY, index.size());
+    Assert.assertEquals(archive.length(), index.getIndexedEnd());
+
+    // the events are the same as in the log file
+    List<ILoggingEvent> expected = readNext(file, Filter.EMPTY_FILTER, 0, Long.MAX_VALUE);
+    List<ILoggingEvent> actual = readNext(archive, Filter.EMPTY_FILTER, 0, Long.MAX_VALUE);
+    Assert.assertEquals(EVENTS, actual.size());
+    for (int i = 0; i < EVENTS; i++) {
+      ILoggingEvent expectedEvent = expected.get(i);
+      ILoggingEvent actualEvent = actual.get(i);
+      Assert.assertEquals(expectedEvent.getTimeStamp(), actualEvent.getTimeStamp());
+      Assert.assertEquals(expectedEvent.getLevel(), actualEvent.getLevel());
+      Assert.assertEquals(expectedEvent.getLoggerName(), actualEvent.getLoggerName());
+      Assert.assertEquals(expectedEvent.getThreadName(), actualEvent.getThreadName());
+      Assert.assertEquals(expectedEvent.getFormattedMessage(), actualEvent.getFormattedMessage());
+      Assert.assertEquals(expectedEvent.getMDCPropertyMap(), actualEvent.getMDCPropertyMap());
+      if (expectedEvent.getThrowableProxy() == null) {
+        Assert.assertNull(actualEvent.getThrowableProxy());
+      } else {
+        Assert.assertEquals(expectedEvent.getThrowableProxy().getMessage(),
+                            actualEvent.getThrowableProxy().getMessage());
+        Assert.assertEquals(expectedEvent.getThrowableProxy().getStackTraceElementProxyArray().length,
+                            actualEvent.getThrowableProxy().getStackTraceElementProxyArray().length);
+      }
+    }
+  }
+
+  @Test
+  public void testFilteredReads() throws Exception {
+    LocationFactory locationFactory = new LocalLocationFactory(TMP_FOLDER.newFolder());
+    Location file = locationFactory.create("1000.avro");
+    writeLogFile(file);
+    Location archive = locationFactory.create("1000" + LogArchive.SUFFIX);
+    archive(file, archive);
+
+    String[] filters = {
+      "loglevel=WARN", "loglevel=ERROR", "logger=co.cask.cdap", "logger=co.cask.cdap.data.Table", "logger=co.cask.c",
+      "MDC:user=alice", "MDC:user=carol", "message=failed", "loglevel=ERROR AND logger=co.cask",
+      "logger=org.apache OR MDC:user=bob", "loglevel=WARN AND message=1500"
+    };
+    long[][] ranges = { { 0, Long.MAX_VALUE }, { BASE_TIME + 1500, BASE_TIME + 2700 }, { BASE_TIME + EVENTS, 0 } };
+
+    // reads of the archive must return the same events as reads of the log file
+    for (String expression : filters) {
+      Filter filter = FilterParser.parse(expression);
+      for (long[] range : ranges) {
+        Assert.assertEquals(expression, getMessages(readNext(file, filter, range[0], range[1])),
+                            getMessages(readNext(archive, filter, range[0], range[1])));
+      }
+      for (long fromTimeMs : new long[] { BASE_TIME + 10, BASE_TIME + 2600, BASE_TIME + EVENTS }) {
+        Assert.assertEquals(expression, getMessages(readPrev(file, filter, fromTimeMs, 100)),
+                            getMessages(readPrev(archive, filter, fromTimeMs, 100)));
+      }
+    }
+    Assert.assertEquals(EVENTS / 3, readNext(archive, FilterParser.parse("logger=org.apache"), 0,
+                                             Long.MAX_VALUE).size());
+    Assert.assertTrue(readNext(archive, FilterParser.parse("logger=co.cask.c"), 0, Long.MAX_VALUE).isEmpty());
+
+    // without the index, the blocks are scanned
+    Assert.assertTrue(LogFileIndex.getIndexLocation(archive).delete());
+    for (String expression : filters) {
+      Filter filter = FilterParser.parse(expression);
+      Assert.assertEquals(expression, getMessages(readNext(file, filter, BASE_TIME + 1500, BASE_TIME + 2700)),
+                          getMessages(readNext(archive, filter, BASE_TIME + 1500, BASE_TIME + 2700)));
+    }
+  }
+
+  /**
+   * Writes a log file with events of several loggers, threads and users, and some errors with stack traces.
+   */
+  private void writeLogFile(Location file) throws IOException {
+    DataFileWriter<GenericRecord> dataFileWriter =
+      new DataFileWriter<>(new GenericDatumWriter<GenericRecord>(LogSchema.LoggingEvent.SCHEMA));
+    dataFileWriter.create(LogSchema.LoggingEvent.SCHEMA, file.getOutputStream());
+    try {
+      for (int i = 0; i < EVENTS; i++) {
+        Logger logger = (Logger) LoggerFactory.getLogger(LOGGERS[i % LOGGERS.length]);
+        Level level = i % 100 == 0 ? Level.ERROR : i % 10 == 0 ? Level.WARN : Level.INFO;
+        Throwable throwable = level == Level.ERROR ? new IOException("Failed to read " + i) : null;
+        LoggingEvent event = new LoggingEvent(getClass().getName(), logger, level, "Processed record {}",
+                                              throwable, new Object[] { i });
+        event.setTimeStamp(BASE_TIME + i);
+        event.setThreadName("worker-" + i % 4);
+        event.setMDCPropertyMap(ImmutableMap.of("MDC:user", i < 2000 ? "alice" : "bob", ".namespaceId", "default"));
+        dataFileWriter.append(co.cask.cdap.logging.serialize.LoggingEvent.encode(LogSchema.LoggingEvent.SCHEMA,
+                                                                                   event));
+      }
+    } finally {
+      dataFileWriter.close();
+    }
+  }
+
+  private void archive(Location file, Location archive) throws IOException {
+    try (
+      InputStream is = file.getInputStream();
+      DataFileStream<GenericRecord> dataFileStream =
+        new DataFileStream<>(is, new GenericDatumReader<GenericRecord>(LogSchema.LoggingEvent.SCHEMA));
+      LogArchive.Writer writer = new LogArchive.Writer(archive, LogSchema.LoggingEvent.SCHEMA)
+    ) {
+      GenericRecord record = null;
+      while (dataFileStream.hasNext()) {
+        record = dataFileStream.next(record);
+        writer.append(record);
+      }
+    }
+  }
+
+  private List<ILoggingEvent> readNext(Location file, Filter filter, long fromTimeMs, long toTimeMs) {
+    List<ILoggingEvent> events = Lists.newArrayList();
+    AvroFileReader reader = new AvroFileReader(LogSchema.LoggingEvent.SCHEMA);
+    try (CloseableIterator<LogEvent> iterator = reader.readLog(file, filter, fromTimeMs, toTimeMs,
+                                                               Integer.MAX_VALUE, NamespaceId.DEFAULT,
+                                                               IMPERSONATOR)) {
+      while (iterator.hasNext()) {
+        events.add(iterator.next().getLoggingEvent());
+      }
+    }
+    return events;
+  }
+
+  private List<ILoggingEvent> readPrev(Location file, Filter filter, long fromTimeMs,
+                                       int maxEvents) throws IOException {
+    List<ILoggingEvent> events = Lists.newArrayList();
+    AvroFileReader reader = new AvroFileReader(LogSchema.LoggingEvent.SCHEMA);
+    for (LogEvent event : reader.readLogPrev(file, filter, fromTimeMs, maxEvents, NamespaceId.DEFAULT, IMPERSONATOR)) {
+      events.add(event.getLoggingEvent());
+    }
+    return events;
+  }
+
+  private List<String> getMessages(List<ILoggingEvent> events) {
+    List<String> messages = Lists.newArrayList();
+    for (ILoggingEvent event : events) {
+      messages.add(event.getTimeStamp() + " " + event.getFormattedMessage());
+    }
+    return messages;
+  }
+}
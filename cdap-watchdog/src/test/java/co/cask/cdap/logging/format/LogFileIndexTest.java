@@ -0,0 +1,280 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.logging.format;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import co.cask.cdap.api.dataset.lib.CloseableIterator;
+import co.cask.cdap.logging.filter.Filter;
+import co.cask.cdap.logging.filter.FilterParser;
+import co.cask.cdap.logging.read.AvroFileReader;
+import co.cask.cdap.logging.read.LogEvent;
+import co.cask.cdap.logging.serialize.LogSchema;
+import co.cask.cdap.proto.id.NamespaceId;
+import co.cask.cdap.proto.id.NamespacedEntityId;
+import co.cask.cdap.security.impersonation.Impersonator;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.twill.filesystem.LocalLocationFactory;
+import org.apache.twill.filesystem.Location;
+import org.junit.Assert;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Tests for {@link LogFileIndex}.
+ */
+public class LogFileIndexTest {
+
+  @ClassRule
+  public static final TemporaryFolder TMP_FOLDER = new TemporaryFolder();
+
+  private static final Impersonator IMPERSONATOR = new Impersonator() {
+    @Override
+    public <T> T doAs(NamespacedEntityId entityId, Callable<T> callable) throws Exception {
+      return callable.call();
+    }
+
+    @Override
+    public UserGroupInformation getUGI(NamespacedEntityId entityId) throws IOException {
+      return UserGroupInformation.getCurrentUser();
+    }
+  };
+
+  private static final int EVENTS = 5000;
+  private static final int FLUSH_INTERVAL = 700;
+  // the events after the last flush are not indexed, as in an open file
+  private static final int INDEXED_EVENTS = EVENTS - EVENTS % FLUSH_INTERVAL;
+  private static final long BASE_TIME = 1000000L;
+  // events with a higher level, a different MDC value and a distinct message term, all in the same index entry
+  private static final int WARN_START = 2200;
+  private static final int WARN_END = 2210;
+  private static final int MDC_CHANGE = 1400;
+  private static final int TIMEOUT_START = 3600;
+  private static final int TIMEOUT_END = 3605;
+
+  @Test
+  public void testIndexedReads() throws Exception {
+    Location file = new LocalLocationFactory(TMP_FOLDER.newFolder()).create("1000.avro");
+    writeLogFile(file);
+
+    LogFileIndex index = LogFileIndex.read(file);
+    Assert.assertNotNull(index);
+    // entries end at every flush and every MAX_EVENTS_PER_ENTRY events in between
+    int entriesPerFlush = (FLUSH_INTERVAL + LogFileIndex.Writer.MAX_EVENTS_PER_ENTRY - 1)
+      / LogFileIndex.Writer.MAX_EVENTS_PER_ENTRY;
+    Assert.assertEquals(INDEXED_EVENTS / FLUSH_INTERVAL * entriesPerFlush, index.size());
+    Assert.assertEquals(BASE_TIME, index.getMinTimestamp(0));
+    Assert.assertEquals(BASE_TIME + INDEXED_EVENTS - 1, index.getMaxTimestamp(index.size() - 1));
+    for (int i = 1; i < index.size(); i++) {
+      Assert.assertEquals(index.getEndPosition(i - 1), index.getStartPosition(i));
+    }
+    Assert.assertEquals(index.getIndexedEnd(), index.seekPosition(Long.MAX_VALUE));
+    Assert.assertTrue(index.getIndexedEnd() < file.length());
+
+    // reads through the index must return the same events as scanning the file
+    long[] times = { 0, 10, 1500, 2799, 2800, INDEXED_EVENTS - 1, INDEXED_EVENTS, INDEXED_EVENTS + 50, EVENTS + 10 };
+    List<List<String>> indexedNext = Lists.newArrayList();
+    List<List<String>> indexedPrev = Lists.newArrayList();
+    for (long time : times) {
+      indexedNext.add(readNext(file, BASE_TIME + time, BASE_TIME + time + 100));
+      indexedPrev.add(readPrev(file, BASE_TIME + time, 100));
+    }
+
+    Assert.assertEquals(Arrays.asList("1500", "1501"), indexedNext.get(2).subList(0, 2));
+    Assert.assertEquals(100, indexedNext.get(2).size());
+    Assert.assertEquals("1500", indexedPrev.get(2).get(indexedPrev.get(2).size() - 1));
+    Assert.assertEquals(100, indexedPrev.get(2).size());
+
+    Assert.assertTrue(LogFileIndex.getIndexLocation(file).delete());
+    Assert.assertNull(LogFileIndex.read(file));
+    for (int i = 0; i < times.length; i++) {
+      long time = times[i];
+      Assert.assertEquals(readNext(file, BASE_TIME + time, BASE_TIME + time + 100), indexedNext.get(i));
+      Assert.assertEquals(readPrev(file, BASE_TIME + time, 100), indexedPrev.get(i));
+    }
+  }
+
+  @Test
+  public void testFilteredReads() throws Exception {
+    Location file = new LocalLocationFactory(TMP_FOLDER.newFolder()).create("1000.avro");
+    writeLogFile(file);
+
+    LogFileIndex index = LogFileIndex.read(file);
+    Assert.assertNotNull(index);
+    int warnEntries = 0;
+    int userEntries = 0;
+    for (int i = 0; i < index.size(); i++) {
+      Assert.assertTrue(index.mayMatch(i, Filter.EMPTY_FILTER));
+      Assert.assertTrue(index.mayMatch(i, FilterParser.parse("loglevel=INFO")));
+      // levels are indexed exactly
+      if (index.mayMatch(i, FilterParser.parse("loglevel=WARN"))) {
+        warnEntries++;
+        Assert.assertEquals(Level.WARN_INT, index.getMaxLevel(i));
+        Assert.assertTrue(index.mayMatch(i, FilterParser.parse("message=connection AND message=timeout")));
+        Assert.assertTrue(index.mayMatch(i, FilterParser.parse("message='Connection Timeout'")));
+      }
+      if (index.mayMatch(i, FilterParser.parse("MDC:user=alice"))) {
+        userEntries++;
+      }
+      Assert.assertTrue(index.mayMatch(i, FilterParser.parse("MDC:user=alice OR MDC:user=bob")));
+    }
+    Assert.assertEquals(1, warnEntries);
+    Assert.assertTrue(userEntries < index.size());
+
+    String[] filters = {
+      "loglevel=WARN", "MDC:user=alice", "MDC:user=bob", "message=timeout", "message=1500", "message=unknown",
+      "loglevel=WARN AND message=timeout", "message=timeout OR message=4000", "MDC:user=bob AND message=100"
+    };
+    List<List<String>> indexedNext = Lists.newArrayList();
+    List<List<String>> indexedPrev = Lists.newArrayList();
+    for (String filter : filters) {
+      indexedNext.add(readNext(file, FilterParser.parse(filter), BASE_TIME, BASE_TIME + EVENTS));
+      indexedPrev.add(readPrev(file, FilterParser.parse(filter), BASE_TIME + EVENTS, EVENTS));
+    }
+    Assert.assertEquals(WARN_END - WARN_START, indexedNext.get(0).size());
+    Assert.assertEquals(MDC_CHANGE, indexedNext.get(1).size());
+    Assert.assertEquals(EVENTS - MDC_CHANGE, indexedPrev.get(2).size());
+    Assert.assertEquals(TIMEOUT_END - TIMEOUT_START + WARN_END - WARN_START, indexedPrev.get(3).size());
+    Assert.assertEquals(Arrays.asList("1500"), indexedNext.get(4));
+    Assert.assertTrue(indexedNext.get(5).isEmpty());
+
+    // reads through the index must return the same events as scanning the file
+    Assert.assertTrue(LogFileIndex.getIndexLocation(file).delete());
+    for (int i = 0; i < filters.length; i++) {
+      Filter filter = FilterParser.parse(filters[i]);
+      Assert.assertEquals(readNext(file, filter, BASE_TIME, BASE_TIME + EVENTS), indexedNext.get(i));
+      Assert.assertEquals(readPrev(file, filter, BASE_TIME + EVENTS, EVENTS), indexedPrev.get(i));
+    }
+  }
+
+  @Test
+  public void testPartialIndex() throws Exception {
+    Location file = new LocalLocationFactory(TMP_FOLDER.newFolder()).create("1000.avro");
+    writeLogFile(file);
+
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    try (InputStream is = LogFileIndex.getIndexLocation(file).getInputStream()) {
+      ByteStreams.copy(is, os);
+    }
+    byte[] bytes = os.toByteArray();
+    LogFileIndex index = LogFileIndex.read(new ByteArrayInputStream(bytes), file.length());
+    Assert.assertNotNull(index);
+    int size = index.size();
+
+    // an entry that is partially written is ignored
+    index = LogFileIndex.read(new ByteArrayInputStream(bytes, 0, bytes.length - 3), file.length());
+    Assert.assertNotNull(index);
+    Assert.assertEquals(size - 1, index.size());
+
+    // entries beyond the end of the log file are ignored
+    index = LogFileIndex.read(new ByteArrayInputStream(bytes), index.getEndPosition(size - 2));
+    Assert.assertNotNull(index);
+    Assert.assertEquals(size - 1, index.size());
+
+    // invalid index
+    Assert.assertNull(LogFileIndex.read(new ByteArrayInputStream(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 }),
+                                        file.length()));
+    Assert.assertNull(LogFileIndex.read(new ByteArrayInputStream(new byte[0]), file.length()));
+  }
+
+  /**
+   * Writes a log file the same way as the log saver does, with small Avro blocks and periodic flushes.
+   */
+  private void writeLogFile(Location file) throws IOException {
+    DataFileWriter<GenericRecord> dataFileWriter =
+      new DataFileWriter<>(new GenericDatumWriter<GenericRecord>(LogSchema.LoggingEvent.SCHEMA));
+    dataFileWriter.create(LogSchema.LoggingEvent.SCHEMA, file.getOutputStream());
+    dataFileWriter.setSyncInterval(1024);
+    LogFileIndex.Writer indexWriter = new LogFileIndex.Writer(file, dataFileWriter.sync());
+    try {
+      Logger logger = (Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+      for (int i = 0; i < EVENTS; i++) {
+        Level level = i >= WARN_START && i < WARN_END ? Level.WARN : Level.INFO;
+        String message = String.valueOf(i);
+        if ((i >= WARN_START && i < WARN_END) || (i >= TIMEOUT_START && i < TIMEOUT_END)) {
+          message += " connection timeout";
+        }
+        LoggingEvent event = new LoggingEvent("co.cask.Test", logger, level, message, null, null);
+        event.setTimeStamp(BASE_TIME + i);
+        event.setMDCPropertyMap(ImmutableMap.of("MDC:user", i < MDC_CHANGE ? "alice" : "bob"));
+        GenericRecord record = co.cask.cdap.logging.serialize.LoggingEvent.encode(LogSchema.LoggingEvent.SCHEMA,
+                                                                                  event);
+        dataFileWriter.append(record);
+        if (indexWriter.append(record)) {
+          indexWriter.sync(dataFileWriter.sync());
+        }
+        if ((i + 1) % FLUSH_INTERVAL == 0) {
+          long syncPosition = dataFileWriter.sync();
+          dataFileWriter.flush();
+          indexWriter.sync(syncPosition);
+          indexWriter.flush();
+        }
+      }
+    } finally {
+      dataFileWriter.close();
+      indexWriter.close();
+    }
+  }
+
+  private List<String> readNext(Location file, long fromTimeMs, long toTimeMs) {
+    return readNext(file, Filter.EMPTY_FILTER, fromTimeMs, toTimeMs);
+  }
+
+  private List<String> readNext(Location file, Filter filter, long fromTimeMs, long toTimeMs) {
+    List<String> messages = Lists.newArrayList();
+    AvroFileReader reader = new AvroFileReader(LogSchema.LoggingEvent.SCHEMA);
+    try (CloseableIterator<LogEvent> iterator = reader.readLog(file, filter, fromTimeMs, toTimeMs,
+                                                               Integer.MAX_VALUE, NamespaceId.DEFAULT,
+                                                               IMPERSONATOR)) {
+      while (iterator.hasNext()) {
+        messages.add(iterator.next().getLoggingEvent().getFormattedMessage());
+      }
+    }
+    return messages;
+  }
+
+  private List<String> readPrev(Location file, long fromTimeMs, int maxEvents) throws IOException {
+    return readPrev(file, Filter.EMPTY_FILTER, fromTimeMs, maxEvents);
+  }
+
+  private List<String> readPrev(Location file, Filter filter, long fromTimeMs, int maxEvents) throws IOException {
+    List<String> messages = Lists.newArrayList();
+    AvroFileReader reader = new AvroFileReader(LogSchema.LoggingEvent.SCHEMA);
+    for (LogEvent event : reader.readLogPrev(file, filter, fromTimeMs, maxEvents,
+                                             NamespaceId.DEFAULT, IMPERSONATOR)) {
+      messages.add(event.getLoggingEvent().getFormattedMessage());
+    }
+    return messages;
+  }
+}
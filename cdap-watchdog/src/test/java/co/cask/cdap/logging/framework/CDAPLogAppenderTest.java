@@ -18,6 +18,7 @@ package co.cask.cdap.logging.framework;
 
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.classic.spi.LoggingEvent;
 import co.cask.cdap.api.dataset.lib.CloseableIterator;
 import co.cask.cdap.api.metrics.MetricsCollectionService;
@@ -37,8 +38,10 @@ import co.cask.cdap.data.runtime.SystemDatasetRuntimeModule;
 import co.cask.cdap.logging.LoggingConfiguration;
 import co.cask.cdap.logging.context.FlowletLoggingContext;
 import co.cask.cdap.logging.filter.Filter;
+import co.cask.cdap.logging.format.LogArchive;
 import co.cask.cdap.logging.guice.LoggingModules;
 import co.cask.cdap.logging.read.LogEvent;
+import co.cask.cdap.logging.serialize.LogSchema;
 import co.cask.cdap.logging.write.FileMetaDataManager;
 import co.cask.cdap.logging.write.LogLocation;
 import co.cask.cdap.proto.id.NamespaceId;
@@ -55,6 +58,7 @@ import org.apache.hadoop.hbase.HBaseConfiguration;
 import org.apache.tephra.TransactionManager;
 import org.apache.tephra.runtime.TransactionModules;
 import org.apache.twill.filesystem.Location;
+import org.apache.twill.filesystem.LocationFactory;
 import org.junit.AfterClass;
 import org.junit.Assert;
 import org.junit.BeforeClass;
@@ -63,6 +67,7 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
@@ -228,6 +233,218 @@ public class CDAPLogAppenderTest {
     }
   }
 
+  @Test
+  public void testCompaction() throws Exception {
+    FileMetaDataManager fileMetaDataManager = injector.getInstance(FileMetaDataManager.class);
+    CDAPLogAppender cdapLogAppender = new CDAPLogAppender();
+    injector.injectMembers(cdapLogAppender);
+    cdapLogAppender.setSyncIntervalBytes(1024);
+    // a new file for every event
+    cdapLogAppender.setMaxFileLifetimeMs(0);
+    cdapLogAppender.setCompactionIntervalMs(TimeUnit.DAYS.toMillis(1));
+    cdapLogAppender.start();
+
+    Map<String, String> properties = new HashMap<>();
+    properties.put(NamespaceLoggingContext.TAG_NAMESPACE_ID, "testCompaction");
+    properties.put(ApplicationLoggingContext.TAG_APPLICATION_ID, "testApp");
+    properties.put(FlowletLoggingContext.TAG_FLOW_ID, "testFlow");
+    properties.put(FlowletLoggingContext.TAG_FLOWLET_ID, "testFlowet");
+
+    long timestamp = System.currentTimeMillis();
+    for (int i = 0; i < 5; i++) {
+      LoggingEvent event = getLoggingEvent("co.cask.Test",
+                                           (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(
+                                             Logger.ROOT_LOGGER_NAME), Level.INFO, "test message " + i, properties);
+      event.setTimeStamp(timestamp + i);
+      cdapLogAppender.doAppend(event);
+      TimeUnit.MILLISECONDS.sleep(2);
+    }
+    cdapLogAppender.stop();
+
+    try {
+      LogPathIdentifier identifier = cdapLogAppender.getLoggingPath(properties);
+      List<LogLocation> files = fileMetaDataManager.listFiles(identifier);
+      Assert.assertEquals(5, files.size());
+
+      // all files but the latest one are merged, and kept for the readers until the grace period has passed
+      LogFileCompactor compactor = cdapLogAppender.createCompactor();
+      Assert.assertEquals(4, compactor.compact(identifier));
+      compactor.deleteReplacedFiles(System.currentTimeMillis());
+      for (int i = 0; i < 4; i++) {
+        Assert.assertTrue(files.get(i).getLocation().exists());
+      }
+      compactor.deleteReplacedFiles(Long.MAX_VALUE);
+      for (int i = 0; i < 4; i++) {
+        Assert.assertFalse(files.get(i).getLocation().exists());
+      }
+      List<LogLocation> compacted = fileMetaDataManager.listFiles(identifier);
+      Assert.assertEquals(2, compacted.size());
+      Assert.assertEquals(timestamp, compacted.get(0).getEventTimeMs());
+      Assert.assertEquals(files.get(4).getLocation(), compacted.get(1).getLocation());
+
+      int count = 0;
+      for (LogLocation logLocation : compacted) {
+        try (CloseableIterator<LogEvent> iterator =
+               logLocation.readLog(Filter.EMPTY_FILTER, 0, Long.MAX_VALUE, Integer.MAX_VALUE)) {
+          while (iterator.hasNext()) {
+            ILoggingEvent event = iterator.next().getLoggingEvent();
+            Assert.assertEquals("test message " + count, event.getMessage());
+            Assert.assertEquals(timestamp + count, event.getTimeStamp());
+            count++;
+          }
+        }
+      }
+      Assert.assertEquals(5, count);
+
+      // nothing left to merge
+      Assert.assertEquals(0, compactor.compact(identifier));
+
+      // all files but the latest one are archived
+      Assert.assertEquals(1, compactor.archive(identifier, Long.MAX_VALUE));
+      Assert.assertTrue(compacted.get(0).getLocation().exists());
+      compactor.deleteReplacedFiles(Long.MAX_VALUE);
+      Assert.assertFalse(compacted.get(0).getLocation().exists());
+      List<LogLocation> archived = fileMetaDataManager.listFiles(identifier);
+      Assert.assertEquals(2, archived.size());
+      Assert.assertTrue(LogArchive.isArchive(archived.get(0).getLocation()));
+      Assert.assertEquals(files.get(4).getLocation(), archived.get(1).getLocation());
+
+      count = 0;
+      for (LogLocation logLocation : archived) {
+        try (CloseableIterator<LogEvent> iterator =
+               logLocation.readLog(Filter.EMPTY_FILTER, 0, Long.MAX_VALUE, Integer.MAX_VALUE)) {
+          while (iterator.hasNext()) {
+            Assert.assertEquals("test message " + count, iterator.next().getLoggingEvent().getMessage());
+            count++;
+          }
+        }
+      }
+      Assert.assertEquals(5, count);
+      Assert.assertEquals(0, compactor.archive(identifier, Long.MAX_VALUE));
+    } finally {
+      fileMetaDataManager.cleanMetaData(Long.MAX_VALUE, new FileMetaDataManager.DeleteCallback() {
+        @Override
+        public void handle(NamespaceId namespaceId, Location location, String namespacedLogBaseDir) {
+          // no-op
+        }
+      });
+    }
+  }
+
+  @Test
+  public void testCompactionWithLateEvents() throws Exception {
+    FileMetaDataManager fileMetaDataManager = injector.getInstance(FileMetaDataManager.class);
+    CDAPLogAppender cdapLogAppender = new CDAPLogAppender();
+    injector.injectMembers(cdapLogAppender);
+    cdapLogAppender.setSyncIntervalBytes(1024);
+    cdapLogAppender.setMaxFileLifetimeMs(0);
+    cdapLogAppender.setCompactionIntervalMs(TimeUnit.DAYS.toMillis(1));
+    cdapLogAppender.setCompactionDeleteGraceMs(0);
+    cdapLogAppender.start();
+
+    Map<String, String> properties = new HashMap<>();
+    properties.put(NamespaceLoggingContext.TAG_NAMESPACE_ID, "testLateEvents");
+    properties.put(ApplicationLoggingContext.TAG_APPLICATION_ID, "testApp");
+    properties.put(FlowletLoggingContext.TAG_FLOW_ID, "testFlow");
+    properties.put(FlowletLoggingContext.TAG_FLOWLET_ID, "testFlowet");
+
+    // the file created last has the earliest events
+    long timestamp = System.currentTimeMillis();
+    for (long eventTime : new long[] { timestamp + 10, timestamp + 20, timestamp }) {
+      LoggingEvent event = getLoggingEvent("co.cask.Test",
+                                           (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(
+                                             Logger.ROOT_LOGGER_NAME), Level.INFO, "test message", properties);
+      event.setTimeStamp(eventTime);
+      cdapLogAppender.doAppend(event);
+      TimeUnit.MILLISECONDS.sleep(2);
+    }
+    cdapLogAppender.stop();
+
+    try {
+      LogPathIdentifier identifier = cdapLogAppender.getLoggingPath(properties);
+      List<LogLocation> files = fileMetaDataManager.listFiles(identifier);
+      Assert.assertEquals(3, files.size());
+      Assert.assertEquals(timestamp, files.get(0).getEventTimeMs());
+
+      // the logging contexts are listed from the meta data, and the file created last is not merged
+      LogFileCompactor compactor = cdapLogAppender.createCompactor();
+      compactor.run();
+      List<LogLocation> compacted = fileMetaDataManager.listFiles(identifier);
+      Assert.assertEquals(2, compacted.size());
+      Assert.assertEquals(files.get(0).getLocation(), compacted.get(0).getLocation());
+      Assert.assertEquals(timestamp + 10, compacted.get(1).getEventTimeMs());
+
+      // the merged files are deleted by the next run
+      Assert.assertTrue(files.get(1).getLocation().exists());
+      Assert.assertTrue(files.get(2).getLocation().exists());
+      compactor.run();
+      Assert.assertFalse(files.get(1).getLocation().exists());
+      Assert.assertFalse(files.get(2).getLocation().exists());
+    } finally {
+      fileMetaDataManager.cleanMetaData(Long.MAX_VALUE, new FileMetaDataManager.DeleteCallback() {
+        @Override
+        public void handle(NamespaceId namespaceId, Location location, String namespacedLogBaseDir) {
+          // no-op
+        }
+      });
+    }
+  }
+
+  @Test
+  public void testCompactionWithOverlappingFiles() throws Exception {
+    FileMetaDataManager fileMetaDataManager = injector.getInstance(FileMetaDataManager.class);
+    CDAPLogAppender cdapLogAppender = new CDAPLogAppender();
+    injector.injectMembers(cdapLogAppender);
+    cdapLogAppender.setSyncIntervalBytes(1024);
+    cdapLogAppender.setCompactionIntervalMs(TimeUnit.DAYS.toMillis(1));
+
+    LogPathIdentifier identifier = new LogPathIdentifier("testOverlappingFiles", "testApp", "testFlow");
+    Location directory = injector.getInstance(LocationFactory.class).create("testOverlappingFiles");
+    Assert.assertTrue(directory.mkdirs());
+
+    // the second file has events in between the events of the first file, as after a replay
+    long timestamp = System.currentTimeMillis();
+    long[][] fileEventTimes = { { timestamp, timestamp + 30 }, { timestamp + 20, timestamp + 40 }, { timestamp + 50 } };
+    for (int i = 0; i < fileEventTimes.length; i++) {
+      Location location = directory.append(i + ".avro");
+      LogFileOutputStream output = new LogFileOutputStream(location, LogSchema.LoggingEvent.SCHEMA, 1024,
+                                                           timestamp + i, new Closeable() {
+        @Override
+        public void close() throws IOException {
+          // no-op
+        }
+      });
+      try {
+        for (long eventTime : fileEventTimes[i]) {
+          LoggingEvent event = getLoggingEvent("co.cask.Test",
+                                               (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(
+                                                 Logger.ROOT_LOGGER_NAME), Level.INFO, "test message",
+                                               new HashMap<String, String>());
+          event.setTimeStamp(eventTime);
+          output.append(event);
+        }
+      } finally {
+        output.close();
+      }
+      fileMetaDataManager.writeMetaData(identifier, fileEventTimes[i][0], timestamp + i, location);
+    }
+
+    try {
+      Assert.assertEquals(3, fileMetaDataManager.listFiles(identifier).size());
+
+      // the overlapping files are not merged, as the events of the merged file would be out of order
+      Assert.assertEquals(0, cdapLogAppender.createCompactor().compact(identifier));
+      Assert.assertEquals(3, fileMetaDataManager.listFiles(identifier).size());
+    } finally {
+      fileMetaDataManager.cleanMetaData(Long.MAX_VALUE, new FileMetaDataManager.DeleteCallback() {
+        @Override
+        public void handle(NamespaceId namespaceId, Location location, String namespacedLogBaseDir) {
+          // no-op
+        }
+      });
+    }
+  }
+
   private void assertLogEventDetails(LoggingEvent expectedLoggingEvent, LogLocation logLocation) throws IOException {
     Assert.assertEquals(LogLocation.VERSION_1, logLocation.getFrameworkVersion());
     Assert.assertTrue(logLocation.getLocation().exists());
@@ -0,0 +1,164 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.cdap.logging.gateway.handlers;
+
+import co.cask.cdap.api.dataset.lib.CloseableIterator;
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.logging.LoggingContext;
+import co.cask.cdap.common.utils.Tasks;
+import co.cask.cdap.logging.LoggingConfiguration;
+import co.cask.cdap.logging.context.GenericLoggingContext;
+import co.cask.cdap.logging.filter.Filter;
+import co.cask.cdap.logging.read.Callback;
+import co.cask.cdap.logging.read.LogEvent;
+import co.cask.cdap.logging.read.LogReader;
+import co.cask.cdap.logging.read.LogTailer;
+import co.cask.cdap.logging.read.ReadRange;
+import co.cask.http.ChunkResponder;
+import co.cask.http.HttpResponder;
+import co.cask.http.InternalHttpResponder;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Multimap;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the server-sent events of {@link AbstractJSONCallback}.
+ */
+public class AbstractJSONCallbackTest {
+
+  @Test
+  public void testHeartbeat() throws Exception {
+    final CConfiguration cConf = CConfiguration.create();
+    cConf.setLong(LoggingConfiguration.LOG_TAIL_POLL_INTERVAL_MS, 10);
+    LogTailer tailer = Guice.createInjector(new AbstractModule() {
+      @Override
+      protected void configure() {
+        bind(CConfiguration.class).toInstance(cConf);
+        bind(LogReader.class).toInstance(new EmptyLogReader());
+      }
+    }).getInstance(LogTailer.class);
+
+    // The tailer flushes the callback after every poll, more often than the heartbeat interval
+    final TestResponder responder = new TestResponder();
+    tailer.tail(new GenericLoggingContext("default", "app", "entity"), Filter.EMPTY_FILTER,
+                new TestJSONCallback(responder, 50));
+
+    // An idle stream keeps receiving heartbeats
+    Tasks.waitFor(true, new Callable<Boolean>() {
+      @Override
+      public Boolean call() throws Exception {
+        return responder.getHeartbeats() >= 3;
+      }
+    }, 5, TimeUnit.SECONDS, 10, TimeUnit.MILLISECONDS);
+
+    // A heartbeat to a disconnected client fails, which cancels the subscription and closes the response
+    responder.disconnected = true;
+    Tasks.waitFor(true, new Callable<Boolean>() {
+      @Override
+      public Boolean call() throws Exception {
+        return responder.closed;
+      }
+    }, 5, TimeUnit.SECONDS, 10, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * An event stream callback that sends the message of the log events.
+   */
+  private static final class TestJSONCallback extends AbstractJSONCallback {
+
+    TestJSONCallback(HttpResponder responder, long heartbeatIntervalMs) {
+      super(responder, true, heartbeatIntervalMs);
+    }
+
+    @Override
+    protected Object encodeSend(LogEvent logEvent) {
+      return logEvent.getLoggingEvent().getMessage();
+    }
+  }
+
+  /**
+   * A {@link LogReader} without any log events.
+   */
+  private static final class EmptyLogReader implements LogReader {
+
+    @Override
+    public void getLogNext(LoggingContext loggingContext, ReadRange readRange, int maxEvents, Filter filter,
+                           Callback callback) {
+      callback.init();
+      callback.close();
+    }
+
+    @Override
+    public void getLogPrev(LoggingContext loggingContext, ReadRange readRange, int maxEvents, Filter filter,
+                           Callback callback) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public CloseableIterator<LogEvent> getLog(LoggingContext loggingContext, long fromTimeMs, long toTimeMs,
+                                              Filter filter) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  /**
+   * A {@link HttpResponder} that records the chunks sent, and fails to send once the client is disconnected.
+   */
+  private static final class TestResponder extends InternalHttpResponder {
+
+    private final StringBuffer content = new StringBuffer();
+    private volatile boolean disconnected;
+    private volatile boolean closed;
+
+    @Override
+    public ChunkResponder sendChunkStart(HttpResponseStatus status, Multimap<String, String> headers) {
+      return new ChunkResponder() {
+        @Override
+        public void sendChunk(ByteBuffer chunk) throws IOException {
+          if (disconnected) {
+            throw new IOException("Connection closed");
+          }
+          content.append(Charsets.UTF_8.decode(chunk));
+        }
+
+        @Override
+        public void sendChunk(ChannelBuffer chunk) throws IOException {
+          sendChunk(chunk.toByteBuffer());
+        }
+
+        @Override
+        public void close() throws IOException {
+          closed = true;
+        }
+      };
+    }
+
+    int getHeartbeats() {
+      return content.toString().split(":\n\n", -1).length - 1;
+    }
+  }
+}
@@ -33,6 +33,8 @@ import co.cask.cdap.logging.save.CheckpointManager;
 import co.cask.cdap.proto.id.NamespaceId;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Service;
 import org.apache.twill.kafka.client.Compression;
 import org.apache.twill.kafka.client.KafkaPublisher;
 import org.junit.Assert;
@@ -138,6 +140,162 @@ public class KafkaLogProcessorPipelineTest {
     pipeline.stopAndWait();
   }
 
+  @Test
+  public void testMultiProcessors() throws Exception {
+    String topic = "testMultiProcessors";
+    LoggerContext loggerContext = createLoggerContext("WARN", ImmutableMap.of("test.logger", "INFO"),
+                                                      TestAppender.class.getName());
+    final TestAppender appender = (TestAppender) loggerContext.getLogger(Logger.ROOT_LOGGER_NAME).getAppender("Test");
+    TestCheckpointManager checkpointManager = new TestCheckpointManager();
+    KafkaPipelineConfig config = new KafkaPipelineConfig(topic, ImmutableSet.of(0, 1, 2), 1048576, 300,
+                                                         1048576, 500, 2);
+    KAFKA_TESTER.createTopic(topic, 3);
+
+    KafkaLogProcessorPipeline pipeline = new KafkaLogProcessorPipeline(new EffectiveLevelProvider(loggerContext, 10),
+                                                                       appender, checkpointManager,
+                                                                       KAFKA_TESTER.getBrokerService(), config);
+
+    // Publish events of multiple logging contexts, with the events of each context in reverse time order.
+    // They are published before starting the pipeline, so that all events of a partition are fetched at once.
+    long now = System.currentTimeMillis();
+    int contexts = 6;
+    for (int i = 0; i < contexts; i++) {
+      List<ILoggingEvent> events = new ArrayList<>();
+      for (int j = 9; j >= 0; j--) {
+        events.add(createLoggingEvent("test.logger", Level.INFO, i + ":" + j, now - 1000 + j));
+      }
+      publishLog(topic, events, new GenericLoggingContext(NamespaceId.DEFAULT.getNamespace(), "app" + i, "entity"));
+    }
+    pipeline.startAndWait();
+
+    Tasks.waitFor(contexts * 10, new Callable<Integer>() {
+      @Override
+      public Integer call() throws Exception {
+        return appender.getEvents().size();
+      }
+    }, 10, TimeUnit.SECONDS, 100, TimeUnit.MILLISECONDS);
+
+    // Events of each logging context are sorted
+    int[] next = new int[contexts];
+    for (ILoggingEvent event : appender.getEvents()) {
+      String[] parts = event.getMessage().split(":");
+      int context = Integer.parseInt(parts[0]);
+      Assert.assertEquals(next[context]++, Integer.parseInt(parts[1]));
+    }
+
+    pipeline.stopAndWait();
+  }
+
+  @Test
+  public void testMultiProcessorsQueueSize() throws Exception {
+    String topic = "testMultiProcessorsQueueSize";
+    LoggerContext loggerContext = createLoggerContext("WARN", ImmutableMap.of("test.logger", "INFO"),
+                                                      TestAppender.class.getName());
+    final TestAppender appender = (TestAppender) loggerContext.getLogger(Logger.ROOT_LOGGER_NAME).getAppender("Test");
+
+    // Events of one logging context, which are all published to the same partition, 10 seconds in the future
+    LoggingContext context = new GenericLoggingContext(NamespaceId.DEFAULT.getNamespace(), "app", "entity");
+    LoggingEventSerializer serializer = new LoggingEventSerializer();
+    List<ILoggingEvent> events = new ArrayList<>();
+    long eventsSize = 0;
+    long now = System.currentTimeMillis();
+    for (int i = 0; i < 100; i++) {
+      ILoggingEvent event = createLoggingEvent("test.logger", Level.INFO, "Event " + i, now + 10000);
+      events.add(event);
+      eventsSize += serializer.toBytes(event, context).length;
+    }
+
+    // The pipeline queue can hold all the events, but the queue of each of the two processors can't, hence the
+    // events are appended without waiting for their time
+    KafkaPipelineConfig config = new KafkaPipelineConfig(topic, ImmutableSet.of(0, 1), eventsSize * 3 / 2, 300,
+                                                         1048576, 500, 2);
+    KAFKA_TESTER.createTopic(topic, 2);
+    publishLog(topic, events, context);
+
+    KafkaLogProcessorPipeline pipeline = new KafkaLogProcessorPipeline(new EffectiveLevelProvider(loggerContext, 10),
+                                                                       appender, new TestCheckpointManager(),
+                                                                       KAFKA_TESTER.getBrokerService(), config);
+    pipeline.startAndWait();
+    Tasks.waitFor(true, new Callable<Boolean>() {
+      @Override
+      public Boolean call() throws Exception {
+        return !appender.getEvents().isEmpty();
+      }
+    }, 5, TimeUnit.SECONDS, 100, TimeUnit.MILLISECONDS);
+    pipeline.stopAndWait();
+  }
+
+  @Test
+  public void testProcessorFailure() throws Exception {
+    String topic = "testProcessorFailure";
+    LoggerContext loggerContext = createLoggerContext("WARN", ImmutableMap.of("test.logger", "INFO"),
+                                                      FailingAppender.class.getName());
+    FailingAppender appender = (FailingAppender) loggerContext.getLogger(Logger.ROOT_LOGGER_NAME).getAppender("Test");
+    KafkaPipelineConfig config = new KafkaPipelineConfig(topic, ImmutableSet.of(0, 1, 2), 1048576, 300,
+                                                         1048576, 500, 2);
+    KAFKA_TESTER.createTopic(topic, 3);
+
+    final KafkaLogProcessorPipeline pipeline = new KafkaLogProcessorPipeline(
+      new EffectiveLevelProvider(loggerContext, 10), appender, new TestCheckpointManager(),
+      KAFKA_TESTER.getBrokerService(), config);
+
+    // Only the processor of the partition of one logging context fails, while the other one keeps running
+    long now = System.currentTimeMillis();
+    publishLog(topic, ImmutableList.of(createLoggingEvent("test.logger", Level.INFO, FailingAppender.FAIL, now - 1000)),
+               new GenericLoggingContext(NamespaceId.DEFAULT.getNamespace(), "failApp", "entity"));
+    pipeline.startAndWait();
+
+    // The failure of a processor fails the pipeline
+    Tasks.waitFor(Service.State.FAILED, new Callable<Service.State>() {
+      @Override
+      public Service.State call() throws Exception {
+        return pipeline.state();
+      }
+    }, 10, TimeUnit.SECONDS, 100, TimeUnit.MILLISECONDS);
+    Assert.assertFalse(appender.isStarted());
+  }
+
+  @Test
+  public void testCompressedMessages() throws Exception {
+    String topic = "testCompressedMessages";
+    LoggerContext loggerContext = createLoggerContext("WARN", ImmutableMap.of("test.logger", "INFO"),
+                                                      TestAppender.class.getName());
+    final TestAppender appender = (TestAppender) loggerContext.getLogger(Logger.ROOT_LOGGER_NAME).getAppender("Test");
+    KafkaPipelineConfig config = new KafkaPipelineConfig(topic, Collections.singleton(0), 1024, 300, 1048576, 500);
+    KAFKA_TESTER.createTopic(topic, 1);
+
+    // Publish the events as one compressed message set, and start processing from the middle of it
+    long now = System.currentTimeMillis();
+    List<ILoggingEvent> events = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      events.add(createLoggingEvent("test.logger", Level.INFO, Integer.toString(i), now - 1000 + i));
+    }
+    publishLog(topic, events, new GenericLoggingContext(NamespaceId.DEFAULT.getNamespace(), "app", "entity"),
+               Compression.SNAPPY);
+
+    KafkaLogProcessorPipeline pipeline = new KafkaLogProcessorPipeline(
+      new EffectiveLevelProvider(loggerContext, 10), appender,
+      new TestCheckpointManager(ImmutableMap.of(0, new Checkpoint(2, now - 1000))),
+      KAFKA_TESTER.getBrokerService(), config);
+    pipeline.startAndWait();
+
+    Tasks.waitFor(3, new Callable<Integer>() {
+      @Override
+      public Integer call() throws Exception {
+        return appender.getEvents().size();
+      }
+    }, 5, TimeUnit.SECONDS, 100, TimeUnit.MILLISECONDS);
+
+    // The messages before the checkpoint are not processed again
+    List<String> messages = new ArrayList<>();
+    for (ILoggingEvent event : appender.getEvents()) {
+      messages.add(event.getMessage());
+    }
+    Assert.assertEquals(ImmutableList.of("2", "3", "4"), messages);
+
+    pipeline.stopAndWait();
+  }
+
   /**
    * Creates a new {@link ILoggingEvent} with the given information.
    */
@@ -153,18 +311,31 @@ public class KafkaLogProcessorPipelineTest {
   /**
    * Publishes multiple log events.
    */
-  private void publishLog(String topic, Iterable<ILoggingEvent> events) {
-    LoggingContext context = new GenericLoggingContext(NamespaceId.DEFAULT.getNamespace(), "app", "entity");
+  private void publishLog(String topic, Iterable<ILoggingEvent> events) throws Exception {
+    publishLog(topic, events, new GenericLoggingContext(NamespaceId.DEFAULT.getNamespace(), "app", "entity"));
+  }
 
+  /**
+   * Publishes multiple log events of the given logging context.
+   */
+  private void publishLog(String topic, Iterable<ILoggingEvent> events, LoggingContext context) throws Exception {
+    publishLog(topic, events, context, Compression.NONE);
+  }
+
+  /**
+   * Publishes multiple log events of the given logging context with the given compression.
+   */
+  private void publishLog(String topic, Iterable<ILoggingEvent> events, LoggingContext context,
+                          Compression compression) throws Exception {
     KafkaPublisher.Preparer preparer = KAFKA_TESTER.getKafkaClient()
-      .getPublisher(KafkaPublisher.Ack.LEADER_RECEIVED, Compression.NONE)
+      .getPublisher(KafkaPublisher.Ack.LEADER_RECEIVED, compression)
       .prepare(topic);
 
     LoggingEventSerializer serializer = new LoggingEventSerializer();
     for (ILoggingEvent event : events) {
       preparer.add(ByteBuffer.wrap(serializer.toBytes(event, context)), context.getLogPartition());
     }
-    preparer.send();
+    preparer.send().get();
   }
 
   private LoggerContext createLoggerContext(String rootLevel,
@@ -230,8 +401,33 @@ public class KafkaLogProcessorPipelineTest {
     }
   }
 
+  /**
+   * Appender that fails with an {@link Error} on the events with the {@link #FAIL} message.
+   */
+  public static final class FailingAppender extends AppenderBase<ILoggingEvent> {
+
+    static final String FAIL = "fail";
+
+    @Override
+    protected void append(ILoggingEvent event) {
+      if (FAIL.equals(event.getMessage())) {
+        throw new Error("Failed to append event");
+      }
+    }
+  }
+
   private static final class TestCheckpointManager implements CheckpointManager {
 
+    private final Map<Integer, Checkpoint> checkpoints;
+
+    TestCheckpointManager() {
+      this(Collections.<Integer, Checkpoint>emptyMap());
+    }
+
+    TestCheckpointManager(Map<Integer, Checkpoint> checkpoints) {
+      this.checkpoints = checkpoints;
+    }
+
     @Override
     public void saveCheckpoints(Map<Integer, ? extends Checkpoint> checkpoints) throws Exception {
 
@@ -239,7 +435,7 @@ public class KafkaLogProcessorPipelineTest {
 
     @Override
     public Map<Integer, Checkpoint> getCheckpoint(Set<Integer> partitions) throws Exception {
-      return Collections.emptyMap();
+      return checkpoints;
     }
 
     @Override
@@ -0,0 +1,188 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.logging.read;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import co.cask.cdap.api.dataset.lib.CloseableIterator;
+import co.cask.cdap.common.logging.LoggingContext;
+import co.cask.cdap.common.utils.Tasks;
+import co.cask.cdap.logging.context.GenericLoggingContext;
+import co.cask.cdap.logging.filter.Filter;
+import co.cask.cdap.logging.filter.LogLevelExpression;
+import org.apache.twill.common.Cancellable;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for {@link LogTailer}.
+ */
+public class LogTailerTest {
+
+  @Test
+  public void testTail() throws Exception {
+    TestLogReader logReader = new TestLogReader();
+    LogTailer tailer = new LogTailer(logReader, 10, 1);
+    LoggingContext loggingContext = new GenericLoggingContext("default", "app", "entity");
+
+    long now = System.currentTimeMillis();
+    // events written before subscribing are not sent
+    logReader.add(Level.INFO, "old", now - 1000);
+
+    final TestCallback all = new TestCallback();
+    final TestCallback warnings = new TestCallback();
+    Cancellable allSubscription = tailer.tail(loggingContext, Filter.EMPTY_FILTER, all);
+    tailer.tail(new GenericLoggingContext("default", "app", "entity"), new LogLevelExpression("WARN"), warnings);
+    Assert.assertTrue(all.initialized);
+    Assert.assertTrue(warnings.initialized);
+
+    logReader.add(Level.INFO, "0", now + 1000);
+    logReader.add(Level.WARN, "1", now + 1001);
+    logReader.add(Level.INFO, "2", now + 1002);
+
+    waitForCount(all, 3);
+    waitForCount(warnings, 1);
+    Assert.assertEquals("0", all.events.get(0).getLoggingEvent().getMessage());
+    Assert.assertEquals("2", all.events.get(2).getLoggingEvent().getMessage());
+    Assert.assertEquals("1", warnings.events.get(0).getLoggingEvent().getMessage());
+    Assert.assertTrue(all.flushes.get() > 0);
+
+    // a subscriber that fails to flush is cancelled, without affecting the others
+    warnings.failFlush = true;
+    Tasks.waitFor(true, new Callable<Boolean>() {
+      @Override
+      public Boolean call() throws Exception {
+        return warnings.closed;
+      }
+    }, 5, TimeUnit.SECONDS, 10, TimeUnit.MILLISECONDS);
+    logReader.add(Level.WARN, "3", now + 1003);
+    waitForCount(all, 4);
+    Assert.assertEquals(1, warnings.getCount());
+
+    // once the last subscriber is cancelled, the logs are no longer read
+    allSubscription.cancel();
+    Assert.assertTrue(all.closed);
+    TimeUnit.MILLISECONDS.sleep(50);
+    int reads = logReader.reads.get();
+    TimeUnit.MILLISECONDS.sleep(100);
+    Assert.assertEquals(reads, logReader.reads.get());
+  }
+
+  private void waitForCount(final TestCallback callback, int count) throws Exception {
+    Tasks.waitFor(count, new Callable<Integer>() {
+      @Override
+      public Integer call() throws Exception {
+        return callback.getCount();
+      }
+    }, 5, TimeUnit.SECONDS, 10, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * A {@link LogReader} of log events kept in memory.
+   */
+  private static final class TestLogReader implements LogReader {
+
+    private final List<LogEvent> events = new CopyOnWriteArrayList<>();
+    private final AtomicInteger reads = new AtomicInteger();
+
+    void add(Level level, String message, long timestamp) {
+      LoggingEvent event = new LoggingEvent();
+      event.setLevel(level);
+      event.setLoggerName("test.logger");
+      event.setMessage(message);
+      event.setTimeStamp(timestamp);
+      events.add(new LogEvent(event, new LogOffset(events.size(), timestamp)));
+    }
+
+    @Override
+    public void getLogNext(LoggingContext loggingContext, ReadRange readRange, int maxEvents, Filter filter,
+                           Callback callback) {
+      reads.incrementAndGet();
+      callback.init();
+      for (LogEvent event : events) {
+        if (callback.getCount() >= maxEvents) {
+          break;
+        }
+        if (event.getLoggingEvent().getTimeStamp() > readRange.getFromMillis()
+          && filter.match(event.getLoggingEvent())) {
+          callback.handle(event);
+        }
+      }
+      callback.close();
+    }
+
+    @Override
+    public void getLogPrev(LoggingContext loggingContext, ReadRange readRange, int maxEvents, Filter filter,
+                           Callback callback) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public CloseableIterator<LogEvent> getLog(LoggingContext loggingContext, long fromTimeMs, long toTimeMs,
+                                              Filter filter) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  /**
+   * A {@link Callback} that records the log events sent to it.
+   */
+  private static final class TestCallback implements Callback, Flushable {
+
+    private final List<LogEvent> events = new CopyOnWriteArrayList<>();
+    private final AtomicInteger flushes = new AtomicInteger();
+    private volatile boolean initialized;
+    private volatile boolean closed;
+    private volatile boolean failFlush;
+
+    @Override
+    public void init() {
+      initialized = true;
+    }
+
+    @Override
+    public void handle(LogEvent event) {
+      events.add(event);
+    }
+
+    @Override
+    public int getCount() {
+      return events.size();
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+
+    @Override
+    public void flush() throws IOException {
+      if (failFlush) {
+        throw new IOException("Connection closed");
+      }
+      flushes.incrementAndGet();
+    }
+  }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.logging.read;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import co.cask.cdap.api.dataset.lib.AbstractCloseableIterator;
+import co.cask.cdap.api.dataset.lib.CloseableIterator;
+import co.cask.cdap.logging.filter.Filter;
+import co.cask.cdap.logging.serialize.LogSchema;
+import co.cask.cdap.proto.id.NamespaceId;
+import co.cask.cdap.proto.id.NamespacedEntityId;
+import co.cask.cdap.security.impersonation.Impersonator;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.twill.filesystem.LocalLocationFactory;
+import org.apache.twill.filesystem.Location;
+import org.apache.twill.filesystem.LocationFactory;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Tests for {@link MergingLogFileIterator}.
+ */
+public class MergingLogFileIteratorTest {
+
+  @ClassRule
+  public static final TemporaryFolder TMP_FOLDER = new TemporaryFolder();
+
+  private static final Impersonator IMPERSONATOR = new Impersonator() {
+    @Override
+    public <T> T doAs(NamespacedEntityId entityId, Callable<T> callable) throws Exception {
+      return callable.call();
+    }
+
+    @Override
+    public UserGroupInformation getUGI(NamespacedEntityId entityId) throws IOException {
+      return UserGroupInformation.getCurrentUser();
+    }
+  };
+
+  private static ExecutorService executor;
+
+  @BeforeClass
+  public static void init() {
+    executor = Executors.newFixedThreadPool(2);
+  }
+
+  @AfterClass
+  public static void finish() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testMerge() throws Exception {
+    LocationFactory locationFactory = new LocalLocationFactory(TMP_FOLDER.newFolder());
+    List<Map.Entry<Long, Location>> files = Lists.newArrayList();
+    // three overlapping files with interleaved events, as written for concurrent program instances
+    for (int i = 0; i < 3; i++) {
+      files.add(writeLogFile(locationFactory.create(i + ".avro"), 1000 + i, 3, 100));
+    }
+    // an empty file, and files after the overlapping ones
+    files.add(writeLogFile(locationFactory.create("3.avro"), 1300, 1, 0));
+    files.add(writeLogFile(locationFactory.create("4.avro"), 1300, 1, 50));
+    files.add(writeLogFile(locationFactory.create("5.avro"), 1350, 2, 50));
+
+    List<Long> timestamps = read(files, 0, Long.MAX_VALUE, 3, 7);
+    Assert.assertEquals(400, timestamps.size());
+    for (int i = 0; i < 350; i++) {
+      Assert.assertEquals(1000L + i, (long) timestamps.get(i));
+    }
+    for (int i = 350; i < 400; i++) {
+      Assert.assertEquals(1350L + (i - 350) * 2, (long) timestamps.get(i));
+    }
+
+    // results don't depend on the parallelism and read ahead
+    Assert.assertEquals(timestamps, read(files, 0, Long.MAX_VALUE, 1, 1));
+    Assert.assertEquals(timestamps, read(files, 0, Long.MAX_VALUE, 10, 1000));
+
+    // time range is applied to every file
+    List<Long> range = read(files, 1100, 1200, 2, 5);
+    Assert.assertEquals(100, range.size());
+    Assert.assertEquals(1100L, (long) range.get(0));
+    Assert.assertEquals(1199L, (long) range.get(99));
+
+    Assert.assertTrue(read(Lists.<Map.Entry<Long, Location>>newArrayList(), 0, Long.MAX_VALUE, 2, 5).isEmpty());
+  }
+
+  @Test
+  public void testClose() throws Exception {
+    LocationFactory locationFactory = new LocalLocationFactory(TMP_FOLDER.newFolder());
+    List<Map.Entry<Long, Location>> files = Lists.newArrayList();
+    for (int i = 0; i < 5; i++) {
+      files.add(writeLogFile(locationFactory.create(i + ".avro"), 1000 + i * 100, 1, 100));
+    }
+
+    TrackingAvroFileReader reader = new TrackingAvroFileReader();
+    MergingLogFileIterator iterator = new MergingLogFileIterator(reader, files, Filter.EMPTY_FILTER, 0,
+                                                                 Long.MAX_VALUE, NamespaceId.DEFAULT, IMPERSONATOR,
+                                                                 executor, 2, 10);
+    for (int i = 0; i < 150; i++) {
+      Assert.assertEquals(1000L + i, iterator.next().getLoggingEvent().getTimeStamp());
+    }
+    // the first file is closed once all its events are returned, while the second one is still being read
+    Assert.assertTrue(reader.iterators.get(files.get(0).getValue()).closed);
+    Assert.assertFalse(reader.iterators.get(files.get(1).getValue()).closed);
+
+    // closing in the middle of the files closes the files being read ahead, and the next files are not opened
+    iterator.close();
+    Assert.assertFalse(reader.iterators.isEmpty());
+    for (TrackingIterator fileIterator : reader.iterators.values()) {
+      Assert.assertTrue(fileIterator.closed);
+    }
+    Assert.assertFalse(reader.iterators.containsKey(files.get(3).getValue()));
+    Assert.assertFalse(reader.iterators.containsKey(files.get(4).getValue()));
+  }
+
+  private List<Long> read(List<Map.Entry<Long, Location>> files, long fromTimeMs, long toTimeMs,
+                          int parallelism, int readAheadEvents) {
+    List<Long> timestamps = Lists.newArrayList();
+    try (CloseableIterator<LogEvent> iterator = createIterator(files, fromTimeMs, toTimeMs,
+                                                               parallelism, readAheadEvents)) {
+      while (iterator.hasNext()) {
+        timestamps.add(iterator.next().getLoggingEvent().getTimeStamp());
+      }
+    }
+    return timestamps;
+  }
+
+  private MergingLogFileIterator createIterator(List<Map.Entry<Long, Location>> files, long fromTimeMs,
+                                                long toTimeMs, int parallelism, int readAheadEvents) {
+    return new MergingLogFileIterator(new AvroFileReader(LogSchema.LoggingEvent.SCHEMA), files, Filter.EMPTY_FILTER,
+                                      fromTimeMs, toTimeMs, NamespaceId.DEFAULT, IMPERSONATOR, executor,
+                                      parallelism, readAheadEvents);
+  }
+
+  /**
+   * An {@link AvroFileReader} that keeps track of the iterators it creates.
+   */
+  private static final class TrackingAvroFileReader extends AvroFileReader {
+    private final ConcurrentMap<Location, TrackingIterator> iterators = new ConcurrentHashMap<>();
+
+    TrackingAvroFileReader() {
+      super(LogSchema.LoggingEvent.SCHEMA);
+    }
+
+    @Override
+    public CloseableIterator<LogEvent> readLog(Location file, Filter logFilter, long fromTimeMs, long toTimeMs,
+                                               int maxEvents, NamespaceId namespaceId, Impersonator impersonator) {
+      TrackingIterator iterator = new TrackingIterator(super.readLog(file, logFilter, fromTimeMs, toTimeMs,
+                                                                     maxEvents, namespaceId, impersonator));
+      iterators.put(file, iterator);
+      return iterator;
+    }
+  }
+
+  /**
+   * A {@link CloseableIterator} that records whether it is closed.
+   */
+  private static final class TrackingIterator extends AbstractCloseableIterator<LogEvent> {
+    private final CloseableIterator<LogEvent> delegate;
+    private volatile boolean closed;
+
+    TrackingIterator(CloseableIterator<LogEvent> delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    protected LogEvent computeNext() {
+      return delegate.hasNext() ? delegate.next() : endOfData();
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+      delegate.close();
+    }
+  }
+
+  /**
+   * Writes a log file with events starting at the given time.
+   */
+  private Map.Entry<Long, Location> writeLogFile(Location file, long startTime, long step,
+                                                 int events) throws IOException {
+    DataFileWriter<GenericRecord> dataFileWriter =
+      new DataFileWriter<>(new GenericDatumWriter<GenericRecord>(LogSchema.LoggingEvent.SCHEMA));
+    dataFileWriter.create(LogSchema.LoggingEvent.SCHEMA, file.getOutputStream());
+    dataFileWriter.setSyncInterval(256);
+    try {
+      Logger logger = (Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+      for (int i = 0; i < events; i++) {
+        LoggingEvent event = new LoggingEvent("co.cask.Test", logger, Level.INFO, "Event " + i, null, null);
+        event.setTimeStamp(startTime + i * step);
+        dataFileWriter.append(co.cask.cdap.logging.serialize.LoggingEvent.encode(LogSchema.LoggingEvent.SCHEMA,
+                                                                                   event));
+      }
+    } finally {
+      dataFileWriter.close();
+    }
+    return Maps.immutableEntry(startTime, file);
+  }
+}
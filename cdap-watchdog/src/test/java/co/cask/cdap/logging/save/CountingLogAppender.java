@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -42,6 +42,19 @@ public class CountingLogAppender extends LogAppender {
     this.logAppender = logAppender;
   }
 
+  @Override
+  public void start() {
+    logAppender.setContext(getContext());
+    logAppender.start();
+    super.start();
+  }
+
+  @Override
+  public void stop() {
+    super.stop();
+    logAppender.stop();
+  }
+
   @Override
   protected void append(LogMessage logMessage) {
     try {
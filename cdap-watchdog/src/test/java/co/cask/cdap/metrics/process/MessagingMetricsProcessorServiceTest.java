@@ -42,6 +42,7 @@ import org.slf4j.LoggerFactory;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
@@ -156,6 +157,11 @@ public class MessagingMetricsProcessorServiceTest extends MetricsProcessorServic
       return null;
     }
 
+    @Override
+    public List<Collection<MetricTimeSeries>> query(List<MetricDataQuery> queries) {
+      return null;
+    }
+
     @Override
     public void deleteBefore(long timestamp) throws Exception {
 